@@ -0,0 +1,82 @@
+package com.inv.alert;
+
+import com.inv.event.ChangeEventPublisher;
+import com.inv.event.EventTopic;
+import com.inv.id.IdGenerator;
+import com.inv.model.LowStockAlert;
+import com.inv.model.StockLevel;
+import com.inv.repo.LowStockAlertRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// ตรวจสินค้าใกล้หมดแบบเพิ่มทีละส่วน: service เรียกทุกครั้งที่ปรับจำนวน (ใน transaction เดียวกัน)
+// พร้อมจำนวนใหม่ที่ ProductRepository คืนมาของสินค้าที่ถูกปรับเท่านั้น จึงไม่ต้องอ่านทั้งแคตตาล็อก
+// เปิดแจ้งเตือนเมื่อจำนวนลดลงข้ามจุดสั่งซื้อ และปิดเมื่อกลับขึ้นไปเหนือจุดนั้น
+@Component
+public class LowStockMonitor {
+
+    @Autowired
+    private LowStockAlertRepository lowStockAlertRepository;
+
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private ChangeEventPublisher changeEvents;
+
+    // key ของ diffByProduct = product_id, value = ส่วนต่างที่เพิ่งปรับ (จำนวนก่อนปรับ = quantity - diff)
+    public void quantitiesChanged(Map<String, Integer> diffByProduct, List<StockLevel> levels) {
+        List<StockLevel> crossedDown = new ArrayList<>();
+        List<String> recovered = new ArrayList<>();
+        for (StockLevel level : levels) {
+            Integer reorderPoint = level.reorderPoint();
+            if (reorderPoint == null) {
+                continue;
+            }
+            int previous = level.quantity() - diffByProduct.getOrDefault(level.productId(), 0);
+            boolean low = level.quantity() <= reorderPoint;
+            boolean wasLow = previous <= reorderPoint;
+            if (low && !wasLow) {
+                crossedDown.add(level);
+            } else if (!low && wasLow) {
+                recovered.add(level.productId());
+            }
+        }
+        record(crossedDown, recovered);
+    }
+
+    // สินค้าใหม่หรือเพิ่งเปลี่ยนจุดสั่งซื้อ: ประเมินจากจำนวนปัจจุบันโดยตรง
+    public void levelSet(StockLevel level) {
+        if (level.reorderPoint() != null && level.quantity() <= level.reorderPoint()) {
+            record(List.of(level), List.of());
+        } else {
+            record(List.of(), List.of(level.productId()));
+        }
+    }
+
+    private void record(List<StockLevel> crossedDown, List<String> recovered) {
+        if (!crossedDown.isEmpty()) {
+            List<LowStockAlert> alerts = new ArrayList<>();
+            for (StockLevel level : crossedDown) {
+                LowStockAlert alert = new LowStockAlert();
+                alert.setAlertId(idGenerator.nextId("LSA-"));
+                alert.setProductId(level.productId());
+                alert.setQuantity(level.quantity());
+                alert.setReorderPoint(level.reorderPoint());
+                alerts.add(alert);
+            }
+            for (String productId : lowStockAlertRepository.openAll(alerts)) {
+                changeEvents.publish(EventTopic.PRODUCT, productId, Map.of("lowStock", true));
+            }
+        }
+        if (!recovered.isEmpty()) {
+            for (String productId : lowStockAlertRepository.resolve(recovered)) {
+                changeEvents.publish(EventTopic.PRODUCT, productId, Map.of("lowStock", false));
+            }
+        }
+    }
+}
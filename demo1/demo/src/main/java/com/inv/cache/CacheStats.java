@@ -0,0 +1,10 @@
+package com.inv.cache;
+
+// ตัวนับของ LruCache ณ เวลาที่เรียก (evictions รวมทั้งที่ถูกไล่ออกเพราะเต็มและเพราะหมดอายุ)
+public record CacheStats(long hits, long misses, long evictions, int size, int maxSize) {
+
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,129 @@
+package com.inv.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// cache ในหน่วยความจำแบบจำกัดขนาด: ไล่รายการที่ไม่ได้ใช้นานสุดออก (LRU) และหมดอายุตาม TTL
+// กันค่าเก่าค้างจาก race ระหว่างอ่านกับเขียนด้วย stamp แยกเป็น stripe:
+// ผู้อ่านจำ stamp() ก่อนไปอ่านฐานข้อมูล แล้วใส่ผลด้วย putIfUnchanged() ซึ่งจะไม่ใส่ถ้ามีการเขียน key ใน stripe เดียวกันเกิดขึ้นระหว่างนั้น
+// หรือยังมี transaction ที่เขียน key นั้นค้างอยู่ (beginWrite แล้วยังไม่ endWrite)
+public class LruCache<K, V> {
+
+    private static final int STRIPES = 64;
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    private final long[] versions = new long[STRIPES];
+    private final int[] pendingWrites = new int[STRIPES];
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LruCache(int maxSize, long ttl, TimeUnit unit) {
+        this(maxSize, ttl, unit, System::nanoTime);
+    }
+
+    LruCache(int maxSize, long ttl, TimeUnit unit, LongSupplier nanoClock) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.nanoClock = nanoClock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (nanoClock.getAsLong() - entry.loadedAt >= ttlNanos) {
+            entries.remove(key);
+            evictions++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    public synchronized long stamp(K key) {
+        return versions[stripe(key)];
+    }
+
+    public synchronized void put(K key, V value) {
+        int stripe = stripe(key);
+        versions[stripe]++;
+        store(key, value);
+    }
+
+    // ใส่เฉพาะเมื่อไม่มีการเขียน key นี้ (หรือ key อื่นใน stripe เดียวกัน) ตั้งแต่ได้ stamp มา
+    public synchronized boolean putIfUnchanged(K key, V value, long stamp) {
+        int stripe = stripe(key);
+        if (versions[stripe] != stamp || pendingWrites[stripe] > 0) {
+            return false;
+        }
+        store(key, value);
+        return true;
+    }
+
+    public synchronized void invalidate(K key) {
+        versions[stripe(key)]++;
+        entries.remove(key);
+    }
+
+    // เรียกก่อนเขียน key ใน transaction: ลบค่าออกและห้ามใส่กลับจนกว่าจะ endWrite
+    public synchronized void beginWrite(K key) {
+        int stripe = stripe(key);
+        versions[stripe]++;
+        pendingWrites[stripe]++;
+        entries.remove(key);
+    }
+
+    // เรียกหลัง commit/rollback: ลบอีกครั้งเผื่อมีคนอ่านค่าที่ยังไม่ commit ไปใส่
+    public synchronized void endWrite(K key) {
+        int stripe = stripe(key);
+        versions[stripe]++;
+        if (pendingWrites[stripe] > 0) {
+            pendingWrites[stripe]--;
+        }
+        entries.remove(key);
+    }
+
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            versions[i]++;
+        }
+        entries.clear();
+    }
+
+    public synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, entries.size(), maxSize);
+    }
+
+    private void store(K key, V value) {
+        entries.put(key, new Entry<>(value, nanoClock.getAsLong()));
+        if (entries.size() > maxSize) {
+            Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private int stripe(K key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    private record Entry<V>(V value, long loadedAt) {
+    }
+}
@@ -0,0 +1,69 @@
+package com.inv.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// เลข version ของแต่ละตาราง เพิ่มทุกครั้งที่ repository เขียนตารางนั้น ใช้ทำ ETag ของ list endpoint
+// โดยไม่ต้อง query ฐานข้อมูล; ผู้อ่านต้องอ่าน version ก่อน query เสมอ ส่วนผู้เขียนเพิ่มหลังข้อมูล commit แล้วเท่านั้น
+// version อยู่ในหน่วยความจำของแต่ละเครื่อง การเขียนที่เครื่องอื่นจึงไม่เปลี่ยน ETag ของเครื่องนี้
+// ETag จึงเปลี่ยนเองทุก max-age-seconds ด้วย ข้อมูลที่ client เห็นจะช้ากว่าจริงได้ไม่เกินช่วงนี้
+@Component
+public class TableVersions {
+
+    public enum Table { PRODUCT, CUSTOMER, SUPPLIER, STAFF }
+
+    // version เริ่มที่ 0 ทุกครั้งที่ start จึงใส่รหัสสุ่มของ instance ไว้ใน ETag กันชนกับ ETag ก่อน restart หรือของเครื่องอื่น
+    private final String instanceId = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final Map<Table, AtomicLong> versions = new EnumMap<>(Table.class);
+    private final long maxAgeMillis;
+    private final LongSupplier clock;
+
+    @Autowired
+    public TableVersions(@Value("${table-versions.max-age-seconds:60}") long maxAgeSeconds) {
+        this(TimeUnit.SECONDS.toMillis(maxAgeSeconds), System::currentTimeMillis);
+    }
+
+    TableVersions(long maxAgeMillis, LongSupplier clock) {
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+        for (Table table : Table.values()) {
+            versions.put(table, new AtomicLong());
+        }
+    }
+
+    public long current(Table table) {
+        return versions.get(table).get();
+    }
+
+    // เรียกหลังคำสั่ง SQL ทำงานแล้ว: ถ้าไม่มี transaction ข้อมูล commit แล้วจึงเพิ่มทันที
+    // ถ้าอยู่ใน transaction จะเพิ่มหลัง commit/rollback เพื่อไม่ให้ ETag ใหม่ผูกกับข้อมูลเก่าที่อ่านได้ก่อน commit
+    public void bump(Table table) {
+        AtomicLong version = versions.get(table);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    version.incrementAndGet();
+                }
+            });
+        } else {
+            version.incrementAndGet();
+        }
+    }
+
+    // ค่า ETag แบบ strong (ยังไม่ใส่เครื่องหมายคำพูด)
+    public String etag(Table table) {
+        String etag = table.name().toLowerCase() + "-" + instanceId + "-" + current(table);
+        return maxAgeMillis > 0 ? etag + "-" + clock.getAsLong() / maxAgeMillis : etag;
+    }
+}
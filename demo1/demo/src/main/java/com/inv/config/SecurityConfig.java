@@ -1,6 +1,7 @@
 package com.inv.config;
 
 import com.inv.security.JwtFilter;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -46,6 +47,8 @@ public class SecurityConfig {
         configuration.addAllowedMethod("*"); // GET, POST, PUT, DELETE
         configuration.addAllowedHeader("*");
         configuration.setAllowCredentials(true);
+        configuration.addExposedHeader("X-Next-Cursor");
+        configuration.addExposedHeader("Content-Disposition");
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", configuration);
@@ -59,6 +62,8 @@ public class SecurityConfig {
                 .authorizeHttpRequests(request -> request
                         // Public endpoints
                         .requestMatchers("/register", "/login", "/test").permitAll()
+                        // async dispatch ตอนปิด SSE/stream ผ่านการตรวจสิทธิ์ตอนเปิด request แล้ว (JwtFilter ไม่ทำงานซ้ำใน async dispatch)
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
 
                         // แก้ไข: ทำให้ Role เป็นตัวพิมพ์ใหญ่ทั้งหมด
                         // Technician endpoints
@@ -83,8 +88,11 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.POST, "/suppliers").authenticated()
 
                         // Purchase order workflow
+                        .requestMatchers(HttpMethod.GET, "/purchase-orders/suggestions").hasAnyRole("PROCUREMENT", "WAREHOUSE", "ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/purchase-orders/suggestions/refresh").hasAnyRole("PROCUREMENT", "ADMIN")
                         .requestMatchers(HttpMethod.GET, "/purchase-orders", "/purchase-orders/*").hasAnyRole("PROCUREMENT", "WAREHOUSE")
                         .requestMatchers(HttpMethod.POST, "/purchase-orders").hasAnyRole("WAREHOUSE", "PROCUREMENT")
+                        .requestMatchers(HttpMethod.POST, "/purchase-orders/suggestions/refresh", "/purchase-orders/suggestions/drafts").hasAnyRole("PROCUREMENT", "ADMIN")
                         .requestMatchers(HttpMethod.PUT, "/purchase-orders/*/pricing").hasAnyRole("PROCUREMENT")
                         .requestMatchers(HttpMethod.POST, "/purchase-orders/*/receive").hasAnyRole("WAREHOUSE")
 
@@ -93,8 +101,14 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.POST, "/orders").hasAnyRole("SALES", "ADMIN")
                         // อนุญาตให้ warehouse สร้างสินค้าได้
                         .requestMatchers(HttpMethod.POST, "/products").hasAnyRole("WAREHOUSE","ADMIN","PROCUREMENT")
-                        .requestMatchers(HttpMethod.POST, "/products/upload-image").hasAnyRole("WAREHOUSE","ADMIN","PROCUREMENT")
-                        .requestMatchers(HttpMethod.POST, "/purchase-orders/upload-slip").hasAnyRole("PROCUREMENT","ADMIN")
+                        .requestMatchers(HttpMethod.POST, "/products/upload-image", "/products/*/image").hasAnyRole("WAREHOUSE","ADMIN","PROCUREMENT")
+                        // รูปสินค้าเปิดผ่าน <img> ซึ่งส่ง token ไม่ได้ (เหมือน URL ของ Cloudinary ที่เปิดสาธารณะอยู่แล้ว)
+                        .requestMatchers(HttpMethod.GET, "/products/*/image").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/products/cache-stats").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/images/store-stats", "/images/thumbnail-source-stats").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.PUT, "/products/*/reorder-point").hasAnyRole("WAREHOUSE","ADMIN","PROCUREMENT")
+                        .requestMatchers(HttpMethod.GET, "/alerts/low-stock").hasAnyRole("WAREHOUSE","ADMIN","PROCUREMENT")
+                        .requestMatchers(HttpMethod.POST, "/purchase-orders/upload-slip", "/purchase-orders/*/slip").hasAnyRole("PROCUREMENT","ADMIN")
                         // อนุญาตให้ทุกคนที่ login แล้วดึงข้อมูล Category ได้
                         .requestMatchers(HttpMethod.GET, "/categories").authenticated()
 
@@ -110,7 +124,11 @@ public class SecurityConfig {
                         .requestMatchers(HttpMethod.GET, "/staff").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.POST, "/staff").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.GET, "/stock/transactions").hasAnyRole("WAREHOUSE","ADMIN")
+                        .requestMatchers(HttpMethod.GET, "/stock/transactions/export").hasAnyRole("WAREHOUSE","ADMIN")
                         .requestMatchers(HttpMethod.GET, "/stock/fulfill").hasRole("WAREHOUSE")
+                        .requestMatchers(HttpMethod.POST, "/stock/requests/*/fulfill").hasRole("WAREHOUSE")
+                        .requestMatchers(HttpMethod.POST, "/stock/requests/claim", "/stock/requests/*/release").hasRole("WAREHOUSE")
+                        .requestMatchers("/stock/waves", "/stock/waves/**").hasRole("WAREHOUSE")
 
 
                         .anyRequest().authenticated()
@@ -0,0 +1,26 @@
+package com.inv.controller;
+
+import com.inv.model.LowStockAlert;
+import com.inv.service.ProductService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/alerts")
+public class AlertController {
+
+    @Autowired
+    private ProductService productService;
+
+    // สินค้าที่จำนวนลดลงถึงจุดสั่งซื้อ (หนึ่งแจ้งเตือนต่อสินค้าจนกว่าจะเติมสต็อกกลับขึ้นเหนือจุดนั้น) ใหม่ -> เก่า
+    @GetMapping("/low-stock")
+    public List<LowStockAlert> getLowStockAlerts(@RequestParam(defaultValue = "false") boolean includeResolved,
+                                                 @RequestParam(required = false) Integer limit) {
+        return productService.getLowStockAlerts(includeResolved, limit);
+    }
+}
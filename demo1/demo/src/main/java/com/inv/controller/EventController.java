@@ -0,0 +1,49 @@
+package com.inv.controller;
+
+import com.inv.event.EventStreamHub;
+import com.inv.event.EventTopic;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/events")
+public class EventController {
+
+    @Autowired
+    private EventStreamHub eventStreamHub;
+
+    // แทนการ poll: ส่ง event หลัง commit ตามหัวข้อที่ role นี้เห็นได้ (เลือกเฉพาะบางหัวข้อได้ด้วย ?topics=product,request)
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam(required = false) String topics, Authentication authentication) {
+        Set<EventTopic> allowed = EventTopic.visibleTo(authentication.getAuthorities());
+        Set<EventTopic> selected = allowed;
+        if (topics != null && !topics.isBlank()) {
+            selected = EnumSet.noneOf(EventTopic.class);
+            for (String name : topics.split(",")) {
+                EventTopic topic = EventTopic.fromEventName(name.trim());
+                if (topic == null) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ไม่รู้จักหัวข้อ " + name.trim());
+                }
+                if (!allowed.contains(topic)) {
+                    throw new ResponseStatusException(HttpStatus.FORBIDDEN, "ไม่มีสิทธิ์รับหัวข้อ " + topic.eventName());
+                }
+                selected.add(topic);
+            }
+        }
+        if (selected.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "ไม่มีหัวข้อที่มีสิทธิ์รับ");
+        }
+        return eventStreamHub.subscribe(selected);
+    }
+}
@@ -0,0 +1,36 @@
+package com.inv.controller;
+
+import com.inv.image.ImageStoreStats;
+import com.inv.model.ImageUpload;
+import com.inv.service.ImageService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/images")
+public class ImageUploadController {
+
+    @Autowired
+    private ImageService imageService;
+
+    // สถานะการอัปโหลดแบบ async (Pending / Uploading / Done / Failed)
+    @GetMapping("/uploads/{assetId}")
+    public ImageUpload getUpload(@PathVariable String assetId) {
+        return imageService.getUpload(assetId);
+    }
+
+    // สถานะ circuit breaker, bulkhead และ histogram เวลาที่ใช้เรียกที่เก็บรูป
+    @GetMapping("/store-stats")
+    public ImageStoreStats getStoreStats() {
+        return imageService.getStoreStats();
+    }
+
+    // เหมือน store-stats แต่ของการโหลดรูปต้นฉบับไปทำ thumbnail ซึ่งมี breaker แยกจากการอัปโหลด
+    @GetMapping("/thumbnail-source-stats")
+    public ImageStoreStats getThumbnailSourceStats() {
+        return imageService.getThumbnailSourceStats();
+    }
+}
@@ -0,0 +1,18 @@
+package com.inv.controller;
+
+import java.util.Arrays;
+
+// อ่านพารามิเตอร์ ?include= ของ endpoint แบบ list (คั่นหลายค่าด้วย , ไม่สนตัวพิมพ์เล็ก/ใหญ่)
+final class IncludeParams {
+
+    private IncludeParams() {
+    }
+
+    static boolean includes(String include, String name) {
+        return include != null && Arrays.stream(include.split(",")).map(String::trim).anyMatch(name::equalsIgnoreCase);
+    }
+
+    static boolean includesItems(String include) {
+        return includes(include, "items");
+    }
+}
@@ -20,8 +20,12 @@ public class OrderController {
     private OrderService orderService;
 
     @GetMapping
-    public List<Order> getAllOrders() {
-        return orderService.getAllOrders();
+    public List<Order> getAllOrders(@RequestParam(required = false) String include) { // include=items ส่งรายการสินค้ามาในแต่ละ Order เลย
+        List<Order> orders = orderService.getAllOrders();
+        if (IncludeParams.includesItems(include)) {
+            orderService.attachItems(orders);
+        }
+        return orders;
     }
 
     @PostMapping
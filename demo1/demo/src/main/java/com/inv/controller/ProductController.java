@@ -1,30 +1,81 @@
 package com.inv.controller;
 
+import com.inv.cache.CacheStats;
+import com.inv.model.ImageUpload;
 import com.inv.model.Product;
+import com.inv.model.ProductAvailability;
 import com.inv.model.ProductBatch;
 import com.inv.service.ImageService;
 import com.inv.service.ProductService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/products")
 public class ProductController {
 
+    // เท่ากับ sendfileSize เริ่มต้นของ connector Tomcat (DefaultServlet ใช้เกณฑ์เดียวกัน)
+    static final long SENDFILE_MIN_BYTES = 48 * 1024;
+
     @Autowired
     private ProductService productService;
 
     @Autowired
     private ImageService imageService;
 
+    @Value("${image-thumbnails.max-age-seconds:86400}")
+    private long thumbnailMaxAgeSeconds;
+
+    // ถ้า If-None-Match ตรงกับ version ปัจจุบันจะตอบ 304 ทันทีโดยไม่ query ฐานข้อมูล
     @GetMapping
-    public List<Product> getAllProducts() {
-        return productService.getAllProducts();
+    public ResponseEntity<List<Product>> getAllProducts(WebRequest webRequest) {
+        String etag = productService.getProductListETag();
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(productService.getAllProducts());
+    }
+
+    // ค้นหาจากชื่อ รหัส และรายละเอียดสินค้า (ไทย/อังกฤษ) เรียงตามความใกล้เคียง
+    @GetMapping("/search")
+    public List<Product> searchProducts(@RequestParam String q, @RequestParam(required = false) Integer limit) {
+        return productService.searchProducts(q, limit);
+    }
+
+    // ตัวนับ hit/miss/eviction ของ cache สินค้า
+    @GetMapping("/cache-stats")
+    public CacheStats getCacheStats() {
+        return productService.getProductCacheStats();
+    }
+
+    // ยอดคงเหลือ/จอง/ค้างเบิกของหลายสินค้าในครั้งเดียว สำหรับหน้ากรอก Order
+    @PostMapping("/availability")
+    public List<ProductAvailability> getAvailability(@RequestBody AvailabilityRequest request) {
+        return productService.getAvailability(request.getProductIds());
     }
 
     @GetMapping("/{id}")
@@ -37,6 +88,12 @@ public class ProductController {
         productService.adjustQuantity(id, diff);
     }
 
+    // ตั้งจุดสั่งซื้อ ({"reorderPoint": null} = เลิกแจ้งเตือน)
+    @PutMapping("/{id}/reorder-point")
+    public Product updateReorderPoint(@PathVariable String id, @RequestBody ReorderPointRequest request) {
+        return productService.updateReorderPoint(id, request.getReorderPoint());
+    }
+
     @PostMapping
     public ResponseEntity<Product> createProduct(@RequestBody Product product) {
         Product newProduct = productService.createProduct(product);
@@ -76,6 +133,56 @@ public class ProductController {
         return ResponseEntity.ok(Map.of("url", imageUrl));
     }
 
+    // อัปโหลดแบบ async: ตอบ 202 พร้อม assetId ทันที แล้วใส่ image_url ให้สินค้าเมื่ออัปโหลดเสร็จ
+    @PostMapping("/{id}/image")
+    public ResponseEntity<ImageUpload> submitProductImage(@PathVariable String id, @RequestParam("file") MultipartFile file) {
+        return ResponseEntity.accepted().body(imageService.submitProductImage(file, id));
+    }
+
+    // thumbnail จาก cache บนดิสก์ (size ปัดขึ้นเป็นขนาดที่ตั้งไว้) ถ้ายังไม่มีหรือไม่ระบุ size จะ redirect ไปรูปเต็มแทน
+    // ไฟล์ใหญ่ส่งด้วย sendfile ของ Tomcat ถ้า connector รองรับ (ไม่ใช้ TLS/HTTP2) ไฟล์เล็กหรือใช้ sendfile ไม่ได้จะคัดลอกผ่าน buffer ของ response
+    @GetMapping("/{id}/image")
+    public void getProductImage(@PathVariable String id, @RequestParam(required = false) Integer size,
+                                HttpServletRequest request, HttpServletResponse response) throws IOException {
+        ImageService.ProductImage image = imageService.getProductImage(id, size);
+        if (image.thumbnail() == null) {
+            response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noStore().getHeaderValue());
+            response.sendRedirect(image.originalUrl());
+            return;
+        }
+        String etag = image.version() + "-" + image.thumbnail().getFileName().toString().replace(".jpg", "");
+        // เปลี่ยนรูปแล้ว version เปลี่ยน ETag จึงเปลี่ยนตาม หมดอายุแล้วใช้ของเดิมต่อระหว่างตรวจ ETag ใหม่ได้
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.maxAge(thumbnailMaxAgeSeconds, TimeUnit.SECONDS)
+                .cachePublic()
+                .staleWhileRevalidate(thumbnailMaxAgeSeconds * 7, TimeUnit.SECONDS)
+                .getHeaderValue());
+        if (new ServletWebRequest(request, response).checkNotModified(etag)) {
+            return;
+        }
+        sendFile(image.thumbnail(), request, response);
+    }
+
+    // sendfile: Tomcat เปิดไฟล์จากชื่อเองหลัง method นี้คืนค่า แล้วส่งจาก page cache ถึง socket โดยไม่ผ่าน heap
+    // (ThumbnailCache จึงยังไม่ลบไฟล์ของรูปเก่าทันที) ไฟล์ที่เล็กกว่า SENDFILE_MIN_BYTES ไม่คุ้มกับการเปิดไฟล์อีกรอบ
+    // ทางสำรองเป็นการคัดลอกธรรมดาผ่าน output stream ของ response (ไม่ใช่ zero-copy)
+    private void sendFile(Path file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            response.setContentType(MediaType.IMAGE_JPEG_VALUE);
+            response.setContentLengthLong(length);
+            if (length >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+                request.setAttribute("org.apache.tomcat.sendfile.filename", file.toAbsolutePath().toString());
+                request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+                request.setAttribute("org.apache.tomcat.sendfile.end", length);
+                return;
+            }
+            Channels.newInputStream(channel).transferTo(response.getOutputStream());
+        } catch (NoSuchFileException e) {
+            // ถูกแทนด้วยรูปใหม่ระหว่างนั้น
+            response.sendError(HttpStatus.NOT_FOUND.value());
+        }
+    }
+
 //    @PostMapping("/products/{id}/image")
 //    public ResponseEntity<?> uploadProductImage(@PathVariable int id,
 //                                                @RequestParam("file") MultipartFile file) throws IOException {
@@ -95,5 +202,15 @@ public class ProductController {
 //        return new ResponseEntity<>(imageData, headers, HttpStatus.OK);
 //    }
 
+    public static class AvailabilityRequest {
+        private List<String> productIds;
+        public List<String> getProductIds() { return productIds; }
+        public void setProductIds(List<String> productIds) { this.productIds = productIds; }
+    }
 
+    public static class ReorderPointRequest {
+        private Integer reorderPoint;
+        public Integer getReorderPoint() { return reorderPoint; }
+        public void setReorderPoint(Integer reorderPoint) { this.reorderPoint = reorderPoint; }
+    }
 }
@@ -1,8 +1,12 @@
 package com.inv.controller;
 
+import com.inv.model.ImageUpload;
 import com.inv.model.ProductBatch;
 import com.inv.model.PurchaseItem;
 import com.inv.model.PurchaseOrder;
+import com.inv.model.PurchaseOrderPage;
+import com.inv.model.ReorderSuggestion;
+import com.inv.service.DemandForecastService;
 import com.inv.service.ImageService;
 import com.inv.service.PurchaseOrderService;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,9 +27,51 @@ public class PurchaseOrderController {
     @Autowired
     private ImageService imageService;
 
+    @Autowired
+    private DemandForecastService demandForecastService;
+
+    // คืนทีละหน้า (ใหม่ -> เก่า) พร้อมรายการสินค้า; ถ้ามีหน้าถัดไปจะส่ง cursor กลับใน header X-Next-Cursor
     @GetMapping
-    public List<PurchaseOrder> getPurchaseOrders(@RequestParam(required = false) String status) {
-        return purchaseOrderService.getPurchaseOrders(status);
+    public ResponseEntity<List<PurchaseOrder>> getPurchaseOrders(@RequestParam(required = false) String status,
+                                                                 @RequestParam(required = false) String cursor,
+                                                                 @RequestParam(required = false) Integer limit) {
+        PurchaseOrderPage page = purchaseOrderService.getPurchaseOrders(status, cursor, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(StockController.NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+
+    // จำนวนใบสั่งซื้อแยกตามสถานะ (หน้าสรุปไม่ต้องไล่โหลดทุกหน้า)
+    @GetMapping("/status-counts")
+    public Map<String, Integer> getStatusCounts() {
+        return purchaseOrderService.getStatusCounts();
+    }
+
+    // จำนวนแนะนำให้สั่งซื้อจากค่าพยากรณ์ล่าสุด (คำนวณทุกคืน) เทียบกับยอดคงเหลือและยอดที่สั่งไว้ ณ ตอนนี้
+    @GetMapping("/suggestions")
+    public List<ReorderSuggestion> getSuggestions(@RequestParam(required = false) String supplierId) {
+        return demandForecastService.getSuggestions(supplierId);
+    }
+
+    // คำนวณค่าพยากรณ์ใหม่โดยไม่ต้องรอรอบกลางคืน ทำใน background จึงตอบ 202 ทันที (409 ถ้ามีรอบที่กำลังทำอยู่)
+    @PostMapping("/suggestions/refresh")
+    public ResponseEntity<DemandForecastService.RefreshStatus> refreshSuggestions() {
+        return ResponseEntity.accepted().body(demandForecastService.startRefresh());
+    }
+
+    // ดูว่ารอบที่สั่งไว้เสร็จหรือยัง
+    @GetMapping("/suggestions/refresh")
+    public DemandForecastService.RefreshStatus getRefreshStatus() {
+        return demandForecastService.getRefreshStatus();
+    }
+
+    public record DraftRequest(String staffId, List<String> supplierIds) {}
+
+    @PostMapping("/suggestions/drafts")
+    public List<PurchaseOrder> createDrafts(@RequestBody DraftRequest request) {
+        return purchaseOrderService.createDraftsFromSuggestions(request.staffId(), request.supplierIds());
     }
 
     @GetMapping("/{id}")
@@ -65,4 +111,10 @@ public class PurchaseOrderController {
         String url = imageService.uploadPurchaseOrderSlip(file);
         return ResponseEntity.ok(Map.of("url", url));
     }
+
+    // อัปโหลดแบบ async: ตอบ 202 พร้อม assetId ทันที แล้วใส่ slip_url ให้ใบสั่งซื้อเมื่ออัปโหลดเสร็จ
+    @PostMapping("/{id}/slip")
+    public ResponseEntity<ImageUpload> submitSlip(@PathVariable("id") String poId, @RequestParam("file") MultipartFile file) {
+        return ResponseEntity.accepted().body(imageService.submitPurchaseOrderSlip(file, poId));
+    }
 }
@@ -21,7 +21,8 @@ public class RequestController {
     @GetMapping
     public ResponseEntity<List<Request>> getAllRequests(
             @RequestParam(required = false) String status,
-            @RequestParam(required = false) String orderId // <-- 1. เพิ่มตัวนี้
+            @RequestParam(required = false) String orderId, // <-- 1. เพิ่มตัวนี้
+            @RequestParam(required = false) String include // include=items ส่งรายการสินค้ามาในแต่ละใบเลย
     ) {
         List<Request> requests;
 
@@ -37,6 +38,9 @@ public class RequestController {
         } else {
             requests = requestService.getAllRequests();
         }
+        if (IncludeParams.includesItems(include)) {
+            requestService.attachItems(requests);
+        }
         return ResponseEntity.ok(requests);
     }
 
@@ -3,8 +3,10 @@ package com.inv.controller;
 import com.inv.model.Staff;
 import com.inv.service.StaffService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -23,8 +25,15 @@ public class StaffController {
     }
 
     @GetMapping
-    public List<Staff> getAllStaff() {
-        return staffService.getAllStaff();
+    public ResponseEntity<List<Staff>> getAllStaff(WebRequest webRequest) {
+        String etag = staffService.getStaffListETag();
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(staffService.getAllStaff());
     }
 
     @PatchMapping("/{id}/active")
@@ -1,25 +1,101 @@
 package com.inv.controller;
 
+import com.inv.model.PickWave;
 import com.inv.model.Request;
+import com.inv.model.RequestItem;
 import com.inv.model.StockTransaction;
+import com.inv.model.StockTransactionFilter;
+import com.inv.model.StockTransactionPage;
+import com.inv.service.PickWaveService;
+import com.inv.service.StockExportService;
 import com.inv.service.StockService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.Principal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/stock")
 public class StockController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
     private StockService stockService;
 
+    @Autowired
+    private StockExportService stockExportService;
+
+    @Autowired
+    private PickWaveService pickWaveService;
 
+    // คืนทีละหน้า (ใหม่ -> เก่า); ถ้ามีหน้าถัดไปจะส่ง cursor กลับใน header X-Next-Cursor
     @GetMapping("/transactions")
-    public List<StockTransaction> getAllTransactions() {
-        return stockService.getAllTransactions();
+    public ResponseEntity<List<StockTransaction>> getTransactions(
+            @RequestParam(required = false) String productId,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String staffId,
+            @RequestParam(required = false) String batchId,
+            @RequestParam(required = false) String referenceId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit
+    ) {
+        StockTransactionFilter filter = buildFilter(productId, type, staffId, batchId, referenceId, from, to);
+        StockTransactionPage page = stockService.getTransactions(filter, cursor, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+
+    // export ledger ทั้งหมดตามเงื่อนไข (เก่า -> ใหม่) เป็น NDJSON หรือ CSV แบบ streaming; บีบอัด gzip ถ้า client รองรับ
+    @GetMapping("/transactions/export")
+    public void exportTransactions(
+            @RequestParam(required = false) String productId,
+            @RequestParam(required = false) String type,
+            @RequestParam(required = false) String staffId,
+            @RequestParam(required = false) String batchId,
+            @RequestParam(required = false) String referenceId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response
+    ) throws IOException {
+        StockTransactionFilter filter = buildFilter(productId, type, staffId, batchId, referenceId, from, to);
+        StockExportService.Format exportFormat = stockExportService.parseFormat(format);
+        stockExportService.validateFilter(filter);
+
+        boolean csv = exportFormat == StockExportService.Format.CSV;
+        response.setContentType(csv ? "text/csv; charset=UTF-8" : "application/x-ndjson; charset=UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"stock-transactions." + (csv ? "csv" : "ndjson") + "\"");
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        if (gzip) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            try (OutputStream out = new GZIPOutputStream(response.getOutputStream(), 64 * 1024)) {
+                stockExportService.exportTransactions(filter, exportFormat, out);
+            }
+        } else {
+            stockExportService.exportTransactions(filter, exportFormat, response.getOutputStream());
+        }
+        response.flushBuffer();
     }
 
     @GetMapping("/requests/{requestId}/transactions")
@@ -54,6 +130,54 @@ public class StockController {
         stockService.fulfillItem(request.getRequestItemId(), request.getFulfillQty(), warehouseStaffId);
     }
 
+    // เบิกทั้งใบเบิกใน transaction เดียว (ไม่ส่ง body = เบิกส่วนที่เหลือทุกรายการ)
+    @PostMapping("/requests/{requestId}/fulfill")
+    public List<RequestItem> fulfillRequest(@PathVariable String requestId,
+                                            @RequestBody(required = false) FulfillRequestItems request,
+                                            Principal principal) {
+        String warehouseStaffId = principal.getName();
+        Map<String, Integer> qtyByItem = new LinkedHashMap<>();
+        if (request != null && request.getItems() != null) {
+            for (FulfillRequest line : request.getItems()) {
+                qtyByItem.merge(line.getRequestItemId(), line.getFulfillQty(), Integer::sum);
+            }
+        }
+        return stockService.fulfillRequest(requestId, qtyByItem, warehouseStaffId);
+    }
+
+    // คิวงานเบิก: รับใบเบิกถัดไปที่ยังไม่มีใครถือ (ไม่เกิน limit ใบ) สิทธิ์ถือหมดอายุตาม stock-claim.lease-minutes
+    @PostMapping("/requests/claim")
+    public List<Request> claimRequests(@RequestParam(required = false) Integer limit, Principal principal) {
+        return stockService.claimRequests(limit, principal.getName());
+    }
+
+    @PostMapping("/requests/{requestId}/release")
+    public void releaseClaim(@PathVariable String requestId, Principal principal) {
+        stockService.releaseClaim(requestId, principal.getName());
+    }
+
+    // สร้างรอบหยิบจากรายการเบิกที่ค้างทั้งหมด (รอบละไม่เกิน maxRequests ใบเบิก)
+    @PostMapping("/waves")
+    public List<PickWave> buildWaves(@RequestParam(required = false) Integer maxRequests, Principal principal) {
+        return pickWaveService.buildWaves(maxRequests, principal.getName());
+    }
+
+    @GetMapping("/waves/{waveId}")
+    public PickWave getWave(@PathVariable String waveId) {
+        return pickWaveService.getWave(waveId);
+    }
+
+    // หยิบครบแล้ว: เบิกทุกรายการของรอบใน transaction เดียว
+    @PostMapping("/waves/{waveId}/confirm")
+    public PickWave confirmWave(@PathVariable String waveId, Principal principal) {
+        return pickWaveService.confirmWave(waveId, principal.getName());
+    }
+
+    @PostMapping("/waves/{waveId}/cancel")
+    public PickWave cancelWave(@PathVariable String waveId) {
+        return pickWaveService.cancelWave(waveId);
+    }
+
     // Inner class สำหรับรับ JSON request ของการเบิกของ
     public static class FulfillRequest {
         private String requestItemId; // แก้เป็น String
@@ -65,6 +189,12 @@ public class StockController {
         public int getFulfillQty() { return fulfillQty; }
         public void setFulfillQty(int fulfillQty) { this.fulfillQty = fulfillQty; }
     }
+    public static class FulfillRequestItems {
+        private List<FulfillRequest> items;
+
+        public List<FulfillRequest> getItems() { return items; }
+        public void setItems(List<FulfillRequest> items) { this.items = items; }
+    }
     // Inner class สำหรับรับ JSON request
     public static class StockInRequest {
         private String productId;   // แก้เป็น String
@@ -82,4 +212,25 @@ public class StockController {
         public String getNote() { return note; }
         public void setNote(String note) { this.note = note; }
     }
+
+    private StockTransactionFilter buildFilter(String productId, String type, String staffId, String batchId,
+                                               String referenceId, LocalDateTime from, LocalDateTime to) {
+        StockTransactionFilter filter = new StockTransactionFilter();
+        filter.setProductId(trimToNull(productId));
+        filter.setType(type != null ? trimToNull(type.toUpperCase()) : null);
+        filter.setStaffId(trimToNull(staffId));
+        filter.setBatchId(trimToNull(batchId));
+        filter.setReferenceId(trimToNull(referenceId));
+        filter.setFrom(from);
+        filter.setTo(to);
+        return filter;
+    }
+
+    private String trimToNull(String value) {
+        if (value == null) {
+            return null;
+        }
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
 }
@@ -3,8 +3,10 @@ package com.inv.controller;
 import com.inv.model.Supplier;
 import com.inv.service.SupplierService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -16,8 +18,15 @@ public class SupplierController {
     private SupplierService supplierService;
 
     @GetMapping
-    public List<Supplier> getAllSuppliers() {
-        return supplierService.getAllSuppliers();
+    public ResponseEntity<List<Supplier>> getAllSuppliers(WebRequest webRequest) {
+        String etag = supplierService.getSupplierListETag();
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(supplierService.getAllSuppliers());
     }
 
     @GetMapping("/{id}")
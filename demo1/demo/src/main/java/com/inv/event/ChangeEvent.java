@@ -0,0 +1,8 @@
+package com.inv.event;
+
+import java.util.Map;
+
+// การเปลี่ยนแปลงหนึ่งรายการที่ส่งทาง /events/stream: id ของสิ่งที่เปลี่ยน และเฉพาะฟิลด์ที่เปลี่ยน
+// client ที่อยากได้ข้อมูลเต็มให้ดึงจาก endpoint ปกติ
+public record ChangeEvent(EventTopic topic, String id, Map<String, Object> data) {
+}
@@ -0,0 +1,105 @@
+package com.inv.event;
+
+import com.inv.model.StockTransaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// จุดเดียวที่ service ใช้ประกาศการเปลี่ยนแปลง; ถ้าอยู่ใน transaction จะเก็บไว้แล้วส่งให้ EventStreamHub หลัง commit เท่านั้น
+// (rollback = ไม่มี event) เพื่อให้ client ที่ได้ event แล้วดึงข้อมูลใหม่เห็นค่าที่ commit แล้วเสมอ
+@Component
+public class ChangeEventPublisher {
+
+    @Autowired
+    private EventStreamHub eventStreamHub;
+
+    public void publish(EventTopic topic, String id, Map<String, Object> data) {
+        ChangeEvent event = new ChangeEvent(topic, id, data);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            eventStreamHub.dispatch(List.of(event));
+            return;
+        }
+        PendingEvents pending = (PendingEvents) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingEvents();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.events.add(event);
+    }
+
+    public void statusChanged(EventTopic topic, String id, String status) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("status", status); // Order ที่สร้างโดยไม่ระบุสถานะจะเป็น null
+        publish(topic, id, data);
+    }
+
+    // คิวงานเบิก: claimedBy = null เมื่อใบเบิกกลับเข้าคิว
+    public void claimChanged(String requestId, String claimedBy) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("claimedBy", claimedBy);
+        publish(EventTopic.REQUEST, requestId, data);
+    }
+
+    // key = product_id, value = จำนวนที่เปลี่ยน (ติดลบ = ออก)
+    public void quantitiesChanged(Map<String, Integer> diffByProduct) {
+        for (Map.Entry<String, Integer> entry : diffByProduct.entrySet()) {
+            if (entry.getValue() != 0) {
+                publish(EventTopic.PRODUCT, entry.getKey(), Map.of("quantityDelta", entry.getValue()));
+            }
+        }
+    }
+
+    // ยอดจองเปลี่ยน = จำนวนที่เบิกได้ (available) เปลี่ยน; key = product_id, value = ยอดจองที่เปลี่ยน
+    public void reservedChanged(Map<String, Integer> diffByProduct) {
+        for (Map.Entry<String, Integer> entry : diffByProduct.entrySet()) {
+            if (entry.getValue() != 0) {
+                publish(EventTopic.PRODUCT, entry.getKey(), Map.of("reservedDelta", entry.getValue()));
+            }
+        }
+    }
+
+    public void ledgerRowsAdded(List<StockTransaction> transactions) {
+        for (StockTransaction transaction : transactions) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("type", transaction.getType());
+            data.put("productId", transaction.getProductId());
+            data.put("quantity", transaction.getQuantity());
+            if (transaction.getReferenceId() != null) {
+                data.put("referenceId", transaction.getReferenceId());
+            }
+            publish(EventTopic.LEDGER, transaction.getTransactionId(), data);
+        }
+    }
+
+    private final class PendingEvents implements TransactionSynchronization {
+        private final List<ChangeEvent> events = new ArrayList<>();
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(ChangeEventPublisher.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(ChangeEventPublisher.this, this);
+        }
+
+        @Override
+        public void afterCommit() {
+            eventStreamHub.dispatch(events);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            events.clear();
+            TransactionSynchronizationManager.unbindResourceIfPossible(ChangeEventPublisher.this);
+        }
+    }
+}
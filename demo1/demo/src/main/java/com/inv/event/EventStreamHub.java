@@ -0,0 +1,160 @@
+package com.inv.event;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// ผู้เชื่อมต่อ /events/stream ทั้งหมดของ instance นี้
+// แต่ละคนมีคิวขนาดจำกัดและ virtual thread ของตัวเองที่เขียนลง socket ผู้ส่ง event (thread ที่ commit) จึงไม่รอ client ที่ช้า
+// คิวเต็มเมื่อไร ทิ้ง event ที่ค้างแล้วส่ง "resync" ให้ client ดึงข้อมูลใหม่แทน; ตอนว่างส่ง heartbeat เพื่อตรวจ connection ที่ตายแล้ว
+@Component
+public class EventStreamHub {
+
+    static final String RESYNC_EVENT = "resync";
+
+    private final int bufferSize;
+    private final long heartbeatMillis;
+    private final long connectionTimeoutMillis;
+    private final int maxSubscribers;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadFactory writerThreads = Thread.ofVirtual().name("sse-", 1).factory();
+
+    public EventStreamHub(@Value("${events.buffer-size:256}") int bufferSize,
+                          @Value("${events.heartbeat-seconds:20}") long heartbeatSeconds,
+                          @Value("${events.connection-timeout-minutes:30}") long connectionTimeoutMinutes,
+                          @Value("${events.max-subscribers:10000}") int maxSubscribers) {
+        this.bufferSize = bufferSize;
+        this.heartbeatMillis = TimeUnit.SECONDS.toMillis(heartbeatSeconds);
+        this.connectionTimeoutMillis = TimeUnit.MINUTES.toMillis(connectionTimeoutMinutes);
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    // หมดเวลาแล้ว EventSource ของ browser จะต่อใหม่เอง ช่วยกระจาย connection เมื่อมีหลายเครื่อง
+    public SseEmitter subscribe(Set<EventTopic> topics) {
+        SseEmitter emitter = new SseEmitter(connectionTimeoutMillis);
+        register(emitter, topics);
+        return emitter;
+    }
+
+    void register(SseEmitter emitter, Set<EventTopic> topics) {
+        if (subscribers.size() >= maxSubscribers) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "มีผู้เชื่อมต่อ event stream มากเกินไป กรุณาลองใหม่ภายหลัง");
+        }
+        Subscriber subscriber = new Subscriber(emitter, topics);
+        subscribers.add(subscriber);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        subscriber.writer = writerThreads.newThread(subscriber::run);
+        subscriber.writer.start();
+    }
+
+    // เรียกหลัง commit เท่านั้น (ผ่าน ChangeEventPublisher); ไม่ block
+    public void dispatch(List<ChangeEvent> events) {
+        if (events.isEmpty() || subscribers.isEmpty()) {
+            return;
+        }
+        for (ChangeEvent event : events) {
+            Delivery delivery = new Delivery(sequence.incrementAndGet(), event);
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.topics.contains(event.topic())) {
+                    subscriber.offer(delivery);
+                }
+            }
+        }
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+            subscriber.close();
+        }
+    }
+
+    private record Delivery(long id, ChangeEvent event) {
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<EventTopic> topics;
+        private final BlockingQueue<Delivery> queue = new ArrayBlockingQueue<>(bufferSize);
+        private volatile boolean overflowed;
+        private volatile boolean closed;
+        private volatile Thread writer;
+
+        Subscriber(SseEmitter emitter, Set<EventTopic> topics) {
+            this.emitter = emitter;
+            this.topics = topics;
+        }
+
+        void offer(Delivery delivery) {
+            if (!queue.offer(delivery)) {
+                overflowed = true;
+                queue.clear();
+            }
+        }
+
+        void run() {
+            try {
+                emitter.send(SseEmitter.event().reconnectTime(3000).comment("connected"));
+                while (!closed) {
+                    Delivery delivery = queue.poll(heartbeatMillis, TimeUnit.MILLISECONDS);
+                    if (overflowed) {
+                        overflowed = false;
+                        emitter.send(SseEmitter.event().name(RESYNC_EVENT).data("{}", MediaType.APPLICATION_JSON));
+                    }
+                    if (delivery == null) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                        continue;
+                    }
+                    ChangeEvent event = delivery.event();
+                    Map<String, Object> payload = new LinkedHashMap<>();
+                    payload.put("id", event.id());
+                    payload.putAll(event.data());
+                    emitter.send(SseEmitter.event()
+                            .id(Long.toString(delivery.id()))
+                            .name(event.topic().eventName())
+                            .data(payload, MediaType.APPLICATION_JSON));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | IllegalStateException e) {
+                // client ปิดไปแล้ว container จะปิด async request ให้เอง
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            closed = true;
+            subscribers.remove(this);
+            Thread thread = writer;
+            if (thread != null && thread != Thread.currentThread()) {
+                thread.interrupt();
+            }
+        }
+    }
+}
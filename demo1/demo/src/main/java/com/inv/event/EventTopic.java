@@ -0,0 +1,59 @@
+package com.inv.event;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
+// หัวข้อของ /events/stream และ role ที่เห็นได้ (ตรงกับสิทธิ์ของ endpoint ที่ข้อมูลนั้นมาจาก ใน SecurityConfig)
+public enum EventTopic {
+    PRODUCT,                                                          // ทุกคนที่ login
+    ORDER,                                                            // ทุกคนที่ login
+    REQUEST("ADMIN", "SALES", "TECHNICIAN", "FOREMAN", "WAREHOUSE"),  // GET /requests
+    PURCHASE_ORDER("PROCUREMENT", "WAREHOUSE"),                       // GET /purchase-orders
+    LEDGER("WAREHOUSE", "ADMIN");                                     // GET /stock/transactions
+
+    private final Set<String> roles;
+
+    EventTopic(String... roles) {
+        this.roles = Set.of(roles);
+    }
+
+    public boolean isVisibleTo(Collection<? extends GrantedAuthority> authorities) {
+        if (roles.isEmpty()) {
+            return true;
+        }
+        for (GrantedAuthority authority : authorities) {
+            String name = authority.getAuthority();
+            if (name != null && name.startsWith("ROLE_") && roles.contains(name.substring(5))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ชื่อที่ใช้ใน ?topics= และเป็นชื่อ event ของ SSE เช่น purchase-order
+    public String eventName() {
+        return name().toLowerCase().replace('_', '-');
+    }
+
+    public static EventTopic fromEventName(String name) {
+        for (EventTopic topic : values()) {
+            if (topic.eventName().equalsIgnoreCase(name)) {
+                return topic;
+            }
+        }
+        return null;
+    }
+
+    public static Set<EventTopic> visibleTo(Collection<? extends GrantedAuthority> authorities) {
+        Set<EventTopic> topics = EnumSet.noneOf(EventTopic.class);
+        for (EventTopic topic : values()) {
+            if (topic.isVisibleTo(authorities)) {
+                topics.add(topic);
+            }
+        }
+        return topics;
+    }
+}
@@ -0,0 +1,5 @@
+package com.inv.forecast;
+
+// ยอดเบิก (OUT) รวมของสินค้าหนึ่งในหนึ่งวัน; day = ลำดับวันนับจากวันแรกของช่วงประวัติ (0 = วันแรก)
+public record DailyDemand(String productId, int day, long quantity) {
+}
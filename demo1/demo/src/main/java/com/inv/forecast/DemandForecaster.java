@@ -0,0 +1,183 @@
+package com.inv.forecast;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+// พยากรณ์ความต้องการรายวันต่อสินค้าด้วย exponential smoothing จากยอดเบิกรายวันที่ส่งมาแบบ streaming
+// รับแถวทีละสินค้า (ต้องเรียงตาม productId, day) เก็บไว้ทีละก้อน CHUNK_SIZE สินค้า แล้วคำนวณก้อนนั้นบน ForkJoinPool
+// ระหว่างที่อ่านก้อนถัดไป; มีก้อนที่กำลังคำนวณค้างได้ไม่เกินหนึ่งก้อน memory จึงไม่ขึ้นกับจำนวนแถวประวัติ
+@Component
+public class DemandForecaster {
+
+    static final int CHUNK_SIZE = 2048;
+    static final int SPLIT_THRESHOLD = 128;
+
+    private final int historyDays;
+    private final double alpha;
+    private final ForkJoinPool pool;
+
+    public DemandForecaster(@Value("${demand-forecast.history-days:180}") int historyDays,
+                            @Value("${demand-forecast.alpha:0.3}") double alpha,
+                            @Value("${demand-forecast.parallelism:0}") int parallelism) {
+        if (historyDays <= 0) {
+            throw new IllegalArgumentException("demand-forecast.history-days must be > 0");
+        }
+        if (alpha <= 0 || alpha > 1) {
+            throw new IllegalArgumentException("demand-forecast.alpha must be in (0, 1]");
+        }
+        this.historyDays = historyDays;
+        this.alpha = alpha;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getHistoryDays() {
+        return historyDays;
+    }
+
+    // source ส่งแถวทั้งหมดเข้า consumer ที่ได้รับ (เช่น repository ที่อ่านด้วย cursor) คืน key = product_id, value = ความต้องการต่อวัน
+    public Map<String, Double> forecast(Consumer<Consumer<DailyDemand>> source) {
+        Run run = new Run();
+        source.accept(run);
+        return run.finish();
+    }
+
+    // ระดับเริ่มต้น = ค่าเฉลี่ยทั้งช่วง แล้ว smooth ไล่ทีละวันจนถึงวันสุดท้าย (วันที่ไม่มีแถว = ความต้องการ 0)
+    static double smooth(int[] days, long[] quantities, int count, int historyDays, double alpha) {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += quantities[i];
+        }
+        double decay = 1 - alpha;
+        double level = (double) total / historyDays;
+        int nextDay = 0;
+        for (int i = 0; i < count; i++) {
+            level *= Math.pow(decay, days[i] - nextDay);
+            level = alpha * quantities[i] + decay * level;
+            nextDay = days[i] + 1;
+        }
+        return level * Math.pow(decay, historyDays - nextDay);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    static final class ProductSeries {
+        final String productId;
+        int[] days = new int[16];
+        long[] quantities = new long[16];
+        int count;
+        double forecast;
+
+        ProductSeries(String productId) {
+            this.productId = productId;
+        }
+
+        void add(int day, long quantity) {
+            if (count == days.length) {
+                days = Arrays.copyOf(days, count * 2);
+                quantities = Arrays.copyOf(quantities, count * 2);
+            }
+            days[count] = day;
+            quantities[count] = quantity;
+            count++;
+        }
+    }
+
+    private final class SmoothTask extends RecursiveAction {
+        private final List<ProductSeries> series;
+        private final int from;
+        private final int to;
+
+        SmoothTask(List<ProductSeries> series, int from, int to) {
+            this.series = series;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    ProductSeries s = series.get(i);
+                    s.forecast = smooth(s.days, s.quantities, s.count, historyDays, alpha);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SmoothTask(series, from, mid), new SmoothTask(series, mid, to));
+        }
+    }
+
+    private final class Run implements Consumer<DailyDemand> {
+        private final Map<String, Double> forecasts = new HashMap<>();
+        private List<ProductSeries> chunk = new ArrayList<>(CHUNK_SIZE);
+        private ProductSeries current;
+        private ForkJoinTask<Void> inFlight;
+        private List<ProductSeries> inFlightChunk;
+
+        @Override
+        public void accept(DailyDemand row) {
+            if (row.day() < 0 || row.day() >= historyDays) {
+                return;
+            }
+            if (current == null || !current.productId.equals(row.productId())) {
+                if (current != null) {
+                    add(current);
+                }
+                current = new ProductSeries(row.productId());
+            }
+            current.add(row.day(), row.quantity());
+        }
+
+        private void add(ProductSeries series) {
+            chunk.add(series);
+            if (chunk.size() >= CHUNK_SIZE) {
+                submit();
+            }
+        }
+
+        private void submit() {
+            collect();
+            inFlightChunk = chunk;
+            inFlight = pool.submit(new SmoothTask(inFlightChunk, 0, inFlightChunk.size()));
+            chunk = new ArrayList<>(CHUNK_SIZE);
+        }
+
+        private void collect() {
+            if (inFlight == null) {
+                return;
+            }
+            inFlight.join();
+            for (ProductSeries series : inFlightChunk) {
+                forecasts.put(series.productId, series.forecast);
+            }
+            inFlight = null;
+            inFlightChunk = null;
+        }
+
+        Map<String, Double> finish() {
+            if (current != null) {
+                chunk.add(current);
+                current = null;
+            }
+            if (!chunk.isEmpty()) {
+                submit();
+            }
+            collect();
+            return forecasts;
+        }
+    }
+}
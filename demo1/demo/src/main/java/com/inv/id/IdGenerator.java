@@ -0,0 +1,8 @@
+package com.inv.id;
+
+// สร้างรหัสเอกสาร/แถวข้อมูลพร้อม prefix เช่น "PO-", "ST-", "BATCH-"
+// ผลลัพธ์ต้องยาวไม่เกิน VARCHAR(20) ของคอลัมน์ primary key
+public interface IdGenerator {
+
+    String nextId(String prefix);
+}
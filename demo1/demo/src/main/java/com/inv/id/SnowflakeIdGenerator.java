@@ -0,0 +1,69 @@
+package com.inv.id;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// รหัสแบบ Snowflake 63 บิต: [41 บิต ms นับจาก EPOCH][10 บิต node id][12 บิต sequence]
+// เข้ารหัสเป็น base36 ตัวพิมพ์ใหญ่ความยาวคงที่ 13 ตัว จึงเรียงตามเวลาได้ทั้งแบบตัวเลขและแบบข้อความ
+// ("BATCH-" + 13 = 19 ตัวอักษร ยังพอดี VARCHAR(20)) และ insert จะต่อท้าย index เสมอ
+@Component
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    static final long EPOCH_MS = 1704067200000L; // 2024-01-01T00:00:00Z
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    static final int ENCODED_LENGTH = 13;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final char[] DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+    private final long nodeId;
+    private final LongSupplier clock;
+    // เก็บ (timestamp << SEQUENCE_BITS | sequence) ล่าสุด ใช้ CAS แทน lock
+    private final AtomicLong lastState = new AtomicLong();
+
+    @Autowired
+    public SnowflakeIdGenerator(@Value("${id-generator.node-id:${ID_NODE_ID:0}}") long nodeId) {
+        this(nodeId, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(long nodeId, LongSupplier clock) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("id-generator.node-id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeId = nodeId;
+        this.clock = clock;
+    }
+
+    @Override
+    public String nextId(String prefix) {
+        long id = nextLong();
+        int prefixLength = prefix.length();
+        char[] chars = new char[prefixLength + ENCODED_LENGTH];
+        prefix.getChars(0, prefixLength, chars, 0);
+        for (int i = chars.length - 1; i >= prefixLength; i--) {
+            chars[i] = DIGITS[(int) (id % 36)];
+            id /= 36;
+        }
+        return new String(chars);
+    }
+
+    long nextLong() {
+        while (true) {
+            long previous = lastState.get();
+            long now = clock.getAsLong() - EPOCH_MS;
+            // ถ้านาฬิกาเดินถอยหลังหรือยังอยู่ใน ms เดิม ให้เพิ่ม sequence; ถ้า sequence เต็มจะทดไปยืม ms ถัดไปเอง
+            long next = now > (previous >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : previous + 1;
+            if (lastState.compareAndSet(previous, next)) {
+                long timestamp = next >>> SEQUENCE_BITS;
+                long sequence = next & SEQUENCE_MASK;
+                return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+}
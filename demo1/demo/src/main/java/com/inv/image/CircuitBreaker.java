@@ -0,0 +1,146 @@
+package com.inv.image;
+
+import java.util.function.LongSupplier;
+
+// circuit breaker แบบนับจากผลของ windowSize ครั้งล่าสุด
+// CLOSED: อัตราล้มเหลวถึง threshold (เมื่อมีผลอย่างน้อย minimumCalls ครั้ง) จะเปิดวงจร
+// OPEN: ปฏิเสธทันทีจนครบ openNanos แล้วเป็น HALF_OPEN ให้ลองได้ halfOpenCalls ครั้ง สำเร็จครบจึงปิด ล้มเหลวครั้งเดียวเปิดใหม่
+// ผลของ call ที่เริ่มก่อนเปลี่ยนสถานะจะถูกทิ้ง (ตรวจด้วย generation ที่ได้จาก tryAcquire)
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    public record Snapshot(State state, double failureRate, int bufferedCalls, long rejectedCalls, long openedCount,
+                           long retryAfterMillis) {
+    }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoClock;
+
+    private final boolean[] failures;
+    private int next;
+    private int buffered;
+    private int failed;
+    private State state = State.CLOSED;
+    private long generation;
+    private long openedAt;
+    private int halfOpenInFlight;
+    private int halfOpenSucceeded;
+    private long rejectedCalls;
+    private long openedCount;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, long openMillis, int halfOpenCalls,
+                          LongSupplier nanoClock) {
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openMillis * 1_000_000L;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.nanoClock = nanoClock;
+        this.failures = new boolean[this.windowSize];
+    }
+
+    // คืน generation ไว้ส่งกลับตอนรายงานผล หรือ -1 ถ้าไม่อนุญาตให้เรียก
+    public synchronized long tryAcquire() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAt < openNanos) {
+                rejectedCalls++;
+                return -1;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (halfOpenInFlight >= halfOpenCalls) {
+                rejectedCalls++;
+                return -1;
+            }
+            halfOpenInFlight++;
+        }
+        return generation;
+    }
+
+    // ได้สิทธิ์แล้วแต่ไม่ได้เรียกจริง (เช่น bulkhead เต็ม)
+    public synchronized void release(long permit) {
+        if (permit == generation && state == State.HALF_OPEN) {
+            halfOpenInFlight--;
+        }
+    }
+
+    public synchronized void onSuccess(long permit) {
+        if (permit != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight--;
+            if (++halfOpenSucceeded >= halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure(long permit) {
+        if (permit != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            transition(State.OPEN);
+            return;
+        }
+        record(true);
+        if (buffered >= minimumCalls && failed * 100.0 / buffered >= failureRateThreshold) {
+            transition(State.OPEN);
+        }
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized long retryAfterMillis() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, (openNanos - (nanoClock.getAsLong() - openedAt)) / 1_000_000L);
+    }
+
+    public synchronized Snapshot snapshot() {
+        double failureRate = buffered == 0 ? 0.0 : (double) failed / buffered;
+        return new Snapshot(state, failureRate, buffered, rejectedCalls, openedCount, retryAfterMillis());
+    }
+
+    private void record(boolean failure) {
+        if (buffered == windowSize) {
+            if (failures[next]) {
+                failed--;
+            }
+        } else {
+            buffered++;
+        }
+        failures[next] = failure;
+        if (failure) {
+            failed++;
+        }
+        next = (next + 1) % windowSize;
+    }
+
+    private void transition(State target) {
+        state = target;
+        generation++;
+        halfOpenInFlight = 0;
+        halfOpenSucceeded = 0;
+        if (target == State.OPEN) {
+            openedAt = nanoClock.getAsLong();
+            openedCount++;
+        } else if (target == State.CLOSED) {
+            buffered = 0;
+            failed = 0;
+            next = 0;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.inv.image;
+
+import com.cloudinary.Cloudinary;
+import com.cloudinary.Uploader;
+import com.cloudinary.utils.ObjectUtils;
+import jakarta.annotation.PreDestroy;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// cloudinary.uploader() สร้าง HttpClient ใหม่ทุกครั้งที่เรียก (ต้อง handshake TLS ใหม่ทุกรูป)
+// จึงสร้าง Uploader ครั้งเดียว และให้ SDK ใช้ connection pool ร่วมกับ client ที่ใช้โหลดรูปต้นฉบับ
+// timeout ของ socket ตั้งไว้ทุก request เพื่อให้ call ที่ ImageStoreGuard เลิกรอแล้วจบเองได้จริง
+@Component
+@ConditionalOnProperty(name = "image-store.type", havingValue = "cloudinary", matchIfMissing = true)
+public class CloudinaryImageStore implements ImageStore {
+
+    private static final String DELIVERY_HOST = "res.cloudinary.com";
+
+    private final Cloudinary cloudinary;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final Uploader uploader;
+    private final CloseableHttpClient httpClient;
+    private final int connectTimeoutMillis;
+    private final int socketTimeoutMillis;
+
+    public CloudinaryImageStore(Cloudinary cloudinary,
+                                @Value("${image-store.max-concurrent:8}") int maxConnections,
+                                @Value("${image-store.connect-timeout-millis:5000}") int connectTimeoutMillis,
+                                @Value("${image-store.socket-timeout-millis:15000}") int socketTimeoutMillis) {
+        this.cloudinary = cloudinary;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.socketTimeoutMillis = socketTimeoutMillis;
+        // connection ที่ว่างเกิน 30 วินาทีอาจถูกฝั่ง server/LB ปิดไปแล้ว ตรวจก่อนใช้ซ้ำ
+        this.connectionManager = new PoolingHttpClientConnectionManager(5, TimeUnit.MINUTES);
+        this.connectionManager.setMaxTotal(Math.max(1, maxConnections) * 2);
+        this.connectionManager.setDefaultMaxPerRoute(Math.max(1, maxConnections));
+        this.connectionManager.setValidateAfterInactivity(30_000);
+        cloudinary.config.properties.put("connectionManager", connectionManager);
+        this.uploader = cloudinary.uploader();
+        this.httpClient = HttpClients.custom()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                // ไม่ตาม redirect ไปที่อื่นนอกจาก URL ที่ผ่าน isStoredUrl แล้ว
+                .disableRedirectHandling()
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeoutMillis)
+                        .setConnectionRequestTimeout(connectTimeoutMillis)
+                        .setSocketTimeout(socketTimeoutMillis)
+                        .build())
+                .build();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return cloudinary != null && cloudinary.config.cloudName != null && !cloudinary.config.cloudName.isBlank();
+    }
+
+    @Override
+    public String store(Path file, String folder) throws IOException {
+        // ส่ง File ให้ SDK อ่านแบบ stream จากดิสก์แทน byte[] ของทั้งไฟล์
+        Map<?, ?> uploadResult = uploader.upload(
+                file.toFile(),
+                ObjectUtils.asMap(
+                        "folder", folder,
+                        "resource_type", "image",
+                        "connect_timeout", connectTimeoutMillis,
+                        "connection_request_timeout", connectTimeoutMillis,
+                        "timeout", socketTimeoutMillis
+                )
+        );
+
+        Object secureUrl = uploadResult.get("secure_url");
+        if (secureUrl instanceof String secureUrlString && !secureUrlString.isBlank()) {
+            return secureUrlString;
+        }
+
+        Object url = uploadResult.get("url");
+        if (url instanceof String urlString && !urlString.isBlank()) {
+            return urlString;
+        }
+        throw new IOException("Cloudinary upload succeeded but URL is missing. Response: " + uploadResult);
+    }
+
+    // เฉพาะ URL ส่งรูปของ cloud ที่ตั้งค่าไว้: res.cloudinary.com/{cloudName}/... หรือ secure distribution ของ cloud นี้
+    @Override
+    public boolean isStoredUrl(String url) {
+        if (!isAvailable() || url == null) {
+            return false;
+        }
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            return false;
+        }
+        if (!"https".equals(uri.getScheme()) && !"http".equals(uri.getScheme())) {
+            return false;
+        }
+        String host = uri.getHost();
+        String path = uri.getRawPath();
+        if (host == null || path == null || uri.getRawUserInfo() != null || uri.getPort() != -1) {
+            return false;
+        }
+        String distribution = cloudinary.config.secureDistribution;
+        if (distribution != null && !distribution.isBlank() && host.equalsIgnoreCase(distribution)) {
+            return true;
+        }
+        return DELIVERY_HOST.equalsIgnoreCase(host) && path.startsWith("/" + cloudinary.config.cloudName + "/");
+    }
+
+    @Override
+    public InputStream open(String url) throws IOException {
+        if (!isStoredUrl(url)) {
+            throw new IOException("Image is not stored in this Cloudinary cloud: " + url);
+        }
+        URI uri = URI.create(url);
+        CloseableHttpResponse response = httpClient.execute(new HttpGet(uri));
+        HttpEntity entity = response.getEntity();
+        if (response.getStatusLine().getStatusCode() != 200 || entity == null) {
+            response.close();
+            throw new IOException("Unable to fetch image " + url + ": " + response.getStatusLine());
+        }
+        // ปิด stream แล้วคืน connection เข้า pool
+        return new FilterInputStream(entity.getContent()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    response.close();
+                }
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        httpClient.close();
+        connectionManager.shutdown();
+    }
+}
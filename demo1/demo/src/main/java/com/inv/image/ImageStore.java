@@ -0,0 +1,24 @@
+package com.inv.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+// ที่เก็บรูปภาพปลายทางของ ImageService เลือก implementation ด้วย image-store.type (cloudinary | local)
+public interface ImageStore {
+
+    // false = ตั้งค่าไม่ครบ (เช่นไม่มี credentials ของ Cloudinary) ผู้เรียกควรตอบ 503 แทนการลองอัปโหลด
+    boolean isAvailable();
+
+    // อัปโหลดไฟล์จากดิสก์ (ไม่อ่านทั้งไฟล์เข้า heap) คืน URL ของรูปที่เก็บแล้ว
+    String store(Path file, String folder) throws IOException;
+
+    // เปิดอ่านรูปต้นฉบับจาก URL ที่ store คืนมา ใช้สร้าง thumbnail ใหม่เมื่อไม่มีใน cache บนดิสก์
+    InputStream open(String url) throws IOException;
+
+    // true = URL ชี้มาที่รูปในที่เก็บนี้ และ open เปิดได้ (image_url ของสินค้าเป็นค่าที่ใส่จากภายนอก
+    // server ต้องไม่ไปโหลด URL อื่น ไม่อย่างนั้นคนนอกสั่งให้ยิง request ไปที่อยู่ภายในได้)
+    default boolean isStoredUrl(String url) {
+        return false;
+    }
+}
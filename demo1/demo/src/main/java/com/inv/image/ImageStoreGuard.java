@@ -0,0 +1,182 @@
+package com.inv.image;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// ครอบทุกการเรียก ImageStore (Cloudinary) ไม่ให้ที่เก็บรูปที่ช้า/ล่มลาก thread ของ servlet ไปด้วย
+// bulkhead: เรียกพร้อมกันได้ไม่เกิน maxConcurrent รอที่ว่างไม่เกิน maxWaitMillis แล้วปฏิเสธ
+// timeout: เรียกใน virtual thread แยก ผู้เรียกรอไม่เกิน callTimeoutMillis (call ที่ค้างยังถือที่ใน bulkhead จนจบจริง)
+// circuit breaker: ล้มเหลว/เกินเวลาบ่อยแล้วปฏิเสธทันทีช่วงหนึ่ง ไม่ต้องรอ timeout ทุกครั้ง
+@Component
+public class ImageStoreGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageStoreGuard.class);
+
+    @FunctionalInterface
+    public interface StoreCall<T> {
+        T call() throws IOException;
+    }
+
+    private final int maxConcurrent;
+    private final long maxWaitMillis;
+    private final long callTimeoutMillis;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openSeconds;
+    private final int halfOpenCalls;
+    private final Semaphore bulkhead;
+    private final CircuitBreaker circuitBreaker;
+    private final ExecutorService callExecutor;
+    private final Map<String, LatencyHistogram> latency = new ConcurrentHashMap<>();
+    private final LongAdder bulkheadRejected = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    @Autowired
+    public ImageStoreGuard(@Value("${image-store.max-concurrent:8}") int maxConcurrent,
+                           @Value("${image-store.max-wait-millis:200}") long maxWaitMillis,
+                           @Value("${image-store.call-timeout-millis:20000}") long callTimeoutMillis,
+                           @Value("${image-store.breaker.window-size:20}") int windowSize,
+                           @Value("${image-store.breaker.minimum-calls:10}") int minimumCalls,
+                           @Value("${image-store.breaker.failure-rate-threshold:50}") double failureRateThreshold,
+                           @Value("${image-store.breaker.open-seconds:30}") long openSeconds,
+                           @Value("${image-store.breaker.half-open-calls:3}") int halfOpenCalls) {
+        this(maxConcurrent, maxWaitMillis, callTimeoutMillis, windowSize, minimumCalls, failureRateThreshold, openSeconds, halfOpenCalls,
+                Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("image-store-", 1).factory()));
+    }
+
+    ImageStoreGuard(int maxConcurrent, long maxWaitMillis, long callTimeoutMillis, int windowSize, int minimumCalls,
+                    double failureRateThreshold, long openSeconds, int halfOpenCalls, ExecutorService callExecutor) {
+        this.callExecutor = callExecutor;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxWaitMillis = maxWaitMillis;
+        this.callTimeoutMillis = callTimeoutMillis;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openSeconds = openSeconds;
+        this.halfOpenCalls = halfOpenCalls;
+        this.bulkhead = new Semaphore(this.maxConcurrent);
+        this.circuitBreaker = new CircuitBreaker(windowSize, minimumCalls, failureRateThreshold,
+                TimeUnit.SECONDS.toMillis(openSeconds), halfOpenCalls, System::nanoTime);
+    }
+
+    // guard ใหม่ที่ตั้งค่าเหมือนกันแต่ bulkhead, breaker และสถิติแยกจากตัวนี้ (ผู้สร้างต้องเรียก shutdown เอง)
+    public ImageStoreGuard separate() {
+        return new ImageStoreGuard(maxConcurrent, maxWaitMillis, callTimeoutMillis, windowSize, minimumCalls,
+                failureRateThreshold, openSeconds, halfOpenCalls);
+    }
+
+    public <T> T call(String operation, StoreCall<T> call) throws IOException {
+        try {
+            if (!bulkhead.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                bulkheadRejected.increment();
+                throw new ImageStoreUnavailableException("Image store bulkhead is full", 0);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for image store");
+        }
+        long permit = circuitBreaker.tryAcquire();
+        if (permit < 0) {
+            bulkhead.release();
+            throw new ImageStoreUnavailableException("Image store circuit breaker is open", circuitBreaker.retryAfterMillis());
+        }
+        CircuitBreaker.State before = circuitBreaker.state();
+        long started = System.nanoTime();
+        // ที่ใน bulkhead คืนได้ครั้งเดียว: task ที่เริ่มแล้วคืนเองตอนจบ ถ้าถูก cancel ก่อนเริ่ม ผู้เรียกเป็นคนคืน
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = callExecutor.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                try {
+                    return call.call();
+                } finally {
+                    bulkhead.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            bulkhead.release();
+            circuitBreaker.release(permit);
+            throw e;
+        }
+        boolean success = false;
+        try {
+            T result = future.get(callTimeoutMillis, TimeUnit.MILLISECONDS);
+            success = true;
+            return result;
+        } catch (TimeoutException e) {
+            // interrupt ไปด้วย แต่ socket ของ HTTP client ไม่ตอบ interrupt จึงต้องตั้ง socket timeout ที่ตัว store อีกชั้น
+            cancel(future, claimed);
+            timeouts.increment();
+            throw new ImageStoreUnavailableException("Image store call timed out after " + callTimeoutMillis + " ms", 0);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            cancel(future, claimed);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calling image store");
+        } finally {
+            latency.computeIfAbsent(operation, key -> new LatencyHistogram()).record(System.nanoTime() - started, success);
+            if (success) {
+                circuitBreaker.onSuccess(permit);
+            } else if (!Thread.currentThread().isInterrupted()) {
+                circuitBreaker.onFailure(permit);
+            } else {
+                circuitBreaker.release(permit);
+            }
+            CircuitBreaker.State after = circuitBreaker.state();
+            if (after != before) {
+                logger.warn("Image store circuit breaker {} -> {}", before, after);
+            }
+        }
+    }
+
+    private void cancel(Future<?> future, AtomicBoolean claimed) {
+        future.cancel(true);
+        if (claimed.compareAndSet(false, true)) {
+            bulkhead.release();
+        }
+    }
+
+    public ImageStoreStats stats() {
+        Map<String, LatencyHistogram.Snapshot> latencies = new LinkedHashMap<>();
+        latency.forEach((operation, histogram) -> latencies.put(operation, histogram.snapshot()));
+        return new ImageStoreStats(circuitBreaker.snapshot(), maxConcurrent - bulkhead.availablePermits(), maxConcurrent,
+                bulkheadRejected.sum(), timeouts.sum(), latencies);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        callExecutor.shutdownNow();
+    }
+}
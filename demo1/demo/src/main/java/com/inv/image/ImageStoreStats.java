@@ -0,0 +1,12 @@
+package com.inv.image;
+
+import java.util.Map;
+
+// ค่าของ ImageStoreGuard ณ เวลาที่เรียก (latency แยกตาม operation: store = อัปโหลด, open = โหลดต้นฉบับไปทำ thumbnail ซึ่งใช้ guard ของตัวเอง)
+public record ImageStoreStats(CircuitBreaker.Snapshot circuitBreaker,
+                              int bulkheadInUse,
+                              int bulkheadLimit,
+                              long bulkheadRejected,
+                              long timeouts,
+                              Map<String, LatencyHistogram.Snapshot> latency) {
+}
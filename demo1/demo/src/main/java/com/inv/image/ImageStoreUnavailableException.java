@@ -0,0 +1,19 @@
+package com.inv.image;
+
+import java.io.IOException;
+
+// ImageStoreGuard ไม่ได้เรียก (circuit เปิดอยู่ / bulkhead เต็ม) หรือเรียกแล้วเกินเวลา
+// retryAfterMillis = เวลาที่ควรรอก่อนลองใหม่ (0 = ลองใหม่ได้เลย)
+public class ImageStoreUnavailableException extends IOException {
+
+    private final long retryAfterMillis;
+
+    public ImageStoreUnavailableException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,79 @@
+package com.inv.image;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// histogram เวลาที่ใช้ต่อครั้งแบบช่องคงที่ (มิลลิวินาที) บันทึกได้พร้อมกันหลาย thread โดยไม่ล็อก
+// percentile ใน snapshot เป็นค่าประมาณ = ขอบบนของช่องที่ค่านั้นตกอยู่ (ช่องสุดท้ายใช้ค่าสูงสุดที่เคยเห็น)
+public class LatencyHistogram {
+
+    static final long[] BOUNDS_MILLIS = {25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    // buckets: จำนวนครั้งต่อช่อง key = ขอบบน ("+Inf" = เกินช่องสุดท้าย) ไม่สะสม
+    public record Snapshot(long count, long errors, double meanMillis, long maxMillis,
+                           long p50Millis, long p95Millis, long p99Millis, Map<String, Long> buckets) {
+    }
+
+    private final LongAdder[] counts = new LongAdder[BOUNDS_MILLIS.length + 1];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos, boolean success) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BOUNDS_MILLIS.length && millis > BOUNDS_MILLIS[bucket]) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] values = new long[counts.length];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            values[i] = counts[i].sum();
+            count += values[i];
+        }
+        long maxMillis = TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            buckets.put(i < BOUNDS_MILLIS.length ? Long.toString(BOUNDS_MILLIS[i]) : "+Inf", values[i]);
+        }
+        double mean = count == 0 ? 0.0 : totalNanos.sum() / 1_000_000.0 / count;
+        return new Snapshot(count, errors.sum(), mean, maxMillis,
+                percentile(values, count, 0.50, maxMillis),
+                percentile(values, count, 0.95, maxMillis),
+                percentile(values, count, 0.99, maxMillis),
+                buckets);
+    }
+
+    private long percentile(long[] values, long count, double quantile, long maxMillis) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < values.length; i++) {
+            seen += values[i];
+            if (seen >= rank) {
+                return i < BOUNDS_MILLIS.length ? Math.min(BOUNDS_MILLIS[i], maxMillis) : maxMillis;
+            }
+        }
+        return maxMillis;
+    }
+}
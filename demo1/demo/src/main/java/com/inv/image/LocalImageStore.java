@@ -0,0 +1,91 @@
+package com.inv.image;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+// เก็บรูปลงดิสก์ในเครื่องแทน Cloudinary สำหรับพัฒนา/ทดสอบโดยไม่ต้องมี credentials
+// baseUrl ว่าง = คืน file: URI ของไฟล์ที่เก็บ
+@Component
+@ConditionalOnProperty(name = "image-store.type", havingValue = "local")
+public class LocalImageStore implements ImageStore {
+
+    private final Path root;
+    private final String baseUrl;
+
+    public LocalImageStore(@Value("${image-store.local.dir:${java.io.tmpdir}/inv-images}") String dir,
+                           @Value("${image-store.local.base-url:}") String baseUrl) {
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public String store(Path file, String folder) throws IOException {
+        Path directory = root.resolve(folder).normalize();
+        if (!directory.startsWith(root)) {
+            throw new IOException("Invalid image folder: " + folder);
+        }
+        Files.createDirectories(directory);
+        String name = UUID.randomUUID() + extensionOf(file);
+        Path target = directory.resolve(name);
+        Files.copy(file, target);
+        if (baseUrl.isEmpty()) {
+            return target.toUri().toString();
+        }
+        return baseUrl + "/" + root.relativize(target).toString().replace('\\', '/');
+    }
+
+    @Override
+    public InputStream open(String url) throws IOException {
+        Path file = resolve(url);
+        if (file == null) {
+            throw new IOException("Image is not stored locally: " + url);
+        }
+        return Files.newInputStream(file);
+    }
+
+    @Override
+    public boolean isStoredUrl(String url) {
+        return resolve(url) != null;
+    }
+
+    // ไฟล์ใต้ root ที่ URL ชี้ถึง หรือ null ถ้าไม่ใช่รูปที่เก็บไว้ที่นี่
+    private Path resolve(String url) {
+        if (url == null) {
+            return null;
+        }
+        Path file;
+        try {
+            if (!baseUrl.isEmpty() && url.startsWith(baseUrl + "/")) {
+                file = root.resolve(url.substring(baseUrl.length() + 1)).normalize();
+            } else if (url.startsWith("file:")) {
+                file = Paths.get(URI.create(url)).normalize();
+            } else {
+                return null;
+            }
+        } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+            return null;
+        }
+        return file.startsWith(root) ? file : null;
+    }
+
+    private String extensionOf(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 ? name.substring(dot) : "";
+    }
+}
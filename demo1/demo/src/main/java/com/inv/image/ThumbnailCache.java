@@ -0,0 +1,312 @@
+package com.inv.image;
+
+import com.inv.cache.LruCache;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// thumbnail ของรูปสินค้าหลายขนาด เก็บเป็น JPEG บนดิสก์ที่ {dir}/{productId}/{version}/{size}.jpg
+// version = hash ของ image_url เปลี่ยนรูปแล้วได้โฟลเดอร์ใหม่ จึงไม่ต้องล้าง cache เอง
+// โฟลเดอร์เก่าถูกลบหลังพ้น delete-grace-millis เพราะ sendfile ของ Tomcat เปิดไฟล์จากชื่อหลัง controller คืนค่าไปแล้ว
+// การย่อรูปกิน CPU จึงทำใน pool ของ platform thread ขนาดจำกัด คิวเต็มเมื่อไรจะข้ามไปก่อน แล้วสร้างใหม่ตอนมีคนขอ
+@Component
+public class ThumbnailCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailCache.class);
+    private static final Pattern SAFE_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private final Path root;
+    private final int[] sizes;
+    private final ImageStore imageStore;
+    // guard ของการโหลดต้นฉบับแยกจากของการอัปโหลด: image_url ที่เสียหรือชี้ไปที่อื่นต้องไม่ทำให้ breaker ของการอัปโหลดเปิด
+    private final ImageStoreGuard sourceGuard;
+    private final ThreadPoolExecutor executor;
+    private final long deleteGraceMillis;
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+    // รูปที่สร้างไม่สำเร็จ (รูปแบบที่ ImageIO ไม่รู้จัก, โหลดต้นฉบับไม่ได้) ไม่ต้องลองซ้ำทุก request ให้ลองใหม่หลัง 10 นาที
+    private final LruCache<String, Boolean> failed = new LruCache<>(1000, 10, TimeUnit.MINUTES);
+
+    public ThumbnailCache(ImageStore imageStore,
+                          ImageStoreGuard imageStoreGuard,
+                          @Value("${image-thumbnails.dir:${java.io.tmpdir}/inv-thumbnails}") String dir,
+                          @Value("${image-thumbnails.sizes:96,240,480}") int[] sizes,
+                          @Value("${image-thumbnails.threads:2}") int threads,
+                          @Value("${image-thumbnails.queue-size:100}") int queueSize,
+                          @Value("${image-thumbnails.delete-grace-millis:60000}") long deleteGraceMillis) {
+        this.imageStore = imageStore;
+        this.deleteGraceMillis = deleteGraceMillis;
+        this.sourceGuard = imageStoreGuard.separate();
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+        this.sizes = Arrays.stream(sizes).filter(size -> size > 0).distinct().sorted().toArray();
+        if (this.sizes.length == 0) {
+            throw new IllegalArgumentException("image-thumbnails.sizes must contain at least one positive size");
+        }
+        int poolSize = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                Thread.ofPlatform().name("image-thumbnail-", 1).daemon().factory());
+    }
+
+    // ขนาดที่ขอถูกปัดขึ้นเป็นขนาดที่ตั้งไว้ถัดไป (เกินขนาดใหญ่สุดได้ขนาดใหญ่สุด) ให้ cache มีแค่ไม่กี่ไฟล์ต่อรูป
+    public int resolveSize(int requested) {
+        for (int size : sizes) {
+            if (size >= requested) {
+                return size;
+            }
+        }
+        return sizes[sizes.length - 1];
+    }
+
+    // ไฟล์ thumbnail ที่สร้างไว้แล้ว หรือ null ถ้ายังไม่มี
+    public Path find(String productId, String imageUrl, int size) {
+        Path file = versionDir(productId, imageUrl);
+        if (file == null) {
+            return null;
+        }
+        file = file.resolve(size + ".jpg");
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    // สร้างจากไฟล์ต้นฉบับที่มีอยู่บนดิสก์แล้ว (ไฟล์พักตอนอัปโหลด) ผู้เรียกต้องเก็บไฟล์ไว้จนกว่า future จะเสร็จ
+    public CompletableFuture<Void> generate(String productId, String imageUrl, Path source) {
+        return schedule(productId, imageUrl, source);
+    }
+
+    // สร้างจากรูปต้นฉบับใน ImageStore เมื่อ cache บนดิสก์ไม่มี (อัปโหลดก่อนมี thumbnail หรือ cache ถูกลบ)
+    public CompletableFuture<Void> generate(String productId, String imageUrl) {
+        return schedule(productId, imageUrl, null);
+    }
+
+    private CompletableFuture<Void> schedule(String productId, String imageUrl, Path source) {
+        Path directory = versionDir(productId, imageUrl);
+        if (directory == null || failed.get(directory.toString()) != null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // โหลดจากที่เก็บได้เฉพาะ URL ของที่เก็บเอง URL อื่นให้ผู้เรียก redirect ไปรูปเต็มแทน
+        if (source == null && !imageStore.isStoredUrl(imageUrl)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        String key = directory.toString();
+        CompletableFuture<Void> created = new CompletableFuture<>();
+        CompletableFuture<Void> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (source != null) {
+                        try (ImageInputStream input = ImageIO.createImageInputStream(source.toFile())) {
+                            writeThumbnails(input, directory);
+                        }
+                    } else {
+                        // โหลดต้นฉบับลงไฟล์ชั่วคราวภายใต้ timeout ของ guard ก่อน แล้วค่อย decode (ไม่นับเวลาย่อรูปเป็นเวลาของที่เก็บรูป)
+                        Path original = Files.createTempFile("thumbnail-", ".img");
+                        try {
+                            sourceGuard.call("open", () -> {
+                                try (InputStream in = imageStore.open(imageUrl)) {
+                                    return Files.copy(in, original, StandardCopyOption.REPLACE_EXISTING);
+                                }
+                            });
+                            try (ImageInputStream input = ImageIO.createImageInputStream(original.toFile())) {
+                                writeThumbnails(input, directory);
+                            }
+                        } finally {
+                            Files.deleteIfExists(original);
+                        }
+                    }
+                    deleteOtherVersionsLater(directory);
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Unable to create thumbnails for product {}: {}", productId, e.getMessage());
+                    failed.put(key, Boolean.TRUE);
+                } finally {
+                    inFlight.remove(key);
+                    created.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key);
+            created.complete(null);
+        }
+        return created;
+    }
+
+    // decode ด้วย subsampling ให้ได้ไม่เกินราว 2 เท่าของขนาดใหญ่สุด ไม่ต้องถือรูปเต็มความละเอียดไว้ใน heap
+    // แล้วย่อจากขนาดใหญ่ไปเล็ก โดยใช้ผลของขนาดก่อนหน้าเป็นต้นทาง
+    void writeThumbnails(ImageInputStream input, Path directory) throws IOException {
+        if (input == null) {
+            throw new IOException("Unable to read image");
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+        ImageReader reader = readers.next();
+        BufferedImage current;
+        try {
+            reader.setInput(input, true, true);
+            int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+            int step = Math.max(1, longest / (sizes[sizes.length - 1] * 2));
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceSubsampling(step, step, 0, 0);
+            current = reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+        Files.createDirectories(directory);
+        for (int i = sizes.length - 1; i >= 0; i--) {
+            current = scaleToFit(current, sizes[i]);
+            writeJpeg(current, directory.resolve(sizes[i] + ".jpg"));
+        }
+    }
+
+    // ย่อทีละครึ่งจนถึงขนาดเป้าหมาย (bilinear ครั้งเดียวจากรูปใหญ่มากจะแตก) ไม่ขยายรูปที่เล็กกว่าอยู่แล้ว
+    // ส่วนโปร่งใสของ PNG ถูกเติมพื้นขาว เพราะ JPEG ไม่มี alpha
+    static BufferedImage scaleToFit(BufferedImage image, int size) {
+        double scale = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        BufferedImage current = image;
+        do {
+            int width = Math.max(targetWidth, current.getWidth() / 2);
+            int height = Math.max(targetHeight, current.getHeight() / 2);
+            BufferedImage next = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(0, 0, width, height);
+                graphics.drawImage(current, 0, 0, width, height, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        } while (current.getWidth() != targetWidth || current.getHeight() != targetHeight);
+        return current;
+    }
+
+    // เขียนลงไฟล์ชั่วคราวแล้ว move ทับ ผู้อ่านจึงไม่เห็นไฟล์ที่เขียนไม่ครบ
+    private void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (ImageOutputStream output = ImageIO.createImageOutputStream(temp.toFile())) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(JPEG_QUALITY);
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(image, null, null), param);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            writer.dispose();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // ลบเฉพาะ version ที่มีอยู่ตอนนี้ (ไม่ใช่ "ทุกอย่างยกเว้น current" ตอนครบเวลา ซึ่งอาจลบ version ที่ใหม่กว่าที่สร้างระหว่างรอ)
+    // response ที่ได้ path ของ version เก่าไปก่อนหน้านี้จึงยังส่งไฟล์ได้จนจบ
+    private void deleteOtherVersionsLater(Path current) {
+        List<Path> others = new ArrayList<>();
+        try (DirectoryStream<Path> versions = Files.newDirectoryStream(current.getParent())) {
+            for (Path version : versions) {
+                if (!version.equals(current)) {
+                    others.add(version);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to list old thumbnails in {}: {}", current.getParent(), e.getMessage());
+            return;
+        }
+        if (others.isEmpty()) {
+            return;
+        }
+        if (deleteGraceMillis <= 0) {
+            others.forEach(this::deleteVersion);
+            return;
+        }
+        CompletableFuture.delayedExecutor(deleteGraceMillis, TimeUnit.MILLISECONDS).execute(() -> others.forEach(this::deleteVersion));
+    }
+
+    private void deleteVersion(Path version) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(version)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(version);
+        } catch (NoSuchFileException e) {
+            // ถูกลบไปแล้ว
+        } catch (IOException e) {
+            logger.warn("Unable to delete old thumbnails in {}: {}", version, e.getMessage());
+        }
+    }
+
+    private Path versionDir(String productId, String imageUrl) {
+        if (productId == null || imageUrl == null || !SAFE_ID.matcher(productId).matches()) {
+            return null;
+        }
+        return root.resolve(productId).resolve(version(imageUrl));
+    }
+
+    // ใช้เป็น ETag ของ thumbnail ด้วย
+    public static String version(String imageUrl) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(imageUrl.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public ImageStoreStats sourceStats() {
+        return sourceGuard.stats();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        sourceGuard.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
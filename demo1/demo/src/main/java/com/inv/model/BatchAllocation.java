@@ -0,0 +1,23 @@
+package com.inv.model;
+
+import java.time.LocalDateTime;
+
+// ส่วนที่ตัดจากล็อตสินค้า (FIFO) ในการเบิกหนึ่งครั้ง
+public class BatchAllocation {
+    private String batchId;
+    private String productId;
+    private LocalDateTime receivedDate;
+    private int quantity;
+
+    public String getBatchId() { return batchId; }
+    public void setBatchId(String batchId) { this.batchId = batchId; }
+
+    public String getProductId() { return productId; }
+    public void setProductId(String productId) { this.productId = productId; }
+
+    public LocalDateTime getReceivedDate() { return receivedDate; }
+    public void setReceivedDate(LocalDateTime receivedDate) { this.receivedDate = receivedDate; }
+
+    public int getQuantity() { return quantity; }
+    public void setQuantity(int quantity) { this.quantity = quantity; }
+}
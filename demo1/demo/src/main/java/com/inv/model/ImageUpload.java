@@ -0,0 +1,44 @@
+package com.inv.model;
+
+import java.time.LocalDateTime;
+
+// การอัปโหลดรูปแบบ async: Pending -> Uploading -> Done (มี url) หรือ Failed (มี error)
+// kind = PRODUCT (รูปสินค้า) หรือ PURCHASE_ORDER (หลักฐานราคา); targetId = สินค้า/ใบสั่งซื้อที่จะใส่ URL ให้เมื่ออัปโหลดเสร็จ
+public class ImageUpload {
+    private String assetId;
+    private String kind;
+    private String targetId;
+    private String status;
+    private String url;
+    private int attempts;
+    private String error;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    public String getAssetId() { return assetId; }
+    public void setAssetId(String assetId) { this.assetId = assetId; }
+
+    public String getKind() { return kind; }
+    public void setKind(String kind) { this.kind = kind; }
+
+    public String getTargetId() { return targetId; }
+    public void setTargetId(String targetId) { this.targetId = targetId; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public String getUrl() { return url; }
+    public void setUrl(String url) { this.url = url; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public String getError() { return error; }
+    public void setError(String error) { this.error = error; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,40 @@
+package com.inv.model;
+
+import java.time.LocalDateTime;
+
+// แจ้งเตือนสินค้าใกล้หมด: เปิดเมื่อจำนวนลดลงถึงจุดสั่งซื้อ (reorder point) และปิด (resolvedAt) เมื่อจำนวนกลับขึ้นไปเหนือจุดนั้น
+// quantity/reorderPoint = ค่าตอนเปิดแจ้งเตือน; currentQuantity = จำนวนคงเหลือปัจจุบัน (เฉพาะตอนอ่าน)
+public class LowStockAlert {
+    private String alertId;
+    private String productId;
+    private String productName;
+    private int quantity;
+    private int reorderPoint;
+    private Integer currentQuantity;
+    private LocalDateTime createdAt;
+    private LocalDateTime resolvedAt;
+
+    public String getAlertId() { return alertId; }
+    public void setAlertId(String alertId) { this.alertId = alertId; }
+
+    public String getProductId() { return productId; }
+    public void setProductId(String productId) { this.productId = productId; }
+
+    public String getProductName() { return productName; }
+    public void setProductName(String productName) { this.productName = productName; }
+
+    public int getQuantity() { return quantity; }
+    public void setQuantity(int quantity) { this.quantity = quantity; }
+
+    public int getReorderPoint() { return reorderPoint; }
+    public void setReorderPoint(int reorderPoint) { this.reorderPoint = reorderPoint; }
+
+    public Integer getCurrentQuantity() { return currentQuantity; }
+    public void setCurrentQuantity(Integer currentQuantity) { this.currentQuantity = currentQuantity; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getResolvedAt() { return resolvedAt; }
+    public void setResolvedAt(LocalDateTime resolvedAt) { this.resolvedAt = resolvedAt; }
+}
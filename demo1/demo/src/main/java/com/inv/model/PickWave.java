@@ -0,0 +1,40 @@
+package com.inv.model;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// รอบหยิบสินค้า: รวมรายการเบิกของหลายใบเบิกเป็นรายการหยิบเดียวต่อสินค้า/ล็อต (status: Open, Confirmed, Cancelled)
+public class PickWave {
+    private String waveId;
+    private String status;
+    private LocalDateTime createdAt;
+    private String createdBy;
+    private LocalDateTime confirmedAt;
+    private String confirmedBy;
+    private List<PickWaveItem> items;      // รายการเบิกที่อยู่ในรอบนี้
+    private List<BatchAllocation> pickList; // ต้องหยิบจากล็อตไหนเท่าไร (เรียงตามสินค้าแล้ว FIFO)
+
+    public String getWaveId() { return waveId; }
+    public void setWaveId(String waveId) { this.waveId = waveId; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public String getCreatedBy() { return createdBy; }
+    public void setCreatedBy(String createdBy) { this.createdBy = createdBy; }
+
+    public LocalDateTime getConfirmedAt() { return confirmedAt; }
+    public void setConfirmedAt(LocalDateTime confirmedAt) { this.confirmedAt = confirmedAt; }
+
+    public String getConfirmedBy() { return confirmedBy; }
+    public void setConfirmedBy(String confirmedBy) { this.confirmedBy = confirmedBy; }
+
+    public List<PickWaveItem> getItems() { return items; }
+    public void setItems(List<PickWaveItem> items) { this.items = items; }
+
+    public List<BatchAllocation> getPickList() { return pickList; }
+    public void setPickList(List<BatchAllocation> pickList) { this.pickList = pickList; }
+}
@@ -0,0 +1,29 @@
+package com.inv.model;
+
+// รายการเบิกหนึ่งรายการในรอบหยิบ: quantity = จำนวนที่วางแผนให้หยิบ, fulfilledQty = จำนวนที่เบิกจริงตอนยืนยัน
+public class PickWaveItem {
+    private String waveId;
+    private String requestItemId;
+    private String requestId;
+    private String productId;
+    private int quantity;
+    private Integer fulfilledQty;
+
+    public String getWaveId() { return waveId; }
+    public void setWaveId(String waveId) { this.waveId = waveId; }
+
+    public String getRequestItemId() { return requestItemId; }
+    public void setRequestItemId(String requestItemId) { this.requestItemId = requestItemId; }
+
+    public String getRequestId() { return requestId; }
+    public void setRequestId(String requestId) { this.requestId = requestId; }
+
+    public String getProductId() { return productId; }
+    public void setProductId(String productId) { this.productId = productId; }
+
+    public int getQuantity() { return quantity; }
+    public void setQuantity(int quantity) { this.quantity = quantity; }
+
+    public Integer getFulfilledQty() { return fulfilledQty; }
+    public void setFulfilledQty(Integer fulfilledQty) { this.fulfilledQty = fulfilledQty; }
+}
@@ -11,6 +11,8 @@ public class Product {
     private BigDecimal sellPrice;
     private String supplierId; // แก้เป็น String
     private int quantity;
+    private int reservedQty; // จำนวนที่ถูกจองให้ใบเบิกที่อนุมัติแล้วแต่ยังไม่ได้เบิก
+    private Integer reorderPoint; // จุดสั่งซื้อ: คงเหลือ <= ค่านี้ถือว่าใกล้หมด (null = ไม่แจ้งเตือน)
     private String imageUrl;
     private boolean active;
     private String createdByStaffId;
@@ -39,6 +41,15 @@ public class Product {
     public int getQuantity() { return quantity; }
     public void setQuantity(int quantity) { this.quantity = quantity; }
 
+    public int getReservedQty() { return reservedQty; }
+    public void setReservedQty(int reservedQty) { this.reservedQty = reservedQty; }
+
+    // available-to-promise = คงเหลือในคลัง - ที่จองไว้
+    public int getAvailableQty() { return quantity - reservedQty; }
+
+    public Integer getReorderPoint() { return reorderPoint; }
+    public void setReorderPoint(Integer reorderPoint) { this.reorderPoint = reorderPoint; }
+
     public String getImageUrl() { return imageUrl; }
     public void setImageUrl(String imageUrl) { this.imageUrl = imageUrl; }
 
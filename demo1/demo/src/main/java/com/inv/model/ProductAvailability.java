@@ -0,0 +1,30 @@
+package com.inv.model;
+
+// ยอดสินค้าสำหรับตรวจก่อนรับ Order: available = onHand - reserved (ส่วนที่ยังไม่ถูกจองให้ใบเบิกที่อนุมัติแล้ว)
+// openRequestQty/openOrderQty = จำนวนที่ยังค้างเบิกในใบเบิกและ Order ที่ยังไม่ปิด (ใช้ดูความต้องการที่รออยู่)
+public class ProductAvailability {
+    private String productId;
+    private int onHand;
+    private int reserved;
+    private int openRequestQty;
+    private int openOrderQty;
+    private int available;
+
+    public String getProductId() { return productId; }
+    public void setProductId(String productId) { this.productId = productId; }
+
+    public int getOnHand() { return onHand; }
+    public void setOnHand(int onHand) { this.onHand = onHand; }
+
+    public int getReserved() { return reserved; }
+    public void setReserved(int reserved) { this.reserved = reserved; }
+
+    public int getOpenRequestQty() { return openRequestQty; }
+    public void setOpenRequestQty(int openRequestQty) { this.openRequestQty = openRequestQty; }
+
+    public int getOpenOrderQty() { return openOrderQty; }
+    public void setOpenOrderQty(int openOrderQty) { this.openOrderQty = openOrderQty; }
+
+    public int getAvailable() { return available; }
+    public void setAvailable(int available) { this.available = available; }
+}
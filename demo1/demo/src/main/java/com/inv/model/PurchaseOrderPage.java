@@ -0,0 +1,20 @@
+package com.inv.model;
+
+import java.util.List;
+
+// หนึ่งหน้าของ PurchaseOrder แบบ keyset; nextCursor เป็น null เมื่อไม่มีหน้าถัดไป
+public class PurchaseOrderPage {
+    private List<PurchaseOrder> items;
+    private String nextCursor;
+
+    public PurchaseOrderPage(List<PurchaseOrder> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<PurchaseOrder> getItems() { return items; }
+    public void setItems(List<PurchaseOrder> items) { this.items = items; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
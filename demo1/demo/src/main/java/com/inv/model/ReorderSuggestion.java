@@ -0,0 +1,48 @@
+package com.inv.model;
+
+import java.time.LocalDateTime;
+
+// จำนวนแนะนำให้สั่งซื้อต่อสินค้า: เป้าหมาย = ความต้องการต่อวันที่พยากรณ์ไว้ x จำนวนวันที่ต้องการให้พอใช้ (ไม่น้อยกว่าจุดสั่งซื้อ + 1)
+// suggestedQty = เป้าหมาย - (onHand - reserved) - onOrder (ที่สั่งไว้แล้วแต่ยังไม่ได้รับ); forecastAt = เวลาที่คำนวณค่าพยากรณ์
+public class ReorderSuggestion {
+    private String productId;
+    private String productName;
+    private String supplierId;
+    private double dailyDemand;
+    private int onHand;
+    private int reserved;
+    private int onOrder;
+    private Integer reorderPoint;
+    private int suggestedQty;
+    private LocalDateTime forecastAt;
+
+    public String getProductId() { return productId; }
+    public void setProductId(String productId) { this.productId = productId; }
+
+    public String getProductName() { return productName; }
+    public void setProductName(String productName) { this.productName = productName; }
+
+    public String getSupplierId() { return supplierId; }
+    public void setSupplierId(String supplierId) { this.supplierId = supplierId; }
+
+    public double getDailyDemand() { return dailyDemand; }
+    public void setDailyDemand(double dailyDemand) { this.dailyDemand = dailyDemand; }
+
+    public int getOnHand() { return onHand; }
+    public void setOnHand(int onHand) { this.onHand = onHand; }
+
+    public int getReserved() { return reserved; }
+    public void setReserved(int reserved) { this.reserved = reserved; }
+
+    public int getOnOrder() { return onOrder; }
+    public void setOnOrder(int onOrder) { this.onOrder = onOrder; }
+
+    public Integer getReorderPoint() { return reorderPoint; }
+    public void setReorderPoint(Integer reorderPoint) { this.reorderPoint = reorderPoint; }
+
+    public int getSuggestedQty() { return suggestedQty; }
+    public void setSuggestedQty(int suggestedQty) { this.suggestedQty = suggestedQty; }
+
+    public LocalDateTime getForecastAt() { return forecastAt; }
+    public void setForecastAt(LocalDateTime forecastAt) { this.forecastAt = forecastAt; }
+}
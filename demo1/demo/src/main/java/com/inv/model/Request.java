@@ -13,6 +13,8 @@ public class Request {
     private String description;
     private String approvedBy;    // แก้เป็น String
     private LocalDateTime approvedDate;
+    private String claimedBy;             // พนักงานคลังที่รับใบเบิกนี้ไปทำ (null = ยังอยู่ในคิว)
+    private LocalDateTime claimExpiresAt;
     private List<RequestItem> items;
 
     // --- Getters and Setters (ปรับ Type ของ ID) ---
@@ -44,6 +46,12 @@ public class Request {
     public LocalDateTime getApprovedDate() { return approvedDate; }
     public void setApprovedDate(LocalDateTime approvedDate) { this.approvedDate = approvedDate; }
 
+    public String getClaimedBy() { return claimedBy; }
+    public void setClaimedBy(String claimedBy) { this.claimedBy = claimedBy; }
+
+    public LocalDateTime getClaimExpiresAt() { return claimExpiresAt; }
+    public void setClaimExpiresAt(LocalDateTime claimExpiresAt) { this.claimExpiresAt = claimExpiresAt; }
+
     public List<RequestItem> getItems() { return items; }
     public void setItems(List<RequestItem> items) { this.items = items; }
 }
\ No newline at end of file
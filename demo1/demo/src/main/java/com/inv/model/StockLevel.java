@@ -0,0 +1,5 @@
+package com.inv.model;
+
+// จำนวนคงเหลือหลังปรับของสินค้าหนึ่งรายการ (reorderPoint = null คือไม่ได้ตั้งจุดสั่งซื้อ)
+public record StockLevel(String productId, int quantity, Integer reorderPoint) {
+}
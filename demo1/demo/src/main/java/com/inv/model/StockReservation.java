@@ -0,0 +1,27 @@
+package com.inv.model;
+
+import java.time.LocalDateTime;
+
+// ยอดจองสินค้าของรายการเบิกหนึ่งรายการ (สร้างตอนอนุมัติ ลดลงตอนเบิก ลบทิ้งตอนปฏิเสธ/ปิดใบเบิก)
+public class StockReservation {
+    private String requestItemId;
+    private String requestId;
+    private String productId;
+    private int quantity;
+    private LocalDateTime createdAt;
+
+    public String getRequestItemId() { return requestItemId; }
+    public void setRequestItemId(String requestItemId) { this.requestItemId = requestItemId; }
+
+    public String getRequestId() { return requestId; }
+    public void setRequestId(String requestId) { this.requestId = requestId; }
+
+    public String getProductId() { return productId; }
+    public void setProductId(String productId) { this.productId = productId; }
+
+    public int getQuantity() { return quantity; }
+    public void setQuantity(int quantity) { this.quantity = quantity; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
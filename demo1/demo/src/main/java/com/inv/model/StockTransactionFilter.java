@@ -0,0 +1,35 @@
+package com.inv.model;
+
+import java.time.LocalDateTime;
+
+// เงื่อนไขค้นหา StockTransaction (ค่า null = ไม่กรอง), from รวมขอบ / to ไม่รวมขอบ
+public class StockTransactionFilter {
+    private String productId;
+    private String type;
+    private String staffId;
+    private String batchId;
+    private String referenceId;
+    private LocalDateTime from;
+    private LocalDateTime to;
+
+    public String getProductId() { return productId; }
+    public void setProductId(String productId) { this.productId = productId; }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
+
+    public String getStaffId() { return staffId; }
+    public void setStaffId(String staffId) { this.staffId = staffId; }
+
+    public String getBatchId() { return batchId; }
+    public void setBatchId(String batchId) { this.batchId = batchId; }
+
+    public String getReferenceId() { return referenceId; }
+    public void setReferenceId(String referenceId) { this.referenceId = referenceId; }
+
+    public LocalDateTime getFrom() { return from; }
+    public void setFrom(LocalDateTime from) { this.from = from; }
+
+    public LocalDateTime getTo() { return to; }
+    public void setTo(LocalDateTime to) { this.to = to; }
+}
@@ -0,0 +1,20 @@
+package com.inv.model;
+
+import java.util.List;
+
+// หนึ่งหน้าของ StockTransaction แบบ keyset; nextCursor เป็น null เมื่อไม่มีหน้าถัดไป
+public class StockTransactionPage {
+    private List<StockTransaction> items;
+    private String nextCursor;
+
+    public StockTransactionPage(List<StockTransaction> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<StockTransaction> getItems() { return items; }
+    public void setItems(List<StockTransaction> items) { this.items = items; }
+
+    public String getNextCursor() { return nextCursor; }
+    public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+}
@@ -1,5 +1,6 @@
 package com.inv.repo;
 
+import com.inv.cache.TableVersions;
 import com.inv.model.Customer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -15,6 +16,9 @@ public class CustomerRepository {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private TableVersions tableVersions;
+
     private Customer mapRow(ResultSet rs, int rowNum) throws SQLException {
         Customer c = new Customer();
         c.setCustomerId(rs.getString("customer_id")); // rs.getString
@@ -60,14 +64,17 @@ public class CustomerRepository {
                 c.getCustomerId(),
                 c.getCustomerName(), c.getAddress(), c.getPhone(), c.getEmail(), c.isActive()
         );
+        tableVersions.bump(TableVersions.Table.CUSTOMER);
     }
 
     public void update(String customerId, String name, String address, String phone, String email) {
         String sql = "UPDATE Customer SET customer_name = ?, address = ?, phone = ?, email = ? WHERE customer_id = ?";
         jdbcTemplate.update(sql, name, address, phone, email, customerId);
+        tableVersions.bump(TableVersions.Table.CUSTOMER);
     }
 
     public void deactivate(String customerId) {
         jdbcTemplate.update("UPDATE Customer SET active = FALSE WHERE customer_id = ?", customerId);
+        tableVersions.bump(TableVersions.Table.CUSTOMER);
     }
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+package com.inv.repo;
+
+import com.inv.forecast.DailyDemand;
+import com.inv.model.ReorderSuggestion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+@Repository
+public class DemandForecastRepository {
+
+    static final int SAVE_BATCH_SIZE = 5000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // ยอด OUT รายวันต่อสินค้าในช่วง [from, to) เรียงตาม (product_id, day) แบบ streaming
+    // รวมรายวันใน PostgreSQL ก่อน JVM จึงได้แถวเท่าจำนวน (สินค้า x วันที่มีการเบิก) ไม่ใช่จำนวนแถว ledger
+    // ต้องเรียกใน transaction เพื่อให้ PostgreSQL ใช้ cursor ตาม fetch size
+    public void streamDailyOutTotals(LocalDate from, LocalDate to, int fetchSize, Consumer<DailyDemand> action) {
+        String sql = "SELECT product_id, transaction_date::date - ?::date AS day, SUM(quantity) AS qty FROM StockTransaction " +
+                "WHERE type = 'OUT' AND transaction_date >= ? AND transaction_date < ? " +
+                "GROUP BY product_id, day ORDER BY product_id, day";
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setObject(1, from);
+            ps.setTimestamp(2, Timestamp.valueOf(from.atStartOfDay()));
+            ps.setTimestamp(3, Timestamp.valueOf(to.atStartOfDay()));
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(new DailyDemand(rs.getString("product_id"), rs.getInt("day"), rs.getLong("qty"))));
+    }
+
+    // upsert ค่าพยากรณ์ทีละ SAVE_BATCH_SIZE สินค้า (key = product_id, value = ความต้องการต่อวัน)
+    public void saveForecasts(Map<String, Double> dailyDemandByProduct, LocalDateTime computedAt) {
+        List<String> ids = new ArrayList<>(SAVE_BATCH_SIZE);
+        List<Double> demands = new ArrayList<>(SAVE_BATCH_SIZE);
+        for (Map.Entry<String, Double> entry : dailyDemandByProduct.entrySet()) {
+            ids.add(entry.getKey());
+            demands.add(entry.getValue());
+            if (ids.size() == SAVE_BATCH_SIZE) {
+                upsert(ids, demands, computedAt);
+                ids.clear();
+                demands.clear();
+            }
+        }
+        if (!ids.isEmpty()) {
+            upsert(ids, demands, computedAt);
+        }
+    }
+
+    private void upsert(List<String> ids, List<Double> demands, LocalDateTime computedAt) {
+        String[] idArray = ids.toArray(new String[0]);
+        Double[] demandArray = demands.toArray(new Double[0]);
+        jdbcTemplate.update(
+                "INSERT INTO DemandForecast(product_id, daily_demand, computed_at) " +
+                        "SELECT f.product_id, f.daily_demand, ? FROM unnest(?::varchar[], ?::float8[]) AS f(product_id, daily_demand) " +
+                        "ON CONFLICT (product_id) DO UPDATE SET daily_demand = EXCLUDED.daily_demand, computed_at = EXCLUDED.computed_at",
+                ps -> {
+                    ps.setTimestamp(1, Timestamp.valueOf(computedAt));
+                    ps.setArray(2, ps.getConnection().createArrayOf("varchar", idArray));
+                    ps.setArray(3, ps.getConnection().createArrayOf("float8", demandArray));
+                }
+        );
+    }
+
+    // สินค้าที่ไม่มีการเบิกในช่วงประวัติแล้วจะไม่ได้ค่าพยากรณ์ใหม่ ลบค่าเก่าทิ้ง
+    public int deleteComputedBefore(LocalDateTime computedAt) {
+        return jdbcTemplate.update("DELETE FROM DemandForecast WHERE computed_at < ?", Timestamp.valueOf(computedAt));
+    }
+
+    // ค่าพยากรณ์พร้อมยอดคงเหลือปัจจุบันและยอดที่สั่งไว้แล้ว (PO ที่ยังไม่รับ) ของสินค้าที่ยังขายอยู่
+    // supplierId = null คืนทุกผู้ขาย เรียงตามผู้ขาย (ไม่ระบุผู้ขายอยู่ท้ายสุด) แล้วตามชื่อสินค้า
+    public List<ReorderSuggestion> findSuggestionInputs(String supplierId) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT p.product_id, p.product_name, p.supplier_id, p.quantity, p.reserved_qty, p.reorder_point, " +
+                        "f.daily_demand, f.computed_at, COALESCE(o.on_order, 0) AS on_order " +
+                        "FROM DemandForecast f JOIN Product p ON p.product_id = f.product_id " +
+                        "LEFT JOIN (SELECT pi.product_id, SUM(pi.quantity) AS on_order FROM PurchaseItem pi " +
+                        "JOIN PurchaseOrder po ON po.po_id = pi.po_id WHERE po.status IN ('New order', 'Pending') " +
+                        "GROUP BY pi.product_id) o ON o.product_id = p.product_id " +
+                        "WHERE p.active = TRUE");
+        List<Object> args = new ArrayList<>();
+        if (supplierId != null) {
+            sql.append(" AND p.supplier_id = ?");
+            args.add(supplierId);
+        }
+        sql.append(" ORDER BY p.supplier_id NULLS LAST, p.product_name, p.product_id");
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> {
+            ReorderSuggestion suggestion = new ReorderSuggestion();
+            suggestion.setProductId(rs.getString("product_id"));
+            suggestion.setProductName(rs.getString("product_name"));
+            suggestion.setSupplierId(rs.getString("supplier_id"));
+            suggestion.setOnHand(rs.getInt("quantity"));
+            suggestion.setReserved(rs.getInt("reserved_qty"));
+            suggestion.setReorderPoint((Integer) rs.getObject("reorder_point"));
+            suggestion.setDailyDemand(rs.getDouble("daily_demand"));
+            suggestion.setForecastAt(rs.getTimestamp("computed_at").toLocalDateTime());
+            suggestion.setOnOrder(rs.getInt("on_order"));
+            return suggestion;
+        }, args.toArray());
+    }
+}
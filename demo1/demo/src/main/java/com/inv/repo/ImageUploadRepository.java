@@ -0,0 +1,71 @@
+package com.inv.repo;
+
+import com.inv.model.ImageUpload;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+@Repository
+public class ImageUploadRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private ImageUpload mapRow(ResultSet rs, int rowNum) throws SQLException {
+        ImageUpload upload = new ImageUpload();
+        upload.setAssetId(rs.getString("asset_id"));
+        upload.setKind(rs.getString("kind"));
+        upload.setTargetId(rs.getString("target_id"));
+        upload.setStatus(rs.getString("status"));
+        upload.setUrl(rs.getString("url"));
+        upload.setAttempts(rs.getInt("attempts"));
+        upload.setError(rs.getString("error"));
+        Timestamp created = rs.getTimestamp("created_at");
+        upload.setCreatedAt(created != null ? created.toLocalDateTime() : null);
+        Timestamp updated = rs.getTimestamp("updated_at");
+        upload.setUpdatedAt(updated != null ? updated.toLocalDateTime() : null);
+        return upload;
+    }
+
+    public void save(ImageUpload upload) {
+        jdbcTemplate.update(
+                "INSERT INTO ImageUpload(asset_id, kind, target_id, status) VALUES (?,?,?,?)",
+                upload.getAssetId(),
+                upload.getKind(),
+                upload.getTargetId(),
+                upload.getStatus()
+        );
+    }
+
+    public ImageUpload findById(String assetId) {
+        List<ImageUpload> list = jdbcTemplate.query(
+                "SELECT asset_id, kind, target_id, status, url, attempts, error, created_at, updated_at FROM ImageUpload WHERE asset_id = ?",
+                this::mapRow,
+                assetId
+        );
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    public void markUploading(String assetId, int attempts) {
+        jdbcTemplate.update("UPDATE ImageUpload SET status = 'Uploading', attempts = ?, updated_at = NOW() WHERE asset_id = ?", attempts, assetId);
+    }
+
+    // ความผิดพลาดของครั้งก่อน (ยังจะลองใหม่) เก็บไว้ให้ผู้ที่ poll เห็น
+    public void recordError(String assetId, String error) {
+        jdbcTemplate.update("UPDATE ImageUpload SET error = ?, updated_at = NOW() WHERE asset_id = ?", error, assetId);
+    }
+
+    public void markDone(String assetId, String url) {
+        jdbcTemplate.update("UPDATE ImageUpload SET status = 'Done', url = ?, error = NULL, updated_at = NOW() WHERE asset_id = ?", url, assetId);
+    }
+
+    // url ไม่เป็น null เมื่ออัปโหลดสำเร็จแล้วแต่ใส่ URL ให้สินค้า/ใบสั่งซื้อไม่สำเร็จ
+    public void markFailed(String assetId, String url, String error) {
+        jdbcTemplate.update("UPDATE ImageUpload SET status = 'Failed', url = ?, error = ?, updated_at = NOW() WHERE asset_id = ?", url, error, assetId);
+    }
+}
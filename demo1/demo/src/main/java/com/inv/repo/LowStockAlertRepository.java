@@ -0,0 +1,97 @@
+package com.inv.repo;
+
+import com.inv.model.LowStockAlert;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public class LowStockAlertRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private LowStockAlert mapRow(ResultSet rs, int rowNum) throws SQLException {
+        LowStockAlert alert = new LowStockAlert();
+        alert.setAlertId(rs.getString("alert_id"));
+        alert.setProductId(rs.getString("product_id"));
+        alert.setProductName(rs.getString("product_name"));
+        alert.setQuantity(rs.getInt("quantity"));
+        alert.setReorderPoint(rs.getInt("reorder_point"));
+        alert.setCurrentQuantity((Integer) rs.getObject("current_quantity"));
+        Timestamp created = rs.getTimestamp("created_at");
+        alert.setCreatedAt(created != null ? created.toLocalDateTime() : null);
+        Timestamp resolved = rs.getTimestamp("resolved_at");
+        alert.setResolvedAt(resolved != null ? resolved.toLocalDateTime() : null);
+        return alert;
+    }
+
+    // เปิดแจ้งเตือนหลายสินค้าในคำสั่งเดียว สินค้าที่มีแจ้งเตือนเปิดอยู่แล้วจะถูกข้าม (idx_lowstockalert_open)
+    // คืน product_id ที่เปิดแจ้งเตือนใหม่จริง
+    public List<String> openAll(List<LowStockAlert> alerts) {
+        List<String> opened = new ArrayList<>();
+        if (alerts == null || alerts.isEmpty()) {
+            return opened;
+        }
+        int size = alerts.size();
+        String[] alertIds = new String[size];
+        String[] productIds = new String[size];
+        Integer[] quantities = new Integer[size];
+        Integer[] reorderPoints = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            LowStockAlert alert = alerts.get(i);
+            alertIds[i] = alert.getAlertId();
+            productIds[i] = alert.getProductId();
+            quantities[i] = alert.getQuantity();
+            reorderPoints[i] = alert.getReorderPoint();
+        }
+        jdbcTemplate.query(
+                "INSERT INTO LowStockAlert(alert_id, product_id, quantity, reorder_point) " +
+                        "SELECT * FROM unnest(?::varchar[], ?::varchar[], ?::int[], ?::int[]) " +
+                        "ON CONFLICT (product_id) WHERE resolved_at IS NULL DO NOTHING RETURNING product_id",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("varchar", alertIds));
+                    ps.setArray(2, ps.getConnection().createArrayOf("varchar", productIds));
+                    ps.setArray(3, ps.getConnection().createArrayOf("int4", quantities));
+                    ps.setArray(4, ps.getConnection().createArrayOf("int4", reorderPoints));
+                },
+                rs -> {
+                    opened.add(rs.getString("product_id"));
+                }
+        );
+        return opened;
+    }
+
+    // ปิดแจ้งเตือนที่เปิดอยู่ของสินค้าที่จำนวนกลับขึ้นเหนือจุดสั่งซื้อแล้ว คืน product_id ที่ถูกปิดจริง
+    public List<String> resolve(Collection<String> productIds) {
+        List<String> resolved = new ArrayList<>();
+        if (productIds == null || productIds.isEmpty()) {
+            return resolved;
+        }
+        String[] idArray = productIds.toArray(new String[0]);
+        jdbcTemplate.query(
+                "UPDATE LowStockAlert SET resolved_at = NOW() WHERE product_id = ANY(?) AND resolved_at IS NULL RETURNING product_id",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray)),
+                rs -> {
+                    resolved.add(rs.getString("product_id"));
+                }
+        );
+        return resolved;
+    }
+
+    // ใหม่ -> เก่า; includeResolved = false คืนเฉพาะที่ยังเปิดอยู่ (อ่านจาก partial index ขนาดเท่าจำนวนสินค้าที่ใกล้หมด)
+    public List<LowStockAlert> find(boolean includeResolved, int limit) {
+        String sql = "SELECT a.alert_id, a.product_id, p.product_name, a.quantity, a.reorder_point, p.quantity AS current_quantity, " +
+                "a.created_at, a.resolved_at FROM LowStockAlert a JOIN Product p ON p.product_id = a.product_id " +
+                (includeResolved ? "" : "WHERE a.resolved_at IS NULL ") +
+                "ORDER BY a.created_at DESC, a.alert_id DESC LIMIT ?";
+        return jdbcTemplate.query(sql, this::mapRow, limit);
+    }
+}
@@ -11,7 +11,12 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Repository
 public class OrderRepository {
@@ -19,6 +24,14 @@ public class OrderRepository {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    // เพิ่มจำนวนที่เบิกแล้วของสินค้าใน Order แล้วลด open_line_count ตามจำนวนรายการที่เพิ่งเบิกครบ (remaining จาก > 0 เป็น <= 0)
+    private static final String UPDATE_ORDER_ITEM_FULFILLMENT =
+            "WITH changed AS (UPDATE OrderItem SET fulfilled_qty = fulfilled_qty + ? WHERE order_id = ? AND product_id = ? " +
+                    "RETURNING remaining_qty, remaining_qty + ? AS previous_remaining) " +
+                    "UPDATE \"Order\" SET status = 'Pending', open_line_count = open_line_count - " +
+                    "(SELECT COUNT(*) FROM changed WHERE remaining_qty <= 0 AND previous_remaining > 0) " +
+                    "WHERE order_id = ?";
+
     private Order mapRow(ResultSet rs, int rowNum) throws SQLException {
         Order o = new Order();
         o.setOrderId(rs.getString("order_id")); // rs.getString
@@ -63,9 +76,12 @@ public class OrderRepository {
         );
     }
 
+    // เพิ่ม open_line_count ของ Order ในคำสั่งเดียวกันถ้ารายการนี้ยังเบิกไม่ครบ
     public void saveOrderItem(OrderItem item) {
-        String sql = "INSERT INTO orderitem(order_item_id, order_id, product_id, quantity, unit_price, line_total, " +
-                "fulfilled_qty) VALUES (?,?,?,?,?,?,?)"; // <-- ลบ remaining_qty ออก
+        String sql = "WITH inserted AS (INSERT INTO orderitem(order_item_id, order_id, product_id, quantity, unit_price, line_total, " +
+                "fulfilled_qty) VALUES (?,?,?,?,?,?,?) RETURNING order_id, remaining_qty) " + // <-- ลบ remaining_qty ออก
+                "UPDATE \"Order\" SET open_line_count = open_line_count + 1 " +
+                "WHERE order_id IN (SELECT order_id FROM inserted WHERE remaining_qty > 0)";
         jdbcTemplate.update(sql, item.getOrderItemId(), item.getOrderId(), item.getProductId(), item.getQuantity(),
                 item.getUnitPrice(), item.getLineTotal(), item.getFulfilledQty()); // <-- ลบ getRemainingQty() ออก
     }
@@ -82,20 +98,40 @@ public class OrderRepository {
         return jdbcTemplate.query(sql, this::mapRowItem, orderId);
     }
 
-    public void updateOrderItemFulfillment(String orderId, String productId, int fulfillQty) {
-        // 1. อัปเดตจำนวนที่เบิกแล้วในตาราง OrderItem (โค้ดเดิมของคุณ)
-        jdbcTemplate.update(
-                "UPDATE OrderItem SET fulfilled_qty = fulfilled_qty + ? WHERE order_id = ? AND product_id = ?",
-                fulfillQty,
-                orderId,
-                productId
+    // รายการสินค้าของหลาย Order ใน query เดียว (key = order_id) ใช้กับ ?include=items ของหน้ารายการ
+    public Map<String, List<OrderItem>> findItemsByOrderIds(Collection<String> orderIds) {
+        Map<String, List<OrderItem>> itemsByOrder = new LinkedHashMap<>();
+        if (orderIds == null || orderIds.isEmpty()) {
+            return itemsByOrder;
+        }
+        String[] idArray = orderIds.toArray(new String[0]);
+        List<OrderItem> items = jdbcTemplate.query(
+                "SELECT order_item_id, order_id, product_id, quantity, unit_price, line_total, fulfilled_qty, remaining_qty " +
+                        "FROM orderitem WHERE order_id = ANY(?) ORDER BY order_id, order_item_id",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray)),
+                this::mapRowItem
         );
+        for (OrderItem item : items) {
+            itemsByOrder.computeIfAbsent(item.getOrderId(), key -> new ArrayList<>()).add(item);
+        }
+        return itemsByOrder;
+    }
 
-        // 2. อัปเดตสถานะของ Order หลักในตาราง Orders ให้เป็น 'Pending'
-        jdbcTemplate.update(
-                "UPDATE \"Order\" SET status = 'Pending' WHERE order_id = ?",
-                orderId
-        );
+    public void updateOrderItemFulfillment(String orderId, String productId, int fulfillQty) {
+        // อัปเดตจำนวนที่เบิกแล้วใน OrderItem แล้วตั้งสถานะ Order เป็น 'Pending' พร้อมลด open_line_count ในคำสั่งเดียว
+        jdbcTemplate.update(UPDATE_ORDER_ITEM_FULFILLMENT, fulfillQty, orderId, productId, fulfillQty, orderId);
+    }
+
+    // เหมือน updateOrderItemFulfillment แต่รับหลายสินค้า: อัปเดต OrderItem เป็น batch แล้วตั้งสถานะ Order ครั้งเดียว
+    public void updateOrderItemFulfillments(String orderId, Map<String, Integer> fulfillQtyByProduct) {
+        if (fulfillQtyByProduct == null || fulfillQtyByProduct.isEmpty()) {
+            return;
+        }
+        List<Object[]> args = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : new TreeMap<>(fulfillQtyByProduct).entrySet()) {
+            args.add(new Object[]{entry.getValue(), orderId, entry.getKey(), entry.getValue(), orderId});
+        }
+        jdbcTemplate.batchUpdate(UPDATE_ORDER_ITEM_FULFILLMENT, args);
     }
 
     public boolean areAllOrderItemsFulfilled(String orderId) { // รับ String orderId
@@ -105,9 +141,9 @@ public class OrderRepository {
     }
 
     public List<Order> findOrdersReadyToClose() {
+        // ใช้ partial index idx_order_ready_to_close (เงื่อนไขต้องตรงกับ index)
         String sql = "SELECT o.order_id, o.order_date, o.total_amount, o.status, o.customer_id, o.staff_id " +
-                "FROM \"Order\" AS o WHERE o.status = 'Pending' " +
-                "AND NOT EXISTS (SELECT 1 FROM OrderItem AS oi WHERE oi.order_id = o.order_id AND oi.remaining_qty > 0)";
+                "FROM \"Order\" AS o WHERE o.status = 'Pending' AND o.open_line_count = 0";
         return jdbcTemplate.query(sql, this::mapRow);
     }
 
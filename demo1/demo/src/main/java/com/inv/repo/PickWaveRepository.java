@@ -0,0 +1,196 @@
+package com.inv.repo;
+
+import com.inv.model.BatchAllocation;
+import com.inv.model.PickWave;
+import com.inv.model.PickWaveItem;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+public class PickWaveRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private PickWave mapWave(ResultSet rs, int rowNum) throws SQLException {
+        PickWave wave = new PickWave();
+        wave.setWaveId(rs.getString("wave_id"));
+        wave.setStatus(rs.getString("status"));
+        Timestamp created = rs.getTimestamp("created_at");
+        if (created != null) {
+            wave.setCreatedAt(created.toLocalDateTime());
+        }
+        wave.setCreatedBy(rs.getString("created_by"));
+        Timestamp confirmed = rs.getTimestamp("confirmed_at");
+        if (confirmed != null) {
+            wave.setConfirmedAt(confirmed.toLocalDateTime());
+        }
+        wave.setConfirmedBy(rs.getString("confirmed_by"));
+        return wave;
+    }
+
+    private PickWaveItem mapItem(ResultSet rs, int rowNum) throws SQLException {
+        PickWaveItem item = new PickWaveItem();
+        item.setWaveId(rs.getString("wave_id"));
+        item.setRequestItemId(rs.getString("request_item_id"));
+        item.setRequestId(rs.getString("request_id"));
+        item.setProductId(rs.getString("product_id"));
+        item.setQuantity(rs.getInt("quantity"));
+        item.setFulfilledQty((Integer) rs.getObject("fulfilled_qty"));
+        return item;
+    }
+
+    private BatchAllocation mapLine(ResultSet rs, int rowNum) throws SQLException {
+        BatchAllocation line = new BatchAllocation();
+        line.setBatchId(rs.getString("batch_id"));
+        line.setProductId(rs.getString("product_id"));
+        Timestamp received = rs.getTimestamp("received_date");
+        if (received != null) {
+            line.setReceivedDate(received.toLocalDateTime());
+        }
+        line.setQuantity(rs.getInt("quantity"));
+        return line;
+    }
+
+    // รายการเบิกที่ยังเหลือต้องเบิก ยังไม่อยู่ในรอบหยิบที่เปิดอยู่ และใบเบิกไม่ได้ถูกพนักงานคนใดถืออยู่ เรียงตามใบเบิกที่เก่าที่สุดก่อน
+    // (quantity = remaining_qty, wave_id = null)
+    public List<PickWaveItem> findUnwavedOpenItems() {
+        String sql = "SELECT NULL AS wave_id, ri.request_item_id, ri.request_id, ri.product_id, ri.remaining_qty AS quantity, NULL AS fulfilled_qty " +
+                "FROM Request r JOIN RequestItem ri ON ri.request_id = r.request_id " +
+                "WHERE r.status IN ('Approved', 'Pending') AND r.open_line_count > 0 AND ri.remaining_qty > 0 " +
+                "AND (r.claimed_by IS NULL OR r.claim_expires_at <= NOW()) " +
+                "AND NOT EXISTS (SELECT 1 FROM PickWaveItem w WHERE w.request_item_id = ri.request_item_id AND w.active) " +
+                "ORDER BY r.request_date, r.request_id, ri.request_item_id";
+        return jdbcTemplate.query(sql, this::mapItem);
+    }
+
+    // จำนวนที่รอบหยิบที่เปิดอยู่วางแผนจะหยิบจากแต่ละล็อต (key = batch_id) ใช้หักออกก่อนวางแผนรอบใหม่
+    public Map<String, Integer> findOpenPlannedQuantities(Collection<String> productIds) {
+        Map<String, Integer> planned = new HashMap<>();
+        if (productIds == null || productIds.isEmpty()) {
+            return planned;
+        }
+        String[] idArray = productIds.toArray(new String[0]);
+        jdbcTemplate.query(
+                "SELECT l.batch_id, SUM(l.quantity) AS quantity FROM PickWaveLine l JOIN PickWave w ON w.wave_id = l.wave_id " +
+                        "WHERE w.status = 'Open' AND l.product_id = ANY(?) GROUP BY l.batch_id",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray)),
+                rs -> {
+                    planned.put(rs.getString("batch_id"), rs.getInt("quantity"));
+                }
+        );
+        return planned;
+    }
+
+    // บันทึกหัวรอบ รายการเบิก และแผนหยิบ (รายการที่อยู่ในรอบอื่นที่เปิดอยู่แล้วจะชน idx_pickwaveitem_active)
+    public void save(PickWave wave) {
+        LocalDateTime createdAt = wave.getCreatedAt() != null ? wave.getCreatedAt() : LocalDateTime.now();
+        wave.setCreatedAt(createdAt);
+        jdbcTemplate.update("INSERT INTO PickWave(wave_id, status, created_at, created_by) VALUES (?,?,?,?)",
+                wave.getWaveId(), wave.getStatus(), Timestamp.valueOf(createdAt), wave.getCreatedBy());
+        // รอบหนึ่งมีได้หลายพันรายการ ส่งเป็น array ใน statement เดียวแทน batch ทีละแถว
+        int size = wave.getItems().size();
+        String[] itemIds = new String[size];
+        String[] requestIds = new String[size];
+        String[] productIds = new String[size];
+        Integer[] quantities = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            PickWaveItem item = wave.getItems().get(i);
+            itemIds[i] = item.getRequestItemId();
+            requestIds[i] = item.getRequestId();
+            productIds[i] = item.getProductId();
+            quantities[i] = item.getQuantity();
+        }
+        jdbcTemplate.update(
+                "INSERT INTO PickWaveItem(wave_id, request_item_id, request_id, product_id, quantity) " +
+                        "SELECT ?, t.* FROM unnest(?::varchar[], ?::varchar[], ?::varchar[], ?::int[]) AS t",
+                ps -> {
+                    ps.setString(1, wave.getWaveId());
+                    ps.setArray(2, ps.getConnection().createArrayOf("varchar", itemIds));
+                    ps.setArray(3, ps.getConnection().createArrayOf("varchar", requestIds));
+                    ps.setArray(4, ps.getConnection().createArrayOf("varchar", productIds));
+                    ps.setArray(5, ps.getConnection().createArrayOf("int4", quantities));
+                }
+        );
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO PickWaveLine(wave_id, product_id, batch_id, quantity) VALUES (?,?,?,?)",
+                wave.getPickList(),
+                wave.getPickList().size(),
+                (ps, line) -> {
+                    ps.setString(1, wave.getWaveId());
+                    ps.setString(2, line.getProductId());
+                    ps.setString(3, line.getBatchId());
+                    ps.setInt(4, line.getQuantity());
+                }
+        );
+    }
+
+    public PickWave findById(String waveId) {
+        List<PickWave> waves = jdbcTemplate.query(
+                "SELECT wave_id, status, created_at, created_by, confirmed_at, confirmed_by FROM PickWave WHERE wave_id = ?",
+                this::mapWave, waveId);
+        if (waves.isEmpty()) {
+            return null;
+        }
+        PickWave wave = waves.get(0);
+        wave.setItems(findItems(waveId));
+        wave.setPickList(jdbcTemplate.query(
+                "SELECT l.batch_id, l.product_id, b.received_date, l.quantity FROM PickWaveLine l " +
+                        "JOIN ProductBatch b ON b.batch_id = l.batch_id WHERE l.wave_id = ? " +
+                        "ORDER BY l.product_id, b.received_date, l.batch_id",
+                this::mapLine, waveId));
+        return wave;
+    }
+
+    // ล็อกหัวรอบไว้ก่อนยืนยัน/ยกเลิก กันการยืนยันซ้ำพร้อมกัน
+    public PickWave findByIdForUpdate(String waveId) {
+        List<PickWave> waves = jdbcTemplate.query(
+                "SELECT wave_id, status, created_at, created_by, confirmed_at, confirmed_by FROM PickWave WHERE wave_id = ? FOR UPDATE",
+                this::mapWave, waveId);
+        return waves.isEmpty() ? null : waves.get(0);
+    }
+
+    public List<PickWaveItem> findItems(String waveId) {
+        return jdbcTemplate.query(
+                "SELECT wave_id, request_item_id, request_id, product_id, quantity, fulfilled_qty FROM PickWaveItem " +
+                        "WHERE wave_id = ? ORDER BY request_id, request_item_id",
+                this::mapItem, waveId);
+    }
+
+    // ปิดรอบ: บันทึก fulfilledQty ของแต่ละรายการ และปล่อยรายการให้เข้ารอบใหม่ได้ (ถ้ายังเหลือต้องเบิก)
+    public void confirm(String waveId, String staffId, List<PickWaveItem> items) {
+        jdbcTemplate.update("UPDATE PickWave SET status = 'Confirmed', confirmed_at = NOW(), confirmed_by = ? WHERE wave_id = ?",
+                staffId, waveId);
+        String[] itemIds = new String[items.size()];
+        Integer[] fulfilled = new Integer[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            itemIds[i] = items.get(i).getRequestItemId();
+            fulfilled[i] = items.get(i).getFulfilledQty() != null ? items.get(i).getFulfilledQty() : 0;
+        }
+        jdbcTemplate.update(
+                "UPDATE PickWaveItem w SET fulfilled_qty = t.qty, active = FALSE " +
+                        "FROM unnest(?::varchar[], ?::int[]) AS t(request_item_id, qty) " +
+                        "WHERE w.wave_id = ? AND w.request_item_id = t.request_item_id",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("varchar", itemIds));
+                    ps.setArray(2, ps.getConnection().createArrayOf("int4", fulfilled));
+                    ps.setString(3, waveId);
+                }
+        );
+    }
+
+    public void cancel(String waveId) {
+        jdbcTemplate.update("UPDATE PickWave SET status = 'Cancelled' WHERE wave_id = ?", waveId);
+        jdbcTemplate.update("UPDATE PickWaveItem SET active = FALSE WHERE wave_id = ?", waveId);
+    }
+}
@@ -1,5 +1,6 @@
 package com.inv.repo;
 
+import com.inv.model.BatchAllocation;
 import com.inv.model.ProductBatch;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -8,7 +9,11 @@ import org.springframework.stereotype.Repository;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public class ProductBatchRepository {
@@ -60,6 +65,34 @@ public class ProductBatchRepository {
         );
     }
 
+    // บันทึกหลายล็อตใน batch เดียว (ใช้ตอนรับสินค้าเข้าจาก PO)
+    public void saveAll(List<ProductBatch> batches) {
+        if (batches == null || batches.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (ProductBatch batch : batches) {
+            if (batch.getReceivedDate() == null) {
+                batch.setReceivedDate(now);
+            }
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO ProductBatch(batch_id, product_id, po_id, received_date, quantity_in, quantity_remaining, unit_cost, expiry_date) VALUES (?,?,?,?,?,?,?,?)",
+                batches,
+                batches.size(),
+                (ps, batch) -> {
+                    ps.setString(1, batch.getBatchId());
+                    ps.setString(2, batch.getProductId());
+                    ps.setString(3, batch.getPoId());
+                    ps.setTimestamp(4, java.sql.Timestamp.valueOf(batch.getReceivedDate()));
+                    ps.setInt(5, batch.getQuantityIn());
+                    ps.setInt(6, batch.getQuantityRemaining());
+                    ps.setBigDecimal(7, batch.getUnitCost());
+                    ps.setObject(8, batch.getExpiryDate());
+                }
+        );
+    }
+
     public List<ProductBatch> findAvailableBatches(String productId) {
         String sql = "SELECT batch_id, product_id, po_id, received_date, quantity_in, " +
                 "COALESCE(quantity_remaining, quantity_in) AS quantity_remaining, unit_cost, expiry_date " +
@@ -68,6 +101,19 @@ public class ProductBatchRepository {
         return jdbcTemplate.query(sql, this::mapRow, productId);
     }
 
+    // ล็อตที่ยังมีของของหลายสินค้าใน query เดียว เรียงตามสินค้าแล้ว FIFO (ใช้วางแผนรอบหยิบ ไม่ล็อก)
+    public List<ProductBatch> findAvailableBatches(Collection<String> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String[] idArray = productIds.toArray(new String[0]);
+        String sql = "SELECT batch_id, product_id, po_id, received_date, quantity_in, " +
+                "COALESCE(quantity_remaining, quantity_in) AS quantity_remaining, unit_cost, expiry_date " +
+                "FROM ProductBatch WHERE product_id = ANY(?) AND COALESCE(quantity_remaining, quantity_in) > 0 " +
+                "ORDER BY product_id, received_date ASC, batch_id ASC";
+        return jdbcTemplate.query(sql, ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray)), this::mapRow);
+    }
+
     public List<ProductBatch> findByProduct(String productId) {
         String sql = "SELECT batch_id, product_id, po_id, received_date, quantity_in, " +
                 "COALESCE(quantity_remaining, quantity_in) AS quantity_remaining, unit_cost, expiry_date " +
@@ -86,4 +132,65 @@ public class ProductBatchRepository {
         jdbcTemplate.update("UPDATE ProductBatch SET quantity_remaining = ? WHERE batch_id = ?", remaining, batchId);
     }
 
+    // ตัดสต็อกแบบ FIFO ในคำสั่งเดียว: running sum ตาม received_date, batch_id แล้วหักเฉพาะล็อตที่ต้องใช้
+    // ล็อกล็อตที่เลือกด้วย FOR UPDATE (ไม่ใช้ SKIP LOCKED เพราะจะข้ามล็อตเก่าที่ถูกล็อกอยู่ ทำให้ผิด FIFO หรือล็อตไม่พอทั้งที่มี)
+    // ผู้เรียกทุกทางถือ lock แถว product ไว้ก่อนแล้ว ปกติจึงไม่ต้องรอใคร
+    // คืนค่าส่วนที่ตัดได้จริง (รวมกันอาจน้อยกว่า quantity ถ้าล็อตไม่พอ ผู้เรียกต้องตรวจเอง)
+    public List<BatchAllocation> allocateFifo(String productId, int quantity) {
+        return allocateFifo(Map.of(productId, quantity));
+    }
+
+    // เหมือนด้านบนแต่ตัดหลายสินค้าพร้อมกันในคำสั่งเดียว (PARTITION BY product_id)
+    public List<BatchAllocation> allocateFifo(Map<String, Integer> quantityByProduct) {
+        if (quantityByProduct == null || quantityByProduct.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String sql = "WITH demand AS (" +
+                "SELECT * FROM unnest(?::varchar[], ?::int[]) AS d(product_id, qty)" +
+                "), candidates AS (" +
+                "SELECT b.batch_id, b.product_id, b.received_date, COALESCE(b.quantity_remaining, b.quantity_in) AS available " +
+                "FROM ProductBatch b JOIN demand d ON d.product_id = b.product_id " +
+                "WHERE COALESCE(b.quantity_remaining, b.quantity_in) > 0 " +
+                "ORDER BY b.product_id, b.received_date, b.batch_id FOR UPDATE OF b" +
+                "), ordered AS (" +
+                "SELECT batch_id, product_id, available, " +
+                "SUM(available) OVER (PARTITION BY product_id ORDER BY received_date, batch_id) AS running_total " +
+                "FROM candidates" +
+                "), allocation AS (" +
+                "SELECT o.batch_id, LEAST(o.available, d.qty - (o.running_total - o.available)) AS take " +
+                "FROM ordered o JOIN demand d ON d.product_id = o.product_id " +
+                "WHERE o.running_total - o.available < d.qty" +
+                ") " +
+                "UPDATE ProductBatch b SET quantity_remaining = COALESCE(b.quantity_remaining, b.quantity_in) - a.take " +
+                "FROM allocation a WHERE b.batch_id = a.batch_id " +
+                "RETURNING b.batch_id, b.product_id, b.received_date, a.take";
+        String[] productIds = quantityByProduct.keySet().toArray(new String[0]);
+        Integer[] quantities = new Integer[productIds.length];
+        for (int i = 0; i < productIds.length; i++) {
+            quantities[i] = quantityByProduct.get(productIds[i]);
+        }
+        List<BatchAllocation> allocations = jdbcTemplate.query(sql, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("varchar", productIds));
+            ps.setArray(2, ps.getConnection().createArrayOf("integer", quantities));
+        }, this::mapAllocation);
+        // RETURNING ไม่รับประกันลำดับ จึงเรียงตาม FIFO อีกครั้งก่อนบันทึก transaction
+        allocations.sort(Comparator
+                .comparing(BatchAllocation::getProductId)
+                .thenComparing(BatchAllocation::getReceivedDate, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(BatchAllocation::getBatchId));
+        return allocations;
+    }
+
+    private BatchAllocation mapAllocation(ResultSet rs, int rowNum) throws SQLException {
+        BatchAllocation allocation = new BatchAllocation();
+        allocation.setBatchId(rs.getString("batch_id"));
+        allocation.setProductId(rs.getString("product_id"));
+        java.sql.Timestamp received = rs.getTimestamp("received_date");
+        if (received != null) {
+            allocation.setReceivedDate(received.toLocalDateTime());
+        }
+        allocation.setQuantity(rs.getInt("take"));
+        return allocation;
+    }
+
 }
@@ -1,13 +1,28 @@
 package com.inv.repo;
 
+import com.inv.cache.CacheStats;
+import com.inv.cache.LruCache;
+import com.inv.cache.TableVersions;
 import com.inv.model.Product;
+import com.inv.model.ProductAvailability;
+import com.inv.model.StockLevel;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Repository
 public class ProductRepository {
@@ -15,6 +30,20 @@ public class ProductRepository {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private TableVersions tableVersions;
+
+    // cache ของ findById (ไม่ใช้กับ findAll และคำสั่ง FOR UPDATE ซึ่งต้องอ่านจากฐานข้อมูลเสมอ)
+    // ทุกคำสั่งเขียนต้องผ่าน write() เพื่อลบ key ที่เกี่ยวข้องทั้งก่อนเขียนและหลัง transaction จบ
+    // cache อยู่ในแต่ละเครื่อง ไม่มีการล้างข้ามเครื่อง: quantity/reserved_qty จาก findById อาจช้ากว่าจริงได้ถึง TTL
+    // จึงใช้ได้แค่แสดงผลและตรวจว่ามีสินค้า การตัดสินใจเรื่องสต็อกต้องใช้ findByIdForUpdate หรือ UPDATE แบบมีเงื่อนไข
+    private final LruCache<String, Product> productCache;
+
+    public ProductRepository(@Value("${product-cache.max-size:10000}") int maxSize,
+                             @Value("${product-cache.ttl-seconds:300}") long ttlSeconds) {
+        this.productCache = new LruCache<>(maxSize, ttlSeconds, TimeUnit.SECONDS);
+    }
+
     private Product mapRow(ResultSet rs, int rowNum) throws SQLException {
         Product p = new Product();
         p.setProductId(rs.getString("product_id")); // rs.getString
@@ -25,30 +54,123 @@ public class ProductRepository {
         p.setSellPrice(rs.getBigDecimal("sell_price"));
         p.setSupplierId(rs.getString("supplier_id")); // rs.getString
         p.setQuantity(rs.getInt("quantity"));
+        p.setReservedQty(rs.getInt("reserved_qty"));
+        p.setReorderPoint((Integer) rs.getObject("reorder_point"));
         p.setImageUrl(rs.getString("image_url"));
         p.setActive(rs.getBoolean("active"));
         return p;
     }
 
     public List<Product> findAll() {
-        String sql = "SELECT product_id, product_name, description, unit, cost_price, sell_price, supplier_id, quantity, image_url, active " +
+        String sql = "SELECT product_id, product_name, description, unit, cost_price, sell_price, supplier_id, quantity, reserved_qty, reorder_point, image_url, active " +
                 "FROM product WHERE active = TRUE ORDER BY product_name";
         return jdbcTemplate.query(sql, this::mapRow);
     }
 
+    // อ่านผ่าน cache (ค่าจำนวนอาจไม่ใช่ล่าสุด ดูหมายเหตุที่ productCache)
     public Product findById(String id) { // รับ String id
+        if (id == null) {
+            return null;
+        }
+        Product cached = productCache.get(id);
+        if (cached != null) {
+            return copy(cached);
+        }
+        long stamp = productCache.stamp(id);
+        List<Product> list = jdbcTemplate.query(
+                "SELECT product_id, product_name, description, unit, cost_price, sell_price, supplier_id, quantity, reserved_qty, reorder_point, image_url, active FROM product WHERE product_id = ?",
+                this::mapRow,
+                id
+        );
+        if (list.isEmpty()) {
+            return null;
+        }
+        productCache.putIfUnchanged(id, copy(list.get(0)), stamp);
+        return list.get(0);
+    }
+
+    public CacheStats getCacheStats() {
+        return productCache.stats();
+    }
+
+    // ล็อกแถวสินค้าไว้จนจบ transaction เพื่อให้การตัดสต็อก SKU เดียวกันเข้าคิวกันแทนการชน CHECK (quantity >= 0)
+    public Product findByIdForUpdate(String id) {
         List<Product> list = jdbcTemplate.query(
-                "SELECT product_id, product_name, description, unit, cost_price, sell_price, supplier_id, quantity, image_url, active FROM product WHERE product_id = ?",
+                "SELECT product_id, product_name, description, unit, cost_price, sell_price, supplier_id, quantity, reserved_qty, reorder_point, image_url, active FROM product WHERE product_id = ? FOR UPDATE",
                 this::mapRow,
                 id
         );
         return list.isEmpty() ? null : list.get(0);
     }
 
+    // อ่านหลายสินค้าในคำสั่งเดียว (ไม่ผ่าน cache) ไม่เรียงลำดับ ผู้เรียกจัดลำดับเอง
+    public List<Product> findByIds(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String[] idArray = ids.toArray(new String[0]);
+        return jdbcTemplate.query(
+                "SELECT product_id, product_name, description, unit, cost_price, sell_price, supplier_id, quantity, reserved_qty, reorder_point, image_url, active " +
+                        "FROM product WHERE product_id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray)),
+                this::mapRow
+        );
+    }
+
+    // ล็อกหลายสินค้าพร้อมกัน เรียงตาม product_id เพื่อไม่ให้เกิด deadlock กับผู้เบิกคนอื่น
+    public List<Product> findByIdsForUpdate(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String[] idArray = ids.toArray(new String[0]);
+        return jdbcTemplate.query(
+                "SELECT product_id, product_name, description, unit, cost_price, sell_price, supplier_id, quantity, reserved_qty, reorder_point, image_url, active " +
+                        "FROM product WHERE product_id = ANY(?) ORDER BY product_id FOR UPDATE",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray)),
+                this::mapRow
+        );
+    }
+
+    // ยอดคงเหลือ/จอง/ค้างเบิกของหลายสินค้าในคำสั่งเดียว (ไม่ผ่าน cache) สินค้าที่ไม่มีอยู่จะไม่ถูกคืนมา
+    // ยอดค้างใช้ partial index ของรายการที่ remaining_qty > 0 จึงไม่ต้องอ่านรายการที่เบิกครบแล้ว
+    public List<ProductAvailability> findAvailability(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String[] idArray = ids.toArray(new String[0]);
+        String sql = "SELECT p.product_id, p.quantity, p.reserved_qty, " +
+                "COALESCE(r.open_qty, 0) AS open_request_qty, COALESCE(o.open_qty, 0) AS open_order_qty " +
+                "FROM product p " +
+                "LEFT JOIN (SELECT ri.product_id, SUM(ri.remaining_qty) AS open_qty FROM RequestItem ri " +
+                "JOIN Request rq ON rq.request_id = ri.request_id " +
+                "WHERE ri.product_id = ANY(?) AND ri.remaining_qty > 0 AND rq.status IN ('Awaiting Approval', 'Approved', 'Pending') " +
+                "GROUP BY ri.product_id) r ON r.product_id = p.product_id " +
+                "LEFT JOIN (SELECT oi.product_id, SUM(oi.remaining_qty) AS open_qty FROM OrderItem oi " +
+                "JOIN \"Order\" od ON od.order_id = oi.order_id " +
+                "WHERE oi.product_id = ANY(?) AND oi.remaining_qty > 0 AND od.status <> 'Closed' " +
+                "GROUP BY oi.product_id) o ON o.product_id = p.product_id " +
+                "WHERE p.product_id = ANY(?)";
+        return jdbcTemplate.query(sql, ps -> {
+            java.sql.Array array = ps.getConnection().createArrayOf("varchar", idArray);
+            ps.setArray(1, array);
+            ps.setArray(2, array);
+            ps.setArray(3, array);
+        }, (rs, rowNum) -> {
+            ProductAvailability availability = new ProductAvailability();
+            availability.setProductId(rs.getString("product_id"));
+            availability.setOnHand(rs.getInt("quantity"));
+            availability.setReserved(rs.getInt("reserved_qty"));
+            availability.setOpenRequestQty(rs.getInt("open_request_qty"));
+            availability.setOpenOrderQty(rs.getInt("open_order_qty"));
+            availability.setAvailable(availability.getOnHand() - availability.getReserved());
+            return availability;
+        });
+    }
+
     public void save(Product p) {
-        String sql = "INSERT INTO product (product_id, product_name, description, unit, cost_price, sell_price, supplier_id, quantity, image_url, active) " +
-                "VALUES (?,?,?,?,?,?,?,?,?,?)";
-        jdbcTemplate.update(
+        String sql = "INSERT INTO product (product_id, product_name, description, unit, cost_price, sell_price, supplier_id, quantity, reorder_point, image_url, active) " +
+                "VALUES (?,?,?,?,?,?,?,?,?,?,?)";
+        write(List.of(p.getProductId()), () -> jdbcTemplate.update(
                 sql,
                 p.getProductId(),
                 p.getProductName(),
@@ -58,35 +180,192 @@ public class ProductRepository {
                 p.getSellPrice(),
                 p.getSupplierId(),
                 p.getQuantity(),
+                p.getReorderPoint(),
                 p.getImageUrl(),
                 p.isActive()
-        );
+        ));
+    }
+
+    // คำสั่งที่เปลี่ยน quantity คืนจำนวนหลังปรับ (RETURNING) ให้ service ส่งต่อไปตรวจสินค้าใกล้หมด โดยไม่ต้องอ่านซ้ำ
+    public List<StockLevel> updateQuantity(String productId, int diff) { // รับ String productId
+        return write(List.of(productId), () -> jdbcTemplate.query(
+                "UPDATE product SET quantity = quantity + ? WHERE product_id = ? RETURNING product_id, quantity, reorder_point",
+                this::mapStockLevel,
+                diff,
+                productId
+        ));
+    }
+
+    // ตั้งจุดสั่งซื้อ (null = เลิกแจ้งเตือน) คืน null ถ้าไม่พบสินค้า
+    public StockLevel updateReorderPoint(String productId, Integer reorderPoint) {
+        List<StockLevel> levels = write(List.of(productId), () -> jdbcTemplate.query(
+                "UPDATE product SET reorder_point = ? WHERE product_id = ? RETURNING product_id, quantity, reorder_point",
+                this::mapStockLevel,
+                reorderPoint,
+                productId
+        ));
+        return levels.isEmpty() ? null : levels.get(0);
+    }
+
+    // ปรับจำนวนหลายสินค้าในคำสั่งเดียว (key = product_id, value = ส่วนต่าง)
+    // ผู้เรียกต้องล็อกแถวไว้ก่อนแล้ว (findByIdsForUpdate) เพราะ UPDATE ... FROM unnest ไม่รับประกันลำดับการล็อก
+    public List<StockLevel> updateQuantities(Map<String, Integer> diffByProduct) {
+        if (diffByProduct == null || diffByProduct.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String[] ids = diffByProduct.keySet().toArray(new String[0]);
+        Integer[] diffs = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            diffs[i] = diffByProduct.get(ids[i]);
+        }
+        return write(List.of(ids), () -> jdbcTemplate.query(
+                "UPDATE product p SET quantity = p.quantity + d.diff FROM unnest(?, ?) AS d(product_id, diff) " +
+                        "WHERE p.product_id = d.product_id RETURNING p.product_id, p.quantity, p.reorder_point",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("varchar", ids));
+                    ps.setArray(2, ps.getConnection().createArrayOf("integer", diffs));
+                },
+                this::mapStockLevel
+        ));
+    }
+
+    // รับสินค้าเข้าหลายรายการในคำสั่งเดียว: เพิ่มจำนวนและตั้งต้นทุนเฉลี่ยใหม่พร้อมกัน (ผู้เรียกล็อกแถวไว้ก่อนแล้ว)
+    public List<StockLevel> updateQuantitiesAndCosts(Map<String, Integer> diffByProduct, Map<String, ? extends Number> costByProduct) {
+        if (diffByProduct == null || diffByProduct.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String[] ids = diffByProduct.keySet().toArray(new String[0]);
+        Integer[] diffs = new Integer[ids.length];
+        BigDecimal[] costs = new BigDecimal[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            diffs[i] = diffByProduct.get(ids[i]);
+            Number cost = costByProduct.get(ids[i]);
+            costs[i] = cost == null || cost instanceof BigDecimal ? (BigDecimal) cost : new BigDecimal(cost.toString());
+        }
+        return write(List.of(ids), () -> jdbcTemplate.query(
+                "UPDATE product p SET quantity = p.quantity + d.diff, cost_price = d.cost " +
+                        "FROM unnest(?, ?, ?) AS d(product_id, diff, cost) " +
+                        "WHERE p.product_id = d.product_id RETURNING p.product_id, p.quantity, p.reorder_point",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("varchar", ids));
+                    ps.setArray(2, ps.getConnection().createArrayOf("integer", diffs));
+                    ps.setArray(3, ps.getConnection().createArrayOf("numeric", costs));
+                },
+                this::mapStockLevel
+        ));
+    }
+
+    private StockLevel mapStockLevel(ResultSet rs, int rowNum) throws SQLException {
+        return new StockLevel(rs.getString("product_id"), rs.getInt("quantity"), (Integer) rs.getObject("reorder_point"));
+    }
+
+    // จองสินค้าแบบมีเงื่อนไขในคำสั่งเดียวต่อสินค้า (ไม่ให้ยอดจองเกินคงเหลือ) คืนรายการ product_id ที่จองไม่สำเร็จ
+    // ผู้เรียกต้อง rollback เมื่อมีรายการที่จองไม่สำเร็จ
+    public List<String> reserve(Map<String, Integer> qtyByProduct) {
+        List<String> failed = new ArrayList<>();
+        if (qtyByProduct == null || qtyByProduct.isEmpty()) {
+            return failed;
+        }
+        TreeMap<String, Integer> sorted = new TreeMap<>(qtyByProduct);
+        List<String> ids = new ArrayList<>(sorted.keySet());
+        List<Object[]> args = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : sorted.entrySet()) {
+            args.add(new Object[]{entry.getValue(), entry.getKey(), entry.getValue()});
+        }
+        int[] counts = write(ids, () -> jdbcTemplate.batchUpdate(
+                "UPDATE product SET reserved_qty = reserved_qty + ? WHERE product_id = ? AND quantity - reserved_qty >= ?", args));
+        for (int i = 0; i < ids.size(); i++) {
+            if (counts[i] == 0) {
+                failed.add(ids.get(i));
+            }
+        }
+        return failed;
     }
 
-    public void updateQuantity(String productId, int diff) { // รับ String productId
-        jdbcTemplate.update("UPDATE product SET quantity = quantity + ? WHERE product_id = ?", diff, productId);
+    // ปรับยอดจองหลายสินค้าใน batch เดียว (ค่าติดลบ = ปล่อยยอดจอง)
+    public void updateReserved(Map<String, Integer> diffByProduct) {
+        if (diffByProduct == null || diffByProduct.isEmpty()) {
+            return;
+        }
+        TreeMap<String, Integer> sorted = new TreeMap<>(diffByProduct);
+        List<Object[]> args = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : sorted.entrySet()) {
+            args.add(new Object[]{entry.getValue(), entry.getKey()});
+        }
+        write(sorted.keySet(), () -> jdbcTemplate.batchUpdate("UPDATE product SET reserved_qty = reserved_qty + ? WHERE product_id = ?", args));
     }
 
     public void updateDetails(String productId, String productName, String description, String imageUrl, Number sellPrice) {
-        jdbcTemplate.update(
+        write(List.of(productId), () -> jdbcTemplate.update(
                 "UPDATE product SET product_name = ?, description = ?, image_url = ?, sell_price = ? WHERE product_id = ?",
                 productName,
                 description,
                 imageUrl,
                 sellPrice,
                 productId
-        );
+        ));
+    }
+
+    // คืน false ถ้าไม่พบสินค้า
+    public boolean updateImageUrl(String productId, String imageUrl) {
+        return write(List.of(productId), () -> jdbcTemplate.update(
+                "UPDATE product SET image_url = ? WHERE product_id = ?",
+                imageUrl,
+                productId
+        )) > 0;
     }
 
     public void updateCostPrice(String productId, Number newCostPrice) {
-        jdbcTemplate.update(
+        write(List.of(productId), () -> jdbcTemplate.update(
                 "UPDATE product SET cost_price = ? WHERE product_id = ?",
                 newCostPrice,
                 productId
-        );
+        ));
     }
 
     public void deactivate(String productId) {
-        jdbcTemplate.update("UPDATE product SET active = FALSE WHERE product_id = ?", productId);
+        write(List.of(productId), () -> jdbcTemplate.update("UPDATE product SET active = FALSE WHERE product_id = ?", productId));
+    }
+
+    // เพิ่ม version ของตาราง product (ETag ของ GET /products) หลังคำสั่งทำงานแล้วด้วย
+    // ถ้าอยู่ใน transaction จะกันไม่ให้ใส่ cache จนกว่า commit/rollback เพื่อไม่ให้ค่าที่ยังไม่ commit (หรือค่าเก่า) ค้างใน cache
+    private <T> T write(Collection<String> productIds, Supplier<T> statement) {
+        List<String> ids = List.copyOf(productIds);
+        ids.forEach(productCache::beginWrite);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    ids.forEach(productCache::endWrite);
+                }
+            });
+            T result = statement.get();
+            tableVersions.bump(TableVersions.Table.PRODUCT);
+            return result;
+        }
+        try {
+            T result = statement.get();
+            tableVersions.bump(TableVersions.Table.PRODUCT);
+            return result;
+        } finally {
+            ids.forEach(productCache::endWrite);
+        }
+    }
+
+    private Product copy(Product source) {
+        Product p = new Product();
+        p.setProductId(source.getProductId());
+        p.setProductName(source.getProductName());
+        p.setDescription(source.getDescription());
+        p.setUnit(source.getUnit());
+        p.setCostPrice(source.getCostPrice());
+        p.setSellPrice(source.getSellPrice());
+        p.setSupplierId(source.getSupplierId());
+        p.setQuantity(source.getQuantity());
+        p.setReservedQty(source.getReservedQty());
+        p.setReorderPoint(source.getReorderPoint());
+        p.setImageUrl(source.getImageUrl());
+        p.setActive(source.isActive());
+        return p;
     }
 }
@@ -4,12 +4,18 @@ import com.inv.model.PurchaseItem;
 import com.inv.model.PurchaseOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Repository;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public class PurchaseOrderRepository {
@@ -41,14 +47,32 @@ public class PurchaseOrderRepository {
         return item;
     }
 
-    public List<PurchaseOrder> findAll() {
-        String sql = "SELECT po_id, po_date, supplier_id, staff_id, total_amount, status, slip_url FROM PurchaseOrder ORDER BY po_date DESC";
-        return jdbcTemplate.query(sql, this::mapRow);
+    // keyset pagination เรียงจากใหม่ไปเก่าตาม (po_date, po_id); status = null คือทุกสถานะ
+    // afterDate/afterId = แถวสุดท้ายของหน้าก่อน (null = หน้าแรก)
+    public List<PurchaseOrder> findPage(String status, LocalDateTime afterDate, String afterId, int limit) {
+        StringBuilder sql = new StringBuilder(
+                "SELECT po_id, po_date, supplier_id, staff_id, total_amount, status, slip_url FROM PurchaseOrder WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+        if (status != null) {
+            sql.append(" AND status = ?");
+            args.add(status);
+        }
+        if (afterDate != null && afterId != null) {
+            sql.append(" AND (po_date, po_id) < (?, ?)");
+            args.add(Timestamp.valueOf(afterDate));
+            args.add(afterId);
+        }
+        sql.append(" ORDER BY po_date DESC, po_id DESC LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), this::mapRow, args.toArray());
     }
 
-    public List<PurchaseOrder> findByStatus(String status) {
-        String sql = "SELECT po_id, po_date, supplier_id, staff_id, total_amount, status, slip_url FROM PurchaseOrder WHERE status = ? ORDER BY po_date DESC";
-        return jdbcTemplate.query(sql, this::mapRow, status);
+    // จำนวนใบสั่งซื้อแยกตามสถานะ ใช้ทำหน้าสรุปโดยไม่ต้องโหลดทุกใบ
+    public Map<String, Integer> countByStatus() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT COALESCE(status, 'Unknown') AS status, COUNT(*) AS total FROM PurchaseOrder GROUP BY 1 ORDER BY 1",
+                (RowCallbackHandler) rs -> counts.put(rs.getString("status"), rs.getInt("total")));
+        return counts;
     }
 
     public PurchaseOrder findById(String poId) {
@@ -65,6 +89,24 @@ public class PurchaseOrderRepository {
         return jdbcTemplate.query(sql, this::mapItem, poId);
     }
 
+    // ดึงรายการสินค้าของหลายใบสั่งซื้อในคำสั่งเดียว แล้วจัดกลุ่มตาม po_id (ใบที่ไม่มีรายการจะไม่มี key)
+    public Map<String, List<PurchaseItem>> findItemsByPoIds(Collection<String> poIds) {
+        Map<String, List<PurchaseItem>> itemsByPo = new LinkedHashMap<>();
+        if (poIds == null || poIds.isEmpty()) {
+            return itemsByPo;
+        }
+        String[] idArray = poIds.toArray(new String[0]);
+        List<PurchaseItem> items = jdbcTemplate.query(
+                "SELECT po_item_id, po_id, product_id, quantity, unit_price FROM PurchaseItem WHERE po_id = ANY(?) ORDER BY po_id, po_item_id",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray)),
+                this::mapItem
+        );
+        for (PurchaseItem item : items) {
+            itemsByPo.computeIfAbsent(item.getPoId(), key -> new ArrayList<>()).add(item);
+        }
+        return itemsByPo;
+    }
+
     public PurchaseItem findItemById(String poItemId) {
         List<PurchaseItem> list = jdbcTemplate.query(
                 "SELECT po_item_id, po_id, product_id, quantity, unit_price FROM PurchaseItem WHERE po_item_id = ?",
@@ -74,6 +116,27 @@ public class PurchaseOrderRepository {
         return list.isEmpty() ? null : list.get(0);
     }
 
+    // ดึงหลายรายการของใบสั่งซื้อเดียวในคำสั่งเดียว (key = po_item_id); รายการที่ไม่ใช่ของ poId จะไม่ถูกคืนมา
+    public Map<String, PurchaseItem> findItemsByIds(String poId, Collection<String> poItemIds) {
+        Map<String, PurchaseItem> itemsById = new LinkedHashMap<>();
+        if (poItemIds == null || poItemIds.isEmpty()) {
+            return itemsById;
+        }
+        String[] idArray = poItemIds.toArray(new String[0]);
+        List<PurchaseItem> items = jdbcTemplate.query(
+                "SELECT po_item_id, po_id, product_id, quantity, unit_price FROM PurchaseItem WHERE po_id = ? AND po_item_id = ANY(?)",
+                ps -> {
+                    ps.setString(1, poId);
+                    ps.setArray(2, ps.getConnection().createArrayOf("varchar", idArray));
+                },
+                this::mapItem
+        );
+        for (PurchaseItem item : items) {
+            itemsById.put(item.getPoItemId(), item);
+        }
+        return itemsById;
+    }
+
     public void save(PurchaseOrder order) {
         jdbcTemplate.update(
                 "INSERT INTO PurchaseOrder(po_id, po_date, supplier_id, staff_id, total_amount, status, slip_url) VALUES (?,?,?,?,?,?,?)",
@@ -125,4 +188,21 @@ public class PurchaseOrderRepository {
     public void updateItemQuantity(String poItemId, int quantity) {
         jdbcTemplate.update("UPDATE PurchaseItem SET quantity = ? WHERE po_item_id = ?", quantity, poItemId);
     }
+
+    // ตั้งจำนวนและราคาที่รับจริงของหลายรายการใน batch เดียว
+    public void updateItemsReceived(List<PurchaseItem> items) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+                "UPDATE PurchaseItem SET quantity = ?, unit_price = ? WHERE po_item_id = ?",
+                items,
+                items.size(),
+                (ps, item) -> {
+                    ps.setInt(1, item.getQuantity());
+                    ps.setBigDecimal(2, item.getUnitPrice());
+                    ps.setString(3, item.getPoItemId());
+                }
+        );
+    }
 }
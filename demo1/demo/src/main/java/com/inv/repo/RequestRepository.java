@@ -10,7 +10,12 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Repository
 public class RequestRepository {
@@ -18,6 +23,19 @@ public class RequestRepository {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    // เพิ่มจำนวนที่เบิกแล้ว และถ้ารายการนี้เพิ่งเบิกครบ (remaining จาก > 0 เป็น <= 0) ให้ลด open_line_count ของใบเบิกในคำสั่งเดียวกัน
+    // ใช้การลดทีละ 1 แทนการนับใหม่ เพื่อให้ถูกต้องเมื่อเบิกหลายรายการของใบเดียวกันพร้อมกัน
+    private static final String UPDATE_ITEM_FULFILLMENT =
+            "WITH changed AS (UPDATE requestitem SET fulfilled_qty = fulfilled_qty + ? WHERE request_item_id = ? " +
+                    "RETURNING request_id, remaining_qty, remaining_qty + ? AS previous_remaining) " +
+                    "UPDATE request r SET open_line_count = r.open_line_count - 1 FROM changed c " +
+                    "WHERE r.request_id = c.request_id AND c.remaining_qty <= 0 AND c.previous_remaining > 0";
+
+    // ผู้ถือใบเบิกและเวลาหมดสิทธิ์ คืนเป็น NULL เมื่อสิทธิ์ถือหมดอายุแล้ว
+    private static final String ACTIVE_CLAIM_COLUMNS =
+            "CASE WHEN r.claim_expires_at > NOW() THEN r.claimed_by END AS claimed_by, " +
+                    "CASE WHEN r.claim_expires_at > NOW() THEN r.claim_expires_at END AS claim_expires_at";
+
     private Request mapRow(ResultSet rs, int rowNum) throws SQLException {
         Request r = new Request();
         r.setRequestId(rs.getString("request_id"));
@@ -33,6 +51,15 @@ public class RequestRepository {
         return r;
     }
 
+    // สำหรับ query ที่เลือก claimed_by/claim_expires_at มาด้วย (ส่งเฉพาะสิทธิ์ถือที่ยังไม่หมดอายุ)
+    private Request mapClaimedRow(ResultSet rs, int rowNum) throws SQLException {
+        Request r = mapRow(rs, rowNum);
+        r.setClaimedBy(rs.getString("claimed_by"));
+        Timestamp claimExpires = rs.getTimestamp("claim_expires_at");
+        r.setClaimExpiresAt(claimExpires != null ? claimExpires.toLocalDateTime() : null);
+        return r;
+    }
+
     private RequestItem mapRowItem(ResultSet rs, int rowNum) throws SQLException {
         RequestItem i = new RequestItem();
         i.setRequestItemId(rs.getString("request_item_id"));
@@ -73,9 +100,12 @@ public class RequestRepository {
         );
     }
 
+    // เพิ่ม open_line_count ของใบเบิกในคำสั่งเดียวกัน (รายการใหม่ยังไม่ได้เบิกเสมอ)
     public void saveRequestItem(RequestItem i) {
         jdbcTemplate.update(
-                "INSERT INTO requestitem(request_item_id, request_id, product_id, quantity, fulfilled_qty) VALUES (?,?,?,?,?)",
+                "WITH inserted AS (INSERT INTO requestitem(request_item_id, request_id, product_id, quantity, fulfilled_qty) " +
+                        "VALUES (?,?,?,?,?) RETURNING request_id) " +
+                        "UPDATE request SET open_line_count = open_line_count + 1 WHERE request_id IN (SELECT request_id FROM inserted)",
                 i.getRequestItemId(), i.getRequestId(), i.getProductId(), i.getQuantity(), 0
         );
     }
@@ -93,6 +123,48 @@ public class RequestRepository {
         return items.isEmpty() ? null : items.get(0);
     }
 
+    // ล็อกรายการเบิกไว้จนจบ transaction กันการเบิกรายการเดียวกันซ้ำพร้อมกัน
+    public RequestItem findItemByIdForUpdate(String requestItemId) {
+        String sql = "SELECT request_item_id, request_id, product_id, quantity, fulfilled_qty, remaining_qty " +
+                "FROM requestitem WHERE request_item_id = ? FOR UPDATE";
+        List<RequestItem> items = jdbcTemplate.query(sql, this::mapRowItem, requestItemId);
+        return items.isEmpty() ? null : items.get(0);
+    }
+
+    // ล็อกทุกรายการของใบเบิก (เรียงตาม id เพื่อให้ลำดับการล็อกคงที่)
+    public List<RequestItem> findItemsByRequestIdForUpdate(String requestId) {
+        String sql = "SELECT request_item_id, request_id, product_id, quantity, fulfilled_qty, remaining_qty " +
+                "FROM requestitem WHERE request_id = ? ORDER BY request_item_id FOR UPDATE";
+        return jdbcTemplate.query(sql, this::mapRowItem, requestId);
+    }
+
+    // ล็อกหลายรายการจากหลายใบเบิก (เรียงตาม id เหมือน findItemsByRequestIdForUpdate)
+    public List<RequestItem> findItemsByIdsForUpdate(Collection<String> requestItemIds) {
+        if (requestItemIds == null || requestItemIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String[] idArray = requestItemIds.toArray(new String[0]);
+        return jdbcTemplate.query(
+                "SELECT request_item_id, request_id, product_id, quantity, fulfilled_qty, remaining_qty " +
+                        "FROM requestitem WHERE request_item_id = ANY(?) ORDER BY request_item_id FOR UPDATE",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray)),
+                this::mapRowItem
+        );
+    }
+
+    public List<Request> findByIds(Collection<String> requestIds) {
+        if (requestIds == null || requestIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String[] idArray = requestIds.toArray(new String[0]);
+        return jdbcTemplate.query(
+                "SELECT r.request_id, r.request_date, r.status, r.order_id, r.customer_id, r.staff_id, r.description, r.approved_by, r.approved_date, " +
+                        ACTIVE_CLAIM_COLUMNS + " FROM request r WHERE r.request_id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray)),
+                this::mapClaimedRow
+        );
+    }
+
     public Request findById(String requestId) { // รับ String
         String sql = "SELECT request_id, request_date, status, order_id, customer_id, staff_id, description, approved_by, approved_date " +
                 "FROM request WHERE request_id = ?";
@@ -101,10 +173,40 @@ public class RequestRepository {
     }
 
     public List<Request> findApprovedRequests() {
-        String sql = "SELECT r.request_id, r.request_date, r.status, r.order_id, r.customer_id, r.staff_id, r.description, r.approved_by, r.approved_date " +
-                "FROM Request r WHERE r.status IN ('Approved', 'Pending') " +
-                "AND EXISTS (SELECT 1 FROM RequestItem ri WHERE ri.request_id = r.request_id AND ri.remaining_qty > 0)";
-        return jdbcTemplate.query(sql, this::mapRow);
+        // ใช้ partial index idx_request_open (เงื่อนไขต้องตรงกับ index)
+        String sql = "SELECT r.request_id, r.request_date, r.status, r.order_id, r.customer_id, r.staff_id, r.description, r.approved_by, r.approved_date, " +
+                ACTIVE_CLAIM_COLUMNS + " FROM Request r WHERE r.status IN ('Approved', 'Pending') AND r.open_line_count > 0";
+        return jdbcTemplate.query(sql, this::mapClaimedRow);
+    }
+
+    // คิวงานเบิก: ให้ staffId ถือใบเบิกถัดไปที่ยังไม่มีใครถือ (หรือสิทธิ์ถือหมดอายุแล้ว) ไม่เกิน limit ใบ
+    // SKIP LOCKED ทำให้ผู้รับงานพร้อมกันได้ใบเบิกคนละชุดโดยไม่ต้องรอกัน; ใบเบิกที่อยู่ในรอบหยิบที่เปิดอยู่จะไม่ถูกแจก
+    public List<Request> claimNext(String staffId, int limit, int leaseMinutes) {
+        String sql = "WITH next AS (SELECT r.request_id FROM Request r " +
+                "WHERE r.status IN ('Approved', 'Pending') AND r.open_line_count > 0 " +
+                "AND (r.claimed_by IS NULL OR r.claim_expires_at <= NOW()) " +
+                "AND NOT EXISTS (SELECT 1 FROM PickWaveItem w WHERE w.request_id = r.request_id AND w.active) " +
+                "ORDER BY r.request_date LIMIT ? FOR UPDATE SKIP LOCKED) " +
+                "UPDATE Request r SET claimed_by = ?, claim_expires_at = NOW() + make_interval(mins => ?) " +
+                "FROM next WHERE r.request_id = next.request_id " +
+                "RETURNING r.request_id, r.request_date, r.status, r.order_id, r.customer_id, r.staff_id, r.description, " +
+                "r.approved_by, r.approved_date, r.claimed_by, r.claim_expires_at";
+        return jdbcTemplate.query(sql, this::mapClaimedRow, limit, staffId, leaseMinutes);
+    }
+
+    // ผู้ถือใบเบิกที่สิทธิ์ยังไม่หมดอายุ (null = ไม่มีใครถือ)
+    public String findActiveClaimHolder(String requestId) {
+        List<String> holders = jdbcTemplate.queryForList(
+                "SELECT claimed_by FROM Request WHERE request_id = ? AND claimed_by IS NOT NULL AND claim_expires_at > NOW()",
+                String.class, requestId);
+        return holders.isEmpty() ? null : holders.get(0);
+    }
+
+    // คืนใบเบิกเข้าคิวก่อนหมดเวลา (เฉพาะผู้ที่ถืออยู่)
+    public int releaseClaim(String requestId, String staffId) {
+        return jdbcTemplate.update(
+                "UPDATE Request SET claimed_by = NULL, claim_expires_at = NULL WHERE request_id = ? AND claimed_by = ? AND claim_expires_at > NOW()",
+                requestId, staffId);
     }
 
     public List<RequestItem> findItemsByRequestId(String requestId) { // รับ String
@@ -113,8 +215,50 @@ public class RequestRepository {
         return jdbcTemplate.query(sql, this::mapRowItem, requestId);
     }
 
+    // รายการสินค้าของหลายใบเบิกใน query เดียว (key = request_id) ใช้กับ ?include=items ของหน้ารายการ
+    public Map<String, List<RequestItem>> findItemsByRequestIds(Collection<String> requestIds) {
+        Map<String, List<RequestItem>> itemsByRequest = new LinkedHashMap<>();
+        if (requestIds == null || requestIds.isEmpty()) {
+            return itemsByRequest;
+        }
+        String[] idArray = requestIds.toArray(new String[0]);
+        List<RequestItem> items = jdbcTemplate.query(
+                "SELECT request_item_id, request_id, product_id, quantity, fulfilled_qty, remaining_qty " +
+                        "FROM requestitem WHERE request_id = ANY(?) ORDER BY request_id, request_item_id",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray)),
+                this::mapRowItem
+        );
+        for (RequestItem item : items) {
+            itemsByRequest.computeIfAbsent(item.getRequestId(), key -> new ArrayList<>()).add(item);
+        }
+        return itemsByRequest;
+    }
+
     public void updateItemFulfillment(String requestItemId, int fulfillQty) { // รับ String
-        jdbcTemplate.update("UPDATE requestitem SET fulfilled_qty = fulfilled_qty + ? WHERE request_item_id = ?", fulfillQty, requestItemId);
+        jdbcTemplate.update(UPDATE_ITEM_FULFILLMENT, fulfillQty, requestItemId, fulfillQty);
+    }
+
+    // อัปเดตจำนวนที่เบิกหลายรายการใน batch เดียว (key = request_item_id)
+    public void updateItemFulfillments(Map<String, Integer> fulfillQtyByItem) {
+        if (fulfillQtyByItem == null || fulfillQtyByItem.isEmpty()) {
+            return;
+        }
+        // รอบหยิบส่งมาได้หลายพันรายการ จึงส่งเป็น array ในคำสั่งเดียว และลด open_line_count ครั้งเดียวต่อใบเบิก
+        TreeMap<String, Integer> sorted = new TreeMap<>(fulfillQtyByItem);
+        String[] idArray = sorted.keySet().toArray(new String[0]);
+        Integer[] qtyArray = sorted.values().toArray(new Integer[0]);
+        jdbcTemplate.update(
+                "WITH changed AS (UPDATE requestitem ri SET fulfilled_qty = ri.fulfilled_qty + t.qty " +
+                        "FROM unnest(?::varchar[], ?::int[]) AS t(request_item_id, qty) WHERE ri.request_item_id = t.request_item_id " +
+                        "RETURNING ri.request_id, ri.remaining_qty, ri.remaining_qty + t.qty AS previous_remaining), " +
+                        "closed AS (SELECT request_id, COUNT(*) AS line_count FROM changed " +
+                        "WHERE remaining_qty <= 0 AND previous_remaining > 0 GROUP BY request_id) " +
+                        "UPDATE request r SET open_line_count = r.open_line_count - c.line_count FROM closed c WHERE r.request_id = c.request_id",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray));
+                    ps.setArray(2, ps.getConnection().createArrayOf("int4", qtyArray));
+                }
+        );
     }
 
     public boolean areAllItemsFulfilled(String requestId) { // รับ String
@@ -127,14 +271,28 @@ public class RequestRepository {
         jdbcTemplate.update("UPDATE request SET status = ? WHERE request_id = ?", status, requestId);
     }
 
+    public void updateRequestStatuses(Collection<String> requestIds, String status) {
+        if (requestIds == null || requestIds.isEmpty()) {
+            return;
+        }
+        String[] idArray = requestIds.toArray(new String[0]);
+        jdbcTemplate.update(
+                "UPDATE request SET status = ? WHERE request_id = ANY(?)",
+                ps -> {
+                    ps.setString(1, status);
+                    ps.setArray(2, ps.getConnection().createArrayOf("varchar", idArray));
+                }
+        );
+    }
+
     public void updateStatus(String requestId, String status, String approverId) { // รับ String
         jdbcTemplate.update("UPDATE request SET status = ?, approved_by = ?, approved_date = NOW() WHERE request_id = ?", status, approverId, requestId);
     }
 
     public List<Request> findReadyToCloseRequests() {
+        // ใช้ partial index idx_request_ready_to_close (เงื่อนไขต้องตรงกับ index)
         String sql = "SELECT r.request_id, r.request_date, r.status, r.order_id, r.customer_id, r.staff_id, r.description, r.approved_by, r.approved_date " +
-                "FROM Request r WHERE r.status = 'Pending' " +
-                "AND NOT EXISTS (SELECT 1 FROM RequestItem ri WHERE ri.request_id = r.request_id AND ri.remaining_qty > 0)";
+                "FROM Request r WHERE r.status = 'Pending' AND r.open_line_count = 0";
         return jdbcTemplate.query(sql, this::mapRow);
     }
 
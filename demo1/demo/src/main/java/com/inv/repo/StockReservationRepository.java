@@ -0,0 +1,89 @@
+package com.inv.repo;
+
+import com.inv.model.StockReservation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// แถวจองของรายการเบิกถูกแก้ไขเฉพาะผู้ที่ถือล็อก RequestItem นั้นอยู่ (ลำดับล็อก RequestItem -> Product -> StockReservation)
+@Repository
+public class StockReservationRepository {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public void saveAll(List<StockReservation> reservations) {
+        if (reservations == null || reservations.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO StockReservation(request_item_id, request_id, product_id, quantity) VALUES (?,?,?,?)",
+                reservations,
+                reservations.size(),
+                (ps, reservation) -> {
+                    ps.setString(1, reservation.getRequestItemId());
+                    ps.setString(2, reservation.getRequestId());
+                    ps.setString(3, reservation.getProductId());
+                    ps.setInt(4, reservation.getQuantity());
+                }
+        );
+    }
+
+    // ยอดจองคงเหลือของแต่ละรายการเบิก (key = request_item_id; รายการที่ไม่มียอดจองจะไม่มี key)
+    public Map<String, Integer> findQuantitiesByItemIds(Collection<String> requestItemIds) {
+        Map<String, Integer> quantities = new HashMap<>();
+        if (requestItemIds == null || requestItemIds.isEmpty()) {
+            return quantities;
+        }
+        String[] idArray = requestItemIds.toArray(new String[0]);
+        jdbcTemplate.query(
+                "SELECT request_item_id, quantity FROM StockReservation WHERE request_item_id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray)),
+                rs -> {
+                    quantities.put(rs.getString("request_item_id"), rs.getInt("quantity"));
+                }
+        );
+        return quantities;
+    }
+
+    // ลดยอดจองตามจำนวนที่เบิกไปแล้ว แถวที่เหลือ 0 จะถูกลบ
+    public void consume(Map<String, Integer> qtyByItem) {
+        if (qtyByItem == null || qtyByItem.isEmpty()) {
+            return;
+        }
+        TreeMap<String, Integer> sorted = new TreeMap<>(qtyByItem);
+        String[] idArray = sorted.keySet().toArray(new String[0]);
+        Integer[] qtyArray = sorted.values().toArray(new Integer[0]);
+        jdbcTemplate.update(
+                "UPDATE StockReservation s SET quantity = s.quantity - t.qty " +
+                        "FROM unnest(?::varchar[], ?::int[]) AS t(request_item_id, qty) WHERE s.request_item_id = t.request_item_id",
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray));
+                    ps.setArray(2, ps.getConnection().createArrayOf("int4", qtyArray));
+                }
+        );
+        jdbcTemplate.update(
+                "DELETE FROM StockReservation WHERE request_item_id = ANY(?) AND quantity <= 0",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("varchar", idArray))
+        );
+    }
+
+    // ลบยอดจองทั้งหมดของใบเบิก คืนจำนวนที่ปล่อยรวมต่อสินค้า (key = product_id)
+    public Map<String, Integer> deleteByRequestId(String requestId) {
+        Map<String, Integer> releasedByProduct = new TreeMap<>();
+        jdbcTemplate.query(
+                "DELETE FROM StockReservation WHERE request_id = ? RETURNING product_id, quantity",
+                rs -> {
+                    releasedByProduct.merge(rs.getString("product_id"), rs.getInt("quantity"), Integer::sum);
+                },
+                requestId
+        );
+        return releasedByProduct;
+    }
+}
@@ -1,20 +1,44 @@
 package com.inv.repo;
 
 import com.inv.model.StockTransaction;
+import com.inv.model.StockTransactionFilter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 @Repository
 public class StockTransactionRepository {
 
+    // จำนวนแถวสูงสุดต่อหนึ่งคำสั่ง INSERT (8 พารามิเตอร์ต่อแถว ต่ำกว่าเพดาน 32767 ของ PostgreSQL)
+    static final int INSERT_CHUNK_SIZE = 1000;
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO StockTransaction(transaction_id, type, product_id, quantity, staff_id, description, batch_id, reference_id) VALUES ";
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    // group commit: เก็บแถวที่ save ใน transaction ไว้ก่อนแล้วเขียนรวดเดียวตอน beforeCommit (ยังอยู่ใน transaction เดิม)
+    // ข้อผิดพลาดของแถว (เช่น FK ผิด) จึงจะเห็นตอน commit แทนตอนเรียก save
+    @Value("${stock-ledger.group-commit:false}")
+    private boolean groupCommit;
+
+    private static final String SELECT_COLUMNS =
+            "SELECT transaction_id, transaction_date, type, product_id, quantity, staff_id, description, batch_id, reference_id ";
+
     private StockTransaction mapRow(ResultSet rs, int rowNum) throws SQLException {
         StockTransaction st = new StockTransaction();
         st.setTransactionId(rs.getString("transaction_id")); // rs.getString
@@ -30,6 +54,9 @@ public class StockTransactionRepository {
     }
 
     public void save(StockTransaction transaction) {
+        if (bufferIfGroupCommit(List.of(transaction))) {
+            return;
+        }
         // แก้ไข: เพิ่ม transaction_id และเปลี่ยน reference เป็น description
         jdbcTemplate.update(
                 "INSERT INTO StockTransaction(transaction_id, type, product_id, quantity, staff_id, description, batch_id, reference_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
@@ -44,14 +71,171 @@ public class StockTransactionRepository {
         );
     }
 
-    public List<StockTransaction> findAll() {
-        String sql = "SELECT transaction_id, transaction_date, type, product_id, quantity, staff_id, description, batch_id, reference_id " +
-                "FROM StockTransaction ORDER BY transaction_date DESC";
-        return jdbcTemplate.query(sql, this::mapRow);
+    // บันทึกหลายรายการใน batch เดียว (ใช้ตอนตัดสต็อกหลายล็อตพร้อมกัน)
+    public void saveAll(List<StockTransaction> transactions) {
+        if (transactions == null || transactions.isEmpty()) {
+            return;
+        }
+        if (bufferIfGroupCommit(transactions)) {
+            return;
+        }
+        insertRows(transactions);
+    }
+
+    void setGroupCommit(boolean groupCommit) {
+        this.groupCommit = groupCommit;
+    }
+
+    // เขียนแถวที่ค้างอยู่ใน buffer ของ transaction ปัจจุบันทันที (ให้ query ถัดไปใน transaction เดียวกันเห็นแถวเหล่านี้)
+    public void flushPending() {
+        PendingRows pending = (PendingRows) TransactionSynchronizationManager.getResource(this);
+        if (pending != null) {
+            pending.flush();
+        }
+    }
+
+    private boolean bufferIfGroupCommit(List<StockTransaction> transactions) {
+        if (!groupCommit || !TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return false;
+        }
+        PendingRows pending = (PendingRows) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new PendingRows();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.rows.addAll(transactions);
+        if (pending.rows.size() >= INSERT_CHUNK_SIZE) {
+            pending.flush(); // จำกัดหน่วยความจำของ transaction ที่เขียนจำนวนมาก
+        }
+        return true;
+    }
+
+    // INSERT หลายแถวต่อคำสั่ง (multi-row VALUES) ครั้งละไม่เกิน INSERT_CHUNK_SIZE แถว
+    private void insertRows(List<StockTransaction> transactions) {
+        for (int from = 0; from < transactions.size(); from += INSERT_CHUNK_SIZE) {
+            List<StockTransaction> chunk = transactions.subList(from, Math.min(from + INSERT_CHUNK_SIZE, transactions.size()));
+            StringBuilder sql = new StringBuilder(INSERT_PREFIX);
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?, ?)");
+            }
+            jdbcTemplate.update(sql.toString(), ps -> {
+                int index = 1;
+                for (StockTransaction transaction : chunk) {
+                    ps.setString(index++, transaction.getTransactionId());
+                    ps.setString(index++, transaction.getType());
+                    ps.setString(index++, transaction.getProductId());
+                    ps.setInt(index++, transaction.getQuantity());
+                    ps.setString(index++, transaction.getStaffId());
+                    ps.setString(index++, transaction.getDescription());
+                    ps.setString(index++, transaction.getBatchId());
+                    ps.setString(index++, transaction.getReferenceId());
+                }
+            });
+        }
+    }
+
+    // buffer ของหนึ่ง transaction; ผูกกับ thread ผ่าน TransactionSynchronizationManager
+    private final class PendingRows implements TransactionSynchronization {
+        private final List<StockTransaction> rows = new ArrayList<>();
+
+        @Override
+        public void flush() {
+            if (rows.isEmpty()) {
+                return;
+            }
+            List<StockTransaction> batch = new ArrayList<>(rows);
+            rows.clear();
+            insertRows(batch);
+        }
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(StockTransactionRepository.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(StockTransactionRepository.this, this);
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            flush();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            rows.clear();
+            TransactionSynchronizationManager.unbindResourceIfPossible(StockTransactionRepository.this);
+        }
+    }
+
+    // keyset pagination เรียงจากใหม่ไปเก่าตาม (transaction_date, transaction_id)
+    // afterDate/afterId = แถวสุดท้ายของหน้าก่อน (null = หน้าแรก)
+    public List<StockTransaction> findPage(StockTransactionFilter filter, LocalDateTime afterDate, String afterId, int limit) {
+        flushPending();
+        StringBuilder sql = new StringBuilder(SELECT_COLUMNS).append("FROM StockTransaction WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+        appendFilter(sql, args, filter);
+        if (afterDate != null && afterId != null) {
+            sql.append(" AND (transaction_date, transaction_id) < (?, ?)");
+            args.add(Timestamp.valueOf(afterDate));
+            args.add(afterId);
+        }
+        sql.append(" ORDER BY transaction_date DESC, transaction_id DESC LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(), this::mapRow, args.toArray());
+    }
+
+    // อ่านทั้งหมดตามเงื่อนไขแบบ streaming (เก่า -> ใหม่) ทีละแถวโดยไม่เก็บทั้งผลลัพธ์ไว้ใน heap
+    // PostgreSQL จะใช้ cursor ตาม fetch size ก็ต่อเมื่ออยู่ใน transaction (autocommit ปิด) ผู้เรียกต้องเป็น @Transactional
+    public void streamByFilter(StockTransactionFilter filter, int fetchSize, Consumer<StockTransaction> action) {
+        flushPending();
+        StringBuilder sql = new StringBuilder(SELECT_COLUMNS).append("FROM StockTransaction WHERE 1 = 1");
+        List<Object> args = new ArrayList<>();
+        appendFilter(sql, args, filter);
+        sql.append(" ORDER BY transaction_date, transaction_id");
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> action.accept(mapRow(rs, rs.getRow())));
+    }
+
+    private void appendFilter(StringBuilder sql, List<Object> args, StockTransactionFilter filter) {
+        if (filter == null) {
+            return;
+        }
+        appendEquals(sql, args, "product_id", filter.getProductId());
+        appendEquals(sql, args, "type", filter.getType());
+        appendEquals(sql, args, "staff_id", filter.getStaffId());
+        appendEquals(sql, args, "batch_id", filter.getBatchId());
+        appendEquals(sql, args, "reference_id", filter.getReferenceId());
+        if (filter.getFrom() != null) {
+            sql.append(" AND transaction_date >= ?");
+            args.add(Timestamp.valueOf(filter.getFrom()));
+        }
+        if (filter.getTo() != null) {
+            sql.append(" AND transaction_date < ?");
+            args.add(Timestamp.valueOf(filter.getTo()));
+        }
+    }
+
+    private void appendEquals(StringBuilder sql, List<Object> args, String column, String value) {
+        if (value != null) {
+            sql.append(" AND ").append(column).append(" = ?");
+            args.add(value);
+        }
     }
 
     public List<StockTransaction> findByReferenceId(String referenceId) {
-        String sql = "SELECT transaction_id, transaction_date, type, product_id, quantity, staff_id, description, batch_id, reference_id " +
+        flushPending();
+        String sql = SELECT_COLUMNS +
                 "FROM StockTransaction WHERE reference_id = ? ORDER BY transaction_date DESC";
         return jdbcTemplate.query(sql, this::mapRow, referenceId);
     }
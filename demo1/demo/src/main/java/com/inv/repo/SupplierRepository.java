@@ -1,5 +1,6 @@
 package com.inv.repo;
 
+import com.inv.cache.TableVersions;
 import com.inv.model.Supplier;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -15,6 +16,9 @@ public class SupplierRepository {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private TableVersions tableVersions;
+
     private Supplier mapRow(ResultSet rs, int rowNum) throws SQLException {
         Supplier s = new Supplier();
         s.setSupplierId(rs.getString("supplier_id")); // rs.getString
@@ -58,14 +62,17 @@ public class SupplierRepository {
                 s.getEmail(),
                 s.isActive()
         );
+        tableVersions.bump(TableVersions.Table.SUPPLIER);
     }
 
     public void update(String supplierId, String name, String address, String phone, String email) {
         String sql = "UPDATE Supplier SET supplier_name = ?, address = ?, phone = ?, email = ? WHERE supplier_id = ?";
         jdbcTemplate.update(sql, name, address, phone, email, supplierId);
+        tableVersions.bump(TableVersions.Table.SUPPLIER);
     }
 
     public void deactivate(String supplierId) {
         jdbcTemplate.update("UPDATE Supplier SET active = FALSE WHERE supplier_id = ?", supplierId);
+        tableVersions.bump(TableVersions.Table.SUPPLIER);
     }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package com.inv.repo;
 
+import com.inv.cache.TableVersions;
 import com.inv.model.Staff;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -15,6 +16,9 @@ public class UserRepository {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private TableVersions tableVersions;
+
     private Staff mapRow(ResultSet rs, int rowNum) throws SQLException {
         Staff s = new Staff();
         s.setStaffId(rs.getString("staff_id")); // rs.getString
@@ -57,9 +61,11 @@ public class UserRepository {
                 staff.getStaffName(), staff.getRole(), staff.getPhone(), staff.getEmail(),
                 staff.getPassword(), staff.isActive()
         );
+        tableVersions.bump(TableVersions.Table.STAFF);
     }
 
     public void updateActive(String staffId, boolean active) {
         jdbcTemplate.update("UPDATE Staff SET active = ? WHERE staff_id = ?", active, staffId);
+        tableVersions.bump(TableVersions.Table.STAFF);
     }
 }
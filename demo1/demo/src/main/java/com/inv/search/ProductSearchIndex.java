@@ -0,0 +1,465 @@
+package com.inv.search;
+
+import com.inv.model.Product;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+// index ค้นหาสินค้าในหน่วยความจำ (product_name, product_id, description) แบบ trigram
+// ภาษาไทยไม่มีช่องว่างระหว่างคำ จึงใช้ trigram ของตัวอักษรแทนการตัดคำ ทำให้ค้นกลางคำได้ทั้งไทยและอังกฤษ
+// คำค้นที่สั้นกว่า 3 ตัวอักษรจะค้นแบบขึ้นต้นคำ (prefix gram "\u0001" + 1-2 ตัวแรกของแต่ละคำ)
+// ตอนโหลดจะเรียง doc id ตามความยาวชื่อ (สั้นก่อน) เพื่อให้คำค้นกว้าง ๆ หยุดสแกนได้เร็วเมื่อได้ top-k ที่ชื่อขึ้นต้นด้วยคำค้นครบแล้ว
+// posting list เก็บ doc id เรียงจากน้อยไปมากเสมอ การแก้ไขจึงเป็นการต่อ doc ใหม่ท้ายสุดแล้วทิ้งอันเก่าไว้เป็น tombstone
+@Component
+public class ProductSearchIndex {
+
+    static final int MAX_DESCRIPTION_CHARS = 256;
+    private static final char PREFIX_MARK = '\u0001';
+    private static final int GRAM = 3;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object loadMonitor = new Object();
+
+    private State state = new State();
+    private boolean loaded;
+    // การแก้ไขที่เกิดขึ้นระหว่างโหลดทั้งก้อน จะนำไปใส่ซ้ำหลังโหลดเสร็จ (null = ไม่ได้โหลดอยู่)
+    private List<Product> pendingDuringLoad;
+
+    // โหลดใหม่ทั้งหมดจาก source (เช่น ProductRepository.findAll) โดยไม่บล็อกการค้นหาระหว่างอ่านข้อมูล
+    public void load(Supplier<? extends Collection<Product>> source) {
+        synchronized (loadMonitor) {
+            lock.writeLock().lock();
+            try {
+                pendingDuringLoad = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            State fresh;
+            try {
+                fresh = State.build(source.get());
+            } catch (RuntimeException e) {
+                lock.writeLock().lock();
+                try {
+                    pendingDuringLoad = null;
+                } finally {
+                    lock.writeLock().unlock();
+                }
+                throw e;
+            }
+            lock.writeLock().lock();
+            try {
+                for (Product change : pendingDuringLoad) {
+                    fresh.put(change);
+                }
+                pendingDuringLoad = null;
+                state = fresh;
+                loaded = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    public boolean isLoaded() {
+        lock.readLock().lock();
+        try {
+            return loaded;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return state.docIdByProduct.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // เพิ่มหรือแทนที่สินค้า (สินค้าที่ปิดใช้งานแล้วจะถูกเอาออก)
+    public void put(Product product) {
+        lock.writeLock().lock();
+        try {
+            if (pendingDuringLoad != null) {
+                pendingDuringLoad.add(product);
+            }
+            state.put(product);
+            if (state.shouldCompact()) {
+                state = state.compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String productId) {
+        Product removed = new Product();
+        removed.setProductId(productId);
+        removed.setActive(false);
+        put(removed);
+    }
+
+    // คืน product_id ที่ตรงกับคำค้น เรียงตามความเกี่ยวข้อง
+    public List<String> search(String query, int limit) {
+        String normalizedQuery = normalize(query);
+        List<String> tokens = tokens(normalizedQuery);
+        if (tokens.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            return state.search(normalizedQuery, tokens, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // NFKC + ตัวพิมพ์เล็ก และเปลี่ยนทุกอย่างที่ไม่ใช่ตัวอักษร/ตัวเลข/สระและวรรณยุกต์ไทย (combining mark) เป็นช่องว่างเดียว
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        String text = Normalizer.normalize(value, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            int type = Character.getType(cp);
+            if (Character.isLetterOrDigit(cp) || type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK) {
+                if (pendingSpace && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                pendingSpace = false;
+                sb.appendCodePoint(cp);
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static List<String> tokens(String normalized) {
+        List<String> tokens = new ArrayList<>();
+        if (normalized.isEmpty()) {
+            return tokens;
+        }
+        for (String token : normalized.split(" ")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    private static void addGrams(String token, Set<String> grams) {
+        grams.add(PREFIX_MARK + token.substring(0, 1));
+        if (token.length() >= 2) {
+            grams.add(PREFIX_MARK + token.substring(0, 2));
+        }
+        for (int i = 0; i + GRAM <= token.length(); i++) {
+            grams.add(token.substring(i, i + GRAM));
+        }
+    }
+
+    private static Set<String> queryGrams(String token) {
+        Set<String> grams = new LinkedHashSet<>();
+        if (token.length() < GRAM) {
+            grams.add(PREFIX_MARK + token);
+        } else {
+            for (int i = 0; i + GRAM <= token.length(); i++) {
+                grams.add(token.substring(i, i + GRAM));
+            }
+        }
+        return grams;
+    }
+
+    // คำค้นที่สั้นกว่า 3 ตัวอักษรต้องเป็นตัวขึ้นต้นคำ ส่วนที่ยาวกว่านั้นค้นกลางคำได้
+    private static boolean matches(String field, String token) {
+        return token.length() >= GRAM ? field.contains(token) : startsWord(field, token);
+    }
+
+    private static boolean startsWord(String field, String token) {
+        for (int at = field.indexOf(token); at >= 0; at = field.indexOf(token, at + 1)) {
+            if (at == 0 || field.charAt(at - 1) == ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // คะแนนความเกี่ยวข้อง (0 = trigram ตรงแต่ข้อความจริงไม่ตรง ให้ตัดทิ้ง)
+    static final int SCORE_ID = 1000;
+    static final int SCORE_NAME_EXACT = 800;
+    static final int SCORE_NAME_PREFIX = 600;
+    static final int SCORE_NAME_WORDS = 400;
+    static final int SCORE_NAME_CONTAINS = 300;
+    static final int SCORE_ID_CONTAINS = 200;
+    static final int SCORE_ANY_FIELD = 100;
+
+    private static int score(Doc doc, String normalizedQuery, List<String> tokens) {
+        boolean allInName = true;
+        boolean allWordsInName = true;
+        boolean allInId = true;
+        for (String token : tokens) {
+            boolean name = matches(doc.name(), token);
+            boolean id = matches(doc.id(), token);
+            if (!name && !id && !matches(doc.description(), token)) {
+                return 0;
+            }
+            allInName &= name;
+            allWordsInName &= name && startsWord(doc.name(), token);
+            allInId &= id;
+        }
+        if (doc.id().equals(normalizedQuery)) {
+            return SCORE_ID;
+        } else if (doc.name().equals(normalizedQuery)) {
+            return SCORE_NAME_EXACT;
+        } else if (doc.name().startsWith(normalizedQuery)) {
+            return SCORE_NAME_PREFIX;
+        } else if (allWordsInName) {
+            return SCORE_NAME_WORDS;
+        } else if (allInName) {
+            return SCORE_NAME_CONTAINS;
+        } else if (allInId) {
+            return SCORE_ID_CONTAINS;
+        }
+        return SCORE_ANY_FIELD;
+    }
+
+    // ลำดับผลลัพธ์รวมเป็น long เดียว (ยิ่งมากยิ่งดี): คะแนน > ชื่อสั้นกว่า > doc id น้อยกว่า
+    // เพื่อคัด top-k ด้วย heap ของ primitive โดยไม่ต้องสร้าง object ต่อผลลัพธ์
+    private static long rank(int score, int nameLength, int docId) {
+        return ((long) score << 43) | ((long) (0xFFF - Math.min(nameLength, 0xFFF)) << 31) | (Integer.MAX_VALUE - docId);
+    }
+
+    private static int scoreOf(long rank) {
+        return (int) (rank >>> 43);
+    }
+
+    private static int docIdOf(long rank) {
+        return Integer.MAX_VALUE - (int) (rank & Integer.MAX_VALUE);
+    }
+
+    private record Doc(String productId, String id, String name, String description) {
+
+        static Doc of(Product product) {
+            String description = normalize(product.getDescription());
+            if (description.length() > MAX_DESCRIPTION_CHARS) {
+                description = description.substring(0, MAX_DESCRIPTION_CHARS);
+            }
+            return new Doc(product.getProductId(), normalize(product.getProductId()), normalize(product.getProductName()), description);
+        }
+    }
+
+    // ข้อมูลของ index หนึ่งชุด; ถูกแก้ไขภายใต้ write lock ของ ProductSearchIndex เท่านั้น
+    private static final class State {
+        private final List<Doc> docs = new ArrayList<>();
+        private final Map<String, Integer> docIdByProduct = new HashMap<>();
+        private final Map<String, Integer> docIdByNormalizedId = new HashMap<>();
+        private final Map<String, IntList> postings = new HashMap<>();
+        // doc id ช่วง [0, sortedCount) เรียงตามความยาวชื่อ ส่วนที่เพิ่มทีหลังต่อท้ายโดยไม่เรียง
+        private int sortedCount;
+        private int tombstones;
+
+        static State build(Collection<Product> products) {
+            List<Doc> active = new ArrayList<>(products.size());
+            for (Product product : products) {
+                if (product.isActive()) {
+                    active.add(Doc.of(product));
+                }
+            }
+            return build(active);
+        }
+
+        private static State build(List<Doc> active) {
+            active.sort(Comparator.comparingInt((Doc doc) -> doc.name().length()).thenComparing(Doc::productId));
+            State state = new State();
+            for (Doc doc : active) {
+                state.add(doc);
+            }
+            state.sortedCount = state.docs.size();
+            return state;
+        }
+
+        void put(Product product) {
+            Integer previous = docIdByProduct.remove(product.getProductId());
+            if (previous != null) {
+                Doc old = docs.set(previous, null);
+                docIdByNormalizedId.remove(old.id(), previous);
+                tombstones++;
+            }
+            if (product.isActive()) {
+                add(Doc.of(product));
+            }
+        }
+
+        private void add(Doc doc) {
+            if (docIdByProduct.containsKey(doc.productId())) {
+                return;
+            }
+            int docId = docs.size();
+            docs.add(doc);
+            docIdByProduct.put(doc.productId(), docId);
+            docIdByNormalizedId.putIfAbsent(doc.id(), docId);
+
+            Set<String> grams = new LinkedHashSet<>();
+            for (String field : new String[]{doc.id(), doc.name(), doc.description()}) {
+                for (String token : tokens(field)) {
+                    addGrams(token, grams);
+                }
+            }
+            for (String gram : grams) {
+                postings.computeIfAbsent(gram, key -> new IntList()).add(docId);
+            }
+        }
+
+        boolean shouldCompact() {
+            int unsorted = docs.size() - sortedCount;
+            return (tombstones > 1024 && tombstones > docIdByProduct.size()) || unsorted > Math.max(1024, sortedCount / 8);
+        }
+
+        State compact() {
+            List<Doc> live = new ArrayList<>(docIdByProduct.size());
+            for (Doc doc : docs) {
+                if (doc != null) {
+                    live.add(doc);
+                }
+            }
+            return build(live);
+        }
+
+        List<String> search(String normalizedQuery, List<String> tokens, int limit) {
+            List<IntList> lists = new ArrayList<>();
+            for (String token : tokens) {
+                for (String gram : queryGrams(token)) {
+                    IntList list = postings.get(gram);
+                    if (list == null) {
+                        return new ArrayList<>();
+                    }
+                    lists.add(list);
+                }
+            }
+            lists.sort(Comparator.comparingInt(IntList::size));
+
+            IntList smallest = lists.get(0);
+            int[] candidates = Arrays.copyOf(smallest.values, smallest.size);
+            int count = candidates.length;
+            for (int i = 1; i < lists.size() && count > 0; i++) {
+                IntList other = lists.get(i);
+                int kept = 0;
+                for (int c = 0; c < count; c++) {
+                    if (Arrays.binarySearch(other.values, 0, other.size, candidates[c]) >= 0) {
+                        candidates[kept++] = candidates[c];
+                    }
+                }
+                count = kept;
+            }
+
+            // min-heap ขนาด limit: heap[0] คืออันดับแย่ที่สุดที่ยังติด top-k
+            long[] heap = new long[limit];
+            int heapSize = 0;
+            // รหัสสินค้าตรงตัวได้คะแนนสูงสุด หาใน map ก่อนเพื่อให้หยุดสแกนกลางทางได้
+            Integer exactId = docIdByNormalizedId.get(normalizedQuery);
+            if (exactId != null && Arrays.binarySearch(candidates, 0, count, exactId) >= 0) {
+                heap[heapSize++] = rank(SCORE_ID, docs.get(exactId).name().length(), exactId);
+            }
+            for (int c = 0; c < count; c++) {
+                int docId = candidates[c];
+                // ช่วงที่เรียงตามความยาวชื่อ: ถ้า top-k เต็มด้วยชื่อที่ขึ้นต้นด้วยคำค้นแล้ว doc ถัดไปชื่อยาวกว่าหรือเท่ากันจะไม่มีทางติด
+                // (ชื่อที่ตรงคำค้นทั้งหมดสั้นที่สุดในกลุ่มนี้ จึงถูกสแกนก่อนเสมอ) ข้ามไปสแกนเฉพาะส่วนที่ต่อท้ายทีหลัง
+                if (docId < sortedCount && heapSize == limit && scoreOf(heap[0]) >= SCORE_NAME_PREFIX) {
+                    int tail = Arrays.binarySearch(candidates, c, count, sortedCount);
+                    c = (tail >= 0 ? tail : -tail - 1) - 1;
+                    continue;
+                }
+                Doc doc = docs.get(docId);
+                if (doc == null || (exactId != null && docId == exactId)) {
+                    continue;
+                }
+                int score = score(doc, normalizedQuery, tokens);
+                if (score <= 0) {
+                    continue;
+                }
+                long rank = rank(score, doc.name().length(), docId);
+                if (heapSize < limit) {
+                    heap[heapSize] = rank;
+                    siftUp(heap, heapSize++);
+                } else if (rank > heap[0]) {
+                    heap[0] = rank;
+                    siftDown(heap, heapSize);
+                }
+            }
+            long[] ranked = Arrays.copyOf(heap, heapSize);
+            Arrays.sort(ranked);
+            List<String> result = new ArrayList<>(heapSize);
+            for (int i = ranked.length - 1; i >= 0; i--) {
+                result.add(docs.get(docIdOf(ranked[i])).productId());
+            }
+            return result;
+        }
+    }
+
+    private static void siftUp(long[] heap, int index) {
+        long value = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] <= value) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        long value = heap[0];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (heap[child] >= value) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
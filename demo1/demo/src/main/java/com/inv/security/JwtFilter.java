@@ -1,6 +1,5 @@
 package com.inv.security;
 
-import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -46,10 +45,11 @@ public class JwtFilter extends OncePerRequestFilter {
         if (authHeader != null && authHeader.startsWith("Bearer ")) {
             try {
                 String token = authHeader.substring(7);
-                Claims claims = jwtUtil.validateToken(token);
+                // token ที่เคยตรวจผ่านแล้วได้จาก cache ไม่ต้องตรวจลายเซ็นซ้ำทุก request
+                JwtUtil.VerifiedToken verified = jwtUtil.verify(token);
 
-                String staffId = claims.getSubject();
-                String role = claims.get("role", String.class);
+                String staffId = verified.staffId();
+                String role = verified.role();
 
                 UsernamePasswordAuthenticationToken auth =
                         new UsernamePasswordAuthenticationToken(staffId, null, List.of(new SimpleGrantedAuthority("ROLE_" + role)));
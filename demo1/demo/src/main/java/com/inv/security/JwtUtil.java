@@ -1,37 +1,98 @@
 package com.inv.security;
 
+import com.inv.cache.CacheStats;
+import com.inv.cache.LruCache;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 @Component
 public class JwtUtil {
     private final Key secretKey = Keys.secretKeyFor(SignatureAlgorithm.HS256);
-    private final long expirationMs = 9000000; // 2.5 ชั่วโมง
+    private final long expirationMs;
+    private final LongSupplier clock;
+    // JwtParser ไม่เปลี่ยนสถานะหลังสร้าง ใช้ร่วมกันทุก request ได้
+    private final JwtParser parser;
+    // token ที่ตรวจลายเซ็นผ่านแล้ว (key = SHA-256 ของ token ไม่เก็บ token ตัวจริงไว้) request ถัดไปที่ใช้ token เดิม
+    // จึงไม่ต้องตรวจ HMAC และแปลง JSON ซ้ำ; ค่าที่ถึง exp แล้วจะถูกตรวจเต็มอีกครั้ง (ซึ่งจะไม่ผ่าน)
+    private final LruCache<String, VerifiedToken> verifiedTokens;
+
+    // ผู้ใช้ที่ได้จาก token ที่ตรวจผ่านแล้ว
+    public record VerifiedToken(String staffId, String role, long expiresAtMillis) {
+    }
+
+    @Autowired
+    public JwtUtil(@Value("${jwt.verified-cache.max-size:10000}") int verifiedCacheSize) {
+        this(verifiedCacheSize, 9000000, System::currentTimeMillis); // token อายุ 2.5 ชั่วโมง
+    }
+
+    JwtUtil(int verifiedCacheSize, long expirationMs, LongSupplier clock) {
+        this.expirationMs = expirationMs;
+        this.clock = clock;
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(secretKey)
+                .setClock(() -> new Date(clock.getAsLong()))
+                .build();
+        this.verifiedTokens = new LruCache<>(verifiedCacheSize, expirationMs, TimeUnit.MILLISECONDS);
+    }
 
     public String generateToken(String staffId, String role) {
+        long now = clock.getAsLong();
         return Jwts.builder()
                 .setSubject(staffId)   // ใช้ staff_id
                 .claim("role", role)
-                .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + expirationMs))
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + expirationMs))
                 .signWith(secretKey)
                 .compact();
     }
 
     public String extractStaffId(String token) {
-        return validateToken(token).getSubject();
+        return verify(token).staffId();
     }
 
     public Claims validateToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(secretKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return parser.parseClaimsJws(token).getBody();
+    }
+
+    // ตรวจ token แบบใช้ cache: ไม่ผ่านจะโยน JwtException เหมือน validateToken
+    public VerifiedToken verify(String token) {
+        String key = hash(token);
+        VerifiedToken cached = verifiedTokens.get(key);
+        if (cached != null && clock.getAsLong() < cached.expiresAtMillis()) {
+            return cached;
+        }
+        Claims claims = validateToken(token);
+        Date expiration = claims.getExpiration();
+        VerifiedToken verified = new VerifiedToken(claims.getSubject(), claims.get("role", String.class),
+                expiration != null ? expiration.getTime() : Long.MAX_VALUE);
+        if (expiration != null) {
+            verifiedTokens.put(key, verified);
+        }
+        return verified;
     }
-}
 
+    public CacheStats verifiedTokenCacheStats() {
+        return verifiedTokens.stats();
+    }
+
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
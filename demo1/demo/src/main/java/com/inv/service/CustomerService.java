@@ -1,5 +1,7 @@
 package com.inv.service;
 
+import com.inv.cache.TableVersions;
+import com.inv.id.IdGenerator;
 import com.inv.model.Customer;
 import com.inv.repo.CustomerRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,7 +10,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
-import java.util.UUID; // Import เพิ่ม
 
 @Service
 public class CustomerService {
@@ -16,6 +17,16 @@ public class CustomerService {
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private TableVersions tableVersions;
+
+    public String getCustomerListETag() {
+        return tableVersions.etag(TableVersions.Table.CUSTOMER);
+    }
+
     public List<Customer> getAllCustomers() {
         return customerRepository.findAll();
     }
@@ -42,7 +53,7 @@ public class CustomerService {
             throw new ResponseStatusException(HttpStatus.CONFLICT, "อีเมลนี้มีในระบบแล้ว (Email already exists)");
         }
 
-        String customerId = "CUS-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        String customerId = idGenerator.nextId("CUS-");
         customer.setCustomerId(customerId);
         customer.setCustomerName(name);
         customer.setAddress(address);
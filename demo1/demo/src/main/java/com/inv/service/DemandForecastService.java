@@ -0,0 +1,128 @@
+package com.inv.service;
+
+import com.inv.forecast.DemandForecaster;
+import com.inv.model.ReorderSuggestion;
+import com.inv.repo.DemandForecastRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// พยากรณ์ความต้องการจาก ledger ทุกคืน แล้วคำนวณจำนวนแนะนำให้สั่งซื้อจากยอดคงเหลือปัจจุบันตอนที่ขอดู
+// (ค่าพยากรณ์เปลี่ยนวันละครั้ง แต่ยอดคงเหลือ/ยอดที่สั่งไว้เปลี่ยนตลอด จึงไม่เก็บจำนวนแนะนำไว้ล่วงหน้า)
+@Service
+public class DemandForecastService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DemandForecastService.class);
+    static final int FETCH_SIZE = 10_000;
+
+    @Autowired
+    private DemandForecastRepository demandForecastRepository;
+
+    @Autowired
+    private DemandForecaster demandForecaster;
+
+    // จำนวนวันที่ต้องการให้ของที่สั่งพอใช้ (รวมเวลารอของ)
+    @Value("${demand-forecast.cover-days:14}")
+    private int coverDays;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile ForecastRun lastRun;
+
+    public record ForecastRun(int products, long elapsedMillis, LocalDateTime computedAt) {
+    }
+
+    // สถานะสำหรับหน้าจอ: กำลังคำนวณอยู่หรือไม่ และผลของรอบล่าสุดที่เสร็จแล้ว (null ถ้ายังไม่มีตั้งแต่ start)
+    public record RefreshStatus(boolean running, ForecastRun lastRun) {
+    }
+
+    // รอบกลางคืน: ถ้ามีรอบที่สั่งจากหน้าจอค้างอยู่ก็ข้ามไป ไม่ต้องคำนวณซ้ำ
+    @Scheduled(cron = "${demand-forecast.cron:0 30 1 * * *}")
+    public void scheduledRefresh() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Skipping scheduled demand forecast refresh: another refresh is still running");
+            return;
+        }
+        try {
+            refreshForecasts();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // สั่งคำนวณใหม่จากหน้าจอ: ทำใน background แล้วตอบกลับทันที (ดูผลได้จาก getRefreshStatus)
+    public RefreshStatus startRefresh() {
+        if (!running.compareAndSet(false, true)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "กำลังคำนวณค่าพยากรณ์อยู่ กรุณาลองใหม่ภายหลัง");
+        }
+        Thread.ofVirtual().name("demand-forecast-refresh").start(() -> {
+            try {
+                refreshForecasts();
+            } catch (RuntimeException e) {
+                logger.error("Demand forecast refresh failed", e);
+            } finally {
+                running.set(false);
+            }
+        });
+        return new RefreshStatus(true, lastRun);
+    }
+
+    public RefreshStatus getRefreshStatus() {
+        return new RefreshStatus(running.get(), lastRun);
+    }
+
+    // ช่วงประวัติ = history-days วันเต็มก่อนวันนี้ (ไม่นับวันนี้ที่ยังไม่จบ)
+    // ทั้งรอบอยู่ใน transaction เดียว: อ่าน ledger ด้วย cursor แล้วแทนค่าพยากรณ์ทั้งหมด ผู้อ่านจึงไม่เห็นค่าครึ่งรอบ
+    // (ใช้ TransactionTemplate เพราะถูกเรียกจากในคลาสเอง @Transactional จึงไม่มีผล) ผู้เรียกต้องถือ running ไว้แล้ว
+    private ForecastRun refreshForecasts() {
+        long started = System.nanoTime();
+        LocalDateTime computedAt = LocalDateTime.now();
+        LocalDate to = computedAt.toLocalDate();
+        LocalDate from = to.minusDays(demandForecaster.getHistoryDays());
+        Map<String, Double> forecasts = transactionTemplate.execute(status -> {
+            Map<String, Double> computed = demandForecaster.forecast(
+                    consumer -> demandForecastRepository.streamDailyOutTotals(from, to, FETCH_SIZE, consumer));
+            demandForecastRepository.saveForecasts(computed, computedAt);
+            demandForecastRepository.deleteComputedBefore(computedAt);
+            return computed;
+        });
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+        logger.info("Computed demand forecasts for {} products from {} to {} in {} ms", forecasts.size(), from, to, elapsedMillis);
+        ForecastRun run = new ForecastRun(forecasts.size(), elapsedMillis, computedAt);
+        lastRun = run;
+        return run;
+    }
+
+    // เฉพาะสินค้าที่ต้องสั่งเพิ่ม (suggestedQty > 0) เรียงตามผู้ขายแล้วตามชื่อสินค้า
+    public List<ReorderSuggestion> getSuggestions(String supplierId) {
+        String supplier = supplierId == null || supplierId.isBlank() ? null : supplierId.trim();
+        List<ReorderSuggestion> suggestions = new ArrayList<>();
+        for (ReorderSuggestion suggestion : demandForecastRepository.findSuggestionInputs(supplier)) {
+            int target = (int) Math.ceil(suggestion.getDailyDemand() * coverDays);
+            if (suggestion.getReorderPoint() != null) {
+                target = Math.max(target, suggestion.getReorderPoint() + 1);
+            }
+            int suggested = target - (suggestion.getOnHand() - suggestion.getReserved()) - suggestion.getOnOrder();
+            if (suggested > 0) {
+                suggestion.setSuggestedQty(suggested);
+                suggestions.add(suggestion);
+            }
+        }
+        return suggestions;
+    }
+}
@@ -1,35 +1,108 @@
 package com.inv.service;
 
-import com.cloudinary.Cloudinary;
-import com.cloudinary.utils.ObjectUtils;
+import com.inv.event.ChangeEventPublisher;
+import com.inv.event.EventTopic;
+import com.inv.id.IdGenerator;
+import com.inv.image.ImageStore;
+import com.inv.image.ImageStoreGuard;
+import com.inv.image.ImageStoreStats;
+import com.inv.image.ImageStoreUnavailableException;
+import com.inv.image.ThumbnailCache;
+import com.inv.model.ImageUpload;
+import com.inv.model.Product;
+import com.inv.repo.ImageUploadRepository;
+import com.inv.repo.ProductRepository;
+import com.inv.repo.PurchaseOrderRepository;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
+// อัปโหลดรูปผ่าน ImageStore: ทุกไฟล์ถูกพักลงดิสก์ก่อน (MultipartFile.transferTo ไม่อ่านทั้งไฟล์เข้า heap)
+// โหมด async คืน assetId ทันที แล้วอัปโหลดใน virtual thread (พร้อมกันไม่เกิน concurrency) พร้อมลองใหม่แบบ backoff
+// เสร็จแล้วใส่ URL ให้ Product.image_url หรือ PurchaseOrder.slip_url; ไฟล์ที่พักค้างตอนปิดเครื่องจะถูกอัปโหลดต่อเมื่อ start ใหม่
+// ทุกการเรียก ImageStore ผ่าน ImageStoreGuard (bulkhead, timeout ต่อครั้ง, circuit breaker) ไม่ให้ที่เก็บรูปที่ช้าลาก thread ของ servlet
+// รูปสินค้าถูกย่อเป็น thumbnail หลายขนาดจากไฟล์พัก (ThumbnailCache) ให้หน้ารายการสินค้าไม่ต้องโหลดรูปเต็ม
 @Service
 public class ImageService {
 
     private static final Logger logger = LoggerFactory.getLogger(ImageService.class);
+    static final String KIND_PRODUCT = "PRODUCT";
+    static final String KIND_PURCHASE_ORDER = "PURCHASE_ORDER";
+    private static final Pattern SAFE_EXTENSION = Pattern.compile("\\.[A-Za-z0-9]{1,5}");
+    private static final int MAX_ERROR_LENGTH = 500;
 
-    private final Cloudinary cloudinary;
+    private final ImageStore imageStore;
     private final String productFolder;
     private final String purchaseOrderFolder;
+    private final Path spoolDir;
+    private final int maxPending;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final Semaphore uploadPermits;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final long startedAt = System.currentTimeMillis();
+    private final ExecutorService uploadExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("image-upload-", 1).factory());
+
+    @Autowired
+    private ImageUploadRepository imageUploadRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private PurchaseOrderRepository purchaseOrderRepository;
+
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private ChangeEventPublisher changeEvents;
+
+    @Autowired
+    private ThumbnailCache thumbnailCache;
+
+    @Autowired
+    private ImageStoreGuard imageStoreGuard;
 
     public ImageService(
-            Cloudinary cloudinary,
+            ImageStore imageStore,
             @Value("${cloudinary.folder:inventory/products}") String productFolder,
-            @Value("${cloudinary.purchase-order-folder:inventory/purchase-orders}") String purchaseOrderFolder
+            @Value("${cloudinary.purchase-order-folder:inventory/purchase-orders}") String purchaseOrderFolder,
+            @Value("${image-upload.spool-dir:${java.io.tmpdir}/inv-image-spool}") String spoolDir,
+            @Value("${image-upload.concurrency:4}") int concurrency,
+            @Value("${image-upload.max-pending:200}") int maxPending,
+            @Value("${image-upload.max-attempts:3}") int maxAttempts,
+            @Value("${image-upload.retry-backoff-millis:1000}") long retryBackoffMillis
     ) {
-        this.cloudinary = cloudinary;
+        this.imageStore = imageStore;
         this.productFolder = productFolder;
         this.purchaseOrderFolder = purchaseOrderFolder;
+        this.spoolDir = Paths.get(spoolDir).toAbsolutePath();
+        this.uploadPermits = new Semaphore(Math.max(1, concurrency));
+        this.maxPending = maxPending;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBackoffMillis = retryBackoffMillis;
     }
 
     public String uploadProductImage(MultipartFile file) {
@@ -40,44 +113,257 @@ public class ImageService {
         return uploadToFolder(file, purchaseOrderFolder);
     }
 
+    // async: คืนสถานะ Pending ทันที แล้วใส่ URL ให้สินค้าเมื่ออัปโหลดเสร็จ (ดูสถานะที่ GET /images/uploads/{assetId})
+    public ImageUpload submitProductImage(MultipartFile file, String productId) {
+        if (productRepository.findById(productId) == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบสินค้า (Product not found)");
+        }
+        return submit(file, KIND_PRODUCT, productId);
+    }
+
+    public ImageUpload submitPurchaseOrderSlip(MultipartFile file, String poId) {
+        if (purchaseOrderRepository.findById(poId) == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบใบสั่งซื้อ");
+        }
+        return submit(file, KIND_PURCHASE_ORDER, poId);
+    }
+
+    // thumbnail คือไฟล์บนดิสก์ที่พร้อมส่ง; ถ้ายังไม่มี thumbnail จะเป็น null และให้ redirect ไปรูปเต็ม (originalUrl) แทน
+    public record ProductImage(String originalUrl, Path thumbnail, String version) {
+    }
+
+    // size ว่าง = รูปเต็มความละเอียด; thumbnail ที่ยังไม่มีจะถูกสร้างเบื้องหลังให้ request ถัดไป
+    public ProductImage getProductImage(String productId, Integer size) {
+        Product product = productRepository.findById(productId);
+        if (product == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบสินค้า (Product not found)");
+        }
+        String imageUrl = product.getImageUrl();
+        if (imageUrl == null || imageUrl.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "สินค้านี้ยังไม่มีรูปภาพ");
+        }
+        if (size == null) {
+            return new ProductImage(imageUrl, null, null);
+        }
+        if (size <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "size ต้องมากกว่า 0");
+        }
+        Path thumbnail = thumbnailCache.find(productId, imageUrl, thumbnailCache.resolveSize(size));
+        if (thumbnail == null) {
+            thumbnailCache.generate(productId, imageUrl);
+        }
+        return new ProductImage(imageUrl, thumbnail, ThumbnailCache.version(imageUrl));
+    }
+
+    public ImageStoreStats getStoreStats() {
+        return imageStoreGuard.stats();
+    }
+
+    public ImageStoreStats getThumbnailSourceStats() {
+        return thumbnailCache.sourceStats();
+    }
+
+    public ImageUpload getUpload(String assetId) {
+        ImageUpload upload = imageUploadRepository.findById(assetId);
+        if (upload == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบรายการอัปโหลดที่ระบุ");
+        }
+        return upload;
+    }
+
     private String uploadToFolder(MultipartFile file, String folder) {
+        checkUpload(file);
+        Path spooled = spool(file, idGenerator.nextId("IMG-"));
+        try {
+            return imageStoreGuard.call("store", () -> imageStore.store(spooled, folder));
+        } catch (ImageStoreUnavailableException e) {
+            // ที่เก็บรูปช้า/ล่ม: ตอบ 503 ทันทีแทนการถือ thread ของ servlet ไว้รอ
+            logger.warn("Image store unavailable: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "ระบบเก็บรูปภาพไม่พร้อมใช้งานชั่วคราว กรุณาลองใหม่ภายหลัง");
+        } catch (IOException e) {
+            logger.error("Failed to upload image", e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "เกิดข้อผิดพลาดระหว่างอัปโหลดรูปภาพ");
+        } finally {
+            deleteQuietly(spooled);
+        }
+    }
+
+    private ImageUpload submit(MultipartFile file, String kind, String targetId) {
+        checkUpload(file);
+        // จำกัดจำนวนที่รออยู่ ไม่ให้ไฟล์พักเต็มดิสก์เมื่อปลายทางช้า
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "มีรูปภาพรออัปโหลดมากเกินไป กรุณาลองใหม่ภายหลัง");
+        }
+        Path spooled = null;
+        try {
+            ImageUpload upload = new ImageUpload();
+            upload.setAssetId(idGenerator.nextId("IMG-"));
+            upload.setKind(kind);
+            upload.setTargetId(targetId);
+            upload.setStatus("Pending");
+            spooled = spool(file, upload.getAssetId());
+            imageUploadRepository.save(upload);
+            Path source = spooled;
+            uploadExecutor.execute(() -> process(upload, source));
+            return upload;
+        } catch (RuntimeException e) {
+            pending.decrementAndGet();
+            if (spooled != null) {
+                deleteQuietly(spooled);
+            }
+            throw e;
+        }
+    }
+
+    private void checkUpload(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "กรุณาเลือกไฟล์รูปภาพที่ต้องการอัปโหลด");
         }
-
-        if (cloudinary == null || isBlank(cloudinary.config.cloudName)) {
-            logger.error("Cloudinary is not configured properly. Please check credentials.");
+        if (imageStore == null || !imageStore.isAvailable()) {
+            logger.error("Image store is not configured properly. Please check credentials.");
             throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "ไม่สามารถอัปโหลดรูปภาพได้ในขณะนี้");
         }
+    }
+
+    // ชื่อไฟล์พัก = assetId + นามสกุลเดิม เพื่อให้หา ImageUpload กลับเจอตอน start ใหม่
+    private Path spool(MultipartFile file, String assetId) {
+        String original = file.getOriginalFilename();
+        String extension = "";
+        if (original != null && original.lastIndexOf('.') >= 0) {
+            String candidate = original.substring(original.lastIndexOf('.'));
+            if (SAFE_EXTENSION.matcher(candidate).matches()) {
+                extension = candidate.toLowerCase();
+            }
+        }
+        try {
+            Files.createDirectories(spoolDir);
+            Path target = spoolDir.resolve(assetId + extension);
+            file.transferTo(target);
+            return target;
+        } catch (IOException e) {
+            logger.error("Failed to spool uploaded image", e);
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "เกิดข้อผิดพลาดระหว่างอัปโหลดรูปภาพ");
+        }
+    }
 
+    private void process(ImageUpload upload, Path spooled) {
+        String assetId = upload.getAssetId();
         try {
-            Map<?, ?> uploadResult = cloudinary.uploader().upload(
-                    file.getBytes(),
-                    ObjectUtils.asMap(
-                            "folder", folder,
-                            "resource_type", "image"
-                    )
-            );
-
-            Object secureUrl = uploadResult.get("secure_url");
-            if (secureUrl instanceof String secureUrlString && !secureUrlString.isBlank()) {
-                return secureUrlString;
+            uploadPermits.acquire();
+            boolean done = false;
+            String url = null;
+            try {
+                for (int attempt = 1; ; attempt++) {
+                    imageUploadRepository.markUploading(assetId, attempt);
+                    try {
+                        if (url == null) {
+                            String folder = KIND_PRODUCT.equals(upload.getKind()) ? productFolder : purchaseOrderFolder;
+                            url = imageStoreGuard.call("store", () -> imageStore.store(spooled, folder));
+                        }
+                        applyToTarget(upload, url);
+                        imageUploadRepository.markDone(assetId, url);
+                        done = true;
+                        break;
+                    } catch (IOException | RuntimeException e) {
+                        String error = truncate(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+                        if (attempt >= maxAttempts) {
+                            logger.warn("Image upload {} failed after {} attempts: {}", assetId, attempt, error);
+                            imageUploadRepository.markFailed(assetId, url, error);
+                            break;
+                        }
+                        imageUploadRepository.recordError(assetId, error);
+                        long backoff = retryBackoffMillis << (attempt - 1);
+                        if (e instanceof ImageStoreUnavailableException unavailable) {
+                            // circuit เปิดอยู่: รอจนถึงเวลาที่จะลองใหม่ได้ ไม่เสียรอบไปกับการถูกปฏิเสธทันที
+                            backoff = Math.max(backoff, unavailable.getRetryAfterMillis());
+                        }
+                        Thread.sleep(backoff);
+                    }
+                }
+            } finally {
+                uploadPermits.release();
             }
+            if (done && KIND_PRODUCT.equals(upload.getKind()) && upload.getTargetId() != null) {
+                // ย่อจากไฟล์ที่พักไว้เลย ไม่ต้องโหลดรูปกลับจาก ImageStore แล้วค่อยลบไฟล์เมื่อย่อเสร็จ
+                thumbnailCache.generate(upload.getTargetId(), url, spooled).whenComplete((ignored, error) -> deleteQuietly(spooled));
+            } else {
+                deleteQuietly(spooled);
+            }
+        } catch (InterruptedException e) {
+            // กำลังปิดเครื่อง: เก็บไฟล์พักไว้ให้อัปโหลดต่อตอน start ครั้งถัดไป
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // เช่นฐานข้อมูลล่มระหว่างบันทึกสถานะ ไฟล์พักยังอยู่ให้ทำต่อตอน start ครั้งถัดไป
+            logger.error("Image upload {} interrupted", assetId, e);
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private void applyToTarget(ImageUpload upload, String url) {
+        if (upload.getTargetId() == null) {
+            return;
+        }
+        if (KIND_PRODUCT.equals(upload.getKind())) {
+            if (!productRepository.updateImageUrl(upload.getTargetId(), url)) {
+                throw new IllegalStateException("Product " + upload.getTargetId() + " no longer exists");
+            }
+            changeEvents.publish(EventTopic.PRODUCT, upload.getTargetId(), Map.of("imageUrl", url));
+        } else {
+            purchaseOrderRepository.updateSlipUrl(upload.getTargetId(), url);
+            changeEvents.publish(EventTopic.PURCHASE_ORDER, upload.getTargetId(), Map.of("slipUrl", url));
+        }
+    }
 
-            Object url = uploadResult.get("url");
-            if (url instanceof String urlString && !urlString.isBlank()) {
-                return urlString;
+    // อัปโหลดต่อจากไฟล์ที่พักค้างไว้ (เครื่องถูกปิดระหว่างอัปโหลด) ไฟล์ที่ไม่มีรายการค้างแล้วจะถูกลบ
+    // ดูเฉพาะไฟล์ที่เก่ากว่าตอน start เพื่อไม่ให้ชนกับไฟล์ที่ request ของรอบนี้เพิ่งพักไว้
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeSpooledUploads() {
+        if (!Files.isDirectory(spoolDir)) {
+            return;
+        }
+        Thread.ofVirtual().name("image-upload-resume").start(() -> {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(spoolDir)) {
+                for (Path file : files) {
+                    if (Files.getLastModifiedTime(file).toMillis() >= startedAt) {
+                        continue;
+                    }
+                    String name = file.getFileName().toString();
+                    int dot = name.indexOf('.');
+                    ImageUpload upload = imageUploadRepository.findById(dot >= 0 ? name.substring(0, dot) : name);
+                    if (upload != null && ("Pending".equals(upload.getStatus()) || "Uploading".equals(upload.getStatus()))) {
+                        pending.incrementAndGet();
+                        uploadExecutor.execute(() -> process(upload, file));
+                    } else {
+                        deleteQuietly(file);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Unable to resume spooled image uploads: {}", e.getMessage());
             }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        uploadExecutor.shutdownNow();
+        uploadExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
 
-            logger.error("Cloudinary upload succeeded but URL is missing. Response: {}", uploadResult);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "ไม่สามารถดึง URL ของรูปภาพได้");
+    int pendingCount() {
+        return pending.get();
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
         } catch (IOException e) {
-            logger.error("Failed to upload image to Cloudinary", e);
-            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "เกิดข้อผิดพลาดระหว่างอัปโหลดรูปภาพ");
+            logger.warn("Unable to delete spooled image {}: {}", file, e.getMessage());
         }
     }
 
-    private boolean isBlank(String value) {
-        return value == null || value.trim().isEmpty();
+    private String truncate(String value) {
+        return value.length() > MAX_ERROR_LENGTH ? value.substring(0, MAX_ERROR_LENGTH) : value;
     }
 }
@@ -1,5 +1,8 @@
 package com.inv.service;
 
+import com.inv.event.ChangeEventPublisher;
+import com.inv.event.EventTopic;
+import com.inv.id.IdGenerator;
 import com.inv.model.Order;
 import com.inv.model.OrderItem;
 import com.inv.repo.OrderRepository;
@@ -10,8 +13,9 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID; // Import เพิ่ม
+import java.util.Map;
 
 @Service
 public class OrderService {
@@ -19,24 +23,31 @@ public class OrderService {
     @Autowired
     private OrderRepository orderRepository;
 
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private ChangeEventPublisher changeEvents;
+
     public List<Order> getAllOrders() {
         return orderRepository.findAll();
     }
 
     @Transactional
     public String createOrder(Order order, List<OrderItem> items, String staffId) { // return String
-        String orderId = "ORD-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        String orderId = idGenerator.nextId("ORD-");
         order.setOrderId(orderId);
         order.setStaffId(staffId);
         order.setOrderDate(LocalDateTime.now());
         orderRepository.save(order);
 
         for (OrderItem item : items) {
-            String orderItemId = "ITM-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+            String orderItemId = idGenerator.nextId("ITM-");
             item.setOrderItemId(orderItemId);
             item.setOrderId(orderId);
             orderRepository.saveOrderItem(item);
         }
+        changeEvents.statusChanged(EventTopic.ORDER, orderId, order.getStatus());
         return orderId;
     }
 
@@ -44,6 +55,21 @@ public class OrderService {
         return orderRepository.findConfirmedOrders();
     }
 
+    // ใส่รายการสินค้าให้ทุก Order ในหน้าด้วย query เดียว แทนการเรียก /orders/{id}/items ทีละใบ
+    public void attachItems(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        List<String> orderIds = new ArrayList<>();
+        for (Order order : orders) {
+            orderIds.add(order.getOrderId());
+        }
+        Map<String, List<OrderItem>> itemsByOrder = orderRepository.findItemsByOrderIds(orderIds);
+        for (Order order : orders) {
+            order.setItems(itemsByOrder.getOrDefault(order.getOrderId(), new ArrayList<>()));
+        }
+    }
+
     public List<OrderItem> getItemsByOrderId(String orderId) { // รับ String orderId
         return orderRepository.findItemsByOrderId(orderId);
     }
@@ -58,5 +84,6 @@ public class OrderService {
             throw new ResponseStatusException(HttpStatus.CONFLICT, "ยังมีคำขอเบิกสินค้าที่ยังค้างอยู่ ไม่สามารถปิด Order ได้");
         }
         orderRepository.closeOrder(orderId, staffId);
+        changeEvents.statusChanged(EventTopic.ORDER, orderId, "Closed");
     }
 }
\ No newline at end of file
@@ -0,0 +1,194 @@
+package com.inv.service;
+
+import com.inv.id.IdGenerator;
+import com.inv.model.BatchAllocation;
+import com.inv.model.PickWave;
+import com.inv.model.PickWaveItem;
+import com.inv.model.ProductBatch;
+import com.inv.repo.PickWaveRepository;
+import com.inv.repo.ProductBatchRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// รอบหยิบสินค้า: รวมรายการเบิกที่ค้างของหลายใบเบิกเป็นรายการหยิบต่อสินค้า/ล็อต ให้เดินหยิบครั้งเดียวต่อรอบ
+// แผนหยิบคำนวณจากล็อต FIFO ตอนสร้างรอบ (ไม่ล็อกและไม่ตัดสต็อก) ตอนยืนยันจึงเบิกจริงผ่าน StockService.fulfillItems
+@Service
+public class PickWaveService {
+
+    static final int DEFAULT_WAVE_SIZE = 50;
+    static final int MAX_WAVE_SIZE = 500;
+
+    @Autowired
+    private PickWaveRepository pickWaveRepository;
+
+    @Autowired
+    private ProductBatchRepository productBatchRepository;
+
+    @Autowired
+    private StockService stockService;
+
+    @Autowired
+    private IdGenerator idGenerator;
+
+    // สร้างรอบหยิบจากทุกรายการที่ยังค้างเบิกและยังไม่อยู่ในรอบอื่น ใบเบิกเก่าได้ของจากล็อตเก่าก่อน
+    // รอบละไม่เกิน maxRequests ใบเบิก; รายการที่ไม่มีของในล็อตเลยจะไม่ถูกใส่ในรอบ
+    @Transactional
+    public List<PickWave> buildWaves(Integer maxRequests, String staffId) {
+        int waveSize = maxRequests == null ? DEFAULT_WAVE_SIZE : maxRequests;
+        if (waveSize <= 0 || waveSize > MAX_WAVE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "maxRequests ต้องอยู่ระหว่าง 1 ถึง " + MAX_WAVE_SIZE);
+        }
+        List<PickWaveItem> openItems = pickWaveRepository.findUnwavedOpenItems();
+        if (openItems.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        Set<String> productIds = new LinkedHashSet<>();
+        for (PickWaveItem item : openItems) {
+            productIds.add(item.getProductId());
+        }
+        // ล็อตที่ยังหยิบได้ต่อสินค้า (FIFO) หลังหักส่วนที่รอบอื่นที่เปิดอยู่วางแผนไว้แล้ว
+        Map<String, Integer> plannedElsewhere = pickWaveRepository.findOpenPlannedQuantities(productIds);
+        Map<String, Deque<BatchAllocation>> batchesByProduct = new HashMap<>();
+        for (ProductBatch batch : productBatchRepository.findAvailableBatches(productIds)) {
+            int free = batch.getQuantityRemaining() - plannedElsewhere.getOrDefault(batch.getBatchId(), 0);
+            if (free > 0) {
+                BatchAllocation available = new BatchAllocation();
+                available.setBatchId(batch.getBatchId());
+                available.setProductId(batch.getProductId());
+                available.setReceivedDate(batch.getReceivedDate());
+                available.setQuantity(free);
+                batchesByProduct.computeIfAbsent(batch.getProductId(), key -> new ArrayDeque<>()).add(available);
+            }
+        }
+
+        List<PickWave> waves = new ArrayList<>();
+        List<Map<String, BatchAllocation>> linesByWave = new ArrayList<>(); // แผนหยิบของแต่ละรอบ (key = batch_id)
+        PickWave wave = null;
+        Map<String, BatchAllocation> waveLines = null;
+        Set<String> waveRequests = new LinkedHashSet<>();
+        for (PickWaveItem item : openItems) {
+            Deque<BatchAllocation> batches = batchesByProduct.get(item.getProductId());
+            if (batches == null || batches.isEmpty()) {
+                continue;
+            }
+            if (wave == null || (!waveRequests.contains(item.getRequestId()) && waveRequests.size() >= waveSize)) {
+                wave = newWave(staffId);
+                waves.add(wave);
+                waveLines = new LinkedHashMap<>();
+                linesByWave.add(waveLines);
+                waveRequests.clear();
+            }
+            int needed = item.getQuantity();
+            int planned = 0;
+            while (needed > 0 && !batches.isEmpty()) {
+                BatchAllocation batch = batches.peek();
+                int take = Math.min(needed, batch.getQuantity());
+                BatchAllocation line = waveLines.computeIfAbsent(batch.getBatchId(), key -> {
+                    BatchAllocation created = new BatchAllocation();
+                    created.setBatchId(batch.getBatchId());
+                    created.setProductId(batch.getProductId());
+                    created.setReceivedDate(batch.getReceivedDate());
+                    return created;
+                });
+                line.setQuantity(line.getQuantity() + take);
+                batch.setQuantity(batch.getQuantity() - take);
+                if (batch.getQuantity() == 0) {
+                    batches.poll();
+                }
+                needed -= take;
+                planned += take;
+            }
+            PickWaveItem member = new PickWaveItem();
+            member.setWaveId(wave.getWaveId());
+            member.setRequestItemId(item.getRequestItemId());
+            member.setRequestId(item.getRequestId());
+            member.setProductId(item.getProductId());
+            member.setQuantity(planned);
+            wave.getItems().add(member);
+            waveRequests.add(item.getRequestId());
+        }
+
+        try {
+            for (int i = 0; i < waves.size(); i++) {
+                PickWave built = waves.get(i);
+                built.setPickList(new ArrayList<>(linesByWave.get(i).values()));
+                built.getPickList().sort(Comparator
+                        .comparing(BatchAllocation::getProductId)
+                        .thenComparing(BatchAllocation::getReceivedDate, Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(BatchAllocation::getBatchId));
+                pickWaveRepository.save(built);
+            }
+        } catch (DuplicateKeyException e) {
+            // มีคนสร้างรอบที่มีรายการเดียวกันพร้อมกัน transaction นี้ถูกยกเลิกทั้งหมด
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "มีการสร้างรอบหยิบพร้อมกัน กรุณาลองใหม่อีกครั้ง");
+        }
+        return waves;
+    }
+
+    public PickWave getWave(String waveId) {
+        PickWave wave = pickWaveRepository.findById(waveId);
+        if (wave == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบรอบหยิบที่ระบุ");
+        }
+        return wave;
+    }
+
+    // เบิกทุกรายการของรอบใน transaction เดียว; รายการที่ถูกเบิกไปแล้วระหว่างนั้นจะเบิกเท่าที่ยังเหลือ
+    @Transactional
+    public PickWave confirmWave(String waveId, String staffId) {
+        lockOpenWave(waveId);
+        List<PickWaveItem> items = pickWaveRepository.findItems(waveId);
+        Map<String, Integer> plannedByItem = new LinkedHashMap<>();
+        for (PickWaveItem item : items) {
+            plannedByItem.put(item.getRequestItemId(), item.getQuantity());
+        }
+        Map<String, Integer> fulfilledByItem = stockService.fulfillItems(plannedByItem, staffId);
+        for (PickWaveItem item : items) {
+            item.setFulfilledQty(fulfilledByItem.getOrDefault(item.getRequestItemId(), 0));
+        }
+        pickWaveRepository.confirm(waveId, staffId, items);
+        return pickWaveRepository.findById(waveId);
+    }
+
+    @Transactional
+    public PickWave cancelWave(String waveId) {
+        lockOpenWave(waveId);
+        pickWaveRepository.cancel(waveId);
+        return pickWaveRepository.findById(waveId);
+    }
+
+    private void lockOpenWave(String waveId) {
+        PickWave wave = pickWaveRepository.findByIdForUpdate(waveId);
+        if (wave == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบรอบหยิบที่ระบุ");
+        }
+        if (!"Open".equals(wave.getStatus())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "รอบหยิบนี้ถูกยืนยันหรือยกเลิกไปแล้ว");
+        }
+    }
+
+    private PickWave newWave(String staffId) {
+        PickWave wave = new PickWave();
+        wave.setWaveId(idGenerator.nextId("WAVE-"));
+        wave.setStatus("Open");
+        wave.setCreatedBy(staffId);
+        wave.setItems(new ArrayList<>());
+        return wave;
+    }
+}
@@ -1,24 +1,53 @@
 package com.inv.service;
 
+import com.inv.alert.LowStockMonitor;
+import com.inv.cache.CacheStats;
+import com.inv.cache.LruCache;
+import com.inv.cache.TableVersions;
+import com.inv.id.IdGenerator;
+import com.inv.model.LowStockAlert;
 import com.inv.model.Product;
+import com.inv.model.ProductAvailability;
 import com.inv.model.ProductBatch;
+import com.inv.model.StockLevel;
 import com.inv.model.StockTransaction;
+import com.inv.repo.LowStockAlertRepository;
 import com.inv.repo.ProductRepository;
 import com.inv.repo.ProductBatchRepository;
 import com.inv.repo.StockTransactionRepository;
+import com.inv.search.ProductSearchIndex;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class ProductService {
 
+    private static final Logger logger = LoggerFactory.getLogger(ProductService.class);
+    static final int DEFAULT_SEARCH_LIMIT = 20;
+    static final int MAX_SEARCH_LIMIT = 100;
+    static final int MAX_AVAILABILITY_IDS = 500;
+    static final int DEFAULT_ALERT_LIMIT = 100;
+    static final int MAX_ALERT_LIMIT = 500;
+
     @Autowired
     private ProductRepository productRepository;
 
@@ -28,6 +57,40 @@ public class ProductService {
     @Autowired
     private StockTransactionRepository stockTransactionRepository;
 
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private TableVersions tableVersions;
+
+    @Autowired
+    private ProductSearchIndex productSearchIndex;
+
+    @Autowired
+    private LowStockAlertRepository lowStockAlertRepository;
+
+    @Autowired
+    private LowStockMonitor lowStockMonitor;
+
+    @Value("${availability-cache.max-size:5000}")
+    private int availabilityCacheSize;
+
+    @Value("${availability-cache.ttl-seconds:5}")
+    private long availabilityCacheTtlSeconds;
+
+    // cache อายุสั้นของยอด available-to-promise ไว้รับการตรวจซ้ำๆ ระหว่างกรอก Order (ค่าอาจช้ากว่าจริงไม่เกิน TTL;
+    // ตัวกันจริงคือการจองตอนอนุมัติใบเบิก) เก็บและคืนเป็นสำเนา ผู้เรียกแก้ค่าที่ได้ไปแล้วไม่กระทบ cache
+    private LruCache<String, ProductAvailability> availabilityCache;
+
+    @PostConstruct
+    void initAvailabilityCache() {
+        availabilityCache = new LruCache<>(availabilityCacheSize, availabilityCacheTtlSeconds, TimeUnit.SECONDS);
+    }
+
+    public String getProductListETag() {
+        return tableVersions.etag(TableVersions.Table.PRODUCT);
+    }
+
     public List<Product> getAllProducts() {
         return productRepository.findAll();
     }
@@ -36,6 +99,115 @@ public class ProductService {
         return productRepository.findById(id);
     }
 
+    // โหลด index ค้นหาใน thread แยกหลัง start เพื่อไม่ให้ start ช้าหรือล้มเมื่อยังต่อฐานข้อมูลไม่ได้
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadSearchIndexInBackground() {
+        Thread.ofVirtual().name("product-search-index").start(this::loadSearchIndex);
+    }
+
+    private boolean loadSearchIndex() {
+        try {
+            long started = System.nanoTime();
+            productSearchIndex.load(productRepository::findAll);
+            logger.info("Loaded {} products into search index in {} ms",
+                    productSearchIndex.size(), (System.nanoTime() - started) / 1_000_000);
+            return true;
+        } catch (RuntimeException e) {
+            // เช่นยังต่อฐานข้อมูลไม่ได้ จะลองโหลดใหม่เมื่อมีการค้นหาครั้งถัดไป
+            logger.warn("Unable to load product search index: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    public List<Product> searchProducts(String query, Integer limit) {
+        String q = trimToNull(query);
+        if (q == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "กรุณาระบุคำค้นหา (q is required)");
+        }
+        int size = limit == null ? DEFAULT_SEARCH_LIMIT : limit;
+        if (size <= 0 || size > MAX_SEARCH_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit ต้องอยู่ระหว่าง 1 ถึง " + MAX_SEARCH_LIMIT);
+        }
+        if (!productSearchIndex.isLoaded() && !loadSearchIndex()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "ระบบค้นหายังไม่พร้อมใช้งาน กรุณาลองใหม่");
+        }
+
+        // index เก็บแค่ข้อความสำหรับค้น จึงอ่านสินค้าจริงทั้งหน้าในคำสั่งเดียว แล้วเรียงกลับตามลำดับคะแนนของ index
+        List<String> rankedIds = productSearchIndex.search(q, size);
+        Map<String, Product> productsById = new HashMap<>();
+        for (Product product : productRepository.findByIds(rankedIds)) {
+            productsById.put(product.getProductId(), product);
+        }
+        List<Product> results = new ArrayList<>(rankedIds.size());
+        for (String productId : rankedIds) {
+            Product product = productsById.get(productId);
+            if (product != null && product.isActive()) {
+                results.add(product);
+            }
+        }
+        return results;
+    }
+
+    // คืนตามลำดับที่ขอ (ตัดรหัสซ้ำ) รหัสที่ไม่พบจะไม่อยู่ในผลลัพธ์
+    public List<ProductAvailability> getAvailability(List<String> productIds) {
+        Set<String> ids = new LinkedHashSet<>();
+        if (productIds != null) {
+            for (String productId : productIds) {
+                String id = trimToNull(productId);
+                if (id != null) {
+                    ids.add(id);
+                }
+            }
+        }
+        if (ids.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "กรุณาระบุรหัสสินค้าอย่างน้อย 1 รายการ");
+        }
+        if (ids.size() > MAX_AVAILABILITY_IDS) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ระบุรหัสสินค้าได้ไม่เกิน " + MAX_AVAILABILITY_IDS + " รายการ");
+        }
+
+        Map<String, ProductAvailability> found = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String id : ids) {
+            ProductAvailability cached = availabilityCache.get(id);
+            if (cached != null) {
+                found.put(id, copy(cached));
+            } else {
+                misses.add(id);
+            }
+        }
+        if (!misses.isEmpty()) {
+            for (ProductAvailability availability : productRepository.findAvailability(misses)) {
+                availabilityCache.put(availability.getProductId(), copy(availability));
+                found.put(availability.getProductId(), availability);
+            }
+        }
+
+        List<ProductAvailability> results = new ArrayList<>(found.size());
+        for (String id : ids) {
+            ProductAvailability availability = found.get(id);
+            if (availability != null) {
+                results.add(availability);
+            }
+        }
+        return results;
+    }
+
+    private ProductAvailability copy(ProductAvailability source) {
+        ProductAvailability availability = new ProductAvailability();
+        availability.setProductId(source.getProductId());
+        availability.setOnHand(source.getOnHand());
+        availability.setReserved(source.getReserved());
+        availability.setOpenRequestQty(source.getOpenRequestQty());
+        availability.setOpenOrderQty(source.getOpenOrderQty());
+        availability.setAvailable(source.getAvailable());
+        return availability;
+    }
+
+    public CacheStats getProductCacheStats() {
+        return productRepository.getCacheStats();
+    }
+
     public Product createProduct(Product product) {
         String name = trimToNull(product.getProductName());
         if (name == null) {
@@ -44,11 +216,14 @@ public class ProductService {
 
         int initialQuantity = Math.max(product.getQuantity(), 0);
         BigDecimal initialCost = product.getCostPrice() != null ? product.getCostPrice() : BigDecimal.ZERO;
+        if (product.getReorderPoint() != null && product.getReorderPoint() < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "จุดสั่งซื้อต้องไม่เป็นค่าติดลบ (Reorder point must be >= 0)");
+        }
         if (initialQuantity > 1 && initialCost.compareTo(BigDecimal.ZERO) <= 0) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "กรุณาระบุราคาทุนเริ่มต้นเมื่อมีการเพิ่มสต็อกมากกว่า 1 หน่วย");
         }
 
-        product.setProductId("PROD-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase());
+        product.setProductId(idGenerator.nextId("PROD-"));
         product.setProductName(name);
         product.setDescription(trimToNull(product.getDescription()));
         product.setUnit(trimToNull(product.getUnit()));
@@ -69,6 +244,9 @@ public class ProductService {
         }
 
         productRepository.save(product);
+        if (product.getReorderPoint() != null) {
+            lowStockMonitor.levelSet(new StockLevel(product.getProductId(), product.getQuantity(), product.getReorderPoint()));
+        }
 
         if (initialQuantity > 1) {
             String staffId = trimToNull(product.getCreatedByStaffId());
@@ -78,14 +256,18 @@ public class ProductService {
             createInitialStockRecords(product, initialQuantity, product.getCostPrice(), staffId);
         }
 
-        return productRepository.findById(product.getProductId());
+        Product created = productRepository.findById(product.getProductId());
+        if (created != null) {
+            productSearchIndex.put(created);
+        }
+        return created;
     }
 
     private void createInitialStockRecords(Product product, int quantity, BigDecimal unitCost, String staffId) {
         BigDecimal normalizedCost = unitCost.setScale(2, RoundingMode.HALF_UP);
 
         ProductBatch batch = new ProductBatch();
-        batch.setBatchId("BATCH-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase());
+        batch.setBatchId(idGenerator.nextId("BATCH-"));
         batch.setProductId(product.getProductId());
         batch.setQuantityIn(quantity);
         batch.setQuantityRemaining(quantity);
@@ -94,7 +276,7 @@ public class ProductService {
         productBatchRepository.save(batch);
 
         StockTransaction transaction = new StockTransaction();
-        transaction.setTransactionId("ST-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase());
+        transaction.setTransactionId(idGenerator.nextId("ST-"));
         transaction.setType("IN");
         transaction.setProductId(product.getProductId());
         transaction.setQuantity(quantity);
@@ -113,8 +295,46 @@ public class ProductService {
         return trimmed.isEmpty() ? null : trimmed;
     }
 
+    // ปรับจำนวนและบันทึกแจ้งเตือนใกล้หมด (ถ้าข้ามจุดสั่งซื้อ) ใน transaction เดียวกัน
+    // ล็อกแถวสินค้าก่อนตรวจ ไม่ให้ปรับลดจนคงเหลือน้อยกว่ายอดที่จองให้ใบเบิกที่อนุมัติแล้ว
+    @Transactional
     public void adjustQuantity(String productId, int diff) { // รับ String productId
-        productRepository.updateQuantity(productId, diff);
+        Product product = productRepository.findByIdForUpdate(productId);
+        if (product == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบสินค้า (Product not found)");
+        }
+        if (product.getQuantity() + diff < 0 && product.getReservedQty() == 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "จำนวนคงเหลือต้องไม่เป็นค่าติดลบ (Quantity cannot go below zero)");
+        }
+        if (product.getQuantity() + diff < product.getReservedQty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "ปรับลดได้ไม่เกิน " + Math.max(product.getQuantity() - product.getReservedQty(), 0)
+                            + " หน่วย เพราะสินค้าถูกจองไว้ให้ใบเบิกที่อนุมัติแล้ว " + product.getReservedQty() + " หน่วย");
+        }
+        lowStockMonitor.quantitiesChanged(Map.of(productId, diff), productRepository.updateQuantity(productId, diff));
+    }
+
+    // null = เลิกแจ้งเตือนสินค้านี้ (แจ้งเตือนที่เปิดอยู่จะถูกปิด)
+    @Transactional
+    public Product updateReorderPoint(String productId, Integer reorderPoint) {
+        if (reorderPoint != null && reorderPoint < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "จุดสั่งซื้อต้องไม่เป็นค่าติดลบ (Reorder point must be >= 0)");
+        }
+        StockLevel level = productRepository.updateReorderPoint(productId, reorderPoint);
+        if (level == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบสินค้า (Product not found)");
+        }
+        lowStockMonitor.levelSet(level);
+        return productRepository.findById(productId);
+    }
+
+    // includeResolved = false คืนเฉพาะสินค้าที่ยังใกล้หมดอยู่ตอนนี้
+    public List<LowStockAlert> getLowStockAlerts(boolean includeResolved, Integer limit) {
+        int size = limit == null ? DEFAULT_ALERT_LIMIT : limit;
+        if (size <= 0 || size > MAX_ALERT_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit ต้องอยู่ระหว่าง 1 ถึง " + MAX_ALERT_LIMIT);
+        }
+        return lowStockAlertRepository.find(includeResolved, size);
     }
 
     public Product updateProductDetails(String productId, Product payload) {
@@ -142,6 +362,7 @@ public class ProductService {
         if (updated == null) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "ไม่สามารถอัปเดตสินค้าได้ (Unable to update product)");
         }
+        productSearchIndex.put(updated);
         return updated;
     }
 
@@ -151,6 +372,7 @@ public class ProductService {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบสินค้า (Product not found)");
         }
         productRepository.deactivate(productId);
+        productSearchIndex.remove(productId);
     }
 
     public List<ProductBatch> getProductBatches(String productId) {
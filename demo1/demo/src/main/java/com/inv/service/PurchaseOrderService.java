@@ -1,9 +1,15 @@
 package com.inv.service;
 
+import com.inv.alert.LowStockMonitor;
+import com.inv.event.ChangeEventPublisher;
+import com.inv.event.EventTopic;
+import com.inv.id.IdGenerator;
 import com.inv.model.Product;
 import com.inv.model.ProductBatch;
 import com.inv.model.PurchaseItem;
 import com.inv.model.PurchaseOrder;
+import com.inv.model.PurchaseOrderPage;
+import com.inv.model.ReorderSuggestion;
 import com.inv.model.StockTransaction;
 import com.inv.repo.ProductBatchRepository;
 import com.inv.repo.ProductRepository;
@@ -16,13 +22,25 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 
 @Service
 public class PurchaseOrderService {
 
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 500;
+
     @Autowired
     private PurchaseOrderRepository purchaseOrderRepository;
 
@@ -35,14 +53,61 @@ public class PurchaseOrderService {
     @Autowired
     private StockTransactionRepository stockTransactionRepository;
 
-    public List<PurchaseOrder> getPurchaseOrders(String status) {
-        List<PurchaseOrder> orders = (status == null || status.isBlank())
-                ? purchaseOrderRepository.findAll()
-                : purchaseOrderRepository.findByStatus(status);
-        for (PurchaseOrder order : orders) {
-            order.setItems(purchaseOrderRepository.findItems(order.getPoId()));
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private ChangeEventPublisher changeEvents;
+
+    @Autowired
+    private LowStockMonitor lowStockMonitor;
+
+    @Autowired
+    private DemandForecastService demandForecastService;
+
+    public Map<String, Integer> getStatusCounts() {
+        return purchaseOrderRepository.countByStatus();
+    }
+
+    public PurchaseOrderPage getPurchaseOrders(String status, String cursor, Integer limit) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit ต้องอยู่ระหว่าง 1 ถึง " + MAX_PAGE_SIZE);
         }
-        return orders;
+
+        LocalDateTime afterDate = null;
+        String afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = decoded.indexOf('|');
+                afterDate = LocalDateTime.parse(decoded.substring(0, separator));
+                afterId = decoded.substring(separator + 1);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "cursor ไม่ถูกต้อง");
+            }
+        }
+
+        // ดึงเกินมา 1 แถวเพื่อดูว่ามีหน้าถัดไปหรือไม่
+        List<PurchaseOrder> rows = purchaseOrderRepository.findPage(trimToNull(status), afterDate, afterId, pageSize + 1);
+        String nextCursor = null;
+        if (rows.size() > pageSize) {
+            rows = new ArrayList<>(rows.subList(0, pageSize));
+            PurchaseOrder last = rows.get(rows.size() - 1);
+            nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    (last.getPoDate() + "|" + last.getPoId()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        // รายการสินค้าของทั้งหน้าดึงครั้งเดียว แทนการ query ทีละใบ
+        List<String> poIds = new ArrayList<>(rows.size());
+        for (PurchaseOrder order : rows) {
+            poIds.add(order.getPoId());
+        }
+        Map<String, List<PurchaseItem>> itemsByPo = purchaseOrderRepository.findItemsByPoIds(poIds);
+        for (PurchaseOrder order : rows) {
+            order.setItems(itemsByPo.getOrDefault(order.getPoId(), new ArrayList<>()));
+        }
+        return new PurchaseOrderPage(rows, nextCursor);
     }
 
     public PurchaseOrder getPurchaseOrder(String poId) {
@@ -69,7 +134,7 @@ public class PurchaseOrderService {
             }
         }
 
-        String poId = "PO-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        String poId = idGenerator.nextId("PO-");
         order.setPoId(poId);
         if (order.getStaffId() != null && order.getStaffId().isBlank()) {
             order.setStaffId(null);
@@ -84,7 +149,7 @@ public class PurchaseOrderService {
         List<PurchaseItem> itemsWithId = new ArrayList<>();
         for (PurchaseItem item : order.getItems()) {
             PurchaseItem copy = new PurchaseItem();
-            copy.setPoItemId("POI-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase());
+            copy.setPoItemId(idGenerator.nextId("POI-"));
             copy.setPoId(poId);
             copy.setProductId(item.getProductId());
             copy.setQuantity(item.getQuantity());
@@ -95,9 +160,45 @@ public class PurchaseOrderService {
 
         purchaseOrderRepository.save(order);
         order.setItems(purchaseOrderRepository.findItems(poId));
+        changeEvents.statusChanged(EventTopic.PURCHASE_ORDER, poId, order.getStatus());
         return order;
     }
 
+    // สร้างใบสั่งซื้อร่าง (New order ยังไม่มีราคา) หนึ่งใบต่อผู้ขายจากจำนวนแนะนำ supplierIds ว่าง = ทุกผู้ขาย
+    // สินค้าที่ไม่ได้ระบุผู้ขายจะถูกข้าม; ร่างที่สร้างแล้วนับเป็นยอดที่สั่งไว้ เรียกซ้ำจึงไม่สั่งสินค้าเดิมซ้ำ
+    @Transactional
+    public List<PurchaseOrder> createDraftsFromSuggestions(String staffId, List<String> supplierIds) {
+        Set<String> selected = new LinkedHashSet<>();
+        if (supplierIds != null) {
+            for (String supplierId : supplierIds) {
+                String id = trimToNull(supplierId);
+                if (id != null) {
+                    selected.add(id);
+                }
+            }
+        }
+        Map<String, List<PurchaseItem>> itemsBySupplier = new LinkedHashMap<>();
+        for (ReorderSuggestion suggestion : demandForecastService.getSuggestions(null)) {
+            if (suggestion.getSupplierId() == null || (!selected.isEmpty() && !selected.contains(suggestion.getSupplierId()))) {
+                continue;
+            }
+            PurchaseItem item = new PurchaseItem();
+            item.setProductId(suggestion.getProductId());
+            item.setQuantity(suggestion.getSuggestedQty());
+            itemsBySupplier.computeIfAbsent(suggestion.getSupplierId(), key -> new ArrayList<>()).add(item);
+        }
+
+        List<PurchaseOrder> drafts = new ArrayList<>();
+        for (Map.Entry<String, List<PurchaseItem>> entry : itemsBySupplier.entrySet()) {
+            PurchaseOrder draft = new PurchaseOrder();
+            draft.setSupplierId(entry.getKey());
+            draft.setStaffId(trimToNull(staffId));
+            draft.setItems(entry.getValue());
+            drafts.add(createPurchaseOrder(draft));
+        }
+        return drafts;
+    }
+
     @Transactional
     public PurchaseOrder updatePricing(String poId, List<PurchaseItem> pricedItems, boolean reject, String slipUrl) {
         PurchaseOrder existing = purchaseOrderRepository.findById(poId);
@@ -109,12 +210,14 @@ public class PurchaseOrderService {
             existing.setStatus("Rejected");
             purchaseOrderRepository.updateSlipUrl(poId, null);
             existing.setSlipUrl(null);
+            changeEvents.statusChanged(EventTopic.PURCHASE_ORDER, poId, "Rejected");
             return existing;
         }
         if (pricedItems == null || pricedItems.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ต้องส่งข้อมูลราคาสำหรับทุกรายการ");
         }
-        String normalizedSlip = trimToNull(slipUrl);
+        // ไม่ส่ง slipUrl มา = ใช้หลักฐานที่อัปโหลดแบบ async ไว้แล้ว (POST /purchase-orders/{id}/slip)
+        String normalizedSlip = trimToNull(slipUrl) != null ? trimToNull(slipUrl) : existing.getSlipUrl();
         if (normalizedSlip == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "กรุณาอัปโหลดหลักฐานราคาใบสั่งซื้อ");
         }
@@ -140,6 +243,7 @@ public class PurchaseOrderService {
         existing.setTotalAmount(total);
         existing.setSlipUrl(normalizedSlip);
         existing.setItems(purchaseOrderRepository.findItems(poId));
+        changeEvents.statusChanged(EventTopic.PURCHASE_ORDER, poId, "Pending");
         return existing;
     }
 
@@ -155,22 +259,43 @@ public class PurchaseOrderService {
         if (receivedItems == null || receivedItems.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ต้องระบุรายการสินค้าที่รับเข้า");
         }
-        BigDecimal total = BigDecimal.ZERO;
+        // ตรวจข้อมูลทุกบรรทัดก่อน แล้วดึงรายการใน PO และสินค้าทั้งหมดครั้งเดียว
+        Set<String> poItemIds = new LinkedHashSet<>();
         for (PurchaseItem item : receivedItems) {
-            PurchaseItem existingItem = purchaseOrderRepository.findItemById(item.getPoItemId());
-            if (existingItem == null) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบรายการสินค้าในใบสั่งซื้อ");
-            }
             if (item.getUnitPrice() == null || item.getUnitPrice().compareTo(BigDecimal.ZERO) <= 0) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ราคาทุนต้องมากกว่า 0");
             }
             if (item.getQuantity() <= 0) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "จำนวนที่รับต้องมากกว่า 0");
             }
-            Product product = productRepository.findById(existingItem.getProductId());
-            if (product == null) {
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบสินค้าในระบบ");
-            }
+            poItemIds.add(item.getPoItemId());
+        }
+        Map<String, PurchaseItem> existingItems = purchaseOrderRepository.findItemsByIds(poId, poItemIds);
+        if (existingItems.size() < poItemIds.size()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบรายการสินค้าในใบสั่งซื้อ");
+        }
+        Set<String> productIds = new TreeSet<>();
+        for (PurchaseItem existingItem : existingItems.values()) {
+            productIds.add(existingItem.getProductId());
+        }
+        // ล็อกสินค้าไว้ (เรียงตาม product_id) เพื่อให้ต้นทุนเฉลี่ยคำนวณจากจำนวน/ต้นทุนล่าสุด ไม่ทับการรับเข้าพร้อมกัน
+        Map<String, Product> products = new HashMap<>();
+        for (Product product : productRepository.findByIdsForUpdate(productIds)) {
+            products.put(product.getProductId(), product);
+        }
+        if (products.size() < productIds.size()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบสินค้าในระบบ");
+        }
+
+        // คำนวณต้นทุนเฉลี่ยถ่วงน้ำหนักในหน่วยความจำ ทีละบรรทัดตามลำดับ (สินค้าเดียวกันหลายบรรทัดใช้ค่าที่สะสมจากบรรทัดก่อน)
+        BigDecimal total = BigDecimal.ZERO;
+        Map<String, Integer> receivedByProduct = new LinkedHashMap<>();
+        Map<String, BigDecimal> averageCostByProduct = new HashMap<>();
+        Map<String, PurchaseItem> itemUpdates = new LinkedHashMap<>();
+        List<ProductBatch> batches = new ArrayList<>(receivedItems.size());
+        List<StockTransaction> transactions = new ArrayList<>(receivedItems.size());
+        for (PurchaseItem item : receivedItems) {
+            Product product = products.get(existingItems.get(item.getPoItemId()).getProductId());
 
             int oldQty = product.getQuantity();
             BigDecimal oldCost = product.getCostPrice() != null ? product.getCostPrice() : BigDecimal.ZERO;
@@ -187,22 +312,28 @@ public class PurchaseOrderService {
             }
             newAverageCost = newAverageCost.setScale(2, java.math.RoundingMode.HALF_UP);
 
-            productRepository.updateQuantity(product.getProductId(), receivedQty);
-            productRepository.updateCostPrice(product.getProductId(), newAverageCost);
-            purchaseOrderRepository.updateItemQuantity(item.getPoItemId(), receivedQty);
-            purchaseOrderRepository.updateItemCost(item.getPoItemId(), newCost);
+            product.setQuantity(oldQty + receivedQty);
+            product.setCostPrice(newAverageCost);
+            receivedByProduct.merge(product.getProductId(), receivedQty, Integer::sum);
+            averageCostByProduct.put(product.getProductId(), newAverageCost);
+
+            PurchaseItem itemUpdate = new PurchaseItem();
+            itemUpdate.setPoItemId(item.getPoItemId());
+            itemUpdate.setQuantity(receivedQty);
+            itemUpdate.setUnitPrice(newCost);
+            itemUpdates.put(item.getPoItemId(), itemUpdate);
 
             ProductBatch batch = new ProductBatch();
-            batch.setBatchId("BATCH-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase());
+            batch.setBatchId(idGenerator.nextId("BATCH-"));
             batch.setProductId(product.getProductId());
             batch.setPoId(poId);
             batch.setQuantityIn(receivedQty);
             batch.setQuantityRemaining(receivedQty);
             batch.setUnitCost(newCost);
-            productBatchRepository.save(batch);
+            batches.add(batch);
 
             StockTransaction transaction = new StockTransaction();
-            transaction.setTransactionId("ST-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase());
+            transaction.setTransactionId(idGenerator.nextId("ST-"));
             transaction.setType("IN");
             transaction.setProductId(product.getProductId());
             transaction.setQuantity(receivedQty);
@@ -210,13 +341,23 @@ public class PurchaseOrderService {
             transaction.setDescription("รับสินค้าเข้าจาก PO " + poId);
             transaction.setBatchId(batch.getBatchId());
             transaction.setReferenceId(poId);
-            stockTransactionRepository.save(transaction);
+            transactions.add(transaction);
 
             total = total.add(newCost.multiply(BigDecimal.valueOf(receivedQty)));
         }
 
+        // เขียนทั้งหมดด้วย JDBC batch แทนการ update ทีละบรรทัด
+        lowStockMonitor.quantitiesChanged(receivedByProduct,
+                productRepository.updateQuantitiesAndCosts(receivedByProduct, averageCostByProduct));
+        purchaseOrderRepository.updateItemsReceived(new ArrayList<>(itemUpdates.values()));
+        productBatchRepository.saveAll(batches);
+        stockTransactionRepository.saveAll(transactions);
+
         purchaseOrderRepository.updateStatus(poId, "Received");
         purchaseOrderRepository.updateTotalAmount(poId, total);
+        changeEvents.quantitiesChanged(receivedByProduct);
+        changeEvents.ledgerRowsAdded(transactions);
+        changeEvents.statusChanged(EventTopic.PURCHASE_ORDER, poId, "Received");
 
         order.setStatus("Received");
         order.setTotalAmount(total);
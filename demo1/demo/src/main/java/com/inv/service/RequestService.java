@@ -1,19 +1,28 @@
 package com.inv.service;
 
+import com.inv.event.ChangeEventPublisher;
+import com.inv.event.EventTopic;
+import com.inv.id.IdGenerator;
 import com.inv.model.OrderItem;
 import com.inv.model.Request;
 import com.inv.model.RequestItem;
+import com.inv.model.StockReservation;
 import com.inv.repo.OrderRepository;
+import com.inv.repo.ProductRepository;
 import com.inv.repo.RequestRepository;
+import com.inv.repo.StockReservationRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID; // Import เพิ่ม
+import java.util.TreeMap;
 
 @Service
 public class RequestService {
@@ -24,6 +33,18 @@ public class RequestService {
     @Autowired
     private OrderRepository orderRepository;
 
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private StockReservationRepository stockReservationRepository;
+
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private ChangeEventPublisher changeEvents;
+
     public List<Request> getAllRequests() {
         return requestRepository.findAll();
     }
@@ -56,7 +77,7 @@ public class RequestService {
             }
         }
 
-        String requestId = "REQ-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        String requestId = idGenerator.nextId("REQ-");
         req.setRequestId(requestId);
         req.setRequestDate(LocalDateTime.now());
         if (req.getStatus() == null || req.getStatus().isBlank()) {
@@ -65,11 +86,12 @@ public class RequestService {
         requestRepository.save(req);
 
         for (RequestItem i : items) {
-            String requestItemId = "RIT-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+            String requestItemId = idGenerator.nextId("RIT-");
             i.setRequestItemId(requestItemId);
             i.setRequestId(requestId);
             requestRepository.saveRequestItem(i);
         }
+        changeEvents.statusChanged(EventTopic.REQUEST, requestId, req.getStatus());
         return requestId;
     }
 
@@ -77,23 +99,92 @@ public class RequestService {
         return requestRepository.findPendingRequests();
     }
 
+    // ใส่รายการสินค้าให้ทุกใบเบิกในหน้าด้วย query เดียว แทนการเรียก /requests/{id}/items ทีละใบ
+    public void attachItems(List<Request> requests) {
+        if (requests.isEmpty()) {
+            return;
+        }
+        List<String> requestIds = new ArrayList<>();
+        for (Request request : requests) {
+            requestIds.add(request.getRequestId());
+        }
+        Map<String, List<RequestItem>> itemsByRequest = requestRepository.findItemsByRequestIds(requestIds);
+        for (Request request : requests) {
+            request.setItems(itemsByRequest.getOrDefault(request.getRequestId(), new ArrayList<>()));
+        }
+    }
+
     public List<RequestItem> getItemsByRequestId(String requestId) { // รับ String
         return requestRepository.findItemsByRequestId(requestId);
     }
 
+    // อนุมัติแล้วจองสินค้าตามจำนวนที่ยังไม่ได้เบิกทันที ถ้าสินค้าที่ยังไม่ถูกจองมีไม่พอจะไม่อนุมัติ (409)
+    @Transactional
     public void approveRequest(String requestId, String approverId) { // รับ String
+        // ล็อกรายการเบิกก่อน (ลำดับ RequestItem -> Product เหมือนการเบิก) แล้วค่อยอ่านสถานะ กันการอนุมัติซ้ำพร้อมกัน
+        List<RequestItem> items = requestRepository.findItemsByRequestIdForUpdate(requestId);
+        Request request = requestRepository.findById(requestId);
+        if (request == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบใบเบิกที่ระบุ");
+        }
+        if (!"Awaiting Approval".equals(request.getStatus())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "ใบเบิกนี้ไม่ได้อยู่ในสถานะรออนุมัติ");
+        }
+
+        Map<String, Integer> qtyByProduct = new TreeMap<>();
+        List<StockReservation> reservations = new ArrayList<>();
+        for (RequestItem item : items) {
+            if (item.getRemainingQty() <= 0) {
+                continue;
+            }
+            qtyByProduct.merge(item.getProductId(), item.getRemainingQty(), Integer::sum);
+            StockReservation reservation = new StockReservation();
+            reservation.setRequestItemId(item.getRequestItemId());
+            reservation.setRequestId(requestId);
+            reservation.setProductId(item.getProductId());
+            reservation.setQuantity(item.getRemainingQty());
+            reservations.add(reservation);
+        }
+        List<String> shortProducts = productRepository.reserve(qtyByProduct);
+        if (!shortProducts.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "สินค้าคงเหลือไม่พอให้จอง: " + String.join(", ", shortProducts));
+        }
+        stockReservationRepository.saveAll(reservations);
         requestRepository.updateStatus(requestId, "Approved", approverId);
+        changeEvents.reservedChanged(qtyByProduct);
+        changeEvents.statusChanged(EventTopic.REQUEST, requestId, "Approved");
     }
 
+    @Transactional
     public void rejectRequest(String requestId, String approverId) { // รับ String
+        releaseReservations(requestId);
         requestRepository.updateStatus(requestId, "Rejected", approverId);
+        changeEvents.statusChanged(EventTopic.REQUEST, requestId, "Rejected");
     }
 
     public List<Request> getReadyToCloseRequests() {
         return requestRepository.findReadyToCloseRequests();
     }
 
+    @Transactional
     public void closeRequest(String requestId, String staffId) { // รับ String
+        releaseReservations(requestId);
         requestRepository.closeRequest(requestId, staffId);
+        changeEvents.statusChanged(EventTopic.REQUEST, requestId, "Closed");
+    }
+
+    // คืนยอดจองที่เหลือของทั้งใบเบิกกลับเป็นสินค้าที่จองได้
+    private void releaseReservations(String requestId) {
+        requestRepository.findItemsByRequestIdForUpdate(requestId);
+        Map<String, Integer> releasedByProduct = stockReservationRepository.deleteByRequestId(requestId);
+        Map<String, Integer> diffByProduct = new TreeMap<>();
+        for (Map.Entry<String, Integer> entry : releasedByProduct.entrySet()) {
+            if (entry.getValue() > 0) {
+                diffByProduct.put(entry.getKey(), -entry.getValue());
+            }
+        }
+        productRepository.updateReserved(diffByProduct);
+        changeEvents.reservedChanged(diffByProduct);
     }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package com.inv.service;
 
+import com.inv.cache.TableVersions;
+import com.inv.id.IdGenerator;
 import com.inv.model.Staff;
 import com.inv.repo.UserRepository; // แก้ไข: import StaffRepository
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,7 +11,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
-import java.util.UUID; // Import เพิ่ม
 
 @Service
 public class StaffService {
@@ -20,6 +21,16 @@ public class StaffService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private TableVersions tableVersions;
+
+    public String getStaffListETag() {
+        return tableVersions.etag(TableVersions.Table.STAFF);
+    }
+
     public List<Staff> getAllStaff() {
         List<Staff> result = staffRepository.findAll();
         result.forEach(member -> member.setPassword(null));
@@ -35,7 +46,7 @@ public class StaffService {
         staff.setPassword(passwordEncoder.encode(initialPassword));
 
         // เพิ่ม: สร้าง ID ที่นี่
-        String staffId = "STF-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        String staffId = idGenerator.nextId("STF-");
         staff.setStaffId(staffId);
 
         staff.setActive(true);
@@ -0,0 +1,143 @@
+package com.inv.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.inv.model.StockTransaction;
+import com.inv.model.StockTransactionFilter;
+import com.inv.repo.StockTransactionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+// Export ledger ทั้งหมดแบบ streaming: อ่านจาก ResultSet ทีละ fetch แล้วเขียนลง response ทันที (ใช้ memory คงที่)
+@Service
+public class StockExportService {
+
+    static final int FETCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String CSV_HEADER = "transaction_id,transaction_date,type,product_id,quantity,staff_id,description,batch_id,reference_id";
+
+    public enum Format { NDJSON, CSV }
+
+    @Autowired
+    private StockTransactionRepository stockTransactionRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public Format parseFormat(String format) {
+        if (format == null || format.isBlank() || format.equalsIgnoreCase("ndjson")) {
+            return Format.NDJSON;
+        }
+        if (format.equalsIgnoreCase("csv")) {
+            return Format.CSV;
+        }
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "format ต้องเป็น ndjson หรือ csv");
+    }
+
+    // ตรวจก่อนเริ่มเขียน response เพราะหลังจากส่งข้อมูลออกไปแล้วจะเปลี่ยน status ไม่ได้
+    public void validateFilter(StockTransactionFilter filter) {
+        if (filter.getType() != null && !StockService.TRANSACTION_TYPES.contains(filter.getType())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ประเภทรายการต้องเป็น IN, OUT หรือ ADJUST");
+        }
+        if (filter.getFrom() != null && filter.getTo() != null && !filter.getFrom().isBefore(filter.getTo())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "from ต้องน้อยกว่า to");
+        }
+    }
+
+    // ต้องอยู่ใน transaction เพื่อให้ PostgreSQL ใช้ cursor ตาม fetch size แทนการโหลดผลลัพธ์ทั้งหมด
+    @Transactional(readOnly = true)
+    public void exportTransactions(StockTransactionFilter filter, Format format, OutputStream out) throws IOException {
+        validateFilter(filter);
+        try {
+            if (format == Format.CSV) {
+                writeCsv(filter, out);
+            } else {
+                writeNdjson(filter, out);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void writeNdjson(StockTransactionFilter filter, OutputStream out) throws IOException {
+        // ปิด flush ต่อแถว ให้ buffer/gzip ทำงานเต็มที่
+        ObjectWriter rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // ไม่ให้ Jackson ใส่ช่องว่างคั่นระหว่าง root value (ค่า default) ทุกบรรทัดต้องขึ้นต้นด้วย {
+            generator.setRootValueSeparator(null);
+            stockTransactionRepository.streamByFilter(filter, FETCH_SIZE, transaction -> {
+                try {
+                    rowWriter.writeValue(generator, transaction);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.flush();
+        }
+    }
+
+    private void writeCsv(StockTransactionFilter filter, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        writer.write('\uFEFF'); // BOM ให้ Excel อ่านภาษาไทยถูก
+        writer.write(CSV_HEADER);
+        writer.write("\r\n");
+        stockTransactionRepository.streamByFilter(filter, FETCH_SIZE, transaction -> {
+            try {
+                writeCsvRow(writer, transaction);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+    }
+
+    private void writeCsvRow(Writer writer, StockTransaction transaction) throws IOException {
+        writeCsvField(writer, transaction.getTransactionId());
+        writer.write(',');
+        writeCsvField(writer, transaction.getTransactionDate() != null ? transaction.getTransactionDate().toString() : null);
+        writer.write(',');
+        writeCsvField(writer, transaction.getType());
+        writer.write(',');
+        writeCsvField(writer, transaction.getProductId());
+        writer.write(',');
+        writer.write(Integer.toString(transaction.getQuantity()));
+        writer.write(',');
+        writeCsvField(writer, transaction.getStaffId());
+        writer.write(',');
+        writeCsvField(writer, transaction.getDescription());
+        writer.write(',');
+        writeCsvField(writer, transaction.getBatchId());
+        writer.write(',');
+        writeCsvField(writer, transaction.getReferenceId());
+        writer.write("\r\n");
+    }
+
+    private void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
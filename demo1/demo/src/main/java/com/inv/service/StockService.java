@@ -1,22 +1,42 @@
 package com.inv.service;
 
+import com.inv.alert.LowStockMonitor;
+import com.inv.event.ChangeEventPublisher;
+import com.inv.event.EventTopic;
+import com.inv.id.IdGenerator;
+import com.inv.model.BatchAllocation;
 import com.inv.model.Product;
 import com.inv.model.Request;
 import com.inv.model.RequestItem;
 import com.inv.model.StockTransaction;
+import com.inv.model.StockTransactionFilter;
+import com.inv.model.StockTransactionPage;
 import com.inv.repo.OrderRepository;
 import com.inv.repo.ProductBatchRepository;
 import com.inv.repo.ProductRepository;
 import com.inv.repo.RequestRepository;
+import com.inv.repo.StockReservationRepository;
 import com.inv.repo.StockTransactionRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 
 @Service
@@ -34,14 +54,36 @@ public class StockService {
     private RequestRepository requestRepository;
     @Autowired
     private OrderRepository orderRepository;
+    @Autowired
+    private StockReservationRepository stockReservationRepository;
+
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private ChangeEventPublisher changeEvents;
+
+    // ทุกครั้งที่ปรับ quantity ต้องส่งจำนวนใหม่ที่ได้จาก ProductRepository ให้ตรวจสินค้าใกล้หมดใน transaction เดียวกัน
+    @Autowired
+    private LowStockMonitor lowStockMonitor;
+
+    // อายุสิทธิ์ถือใบเบิกของคิวงาน (นาที) เลยแล้วใบเบิกกลับเข้าคิวให้คนอื่นรับต่อได้
+    @Value("${stock-claim.lease-minutes:15}")
+    private int claimLeaseMinutes;
+
+    static final int DEFAULT_TRANSACTION_PAGE_SIZE = 100;
+    static final int MAX_TRANSACTION_PAGE_SIZE = 500;
+    static final Set<String> TRANSACTION_TYPES = Set.of("IN", "OUT", "ADJUST");
+    static final int DEFAULT_CLAIM_LIMIT = 5;
+    static final int MAX_CLAIM_LIMIT = 50;
 
     @Transactional
     // แก้ไข: เปลี่ยน Type ของ ID ทั้งหมดเป็น String
     public void addStockIn(String productId, int quantity, String staffId, String supplierId, String note) {
         // 1. Update Stock Quantity
-        productRepository.updateQuantity(productId, quantity);
+        lowStockMonitor.quantitiesChanged(Map.of(productId, quantity), productRepository.updateQuantity(productId, quantity));
 
-        String batchId = "BATCH-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        String batchId = idGenerator.nextId("BATCH-");
         com.inv.model.ProductBatch batch = new com.inv.model.ProductBatch();
         batch.setBatchId(batchId);
         batch.setProductId(productId);
@@ -53,7 +95,7 @@ public class StockService {
 
         // 2. Record Stock Transaction
         StockTransaction transaction = new StockTransaction();
-        String transactionId = "ST-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        String transactionId = idGenerator.nextId("ST-");
         transaction.setTransactionId(transactionId);
         transaction.setType("IN");
         transaction.setProductId(productId);
@@ -73,12 +115,56 @@ public class StockService {
         transaction.setDescription(referenceNote); // แก้ไข: ใช้ setDescription ตาม schema ใหม่
 
         stockTransactionRepository.save(transaction);
+        changeEvents.quantitiesChanged(Map.of(productId, quantity));
+        changeEvents.ledgerRowsAdded(List.of(transaction));
     }
 
     public List<Request> getApprovedRequests() {
         return requestRepository.findApprovedRequests();
     }
 
+    // รับใบเบิกถัดไปจากคิว (เก่าสุดก่อน) พร้อมรายการ; พนักงานหลายคนรับพร้อมกันได้ใบเบิกไม่ซ้ำกัน
+    @Transactional
+    public List<Request> claimRequests(Integer limit, String warehouseStaffId) {
+        int size = limit == null ? DEFAULT_CLAIM_LIMIT : limit;
+        if (size <= 0 || size > MAX_CLAIM_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit ต้องอยู่ระหว่าง 1 ถึง " + MAX_CLAIM_LIMIT);
+        }
+        List<Request> claimed = new ArrayList<>(requestRepository.claimNext(warehouseStaffId, size, claimLeaseMinutes));
+        if (claimed.isEmpty()) {
+            return claimed;
+        }
+        // RETURNING ไม่รับประกันลำดับ
+        claimed.sort(Comparator.comparing(Request::getRequestDate, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(Request::getRequestId));
+        List<String> requestIds = new ArrayList<>();
+        for (Request request : claimed) {
+            requestIds.add(request.getRequestId());
+        }
+        Map<String, List<RequestItem>> itemsByRequest = requestRepository.findItemsByRequestIds(requestIds);
+        for (Request request : claimed) {
+            request.setItems(itemsByRequest.getOrDefault(request.getRequestId(), new ArrayList<>()));
+            changeEvents.claimChanged(request.getRequestId(), warehouseStaffId);
+        }
+        return claimed;
+    }
+
+    @Transactional
+    public void releaseClaim(String requestId, String warehouseStaffId) {
+        if (requestRepository.releaseClaim(requestId, warehouseStaffId) == 0) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "ใบเบิกนี้ไม่ได้อยู่ในมือคุณหรือหมดเวลาถือไปแล้ว");
+        }
+        changeEvents.claimChanged(requestId, null);
+    }
+
+    // ใบเบิกที่พนักงานคนอื่นถืออยู่ (สิทธิ์ยังไม่หมดอายุ) เบิกไม่ได้ ป้องกันการหยิบซ้ำ
+    private void checkNotClaimedByOther(String requestId, String warehouseStaffId) {
+        String holder = requestRepository.findActiveClaimHolder(requestId);
+        if (holder != null && !holder.equals(warehouseStaffId)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "ใบเบิกนี้มีพนักงานคนอื่นรับไปดำเนินการอยู่");
+        }
+    }
+
     @Transactional
     // แก้ไข: เปลี่ยน Type ของ ID ทั้งหมดเป็น String
     public void fulfillItem(String requestItemId, int fulfillQty, String warehouseStaffId) {
@@ -86,75 +172,333 @@ public class StockService {
         if (fulfillQty <= 0) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "จำนวนที่เบิกต้องมากกว่า 0");
         }
-        RequestItem item = requestRepository.findItemById(requestItemId);
+        // ล็อกตามลำดับ RequestItem -> Product เสมอ เพื่อไม่ให้เกิด deadlock ระหว่างผู้เบิกหลายคน
+        RequestItem item = requestRepository.findItemByIdForUpdate(requestItemId);
         if (item == null) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบรายการเบิกที่ระบุ");
         }
         if (fulfillQty > item.getRemainingQty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "จำนวนที่เบิกเกินกว่าที่เหลืออยู่");
         }
-        Product product = productRepository.findById(item.getProductId());
+        checkNotClaimedByOther(item.getRequestId(), warehouseStaffId);
+        Product product = productRepository.findByIdForUpdate(item.getProductId());
+        if (product == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบสินค้าในระบบ");
+        }
         if (product.getQuantity() < fulfillQty) {
             throw new ResponseStatusException(HttpStatus.CONFLICT, "สินค้าในคลังไม่เพียงพอ");
         }
+        // เบิกได้เฉพาะส่วนที่ยังไม่ถูกจอง + ยอดที่จองไว้ให้รายการนี้เอง
+        int reservedForItem = stockReservationRepository.findQuantitiesByItemIds(List.of(requestItemId)).getOrDefault(requestItemId, 0);
+        if (product.getAvailableQty() + reservedForItem < fulfillQty) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "สินค้าที่เหลือถูกจองไว้ให้ใบเบิกอื่นแล้ว");
+        }
 
         // 11. Update Fulfillment
         // ① Update RequestItem
         requestRepository.updateItemFulfillment(requestItemId, fulfillQty);
 
-        // ② Insert ลง StockTransaction (OUT)
-        List<com.inv.model.ProductBatch> availableBatches = productBatchRepository.findAvailableBatches(item.getProductId());
-        int remainingToFulfill = fulfillQty;
-        for (com.inv.model.ProductBatch batch : availableBatches) {
-            if (remainingToFulfill <= 0) {
-                break;
+        // ② ตัดล็อตแบบ FIFO ในคำสั่งเดียว แล้ว Insert ลง StockTransaction (OUT) เป็น batch
+        List<BatchAllocation> allocations = productBatchRepository.allocateFifo(item.getProductId(), fulfillQty);
+        int allocated = allocations.stream().mapToInt(BatchAllocation::getQuantity).sum();
+        if (allocated < fulfillQty) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "สินค้าในคลังไม่เพียงพอตามล็อตสินค้า");
+        }
+
+        List<StockTransaction> transactions = buildOutTransactions(allocations, item.getRequestId(), warehouseStaffId);
+        stockTransactionRepository.saveAll(transactions);
+
+        // ③ Update Stock ใน Product (ส่งค่าติดลบ) และตัดยอดจองของรายการนี้
+        lowStockMonitor.quantitiesChanged(Map.of(item.getProductId(), -fulfillQty),
+                productRepository.updateQuantity(item.getProductId(), -fulfillQty));
+        int consumed = Math.min(reservedForItem, fulfillQty);
+        if (consumed > 0) {
+            stockReservationRepository.consume(Map.of(requestItemId, consumed));
+            productRepository.updateReserved(Map.of(item.getProductId(), -consumed));
+            changeEvents.reservedChanged(Map.of(item.getProductId(), -consumed));
+        }
+        changeEvents.quantitiesChanged(Map.of(item.getProductId(), -fulfillQty));
+        changeEvents.ledgerRowsAdded(transactions);
+
+        // 14. & 16. Post-Fulfillment Actions
+        checkAndUpdateRequestAndOrderStatus(item.getRequestId(), item.getProductId(), fulfillQty);
+    }
+
+    // เบิกหลายรายการของใบเบิกเดียวใน transaction เดียว (ถ้าไม่ระบุรายการ จะเบิกส่วนที่เหลือทั้งหมด)
+    @Transactional
+    public List<RequestItem> fulfillRequest(String requestId, Map<String, Integer> fulfillQtyByItem, String warehouseStaffId) {
+        // ล็อกตามลำดับ RequestItem -> Product เหมือน fulfillItem แล้วค่อยอ่านสถานะ
+        // (reject/close ล็อกรายการเดียวกัน จึงไม่มีทางเปลี่ยนสถานะแทรกระหว่างตรวจกับตัดสต็อก)
+        List<RequestItem> items = requestRepository.findItemsByRequestIdForUpdate(requestId);
+        Request request = requestRepository.findById(requestId);
+        if (request == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบใบเบิกที่ระบุ");
+        }
+        if (!"Approved".equals(request.getStatus()) && !"Pending".equals(request.getStatus())) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "ใบเบิกนี้ยังไม่ได้รับอนุมัติหรือถูกปิดไปแล้ว");
+        }
+        checkNotClaimedByOther(requestId, warehouseStaffId);
+
+        Map<String, RequestItem> itemsById = new HashMap<>();
+        for (RequestItem item : items) {
+            itemsById.put(item.getRequestItemId(), item);
+        }
+
+        Map<String, Integer> qtyByItem = new LinkedHashMap<>();
+        if (fulfillQtyByItem == null || fulfillQtyByItem.isEmpty()) {
+            for (RequestItem item : items) {
+                if (item.getRemainingQty() > 0) {
+                    qtyByItem.put(item.getRequestItemId(), item.getRemainingQty());
+                }
             }
-            int available = batch.getQuantityRemaining();
-            int take = Math.min(available, remainingToFulfill);
-            if (take <= 0) {
-                continue;
+        } else {
+            for (Map.Entry<String, Integer> entry : fulfillQtyByItem.entrySet()) {
+                RequestItem item = itemsById.get(entry.getKey());
+                if (item == null) {
+                    throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบรายการเบิกที่ระบุ");
+                }
+                int qty = entry.getValue() != null ? entry.getValue() : 0;
+                if (qty <= 0) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "จำนวนที่เบิกต้องมากกว่า 0");
+                }
+                if (qty > item.getRemainingQty()) {
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "จำนวนที่เบิกเกินกว่าที่เหลืออยู่");
+                }
+                qtyByItem.put(item.getRequestItemId(), qty);
             }
-            int updatedRemaining = available - take;
-            productBatchRepository.updateRemaining(batch.getBatchId(), updatedRemaining);
+        }
+        if (qtyByItem.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ไม่มีรายการที่ต้องเบิก");
+        }
 
-            StockTransaction transaction = new StockTransaction();
-            String transactionId = "ST-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
-            transaction.setTransactionId(transactionId);
-            transaction.setType("OUT");
-            transaction.setProductId(item.getProductId());
-            transaction.setQuantity(take);
-            transaction.setStaffId(warehouseStaffId);
-            transaction.setDescription("Fulfill Request ID " + item.getRequestId());
-            transaction.setBatchId(batch.getBatchId());
-            transaction.setReferenceId(item.getRequestId());
-            stockTransactionRepository.save(transaction);
+        fulfillLines(itemsById, qtyByItem, Map.of(requestId, request), warehouseStaffId);
+        return requestRepository.findItemsByRequestId(requestId);
+    }
 
-            remainingToFulfill -= take;
+    // เบิกรายการจากหลายใบเบิกใน transaction เดียว (ใช้ตอนยืนยันรอบหยิบ)
+    // จำนวนที่ขอเกินส่วนที่เหลือจะถูกลดลงเหลือเท่าที่เหลือ ส่วนรายการของใบเบิกที่ไม่ได้อยู่ในสถานะเบิกได้แล้ว
+    // หรือมีพนักงานคนอื่นถืออยู่ในคิวงานจะถูกข้าม
+    // คืนจำนวนที่เบิกจริงต่อรายการ (key = request_item_id)
+    @Transactional
+    public Map<String, Integer> fulfillItems(Map<String, Integer> requestedByItem, String warehouseStaffId) {
+        Map<String, Integer> qtyByItem = new LinkedHashMap<>();
+        if (requestedByItem == null || requestedByItem.isEmpty()) {
+            return qtyByItem;
+        }
+        // ล็อกตามลำดับ RequestItem -> Product เหมือน fulfillRequest
+        List<RequestItem> items = requestRepository.findItemsByIdsForUpdate(new TreeSet<>(requestedByItem.keySet()));
+        Map<String, RequestItem> itemsById = new HashMap<>();
+        Set<String> requestIds = new TreeSet<>();
+        for (RequestItem item : items) {
+            itemsById.put(item.getRequestItemId(), item);
+            requestIds.add(item.getRequestId());
         }
+        Map<String, Request> requestsById = new HashMap<>();
+        for (Request request : requestRepository.findByIds(requestIds)) {
+            boolean claimedByOther = request.getClaimedBy() != null && !request.getClaimedBy().equals(warehouseStaffId);
+            if (("Approved".equals(request.getStatus()) || "Pending".equals(request.getStatus())) && !claimedByOther) {
+                requestsById.put(request.getRequestId(), request);
+            }
+        }
+        for (RequestItem item : items) {
+            int qty = Math.min(requestedByItem.getOrDefault(item.getRequestItemId(), 0), item.getRemainingQty());
+            if (qty > 0 && requestsById.containsKey(item.getRequestId())) {
+                qtyByItem.put(item.getRequestItemId(), qty);
+            }
+        }
+        if (!qtyByItem.isEmpty()) {
+            fulfillLines(itemsById, qtyByItem, requestsById, warehouseStaffId);
+        }
+        return qtyByItem;
+    }
 
-        if (remainingToFulfill > 0) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "สินค้าในคลังไม่เพียงพอตามล็อตสินค้า");
+    // ส่วนที่ใช้ร่วมกันของการเบิกหลายรายการ: ผู้เรียกต้องล็อก RequestItem ทั้งหมดและตรวจจำนวนต่อรายการมาแล้ว
+    private void fulfillLines(Map<String, RequestItem> itemsById, Map<String, Integer> qtyByItem,
+                              Map<String, Request> requestsById, String warehouseStaffId) {
+        Map<String, Integer> qtyByProduct = new TreeMap<>();
+        // key = request_id -> (product_id -> จำนวน) ตามลำดับรายการ ใช้แบ่งล็อตที่ตัดได้ให้แต่ละใบเบิก
+        Map<String, Map<String, Integer>> qtyByRequestAndProduct = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : qtyByItem.entrySet()) {
+            RequestItem item = itemsById.get(entry.getKey());
+            qtyByProduct.merge(item.getProductId(), entry.getValue(), Integer::sum);
+            qtyByRequestAndProduct.computeIfAbsent(item.getRequestId(), key -> new TreeMap<>())
+                    .merge(item.getProductId(), entry.getValue(), Integer::sum);
+        }
+        List<Product> products = productRepository.findByIdsForUpdate(qtyByProduct.keySet());
+        if (products.size() != qtyByProduct.size()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "ไม่พบสินค้าในระบบ");
+        }
+        // ยอดจองของรายการที่กำลังเบิก ใช้ได้ทั้งหมด ส่วนที่เกินต้องมาจากสินค้าที่ยังไม่ถูกจอง
+        Map<String, Integer> reservedByItem = stockReservationRepository.findQuantitiesByItemIds(qtyByItem.keySet());
+        Map<String, Integer> consumedByItem = new TreeMap<>();
+        Map<String, Integer> ownReservedByProduct = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : qtyByItem.entrySet()) {
+            int reserved = reservedByItem.getOrDefault(entry.getKey(), 0);
+            String productId = itemsById.get(entry.getKey()).getProductId();
+            ownReservedByProduct.merge(productId, reserved, Integer::sum);
+            int consumed = Math.min(reserved, entry.getValue());
+            if (consumed > 0) {
+                consumedByItem.put(entry.getKey(), consumed);
+            }
+        }
+        for (Product product : products) {
+            int requested = qtyByProduct.get(product.getProductId());
+            if (product.getQuantity() < requested) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "สินค้าในคลังไม่เพียงพอ");
+            }
+            if (product.getAvailableQty() + ownReservedByProduct.getOrDefault(product.getProductId(), 0) < requested) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "สินค้าที่เหลือถูกจองไว้ให้ใบเบิกอื่นแล้ว");
+            }
         }
 
-        // ③ Update Stock ใน Product (ส่งค่าติดลบ)
-        productRepository.updateQuantity(item.getProductId(), -fulfillQty);
+        // ตัดล็อตของทุกสินค้าในคำสั่งเดียว
+        List<BatchAllocation> allocations = productBatchRepository.allocateFifo(qtyByProduct);
+        Map<String, Integer> allocatedByProduct = new HashMap<>();
+        for (BatchAllocation allocation : allocations) {
+            allocatedByProduct.merge(allocation.getProductId(), allocation.getQuantity(), Integer::sum);
+        }
+        Map<String, Integer> diffByProduct = new TreeMap<>();
+        for (Map.Entry<String, Integer> entry : qtyByProduct.entrySet()) {
+            if (allocatedByProduct.getOrDefault(entry.getKey(), 0) < entry.getValue()) {
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "สินค้าในคลังไม่เพียงพอตามล็อตสินค้า");
+            }
+            diffByProduct.put(entry.getKey(), -entry.getValue());
+        }
 
-        // 14. & 16. Post-Fulfillment Actions
-        checkAndUpdateRequestAndOrderStatus(item.getRequestId(), item.getProductId(), fulfillQty);
+        requestRepository.updateItemFulfillments(qtyByItem);
+        List<StockTransaction> transactions = buildOutTransactions(allocations, qtyByRequestAndProduct, warehouseStaffId);
+        stockTransactionRepository.saveAll(transactions);
+        lowStockMonitor.quantitiesChanged(diffByProduct, productRepository.updateQuantities(diffByProduct));
+        changeEvents.quantitiesChanged(diffByProduct);
+        changeEvents.ledgerRowsAdded(transactions);
+        if (!consumedByItem.isEmpty()) {
+            Map<String, Integer> reservedDiffByProduct = new TreeMap<>();
+            for (Map.Entry<String, Integer> entry : consumedByItem.entrySet()) {
+                reservedDiffByProduct.merge(itemsById.get(entry.getKey()).getProductId(), -entry.getValue(), Integer::sum);
+            }
+            stockReservationRepository.consume(consumedByItem);
+            productRepository.updateReserved(reservedDiffByProduct);
+            changeEvents.reservedChanged(reservedDiffByProduct);
+        }
+
+        // อัปเดตสถานะใบเบิกทั้งหมดในคำสั่งเดียว และ Order ครั้งเดียวต่อ Order ตอนท้าย
+        requestRepository.updateRequestStatuses(qtyByRequestAndProduct.keySet(), "Pending");
+        Map<String, Map<String, Integer>> qtyByOrderAndProduct = new TreeMap<>();
+        for (Map.Entry<String, Map<String, Integer>> entry : qtyByRequestAndProduct.entrySet()) {
+            changeEvents.statusChanged(EventTopic.REQUEST, entry.getKey(), "Pending");
+            Request request = requestsById.get(entry.getKey());
+            if (request.getOrderId() != null) {
+                Map<String, Integer> orderQty = qtyByOrderAndProduct.computeIfAbsent(request.getOrderId(), key -> new TreeMap<>());
+                entry.getValue().forEach((productId, qty) -> orderQty.merge(productId, qty, Integer::sum));
+            }
+        }
+        for (Map.Entry<String, Map<String, Integer>> entry : qtyByOrderAndProduct.entrySet()) {
+            orderRepository.updateOrderItemFulfillments(entry.getKey(), entry.getValue());
+            changeEvents.statusChanged(EventTopic.ORDER, entry.getKey(), "Pending");
+        }
+    }
+
+    private List<StockTransaction> buildOutTransactions(List<BatchAllocation> allocations, String requestId, String warehouseStaffId) {
+        List<StockTransaction> transactions = new ArrayList<>();
+        for (BatchAllocation allocation : allocations) {
+            transactions.add(buildOutTransaction(allocation.getProductId(), allocation.getBatchId(), allocation.getQuantity(),
+                    requestId, warehouseStaffId));
+        }
+        return transactions;
+    }
+
+    // แบ่งล็อตที่ตัดได้ (เรียง FIFO ต่อสินค้า) ให้แต่ละใบเบิกตามลำดับ เพื่อให้ ledger อ้างอิงใบเบิกที่ถูกต้อง
+    private List<StockTransaction> buildOutTransactions(List<BatchAllocation> allocations,
+                                                        Map<String, Map<String, Integer>> qtyByRequestAndProduct,
+                                                        String warehouseStaffId) {
+        if (qtyByRequestAndProduct.size() == 1) {
+            return buildOutTransactions(allocations, qtyByRequestAndProduct.keySet().iterator().next(), warehouseStaffId);
+        }
+        Map<String, List<BatchAllocation>> allocationsByProduct = new HashMap<>();
+        for (BatchAllocation allocation : allocations) {
+            allocationsByProduct.computeIfAbsent(allocation.getProductId(), key -> new ArrayList<>()).add(allocation);
+        }
+        Map<String, Integer> usedByBatch = new HashMap<>();
+        List<StockTransaction> transactions = new ArrayList<>();
+        for (Map.Entry<String, Map<String, Integer>> request : qtyByRequestAndProduct.entrySet()) {
+            for (Map.Entry<String, Integer> demand : request.getValue().entrySet()) {
+                int needed = demand.getValue();
+                for (BatchAllocation allocation : allocationsByProduct.getOrDefault(demand.getKey(), List.of())) {
+                    if (needed == 0) {
+                        break;
+                    }
+                    int used = usedByBatch.getOrDefault(allocation.getBatchId(), 0);
+                    int take = Math.min(needed, allocation.getQuantity() - used);
+                    if (take <= 0) {
+                        continue;
+                    }
+                    usedByBatch.put(allocation.getBatchId(), used + take);
+                    needed -= take;
+                    transactions.add(buildOutTransaction(demand.getKey(), allocation.getBatchId(), take, request.getKey(), warehouseStaffId));
+                }
+            }
+        }
+        return transactions;
+    }
+
+    private StockTransaction buildOutTransaction(String productId, String batchId, int quantity, String requestId, String warehouseStaffId) {
+        StockTransaction transaction = new StockTransaction();
+        String transactionId = idGenerator.nextId("ST-");
+        transaction.setTransactionId(transactionId);
+        transaction.setType("OUT");
+        transaction.setProductId(productId);
+        transaction.setQuantity(quantity);
+        transaction.setStaffId(warehouseStaffId);
+        transaction.setDescription("Fulfill Request ID " + requestId);
+        transaction.setBatchId(batchId);
+        transaction.setReferenceId(requestId);
+        return transaction;
     }
 
     // แก้ไข: เปลี่ยน Type ของ ID ทั้งหมดเป็น String
     private void checkAndUpdateRequestAndOrderStatus(String requestId, String productId, int fulfillQty) {
         requestRepository.updateRequestStatus(requestId, "Pending");
+        changeEvents.statusChanged(EventTopic.REQUEST, requestId, "Pending");
 
 
         Request request = requestRepository.findById(requestId);
         if (request != null && request.getOrderId() != null) {
             orderRepository.updateOrderItemFulfillment(request.getOrderId(), productId, fulfillQty);
+            changeEvents.statusChanged(EventTopic.ORDER, request.getOrderId(), "Pending");
         }
     }
-    public List<StockTransaction> getAllTransactions() {
-        return stockTransactionRepository.findAll();
+    public StockTransactionPage getTransactions(StockTransactionFilter filter, String cursor, Integer limit) {
+        int pageSize = limit == null ? DEFAULT_TRANSACTION_PAGE_SIZE : limit;
+        if (pageSize <= 0 || pageSize > MAX_TRANSACTION_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit ต้องอยู่ระหว่าง 1 ถึง " + MAX_TRANSACTION_PAGE_SIZE);
+        }
+        if (filter.getType() != null && !TRANSACTION_TYPES.contains(filter.getType())) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "ประเภทรายการต้องเป็น IN, OUT หรือ ADJUST");
+        }
+
+        LocalDateTime afterDate = null;
+        String afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = decoded.indexOf('|');
+                afterDate = LocalDateTime.parse(decoded.substring(0, separator));
+                afterId = decoded.substring(separator + 1);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "cursor ไม่ถูกต้อง");
+            }
+        }
+
+        // ดึงเกินมา 1 แถวเพื่อดูว่ามีหน้าถัดไปหรือไม่
+        List<StockTransaction> rows = stockTransactionRepository.findPage(filter, afterDate, afterId, pageSize + 1);
+        if (rows.size() <= pageSize) {
+            return new StockTransactionPage(rows, null);
+        }
+        List<StockTransaction> page = new ArrayList<>(rows.subList(0, pageSize));
+        StockTransaction last = page.get(page.size() - 1);
+        String nextCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                (last.getTransactionDate() + "|" + last.getTransactionId()).getBytes(StandardCharsets.UTF_8));
+        return new StockTransactionPage(page, nextCursor);
     }
 
     public List<StockTransaction> getTransactionsForRequest(String requestId) {
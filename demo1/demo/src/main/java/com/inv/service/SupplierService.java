@@ -1,5 +1,7 @@
 package com.inv.service;
 
+import com.inv.cache.TableVersions;
+import com.inv.id.IdGenerator;
 import com.inv.model.Supplier;
 import com.inv.repo.SupplierRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,7 +10,6 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.util.List;
-import java.util.UUID; // Import เพิ่ม
 
 @Service
 public class SupplierService {
@@ -16,6 +17,16 @@ public class SupplierService {
     @Autowired
     private SupplierRepository supplierRepository;
 
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Autowired
+    private TableVersions tableVersions;
+
+    public String getSupplierListETag() {
+        return tableVersions.etag(TableVersions.Table.SUPPLIER);
+    }
+
     public List<Supplier> getAllSuppliers() {
         return supplierRepository.findAll();
     }
@@ -41,7 +52,7 @@ public class SupplierService {
             }
         }
 
-        String supplierId = "SUP-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        String supplierId = idGenerator.nextId("SUP-");
         supplier.setSupplierId(supplierId);
         supplier.setSupplierName(name);
         supplier.setAddress(address);
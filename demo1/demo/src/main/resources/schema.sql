@@ -25,6 +25,8 @@ CREATE TABLE IF NOT EXISTS Product (
     image_url VARCHAR(255),
     active BOOLEAN DEFAULT TRUE
 );
+-- ยอดจองของใบเบิกที่อนุมัติแล้ว (available-to-promise = quantity - reserved_qty)
+ALTER TABLE Product ADD COLUMN IF NOT EXISTS reserved_qty INT NOT NULL DEFAULT 0 CHECK (reserved_qty >= 0);
 
 -- ========================
 -- Customer
@@ -145,4 +147,155 @@ CREATE TABLE IF NOT EXISTS StockTransaction (
     description TEXT,
     batch_id VARCHAR(20) REFERENCES ProductBatch(batch_id),
     reference_id VARCHAR(20)
-);
\ No newline at end of file
+);
+
+-- ========================
+-- open_line_count: จำนวนรายการที่ยังเบิกไม่ครบ (remaining_qty > 0) ของใบเบิก/Order
+-- repository ปรับค่าใน transaction เดียวกับที่เพิ่มรายการหรือเบิก; คำนวณค่าเริ่มต้นให้ข้อมูลเดิมครั้งแรกที่เพิ่มคอลัมน์
+-- ========================
+ALTER TABLE Request ADD COLUMN IF NOT EXISTS open_line_count INT;
+UPDATE Request r SET open_line_count = (
+    SELECT COUNT(*) FROM RequestItem ri WHERE ri.request_id = r.request_id AND ri.remaining_qty > 0
+) WHERE r.open_line_count IS NULL;
+ALTER TABLE Request ALTER COLUMN open_line_count SET DEFAULT 0;
+ALTER TABLE Request ALTER COLUMN open_line_count SET NOT NULL;
+
+ALTER TABLE "Order" ADD COLUMN IF NOT EXISTS open_line_count INT;
+UPDATE "Order" o SET open_line_count = (
+    SELECT COUNT(*) FROM OrderItem oi WHERE oi.order_id = o.order_id AND oi.remaining_qty > 0
+) WHERE o.open_line_count IS NULL;
+ALTER TABLE "Order" ALTER COLUMN open_line_count SET DEFAULT 0;
+ALTER TABLE "Order" ALTER COLUMN open_line_count SET NOT NULL;
+
+-- คิวงานเบิก (POST /stock/requests/claim): claimed_by ถือใบเบิกไว้ถึง claim_expires_at เลยเวลาแล้วใบเบิกกลับเข้าคิวเอง
+ALTER TABLE Request ADD COLUMN IF NOT EXISTS claimed_by VARCHAR(20) REFERENCES Staff(staff_id);
+ALTER TABLE Request ADD COLUMN IF NOT EXISTS claim_expires_at TIMESTAMP;
+
+-- ========================
+-- StockReservation (ยอดจองต่อรายการเบิก ผลรวมต่อสินค้าเก็บซ้ำไว้ที่ Product.reserved_qty)
+-- ========================
+CREATE TABLE IF NOT EXISTS StockReservation (
+    request_item_id VARCHAR(20) PRIMARY KEY REFERENCES RequestItem(request_item_id),
+    request_id VARCHAR(20) REFERENCES Request(request_id) NOT NULL,
+    product_id VARCHAR(20) REFERENCES Product(product_id) NOT NULL,
+    quantity INT NOT NULL CHECK (quantity >= 0),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- ========================
+-- LowStockAlert (แจ้งเตือนสินค้าใกล้หมด) เปิดได้ครั้งละหนึ่งรายการต่อสินค้าจนกว่าจำนวนจะกลับขึ้นเหนือจุดสั่งซื้อ
+-- ========================
+ALTER TABLE Product ADD COLUMN IF NOT EXISTS reorder_point INT CHECK (reorder_point >= 0);
+
+CREATE TABLE IF NOT EXISTS LowStockAlert (
+    alert_id VARCHAR(20) PRIMARY KEY,
+    product_id VARCHAR(20) REFERENCES Product(product_id) NOT NULL,
+    quantity INT NOT NULL,
+    reorder_point INT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    resolved_at TIMESTAMP
+);
+
+-- ========================
+-- DemandForecast (ความต้องการต่อวันที่พยากรณ์จากยอด OUT) คำนวณใหม่ทุกคืน สินค้าที่ไม่มีการเบิกในช่วงประวัติจะไม่มีแถว
+-- ========================
+CREATE TABLE IF NOT EXISTS DemandForecast (
+    product_id VARCHAR(20) PRIMARY KEY REFERENCES Product(product_id),
+    daily_demand DOUBLE PRECISION NOT NULL,
+    computed_at TIMESTAMP NOT NULL
+);
+
+-- ========================
+-- ImageUpload (อัปโหลดรูปแบบ async) Pending -> Uploading -> Done/Failed; target_id = สินค้า/ใบสั่งซื้อที่จะใส่ URL ให้เมื่อเสร็จ
+-- ========================
+CREATE TABLE IF NOT EXISTS ImageUpload (
+    asset_id VARCHAR(20) PRIMARY KEY,
+    kind VARCHAR(20) NOT NULL CHECK (kind IN ('PRODUCT', 'PURCHASE_ORDER')),
+    target_id VARCHAR(20),
+    status VARCHAR(20) NOT NULL DEFAULT 'Pending',
+    url TEXT,
+    attempts INT NOT NULL DEFAULT 0,
+    error TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- ========================
+-- PickWave (รอบหยิบสินค้า) / PickWaveItem (รายการเบิกในรอบ) / PickWaveLine (แผนหยิบต่อสินค้า/ล็อต)
+-- active = รายการยังอยู่ในรอบที่เปิดอยู่ (unique index กันรายการเดียวอยู่สองรอบพร้อมกัน)
+-- request_id/product_id ของ PickWaveItem คัดลอกจาก RequestItem จึงไม่ใส่ FK ซ้ำ (รอบหนึ่งบันทึกได้หลายพันแถว)
+-- ========================
+CREATE TABLE IF NOT EXISTS PickWave (
+    wave_id VARCHAR(20) PRIMARY KEY,
+    status VARCHAR(20) NOT NULL DEFAULT 'Open',
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    created_by VARCHAR(20) REFERENCES Staff(staff_id),
+    confirmed_at TIMESTAMP,
+    confirmed_by VARCHAR(20) REFERENCES Staff(staff_id)
+);
+
+CREATE TABLE IF NOT EXISTS PickWaveItem (
+    wave_id VARCHAR(20) REFERENCES PickWave(wave_id) NOT NULL,
+    request_item_id VARCHAR(20) REFERENCES RequestItem(request_item_id) NOT NULL,
+    request_id VARCHAR(20) NOT NULL,
+    product_id VARCHAR(20) NOT NULL,
+    quantity INT NOT NULL CHECK (quantity > 0),
+    fulfilled_qty INT,
+    active BOOLEAN NOT NULL DEFAULT TRUE,
+    PRIMARY KEY (wave_id, request_item_id)
+);
+
+CREATE TABLE IF NOT EXISTS PickWaveLine (
+    wave_id VARCHAR(20) REFERENCES PickWave(wave_id) NOT NULL,
+    product_id VARCHAR(20) REFERENCES Product(product_id) NOT NULL,
+    batch_id VARCHAR(20) REFERENCES ProductBatch(batch_id) NOT NULL,
+    quantity INT NOT NULL CHECK (quantity > 0),
+    PRIMARY KEY (wave_id, product_id, batch_id)
+);
+
+-- ========================
+-- Indexes
+-- ========================
+-- ใช้กับการตัดสต็อก FIFO (running sum ตาม received_date, batch_id)
+CREATE INDEX IF NOT EXISTS idx_productbatch_fifo ON ProductBatch(product_id, received_date, batch_id);
+
+-- keyset pagination ของ /stock/transactions: ORDER BY transaction_date DESC, transaction_id DESC
+-- ทุกตัวกรองใช้ index (คอลัมน์กรอง, transaction_date, transaction_id) เพื่อให้แต่ละหน้าเป็น index range scan
+-- (type มีแค่ 3 ค่า จึงใช้ index ตามวันที่แล้วกรองต่อแทนการทำ index แยก)
+CREATE INDEX IF NOT EXISTS idx_stocktransaction_date ON StockTransaction(transaction_date, transaction_id);
+CREATE INDEX IF NOT EXISTS idx_stocktransaction_product ON StockTransaction(product_id, transaction_date, transaction_id);
+CREATE INDEX IF NOT EXISTS idx_stocktransaction_reference ON StockTransaction(reference_id, transaction_date, transaction_id);
+CREATE INDEX IF NOT EXISTS idx_stocktransaction_staff ON StockTransaction(staff_id, transaction_date, transaction_id);
+CREATE INDEX IF NOT EXISTS idx_stocktransaction_batch ON StockTransaction(batch_id, transaction_date, transaction_id);
+
+-- keyset pagination ของ /purchase-orders: ORDER BY po_date DESC, po_id DESC (กรองตาม status ได้)
+CREATE INDEX IF NOT EXISTS idx_purchaseorder_date ON PurchaseOrder(po_date, po_id);
+CREATE INDEX IF NOT EXISTS idx_purchaseorder_status ON PurchaseOrder(status, po_date, po_id);
+-- ดึงรายการสินค้าของทั้งหน้าด้วย po_id = ANY(?)
+CREATE INDEX IF NOT EXISTS idx_purchaseitem_po ON PurchaseItem(po_id);
+
+-- ปล่อยยอดจองทั้งใบเบิกตอนปฏิเสธ/ปิด
+CREATE INDEX IF NOT EXISTS idx_stockreservation_request ON StockReservation(request_id);
+
+-- POST /products/availability: ยอดค้างเบิกต่อสินค้า อ่านเฉพาะรายการที่ยังเบิกไม่ครบ
+CREATE INDEX IF NOT EXISTS idx_requestitem_open_product ON RequestItem(product_id) WHERE remaining_qty > 0;
+CREATE INDEX IF NOT EXISTS idx_orderitem_open_product ON OrderItem(product_id) WHERE remaining_qty > 0;
+
+-- หน้าคิวงาน (ready-to-close / approved): partial index เก็บเฉพาะเอกสารที่ยังไม่ปิด จึงไม่โตตามประวัติ
+CREATE INDEX IF NOT EXISTS idx_request_ready_to_close ON Request(request_date) WHERE status = 'Pending' AND open_line_count = 0;
+CREATE INDEX IF NOT EXISTS idx_request_open ON Request(request_date) WHERE status IN ('Approved', 'Pending') AND open_line_count > 0;
+CREATE INDEX IF NOT EXISTS idx_order_ready_to_close ON "Order"(order_date) WHERE status = 'Pending' AND open_line_count = 0;
+
+-- ?include=items ของ /requests และ /orders: ดึงรายการของทั้งหน้าด้วย request_id/order_id = ANY(?)
+CREATE INDEX IF NOT EXISTS idx_requestitem_request ON RequestItem(request_id);
+CREATE INDEX IF NOT EXISTS idx_orderitem_order ON OrderItem(order_id);
+
+-- pick wave: รายการเบิกอยู่ในรอบที่เปิดได้รอบเดียว และหาแผนหยิบของรอบที่เปิดอยู่ตามล็อต
+CREATE UNIQUE INDEX IF NOT EXISTS idx_pickwaveitem_active ON PickWaveItem(request_item_id) WHERE active;
+CREATE INDEX IF NOT EXISTS idx_pickwave_open ON PickWave(created_at) WHERE status = 'Open';
+-- คิวงานเบิกไม่แจกใบเบิกที่มีรายการอยู่ในรอบหยิบที่เปิดอยู่
+CREATE INDEX IF NOT EXISTS idx_pickwaveitem_active_request ON PickWaveItem(request_id) WHERE active;
+
+-- low-stock alert: แจ้งเตือนที่ยังเปิดอยู่ได้หนึ่งรายการต่อสินค้า (กันแจ้งซ้ำ) และหน้ารายการเรียงตามเวลาที่เปิด
+CREATE UNIQUE INDEX IF NOT EXISTS idx_lowstockalert_open ON LowStockAlert(product_id) WHERE resolved_at IS NULL;
+CREATE INDEX IF NOT EXISTS idx_lowstockalert_created ON LowStockAlert(created_at);
@@ -0,0 +1,110 @@
+package com.inv.alert;
+
+import com.inv.event.ChangeEventPublisher;
+import com.inv.event.EventTopic;
+import com.inv.id.IdGenerator;
+import com.inv.id.SnowflakeIdGenerator;
+import com.inv.model.LowStockAlert;
+import com.inv.model.StockLevel;
+import com.inv.repo.LowStockAlertRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LowStockMonitorTest {
+
+    @Mock
+    private LowStockAlertRepository lowStockAlertRepository;
+    @Mock
+    private ChangeEventPublisher changeEvents;
+
+    @Spy
+    private IdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    @InjectMocks
+    private LowStockMonitor monitor;
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void quantitiesChanged_opensAlertOnlyWhenCrossingReorderPoint() {
+        when(lowStockAlertRepository.openAll(anyList())).thenReturn(List.of("PROD-1"));
+
+        // PROD-1: 12 -> 8 (ข้ามจุด 10), PROD-2: 7 -> 5 (ต่ำอยู่แล้ว), PROD-3: 30 -> 20 (ยังเหนือจุด)
+        monitor.quantitiesChanged(Map.of("PROD-1", -4, "PROD-2", -2, "PROD-3", -10), List.of(
+                new StockLevel("PROD-1", 8, 10),
+                new StockLevel("PROD-2", 5, 10),
+                new StockLevel("PROD-3", 20, 10)));
+
+        ArgumentCaptor<List<LowStockAlert>> opened = ArgumentCaptor.forClass(List.class);
+        verify(lowStockAlertRepository).openAll(opened.capture());
+        assertEquals(1, opened.getValue().size());
+        LowStockAlert alert = opened.getValue().get(0);
+        assertEquals("PROD-1", alert.getProductId());
+        assertEquals(8, alert.getQuantity());
+        assertEquals(10, alert.getReorderPoint());
+        verify(lowStockAlertRepository, never()).resolve(anyCollection());
+        verify(changeEvents).publish(EventTopic.PRODUCT, "PROD-1", Map.of("lowStock", true));
+    }
+
+    @Test
+    void quantitiesChanged_resolvesAlertWhenStockRecovers() {
+        when(lowStockAlertRepository.resolve(anyCollection())).thenReturn(List.of("PROD-1"));
+
+        monitor.quantitiesChanged(Map.of("PROD-1", 50, "PROD-2", 1), List.of(
+                new StockLevel("PROD-1", 55, 10),
+                new StockLevel("PROD-2", 6, 10)));
+
+        verify(lowStockAlertRepository).resolve(List.of("PROD-1"));
+        verify(lowStockAlertRepository, never()).openAll(anyList());
+        verify(changeEvents).publish(EventTopic.PRODUCT, "PROD-1", Map.of("lowStock", false));
+    }
+
+    @Test
+    void quantitiesChanged_ignoresProductsWithoutReorderPoint() {
+        monitor.quantitiesChanged(Map.of("PROD-1", -100), List.of(new StockLevel("PROD-1", 0, null)));
+
+        verify(lowStockAlertRepository, never()).openAll(anyList());
+        verify(lowStockAlertRepository, never()).resolve(anyCollection());
+    }
+
+    @Test
+    void quantitiesChanged_skipsEventWhenAlertAlreadyOpen() {
+        // มีแจ้งเตือนเปิดอยู่แล้ว (เช่นตั้งจุดสั่งซื้อตอนของต่ำอยู่ แล้วเติมแล้วตัดซ้ำใน transaction อื่น) ฐานข้อมูลจะข้ามให้
+        when(lowStockAlertRepository.openAll(anyList())).thenReturn(List.of());
+
+        monitor.quantitiesChanged(Map.of("PROD-1", -1), List.of(new StockLevel("PROD-1", 10, 10)));
+
+        verify(changeEvents, never()).publish(any(), anyString(), anyMap());
+    }
+
+    @Test
+    void levelSet_opensWhenAlreadyLowAndResolvesOtherwise() {
+        when(lowStockAlertRepository.openAll(anyList())).thenReturn(List.of("PROD-1"));
+
+        monitor.levelSet(new StockLevel("PROD-1", 3, 5));
+        monitor.levelSet(new StockLevel("PROD-2", 30, 5));
+        monitor.levelSet(new StockLevel("PROD-3", 0, null));
+
+        verify(lowStockAlertRepository).resolve(List.of("PROD-2"));
+        verify(lowStockAlertRepository).resolve(List.of("PROD-3"));
+        verify(changeEvents).publish(EventTopic.PRODUCT, "PROD-1", Map.of("lowStock", true));
+    }
+}
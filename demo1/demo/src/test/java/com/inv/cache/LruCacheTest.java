@@ -0,0 +1,72 @@
+package com.inv.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LruCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void get_evictsLeastRecentlyUsedWhenFull() {
+        LruCache<String, String> cache = new LruCache<>(2, 1, TimeUnit.MINUTES, now::get);
+        cache.put("A", "a");
+        cache.put("B", "b");
+        cache.get("A");
+        cache.put("C", "c");
+
+        assertEquals("a", cache.get("A"));
+        assertNull(cache.get("B"));
+        assertEquals("c", cache.get("C"));
+        CacheStats stats = cache.stats();
+        assertEquals(3, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.evictions());
+        assertEquals(2, stats.size());
+    }
+
+    @Test
+    void get_expiresEntriesAfterTtl() {
+        LruCache<String, String> cache = new LruCache<>(10, 5, TimeUnit.SECONDS, now::get);
+        cache.put("A", "a");
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(4));
+        assertEquals("a", cache.get("A"));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertNull(cache.get("A"));
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void putIfUnchanged_rejectsValueReadBeforeConcurrentWrite() {
+        LruCache<String, String> cache = new LruCache<>(10, 1, TimeUnit.MINUTES, now::get);
+        long stamp = cache.stamp("A");
+        cache.invalidate("A"); // มีคนเขียนระหว่างที่เรากำลังอ่านฐานข้อมูล
+
+        assertFalse(cache.putIfUnchanged("A", "old", stamp));
+        assertNull(cache.get("A"));
+        assertTrue(cache.putIfUnchanged("A", "new", cache.stamp("A")));
+    }
+
+    @Test
+    void putIfUnchanged_isBlockedUntilPendingWriteEnds() {
+        LruCache<String, String> cache = new LruCache<>(10, 1, TimeUnit.MINUTES, now::get);
+        cache.put("A", "a");
+        cache.beginWrite("A");
+
+        assertNull(cache.get("A"));
+        assertFalse(cache.putIfUnchanged("A", "uncommitted", cache.stamp("A")));
+
+        cache.endWrite("A");
+        assertTrue(cache.putIfUnchanged("A", "committed", cache.stamp("A")));
+        assertEquals("committed", cache.get("A"));
+    }
+}
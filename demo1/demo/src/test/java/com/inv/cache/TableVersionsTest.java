@@ -0,0 +1,68 @@
+package com.inv.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class TableVersionsTest {
+
+    private final AtomicLong now = new AtomicLong(1_200_000);
+    private final TableVersions tableVersions = new TableVersions(60_000, now::get);
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void bump_changesOnlyThatTablesETag() {
+        String products = tableVersions.etag(TableVersions.Table.PRODUCT);
+        String customers = tableVersions.etag(TableVersions.Table.CUSTOMER);
+
+        tableVersions.bump(TableVersions.Table.PRODUCT);
+
+        assertNotEquals(products, tableVersions.etag(TableVersions.Table.PRODUCT));
+        assertEquals(customers, tableVersions.etag(TableVersions.Table.CUSTOMER));
+    }
+
+    @Test
+    void bump_insideTransactionWaitsForCompletion() {
+        TransactionSynchronizationManager.initSynchronization();
+        String before = tableVersions.etag(TableVersions.Table.STAFF);
+        tableVersions.bump(TableVersions.Table.STAFF);
+        // ระหว่าง transaction ผู้อ่านยังเห็นข้อมูลเก่า ETag จึงต้องยังไม่เปลี่ยน
+        assertEquals(before, tableVersions.etag(TableVersions.Table.STAFF));
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+
+        assertEquals(1, tableVersions.current(TableVersions.Table.STAFF));
+        assertNotEquals(before, tableVersions.etag(TableVersions.Table.STAFF));
+    }
+
+    @Test
+    void etag_changesOnceMaxAgePasses() {
+        String first = tableVersions.etag(TableVersions.Table.PRODUCT);
+        now.addAndGet(59_000);
+        assertEquals(first, tableVersions.etag(TableVersions.Table.PRODUCT));
+
+        now.addAndGet(1_000);
+
+        assertNotEquals(first, tableVersions.etag(TableVersions.Table.PRODUCT));
+    }
+
+    @Test
+    void etag_differsBetweenInstances() {
+        assertNotEquals(new TableVersions(60).etag(TableVersions.Table.PRODUCT),
+                new TableVersions(60).etag(TableVersions.Table.PRODUCT));
+    }
+}
@@ -0,0 +1,68 @@
+package com.inv.event;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class ChangeEventPublisherTest {
+
+    @Mock
+    private EventStreamHub eventStreamHub;
+
+    @InjectMocks
+    private ChangeEventPublisher publisher;
+
+    @BeforeEach
+    void beginTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+    }
+
+    @AfterEach
+    void endTransaction() {
+        TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_UNKNOWN);
+        TransactionSynchronizationManager.clear();
+    }
+
+    @Test
+    void publish_holdsEventsUntilAfterCommit() {
+        publisher.quantitiesChanged(Map.of("PROD-1", -3));
+        publisher.statusChanged(EventTopic.REQUEST, "REQ-1", "Pending");
+        verifyNoInteractions(eventStreamHub);
+
+        TransactionSynchronizationUtils.triggerAfterCommit();
+
+        ArgumentCaptor<List<ChangeEvent>> captor = ArgumentCaptor.captor();
+        verify(eventStreamHub).dispatch(captor.capture());
+        assertEquals(List.of(
+                new ChangeEvent(EventTopic.PRODUCT, "PROD-1", Map.of("quantityDelta", -3)),
+                new ChangeEvent(EventTopic.REQUEST, "REQ-1", Map.of("status", "Pending"))), captor.getValue());
+    }
+
+    @Test
+    void publish_dropsEventsOnRollback() {
+        publisher.statusChanged(EventTopic.ORDER, "ORD-1", "Closed");
+
+        TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(eventStreamHub, never()).dispatch(anyList());
+    }
+}
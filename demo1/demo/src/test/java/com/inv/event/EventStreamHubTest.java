@@ -0,0 +1,99 @@
+package com.inv.event;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventStreamHubTest {
+
+    private final EventStreamHub hub = new EventStreamHub(2, 60, 30, 10);
+
+    @AfterEach
+    void tearDown() {
+        hub.shutdown();
+    }
+
+    @Test
+    void dispatch_sendsOnlySubscribedTopics() throws Exception {
+        RecordingEmitter emitter = new RecordingEmitter(new CountDownLatch(0));
+        hub.register(emitter, EnumSet.of(EventTopic.PRODUCT));
+
+        assertTrue(emitter.next().contains("connected"));
+        hub.dispatch(List.of(
+                new ChangeEvent(EventTopic.LEDGER, "ST-1", Map.of("quantity", 1)),
+                new ChangeEvent(EventTopic.PRODUCT, "PROD-1", Map.of("quantityDelta", -2))));
+
+        String sent = emitter.next();
+        assertTrue(sent.contains("event:product"), sent);
+        assertTrue(sent.contains("PROD-1"), sent);
+        assertEquals(1, hub.subscriberCount());
+    }
+
+    @Test
+    void dispatch_replacesOverflowedBufferWithResync() throws Exception {
+        CountDownLatch slowClient = new CountDownLatch(1);
+        RecordingEmitter emitter = new RecordingEmitter(slowClient);
+        hub.register(emitter, EnumSet.of(EventTopic.PRODUCT));
+
+        // client ค้างอยู่ที่การส่งครั้งแรก: event ที่ 3 ล้นคิว (ขนาด 2) ทำให้ทิ้งของเก่าทั้งหมด
+        for (int i = 1; i <= 5; i++) {
+            hub.dispatch(List.of(new ChangeEvent(EventTopic.PRODUCT, "PROD-" + i, Map.of("quantityDelta", 1))));
+        }
+        slowClient.countDown();
+
+        assertTrue(emitter.next().contains("connected"));
+        assertTrue(emitter.next().contains("event:" + EventStreamHub.RESYNC_EVENT));
+        assertTrue(emitter.next().contains("PROD-4"));
+        assertTrue(emitter.next().contains("PROD-5"));
+    }
+
+    @Test
+    void visibleTo_limitsTopicsByRole() {
+        assertEquals(EnumSet.of(EventTopic.PRODUCT, EventTopic.ORDER, EventTopic.PURCHASE_ORDER),
+                EventTopic.visibleTo(List.of(new SimpleGrantedAuthority("ROLE_PROCUREMENT"))));
+        assertEquals(EnumSet.allOf(EventTopic.class),
+                EventTopic.visibleTo(List.of(new SimpleGrantedAuthority("ROLE_WAREHOUSE"))));
+    }
+
+    // เก็บสิ่งที่ส่งแทนการเขียนลง response; ถ้ากำหนด latch จะค้างการส่งไว้จำลอง client ที่ช้า
+    private static class RecordingEmitter extends SseEmitter {
+        private final CountDownLatch latch;
+        private final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+
+        RecordingEmitter(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            StringBuilder text = new StringBuilder();
+            builder.build().forEach(part -> text.append(part.getData()));
+            sent.add(text.toString());
+        }
+
+        String next() throws InterruptedException {
+            String value = sent.poll(5, TimeUnit.SECONDS);
+            assertNotNull(value, "ไม่มีข้อมูลถูกส่งภายในเวลาที่กำหนด");
+            return value;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.inv.forecast;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DemandForecasterTest {
+
+    private final DemandForecaster forecaster = new DemandForecaster(30, 0.3, 4);
+
+    @AfterEach
+    void tearDown() {
+        forecaster.shutdown();
+    }
+
+    @Test
+    void smooth_treatsMissingDaysAsZeroDemand() {
+        int[] days = {2, 5, 29};
+        long[] quantities = {10, 4, 6};
+
+        double expected = denseSmooth(new long[]{0, 0, 10, 0, 0, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 6}, 0.3);
+
+        assertEquals(expected, DemandForecaster.smooth(days, quantities, 3, 30, 0.3), 1e-9);
+    }
+
+    @Test
+    void smooth_steadyDemandForecastsSameRate() {
+        int[] days = new int[30];
+        long[] quantities = new long[30];
+        for (int i = 0; i < 30; i++) {
+            days[i] = i;
+            quantities[i] = 7;
+        }
+
+        assertEquals(7.0, DemandForecaster.smooth(days, quantities, 30, 30, 0.3), 1e-9);
+    }
+
+    @Test
+    void smooth_recentDemandWeighsMoreThanOldDemand() {
+        double early = DemandForecaster.smooth(new int[]{0}, new long[]{100}, 1, 30, 0.3);
+        double recent = DemandForecaster.smooth(new int[]{29}, new long[]{100}, 1, 30, 0.3);
+
+        assertTrue(recent > early * 10, "recent " + recent + " early " + early);
+    }
+
+    @Test
+    void forecast_matchesSequentialResultAcrossManyChunks() {
+        // มากกว่าหลายก้อน CHUNK_SIZE เพื่อให้ครอบคลุมรอยต่อระหว่างก้อนและการคำนวณซ้อนกับการอ่าน
+        int products = DemandForecaster.CHUNK_SIZE * 3 + 17;
+        Random random = new Random(7);
+        List<DailyDemand> rows = new ArrayList<>();
+        for (int p = 0; p < products; p++) {
+            String productId = String.format("PROD-%06d", p);
+            for (int day = 0; day < 30; day++) {
+                if (random.nextInt(4) == 0) {
+                    rows.add(new DailyDemand(productId, day, 1 + random.nextInt(50)));
+                }
+            }
+        }
+
+        Map<String, Double> forecasts = forecaster.forecast(consumer -> rows.forEach(consumer));
+
+        long withDemand = rows.stream().map(DailyDemand::productId).distinct().count();
+        assertEquals(withDemand, forecasts.size());
+        for (String productId : List.of("PROD-000000", "PROD-002047", "PROD-002048", String.format("PROD-%06d", products - 1))) {
+            long[] dense = new long[30];
+            rows.stream().filter(row -> row.productId().equals(productId)).forEach(row -> dense[row.day()] = row.quantity());
+            if (forecasts.containsKey(productId)) {
+                assertEquals(denseSmooth(dense, 0.3), forecasts.get(productId), 1e-9, productId);
+            }
+        }
+    }
+
+    @Test
+    void forecast_ignoresRowsOutsideHistoryWindow() {
+        Map<String, Double> forecasts = forecaster.forecast(consumer -> {
+            consumer.accept(new DailyDemand("PROD-1", -1, 1000));
+            consumer.accept(new DailyDemand("PROD-1", 29, 30));
+            consumer.accept(new DailyDemand("PROD-2", 30, 1000));
+        });
+
+        assertEquals(Map.of("PROD-1", denseSmooth(withLastDay(30), 0.3)), forecasts);
+    }
+
+    @Test
+    void constructor_rejectsInvalidAlpha() {
+        assertThrows(IllegalArgumentException.class, () -> new DemandForecaster(30, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new DemandForecaster(30, 1.5, 1));
+    }
+
+    private long[] withLastDay(long quantity) {
+        long[] dense = new long[30];
+        dense[29] = quantity;
+        return dense;
+    }
+
+    private double denseSmooth(long[] daily, double alpha) {
+        long total = 0;
+        for (long quantity : daily) {
+            total += quantity;
+        }
+        double level = (double) total / daily.length;
+        for (long quantity : daily) {
+            level = alpha * quantity + (1 - alpha) * level;
+        }
+        return level;
+    }
+}
@@ -0,0 +1,94 @@
+package com.inv.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void nextId_keepsPrefixAndFitsPrimaryKeyColumn() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7);
+
+        String id = generator.nextId("BATCH-");
+
+        assertTrue(id.startsWith("BATCH-"));
+        assertEquals(6 + SnowflakeIdGenerator.ENCODED_LENGTH, id.length());
+        assertTrue(id.length() <= 20);
+        assertTrue(id.substring(6).matches("[0-9A-Z]+"));
+    }
+
+    @Test
+    void nextId_isOrderedWithinSameMillisecondAndAcrossClockRegression() {
+        AtomicLong now = new AtomicLong(SnowflakeIdGenerator.EPOCH_MS + 1_000);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3, now::get);
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) { // เกิน 4096 ต่อ ms เพื่อทดสอบการยืม ms ถัดไป
+            ids.add(generator.nextId("ST-"));
+        }
+        now.addAndGet(-500); // นาฬิกาถอยหลัง
+        ids.add(generator.nextId("ST-"));
+        now.addAndGet(10_000);
+        ids.add(generator.nextId("ST-"));
+
+        for (int i = 1; i < ids.size(); i++) {
+            assertTrue(ids.get(i - 1).compareTo(ids.get(i)) < 0, "ids must be strictly increasing at " + i);
+        }
+    }
+
+    @Test
+    void nextId_embedsNodeIdSoNodesNeverCollide() {
+        AtomicLong now = new AtomicLong(SnowflakeIdGenerator.EPOCH_MS + 42);
+        SnowflakeIdGenerator nodeA = new SnowflakeIdGenerator(1, now::get);
+        SnowflakeIdGenerator nodeB = new SnowflakeIdGenerator(2, now::get);
+
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 1_000; i++) {
+            ids.add(nodeA.nextId("PO-"));
+            ids.add(nodeB.nextId("PO-"));
+        }
+
+        assertEquals(2_000, ids.size());
+        assertEquals(2, (nodeB.nextLong() >> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_NODE_ID);
+    }
+
+    @Test
+    void nextId_isUniqueAcrossThreads() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    ids.add(generator.nextId("ST-"));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(400_000, ids.size());
+    }
+
+    @Test
+    void constructor_rejectsNodeIdOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_NODE_ID + 1));
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(-1));
+    }
+}
@@ -0,0 +1,98 @@
+package com.inv.image;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(10, 4, 50, 1000, 2, now::get);
+
+    @Test
+    void opensOnceFailureRateReachesThresholdWithEnoughCalls() {
+        fail(3);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state()); // ยังไม่ครบ minimumCalls
+
+        succeed(4);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        fail(1); // 4 ใน 8 ครั้ง = 50%
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(0.5, breaker.snapshot().failureRate(), 0.0001);
+    }
+
+    @Test
+    void rejectsWhileOpenThenAllowsLimitedTrialCalls() {
+        fail(4);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(-1, breaker.tryAcquire());
+        assertEquals(1000, breaker.retryAfterMillis());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1000));
+        long first = breaker.tryAcquire();
+        long second = breaker.tryAcquire();
+        assertTrue(first >= 0 && second >= 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertEquals(-1, breaker.tryAcquire()); // ลองได้แค่ halfOpenCalls ครั้งพร้อมกัน
+
+        breaker.onSuccess(first);
+        breaker.onSuccess(second);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.snapshot().bufferedCalls());
+        assertEquals(2, breaker.snapshot().rejectedCalls());
+    }
+
+    @Test
+    void failedTrialCallReopens() {
+        fail(4);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        long trial = breaker.tryAcquire();
+
+        breaker.onFailure(trial);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(2, breaker.snapshot().openedCount());
+    }
+
+    @Test
+    void ignoresResultsOfCallsStartedBeforeStateChange() {
+        long slow = breaker.tryAcquire();
+        fail(4);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        long trial = breaker.tryAcquire();
+
+        breaker.onFailure(slow); // call เก่าจาก CLOSED จบช้า ไม่ควรเปิดวงจรใหม่
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        breaker.release(trial);
+        assertTrue(breaker.tryAcquire() >= 0);
+    }
+
+    @Test
+    void slidingWindowForgetsOldFailures() {
+        fail(2);
+        succeed(8);
+        succeed(2); // ความล้มเหลว 2 ครั้งแรกหลุดออกจาก window
+        fail(4);
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0.4, breaker.snapshot().failureRate(), 0.0001);
+        fail(1);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.onFailure(breaker.tryAcquire());
+        }
+    }
+
+    private void succeed(int times) {
+        for (int i = 0; i < times; i++) {
+            breaker.onSuccess(breaker.tryAcquire());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.inv.image;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageStoreGuardTest {
+
+    private ImageStoreGuard guard;
+
+    private ImageStoreGuard create(int maxConcurrent, long callTimeoutMillis) {
+        guard = new ImageStoreGuard(maxConcurrent, 0, callTimeoutMillis, 4, 4, 50, 60, 1);
+        return guard;
+    }
+
+    @AfterEach
+    void tearDown() {
+        guard.shutdown();
+    }
+
+    @Test
+    void call_returnsResultAndRecordsLatency() throws IOException {
+        ImageStoreGuard guard = create(2, 1000);
+
+        assertEquals("url", guard.call("store", () -> "url"));
+        assertThrows(IOException.class, () -> guard.call("store", () -> {
+            throw new IOException("boom");
+        }));
+
+        ImageStoreStats stats = guard.stats();
+        assertEquals(2, stats.latency().get("store").count());
+        assertEquals(1, stats.latency().get("store").errors());
+        assertEquals(0, stats.bulkheadInUse());
+        assertEquals(CircuitBreaker.State.CLOSED, stats.circuitBreaker().state());
+    }
+
+    @Test
+    void call_rejectsWhenBulkheadIsFull() throws Exception {
+        ImageStoreGuard guard = create(1, 5000);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> {
+            try {
+                return guard.call("store", () -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "slow";
+                });
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        ImageStoreUnavailableException error = assertThrows(ImageStoreUnavailableException.class,
+                () -> guard.call("store", () -> "fast"));
+
+        assertTrue(error.getMessage().contains("bulkhead"));
+        assertEquals(1, guard.stats().bulkheadInUse());
+        assertEquals(1, guard.stats().bulkheadRejected());
+        release.countDown();
+        assertEquals("slow", slow.get(2, TimeUnit.SECONDS));
+        // การถูกปฏิเสธเพราะ bulkhead เต็มไม่นับเป็นความล้มเหลวของที่เก็บรูป
+        assertEquals(0.0, guard.stats().circuitBreaker().failureRate());
+    }
+
+    @Test
+    void call_timesOutWithoutWaitingForTheStore() throws Exception {
+        ImageStoreGuard guard = create(1, 100);
+        CountDownLatch finished = new CountDownLatch(1);
+
+        long started = System.nanoTime();
+        assertThrows(ImageStoreUnavailableException.class, () -> guard.call("store", () -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                finished.countDown();
+            }
+            return "late";
+        }));
+
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(2));
+        assertTrue(finished.await(2, TimeUnit.SECONDS)); // call ที่ค้างถูก interrupt
+        assertEquals(1, guard.stats().timeouts());
+    }
+
+    @Test
+    void call_returnsPermitWhenCancelledBeforeTheTaskStarts() throws Exception {
+        // executor ที่ thread เดียวถูกงานอื่นถือไว้ call จึงค้างในคิวจนหมดเวลา
+        ExecutorService busy = Executors.newSingleThreadExecutor();
+        CountDownLatch unblock = new CountDownLatch(1);
+        busy.execute(() -> {
+            try {
+                unblock.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        guard = new ImageStoreGuard(1, 0, 100, 4, 4, 50, 60, 1, busy);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(ImageStoreUnavailableException.class, () -> guard.call("store", calls::incrementAndGet));
+        assertEquals(0, guard.stats().bulkheadInUse());
+
+        unblock.countDown();
+        busy.shutdown();
+        assertTrue(busy.awaitTermination(2, TimeUnit.SECONDS));
+        assertEquals(0, calls.get());
+        assertEquals(0, guard.stats().bulkheadInUse()); // ไม่คืนซ้ำ
+    }
+
+    @Test
+    void call_failsFastOnceCircuitOpens() {
+        ImageStoreGuard guard = create(2, 1000);
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            assertThrows(IOException.class, () -> guard.call("store", () -> {
+                calls.incrementAndGet();
+                throw new IOException("503 from upstream");
+            }));
+        }
+
+        ImageStoreUnavailableException error = assertThrows(ImageStoreUnavailableException.class,
+                () -> guard.call("store", () -> {
+                    calls.incrementAndGet();
+                    return "never";
+                }));
+
+        assertEquals(4, calls.get());
+        assertTrue(error.getRetryAfterMillis() > 50_000);
+        assertEquals(CircuitBreaker.State.OPEN, guard.stats().circuitBreaker().state());
+        assertEquals(1, guard.stats().circuitBreaker().rejectedCalls());
+    }
+}
@@ -0,0 +1,179 @@
+package com.inv.image;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThumbnailCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ThumbnailCache cache;
+    private ImageStoreGuard guard;
+
+    private ThumbnailCache create() {
+        return create(0);
+    }
+
+    private ThumbnailCache create(long deleteGraceMillis) {
+        guard = new ImageStoreGuard(2, 0, 2000, 20, 10, 50, 30, 3);
+        cache = new ThumbnailCache(new LocalImageStore(tempDir.toString(), ""), guard, tempDir.resolve("thumbs").toString(),
+                new int[]{240, 96, 480, 96}, 1, 10, deleteGraceMillis);
+        return cache;
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (cache != null) {
+            cache.shutdown();
+            guard.shutdown();
+        }
+    }
+
+    @Test
+    void resolveSize_roundsUpToConfiguredSizes() {
+        ThumbnailCache cache = create();
+
+        assertEquals(96, cache.resolveSize(1));
+        assertEquals(96, cache.resolveSize(96));
+        assertEquals(240, cache.resolveSize(97));
+        assertEquals(480, cache.resolveSize(5000));
+    }
+
+    @Test
+    void generate_writesEverySizeKeepingAspectRatio() throws IOException {
+        ThumbnailCache cache = create();
+        Path source = image(tempDir.resolve("photo.png"), 2000, 1000);
+        String url = "https://img.test/photo.png";
+
+        cache.generate("PROD-1", url, source).join();
+
+        BufferedImage large = ImageIO.read(cache.find("PROD-1", url, 480).toFile());
+        BufferedImage small = ImageIO.read(cache.find("PROD-1", url, 96).toFile());
+        assertEquals(480, large.getWidth());
+        assertEquals(240, large.getHeight());
+        assertEquals(96, small.getWidth());
+        assertEquals(48, small.getHeight());
+        assertNotNull(cache.find("PROD-1", url, 240));
+    }
+
+    @Test
+    void generate_doesNotUpscaleSmallImagesAndFillsTransparency() throws IOException {
+        ThumbnailCache cache = create();
+        Path source = tempDir.resolve("icon.png");
+        ImageIO.write(new BufferedImage(50, 40, BufferedImage.TYPE_INT_ARGB), "png", source.toFile());
+        String url = "https://img.test/icon.png";
+
+        cache.generate("PROD-1", url, source).join();
+
+        BufferedImage thumbnail = ImageIO.read(cache.find("PROD-1", url, 480).toFile());
+        assertEquals(50, thumbnail.getWidth());
+        assertEquals(40, thumbnail.getHeight());
+        Color pixel = new Color(thumbnail.getRGB(25, 20));
+        assertTrue(pixel.getRed() > 240 && pixel.getGreen() > 240 && pixel.getBlue() > 240);
+    }
+
+    @Test
+    void generate_fromStoreAndRemovesPreviousVersion() throws IOException {
+        ThumbnailCache cache = create();
+        String oldUrl = image(tempDir.resolve("old.png"), 600, 600).toUri().toString();
+        String newUrl = image(tempDir.resolve("new.png"), 300, 600).toUri().toString();
+
+        cache.generate("PROD-1", oldUrl).join();
+        assertNotNull(cache.find("PROD-1", oldUrl, 96));
+        cache.generate("PROD-1", newUrl).join();
+
+        assertNull(cache.find("PROD-1", oldUrl, 96));
+        assertEquals(48, ImageIO.read(cache.find("PROD-1", newUrl, 96).toFile()).getWidth());
+        assertNotEquals(ThumbnailCache.version(oldUrl), ThumbnailCache.version(newUrl));
+        assertEquals(2, cache.sourceStats().latency().get("open").count());
+    }
+
+    @Test
+    void generate_keepsPreviousVersionUntilGracePeriodEnds() throws Exception {
+        ThumbnailCache cache = create(300);
+        String oldUrl = image(tempDir.resolve("old.png"), 600, 600).toUri().toString();
+        String newUrl = image(tempDir.resolve("new.png"), 300, 600).toUri().toString();
+        cache.generate("PROD-1", oldUrl).join();
+        Path oldThumbnail = cache.find("PROD-1", oldUrl, 96);
+
+        cache.generate("PROD-1", newUrl).join();
+
+        // response ที่ได้ path เก่าไปแล้วยังส่งไฟล์ได้
+        assertTrue(Files.isRegularFile(oldThumbnail));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (Files.exists(oldThumbnail) && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertFalse(Files.exists(oldThumbnail));
+        assertNotNull(cache.find("PROD-1", newUrl, 96));
+    }
+
+    @Test
+    void generate_skipsUnreadableImagesAndUnsafeIds() throws IOException {
+        ThumbnailCache cache = create();
+        Path source = tempDir.resolve("broken.png");
+        Files.write(source, new byte[]{1, 2, 3});
+
+        cache.generate("PROD-1", "https://img.test/broken.png", source).join();
+        cache.generate("../PROD-1", "https://img.test/ok.png", image(tempDir.resolve("ok.png"), 10, 10)).join();
+
+        assertNull(cache.find("PROD-1", "https://img.test/broken.png", 96));
+        assertNull(cache.find("../PROD-1", "https://img.test/ok.png", 96));
+        assertFalse(Files.exists(tempDir.resolve("PROD-1")));
+    }
+
+    @Test
+    void generate_doesNotFetchUrlsOutsideTheStore() {
+        ThumbnailCache cache = create();
+
+        cache.generate("PROD-1", "http://169.254.169.254/latest/meta-data/").join();
+
+        assertNull(cache.sourceStats().latency().get("open"));
+        assertNull(cache.find("PROD-1", "http://169.254.169.254/latest/meta-data/", 96));
+    }
+
+    @Test
+    void generate_sourceFailuresDoNotOpenTheUploadBreaker() {
+        ThumbnailCache cache = create();
+
+        for (int i = 0; i < 10; i++) {
+            String url = tempDir.resolve("missing-" + i + ".png").toUri().toString();
+            cache.generate("PROD-" + i, url).join();
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, cache.sourceStats().circuitBreaker().state());
+        assertEquals(CircuitBreaker.State.CLOSED, guard.stats().circuitBreaker().state());
+        assertNull(guard.stats().latency().get("open"));
+    }
+
+    @Test
+    void scaleToFit_halvesDownToTarget() {
+        BufferedImage scaled = ThumbnailCache.scaleToFit(new BufferedImage(1000, 333, BufferedImage.TYPE_INT_RGB), 100);
+
+        assertEquals(100, scaled.getWidth());
+        assertEquals(33, scaled.getHeight());
+    }
+
+    private Path image(Path file, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ImageIO.write(image, "png", file.toFile());
+        return file;
+    }
+}
@@ -0,0 +1,49 @@
+package com.inv.repo;
+
+import com.inv.cache.TableVersions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CustomerRepositoryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+    @Mock
+    private TableVersions tableVersions;
+
+    @InjectMocks
+    private CustomerRepository repository;
+
+    @Test
+    void update_bumpsVersionOnlyAfterStatementRuns() {
+        // ถ้าเพิ่มก่อน GET ที่แทรกเข้ามาจะได้ ETag ใหม่คู่กับข้อมูลเก่า แล้วถูกตอบ 304 ไปเรื่อยๆ
+        repository.update("CUS-1", "ร้านเอ", "กรุงเทพ", "0800000000", "a@example.com");
+
+        InOrder order = inOrder(jdbcTemplate, tableVersions);
+        order.verify(jdbcTemplate).update(anyString(), any(), any(), any(), any(), any());
+        order.verify(tableVersions).bump(TableVersions.Table.CUSTOMER);
+    }
+
+    @Test
+    void deactivate_doesNotBumpWhenStatementFails() {
+        when(jdbcTemplate.update(anyString(), any(Object[].class))).thenThrow(new DataIntegrityViolationException("fk"));
+
+        assertThrows(DataIntegrityViolationException.class, () -> repository.deactivate("CUS-1"));
+
+        verifyNoInteractions(tableVersions);
+    }
+}
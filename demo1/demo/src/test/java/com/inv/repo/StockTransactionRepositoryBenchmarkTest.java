@@ -0,0 +1,99 @@
+package com.inv.repo;
+
+import com.inv.model.StockTransaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// เทียบความเร็วเขียน StockTransaction แบบทีละแถว กับ group commit (รวมเขียนตอน commit)
+// ต้องมีฐานข้อมูล PostgreSQL สำหรับทดสอบโดยเฉพาะ (test รัน schema.sql/data.sql ทับ) ไม่ใช้ JDBC_DATABASE_URL ของแอป:
+// ตั้ง TEST_JDBC_DATABASE_URL, SPRING_DATASOURCE_USERNAME, SPRING_DATASOURCE_PASSWORD และ RUN_BENCHMARKS=true ก่อนรัน
+@SpringBootTest(properties = "spring.datasource.url=${TEST_JDBC_DATABASE_URL}")
+@EnabledIfEnvironmentVariable(named = "TEST_JDBC_DATABASE_URL", matches = "jdbc:postgresql:.*")
+@EnabledIfEnvironmentVariable(named = "RUN_BENCHMARKS", matches = "true")
+class StockTransactionRepositoryBenchmarkTest {
+
+    private static final int TRANSACTIONS = 100;
+    private static final int ROWS_PER_TRANSACTION = 40;
+    private static final String STAFF_ID = "S001";
+
+    @Autowired
+    private StockTransactionRepository stockTransactionRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private String prefix;
+    private String productId;
+
+    @BeforeEach
+    void setUp() {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql")).execute(dataSource);
+        prefix = "B" + UUID.randomUUID().toString().substring(0, 6).toUpperCase();
+        productId = prefix + "-P";
+        jdbcTemplate.update("INSERT INTO product (product_id, product_name, quantity, active) VALUES (?,?,0,TRUE)",
+                productId, "Ledger benchmark " + prefix);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stockTransactionRepository.setGroupCommit(false);
+        jdbcTemplate.update("DELETE FROM StockTransaction WHERE product_id = ?", productId);
+        jdbcTemplate.update("DELETE FROM product WHERE product_id = ?", productId);
+    }
+
+    @Test
+    void groupCommit_writesMoreRowsPerSecondThanPerRowInserts() {
+        write("W", false); // warm-up JIT/connection pool
+        write("X", true);
+
+        double perRow = write("R", false);
+        double grouped = write("G", true);
+
+        System.out.printf("StockTransaction ledger: per-row %.0f rows/s, group commit %.0f rows/s (x%.1f), %d tx x %d rows%n",
+                perRow, grouped, grouped / perRow, TRANSACTIONS, ROWS_PER_TRANSACTION);
+        Integer rows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM StockTransaction WHERE product_id = ?", Integer.class, productId);
+        assertEquals(4 * TRANSACTIONS * ROWS_PER_TRANSACTION, rows);
+    }
+
+    // คืนค่าเป็นจำนวนแถวต่อวินาที
+    private double write(String run, boolean groupCommit) {
+        stockTransactionRepository.setGroupCommit(groupCommit);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        long started = System.nanoTime();
+        for (int t = 0; t < TRANSACTIONS; t++) {
+            int txIndex = t;
+            tx.executeWithoutResult(status -> {
+                for (int r = 0; r < ROWS_PER_TRANSACTION; r++) {
+                    StockTransaction transaction = new StockTransaction();
+                    transaction.setTransactionId(prefix + run + (txIndex * ROWS_PER_TRANSACTION + r));
+                    transaction.setType("ADJUST");
+                    transaction.setProductId(productId);
+                    transaction.setQuantity(1);
+                    transaction.setStaffId(STAFF_ID);
+                    transaction.setReferenceId(prefix);
+                    stockTransactionRepository.save(transaction);
+                }
+            });
+        }
+        long elapsedNanos = Math.max(1, System.nanoTime() - started);
+        return TRANSACTIONS * ROWS_PER_TRANSACTION * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+}
@@ -0,0 +1,107 @@
+package com.inv.repo;
+
+import com.inv.model.StockTransaction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class StockTransactionRepositoryTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private StockTransactionRepository repository;
+
+    @BeforeEach
+    void beginTransaction() {
+        repository.setGroupCommit(true);
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+    }
+
+    @AfterEach
+    void endTransaction() {
+        // ปิด transaction จำลองให้ครบแบบที่ transaction manager ทำ (clear() ไม่ได้ปลด resource ที่ผูกไว้)
+        TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_UNKNOWN);
+        TransactionSynchronizationManager.clear();
+    }
+
+    @Test
+    void save_buffersRowsUntilBeforeCommitAndWritesThemInOneStatement() {
+        repository.save(transaction("ST-1"));
+        repository.saveAll(List.of(transaction("ST-2"), transaction("ST-3")));
+        verifyNoInteractions(jdbcTemplate);
+
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate).update(sql.capture(), any(PreparedStatementSetter.class));
+        assertEquals(3, sql.getValue().split("\\(\\?").length - 1);
+        TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+    }
+
+    @Test
+    void rollback_discardsBufferedRows() {
+        repository.save(transaction("ST-1"));
+
+        TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verifyNoInteractions(jdbcTemplate);
+        assertTrue(TransactionSynchronizationManager.getResourceMap().isEmpty());
+    }
+
+    @Test
+    void reads_flushBufferedRowsFirst() {
+        repository.save(transaction("ST-1"));
+
+        repository.findByReferenceId("REQ-1");
+
+        verify(jdbcTemplate).update(anyString(), any(PreparedStatementSetter.class));
+        TransactionSynchronizationUtils.triggerBeforeCommit(false);
+        verify(jdbcTemplate).update(anyString(), any(PreparedStatementSetter.class)); // ไม่เขียนซ้ำตอน commit
+    }
+
+    @Test
+    void save_writesImmediatelyWhenGroupCommitIsOff() {
+        repository.setGroupCommit(false);
+
+        repository.save(transaction("ST-1"));
+
+        verify(jdbcTemplate).update(anyString(), any(), any(), any(), any(), any(), any(), any(), any());
+        verify(jdbcTemplate, never()).update(anyString(), any(PreparedStatementSetter.class));
+    }
+
+    private StockTransaction transaction(String id) {
+        StockTransaction transaction = new StockTransaction();
+        transaction.setTransactionId(id);
+        transaction.setType("OUT");
+        transaction.setProductId("PROD-1");
+        transaction.setQuantity(1);
+        transaction.setStaffId("S001");
+        transaction.setReferenceId("REQ-1");
+        return transaction;
+    }
+}
@@ -0,0 +1,79 @@
+package com.inv.search;
+
+import com.inv.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// วัดเวลาค้นหาบนแคตตาล็อก 200,000 รายการ (ใช้เวลาสร้างข้อมูลหลายวินาที จึงไม่รันกับ mvn test ปกติ)
+// รันด้วย RUN_BENCHMARKS=true mvn test -Dtest=ProductSearchIndexBenchmarkTest
+@EnabledIfEnvironmentVariable(named = "RUN_BENCHMARKS", matches = "true")
+class ProductSearchIndexBenchmarkTest {
+
+    private final ProductSearchIndex index = new ProductSearchIndex();
+
+    @Test
+    void search_onLargeCatalog() {
+        // คำศัพท์สุ่มจากพยางค์ไทย/อังกฤษ ~6,000 คำ ให้ใกล้เคียงแคตตาล็อกจริงที่ชื่อสินค้าหลากหลาย
+        String[] thai = {"สาย", "ไฟ", "เบรก", "เกอร์", "หลอด", "ปลั๊ก", "ท่อ", "สวิตช์", "ทอง", "แดง", "เหล็ก", "ขนาด", "สี", "ขาว", "ดำ", "น็อต",
+                "สกรู", "กาว", "ตู้", "ราง", "ข้อ", "ต่อ", "งอ", "พัด", "ลม", "ปั๊ม", "น้ำ", "ถัง", "ฝา", "ครอบ"};
+        String[] latin = {"ca", "ble", "bre", "ak", "er", "led", "so", "ck", "et", "pi", "pe", "sw", "it", "ch", "co", "pp",
+                "st", "ee", "l", "pro", "max", "mi", "ni", "flex", "tor", "que", "van", "dal", "ox", "zen"};
+        Random random = new Random(42);
+        List<String> vocabulary = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            vocabulary.add(thai[random.nextInt(thai.length)] + thai[random.nextInt(thai.length)] + thai[random.nextInt(thai.length)]);
+            vocabulary.add(latin[random.nextInt(latin.length)] + latin[random.nextInt(latin.length)] + latin[random.nextInt(latin.length)]);
+        }
+        List<Product> catalog = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            String name = word(vocabulary, random) + " " + word(vocabulary, random) + " " + word(vocabulary, random) + " " + random.nextInt(1000);
+            String description = word(vocabulary, random) + word(vocabulary, random) + " " + word(vocabulary, random) + " รุ่น " + i;
+            catalog.add(product("PROD-" + i, name, description));
+        }
+        index.load(() -> catalog);
+
+        List<String> queries = new ArrayList<>(List.of("สาย", "เบรก", "ca", "prod-1999", "รุ่น 15", "ทองแดง", "flex"));
+        for (int i = 0; i < 20; i++) {
+            String word = vocabulary.get(random.nextInt(vocabulary.size()));
+            queries.add(word.substring(0, Math.min(word.length(), 2 + random.nextInt(4))));
+        }
+        for (int round = 0; round < 20; round++) {
+            queries.forEach(query -> index.search(query, 20)); // warm-up JIT
+        }
+        long[] elapsed = new long[queries.size() * 5];
+        int n = 0;
+        for (int round = 0; round < 5; round++) {
+            for (String query : queries) {
+                long started = System.nanoTime();
+                List<String> results = index.search(query, 20);
+                elapsed[n++] = System.nanoTime() - started;
+                assertTrue(results.size() <= 20);
+            }
+        }
+        Arrays.sort(elapsed);
+        double medianMs = elapsed[elapsed.length / 2] / 1_000_000.0;
+        double p95Ms = elapsed[elapsed.length * 95 / 100] / 1_000_000.0;
+        System.out.printf("Product search on %d products: median %.2f ms, p95 %.2f ms, max %.2f ms%n",
+                catalog.size(), medianMs, p95Ms, elapsed[elapsed.length - 1] / 1_000_000.0);
+    }
+
+    private String word(List<String> vocabulary, Random random) {
+        return vocabulary.get(random.nextInt(vocabulary.size()));
+    }
+
+    private Product product(String id, String name, String description) {
+        Product product = new Product();
+        product.setProductId(id);
+        product.setProductName(name);
+        product.setDescription(description);
+        product.setActive(true);
+        return product;
+    }
+}
@@ -0,0 +1,102 @@
+package com.inv.search;
+
+import com.inv.model.Product;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductSearchIndexTest {
+
+    private final ProductSearchIndex index = new ProductSearchIndex();
+
+    @Test
+    void search_matchesThaiAndLatinSubstrings() {
+        index.load(() -> List.of(
+                product("PROD-1", "สายไฟ VCT 2x1.5", "สายไฟอ่อนสำหรับงานทั่วไป"),
+                product("PROD-2", "เบรกเกอร์ 20A", "Circuit breaker ติดตั้งในตู้"),
+                product("PROD-3", "หลอดไฟ LED 9W", null)));
+
+        assertEquals(List.of("PROD-1"), index.search("ไฟอ่อน", 10));
+        assertEquals(List.of("PROD-2"), index.search("breaker", 10));
+        assertEquals(List.of("PROD-3"), index.search("led", 10));
+        assertEquals(List.of("PROD-2"), index.search("เบรก 20a", 10));
+        assertTrue(index.search("ประแจ", 10).isEmpty());
+    }
+
+    @Test
+    void search_ranksExactAndPrefixNameMatchesFirst() {
+        index.load(() -> List.of(
+                product("PROD-1", "ท่อ PVC ข้องอ", "ใช้ต่อสายไฟ"),
+                product("PROD-2", "สายไฟ THW", null),
+                product("PROD-3", "ปลั๊กพ่วง", "มีสายไฟยาว 3 เมตร"),
+                product("PROD-4", "สายไฟ", null)));
+
+        List<String> results = index.search("สายไฟ", 10);
+
+        assertEquals(List.of("PROD-4", "PROD-2"), results.subList(0, 2));
+        assertEquals(4, results.size());
+        assertEquals(List.of("PROD-4"), index.search("สายไฟ", 1));
+        assertEquals(List.of("PROD-3"), index.search("prod-3", 10).subList(0, 1));
+    }
+
+    @Test
+    void search_shortQueriesMatchWordPrefixes() {
+        index.load(() -> List.of(
+                product("PROD-1", "Hammer", null),
+                product("PROD-2", "Sledge hammer", null),
+                product("PROD-3", "Shampoo", null)));
+
+        assertEquals(List.of("PROD-1", "PROD-2"), index.search("ha", 10));
+        assertEquals(List.of("PROD-3", "PROD-2"), index.search("s", 10)); // เท่ากันให้ชื่อสั้นกว่าขึ้นก่อน
+    }
+
+    @Test
+    void putAndRemove_keepIndexCurrent() {
+        index.load(() -> List.of(product("PROD-1", "Drill", null)));
+
+        index.put(product("PROD-2", "Drill bit", null));
+        index.put(product("PROD-1", "Impact driver", null));
+        index.remove("PROD-2");
+
+        assertTrue(index.search("drill", 10).isEmpty());
+        assertEquals(List.of("PROD-1"), index.search("impact", 10));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void search_stillRanksProductsAddedAfterLoad() {
+        List<Product> catalog = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            catalog.add(product("PROD-" + i, "Cable assembly " + i, null));
+        }
+        index.load(() -> catalog);
+
+        // สินค้าใหม่ต่อท้าย index โดยไม่เรียง แต่ชื่อสั้นกว่าต้องยังได้อันดับก่อน
+        index.put(product("PROD-NEW", "Cable", null));
+
+        assertEquals(List.of("PROD-NEW", "PROD-0", "PROD-1"), index.search("cable", 3));
+    }
+
+    @Test
+    void load_keepsChangesMadeWhileLoading() {
+        index.load(() -> {
+            index.put(product("PROD-9", "Cable tie", null));
+            return List.of(product("PROD-1", "Cable", null));
+        });
+
+        assertEquals(List.of("PROD-1", "PROD-9"), index.search("cable", 10));
+    }
+
+    private Product product(String id, String name, String description) {
+        Product product = new Product();
+        product.setProductId(id);
+        product.setProductName(name);
+        product.setDescription(description);
+        product.setActive(true);
+        return product;
+    }
+}
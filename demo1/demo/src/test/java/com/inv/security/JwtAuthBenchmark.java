@@ -0,0 +1,83 @@
+package com.inv.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.Key;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// เวลาตรวจ token ต่อ request: แบบเดิม (สร้าง parser ใหม่ทุกครั้ง) เทียบกับ parser ที่ใช้ร่วมกัน และ cache ของ token ที่ตรวจแล้ว
+// รัน: mvn -B test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt -Dmdep.includeScope=test
+//      java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.inv.security.JwtAuthBenchmark
+// (ไม่ใช่ unit test จึงไม่ถูกรันตอน mvn test)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthBenchmark {
+
+    private Key legacyKey;
+    private String legacyToken;
+    private JwtUtil jwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        legacyKey = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+        legacyToken = Jwts.builder()
+                .setSubject("STAFF-0001")
+                .claim("role", "WAREHOUSE")
+                .setIssuedAt(new Date())
+                .setExpiration(new Date(System.currentTimeMillis() + 9000000))
+                .signWith(legacyKey)
+                .compact();
+        jwtUtil = new JwtUtil(10000);
+        token = jwtUtil.generateToken("STAFF-0001", "WAREHOUSE");
+    }
+
+    // โค้ดเดิมของ JwtUtil.validateToken
+    @Benchmark
+    public String parserPerRequest() {
+        Claims claims = Jwts.parserBuilder()
+                .setSigningKey(legacyKey)
+                .build()
+                .parseClaimsJws(legacyToken)
+                .getBody();
+        return claims.getSubject() + claims.get("role", String.class);
+    }
+
+    @Benchmark
+    public String sharedParser() {
+        Claims claims = jwtUtil.validateToken(token);
+        return claims.getSubject() + claims.get("role", String.class);
+    }
+
+    // token เดิมซ้ำ (กรณีปกติของ client ที่ login แล้ว)
+    @Benchmark
+    public String cachedVerify() {
+        JwtUtil.VerifiedToken verified = jwtUtil.verify(token);
+        return verified.staffId() + verified.role();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JwtAuthBenchmark.class.getSimpleName()).build()).run();
+    }
+}
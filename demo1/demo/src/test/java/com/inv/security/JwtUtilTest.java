@@ -0,0 +1,55 @@
+package com.inv.security;
+
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JwtUtilTest {
+
+    private final AtomicLong now = new AtomicLong(1_700_000_000_000L);
+    private final JwtUtil jwtUtil = new JwtUtil(100, 60_000, now::get);
+
+    @Test
+    void verify_returnsPrincipalAndCachesRepeatTokens() {
+        String token = jwtUtil.generateToken("STAFF-1", "WAREHOUSE");
+
+        JwtUtil.VerifiedToken first = jwtUtil.verify(token);
+        JwtUtil.VerifiedToken second = jwtUtil.verify(token);
+
+        assertEquals("STAFF-1", first.staffId());
+        assertEquals("WAREHOUSE", first.role());
+        assertEquals(now.get() + 60_000, first.expiresAtMillis());
+        assertEquals(first, second);
+        assertEquals(1, jwtUtil.verifiedTokenCacheStats().hits());
+        assertEquals("STAFF-1", jwtUtil.extractStaffId(token));
+    }
+
+    @Test
+    void verify_rejectsTamperedTokenEvenWhenOriginalIsCached() {
+        String token = jwtUtil.generateToken("STAFF-1", "WAREHOUSE");
+        jwtUtil.verify(token);
+        String[] parts = token.split("\\.");
+        String forged = jwtUtil.generateToken("STAFF-1", "ADMIN").split("\\.")[1];
+
+        assertThrows(JwtException.class, () -> jwtUtil.verify(parts[0] + "." + forged + "." + parts[2]));
+        assertThrows(JwtException.class, () -> jwtUtil.verify(token + "x"));
+        assertThrows(JwtException.class, () -> new JwtUtil(100).verify(token)); // key อื่น
+    }
+
+    @Test
+    void verify_rejectsCachedTokenOnceExpired() {
+        String token = jwtUtil.generateToken("STAFF-1", "WAREHOUSE");
+        jwtUtil.verify(token);
+
+        now.addAndGet(59_000);
+        assertEquals("STAFF-1", jwtUtil.verify(token).staffId());
+        now.addAndGet(1_001);
+
+        assertThrows(ExpiredJwtException.class, () -> jwtUtil.verify(token));
+    }
+}
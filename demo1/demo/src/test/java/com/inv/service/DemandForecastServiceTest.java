@@ -0,0 +1,121 @@
+package com.inv.service;
+
+import com.inv.forecast.DemandForecaster;
+import com.inv.model.ReorderSuggestion;
+import com.inv.repo.DemandForecastRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DemandForecastServiceTest {
+
+    @Mock
+    private DemandForecastRepository demandForecastRepository;
+    @Mock
+    private DemandForecaster demandForecaster;
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @InjectMocks
+    private DemandForecastService demandForecastService;
+
+    @Test
+    void getSuggestions_coversForecastMinusAvailableAndOnOrder() {
+        ReflectionTestUtils.setField(demandForecastService, "coverDays", 14);
+        // 2.5/วัน x 14 = 35; ใช้ได้ 20 - 5 = 15, สั่งไว้แล้ว 8 -> แนะนำ 12
+        ReorderSuggestion needsMore = input("PROD-1", 2.5, 20, 5, 8, null);
+        // มีพอแล้ว
+        ReorderSuggestion covered = input("PROD-2", 1.0, 30, 0, 0, null);
+        // ความต้องการต่ำแต่ต้องไม่ต่ำกว่าจุดสั่งซื้อ: เป้าหมาย = 10 + 1
+        ReorderSuggestion belowReorderPoint = input("PROD-3", 0.1, 4, 0, 0, 10);
+        when(demandForecastRepository.findSuggestionInputs("SUP-1")).thenReturn(List.of(needsMore, covered, belowReorderPoint));
+
+        List<ReorderSuggestion> suggestions = demandForecastService.getSuggestions(" SUP-1 ");
+
+        assertEquals(List.of("PROD-1", "PROD-3"), suggestions.stream().map(ReorderSuggestion::getProductId).toList());
+        assertEquals(12, suggestions.get(0).getSuggestedQty());
+        assertEquals(7, suggestions.get(1).getSuggestedQty());
+    }
+
+    @Test
+    void scheduledRefresh_skipsQuietlyWhileAnotherRefreshRuns() {
+        running().set(true);
+
+        demandForecastService.scheduledRefresh();
+
+        verifyNoInteractions(demandForecaster, transactionTemplate);
+        assertTrue(running().get());
+    }
+
+    @Test
+    void startRefresh_rejectsWhileAnotherRefreshRuns() {
+        running().set(true);
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () -> demandForecastService.startRefresh());
+
+        assertEquals(HttpStatus.CONFLICT, ex.getStatusCode());
+        verifyNoInteractions(demandForecaster, transactionTemplate);
+    }
+
+    @Test
+    void startRefresh_runsInBackgroundAndRecordsLastRun() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        when(demandForecaster.getHistoryDays()).thenReturn(30);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+        });
+        when(demandForecaster.forecast(any())).thenReturn(Map.of("PROD-1", 1.5, "PROD-2", 0.5));
+
+        DemandForecastService.RefreshStatus started = demandForecastService.startRefresh();
+
+        assertTrue(started.running());
+        assertTrue(demandForecastService.getRefreshStatus().running());
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (demandForecastService.getRefreshStatus().running() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        DemandForecastService.RefreshStatus finished = demandForecastService.getRefreshStatus();
+        assertFalse(finished.running());
+        assertEquals(2, finished.lastRun().products());
+    }
+
+    private AtomicBoolean running() {
+        return (AtomicBoolean) ReflectionTestUtils.getField(demandForecastService, "running");
+    }
+
+    private ReorderSuggestion input(String productId, double dailyDemand, int onHand, int reserved, int onOrder, Integer reorderPoint) {
+        ReorderSuggestion suggestion = new ReorderSuggestion();
+        suggestion.setProductId(productId);
+        suggestion.setSupplierId("SUP-1");
+        suggestion.setDailyDemand(dailyDemand);
+        suggestion.setOnHand(onHand);
+        suggestion.setReserved(reserved);
+        suggestion.setOnOrder(onOrder);
+        suggestion.setReorderPoint(reorderPoint);
+        return suggestion;
+    }
+}
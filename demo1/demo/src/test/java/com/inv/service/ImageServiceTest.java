@@ -0,0 +1,336 @@
+package com.inv.service;
+
+import com.inv.event.ChangeEventPublisher;
+import com.inv.event.EventTopic;
+import com.inv.id.SnowflakeIdGenerator;
+import com.inv.image.ImageStore;
+import com.inv.image.ImageStoreGuard;
+import com.inv.image.LocalImageStore;
+import com.inv.image.ThumbnailCache;
+import com.inv.model.ImageUpload;
+import com.inv.model.Product;
+import com.inv.repo.ImageUploadRepository;
+import com.inv.repo.ProductRepository;
+import com.inv.repo.PurchaseOrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImageServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ImageUploadRepository imageUploadRepository = mock(ImageUploadRepository.class);
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+    private final PurchaseOrderRepository purchaseOrderRepository = mock(PurchaseOrderRepository.class);
+    private final ChangeEventPublisher changeEvents = mock(ChangeEventPublisher.class);
+    private ImageService imageService;
+    private ThumbnailCache thumbnailCache;
+    private ImageStoreGuard imageStoreGuard;
+
+    private ImageService create(ImageStore store, int concurrency, int maxPending) {
+        ImageService service = new ImageService(store, "products", "slips", tempDir.resolve("spool").toString(),
+                concurrency, maxPending, 3, 1);
+        ReflectionTestUtils.setField(service, "imageUploadRepository", imageUploadRepository);
+        ReflectionTestUtils.setField(service, "productRepository", productRepository);
+        ReflectionTestUtils.setField(service, "purchaseOrderRepository", purchaseOrderRepository);
+        ReflectionTestUtils.setField(service, "idGenerator", new SnowflakeIdGenerator(1));
+        ReflectionTestUtils.setField(service, "changeEvents", changeEvents);
+        imageStoreGuard = new ImageStoreGuard(2, 0, 2000, 20, 10, 50, 30, 3);
+        thumbnailCache = new ThumbnailCache(store, imageStoreGuard, tempDir.resolve("thumbs").toString(), new int[]{32, 64}, 1, 10, 0);
+        ReflectionTestUtils.setField(service, "thumbnailCache", thumbnailCache);
+        ReflectionTestUtils.setField(service, "imageStoreGuard", imageStoreGuard);
+        imageService = service;
+        return service;
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (imageService != null) {
+            imageService.shutdown();
+            thumbnailCache.shutdown();
+            imageStoreGuard.shutdown();
+        }
+    }
+
+    @Test
+    void submitProductImage_returnsPendingThenStoresFileAndPatchesProduct() throws IOException {
+        ImageService service = create(new LocalImageStore(tempDir.resolve("store").toString(), ""), 2, 10);
+        when(productRepository.findById("PROD-1")).thenReturn(new Product());
+        when(productRepository.updateImageUrl(eq("PROD-1"), anyString())).thenReturn(true);
+        byte[] content = png(200, 100);
+
+        ImageUpload upload = service.submitProductImage(new MockMultipartFile("file", "photo.PNG", "image/png", content), "PROD-1");
+
+        assertEquals("Pending", upload.getStatus());
+        assertEquals("PRODUCT", upload.getKind());
+        ArgumentCaptor<String> url = ArgumentCaptor.forClass(String.class);
+        verify(imageUploadRepository, timeout(2000)).markDone(eq(upload.getAssetId()), url.capture());
+        verify(productRepository).updateImageUrl("PROD-1", url.getValue());
+        verify(changeEvents).publish(EventTopic.PRODUCT, "PROD-1", Map.of("imageUrl", url.getValue()));
+        Path stored = Path.of(URI.create(url.getValue()));
+        assertTrue(stored.startsWith(tempDir.resolve("store").resolve("products")));
+        assertTrue(stored.toString().endsWith(".png"));
+        assertArrayEquals(content, Files.readAllBytes(stored));
+        // thumbnail ถูกย่อจากไฟล์พัก แล้วไฟล์พักถูกลบเมื่อย่อเสร็จ
+        waitForDrain(service);
+        waitUntil(() -> isEmpty(tempDir.resolve("spool")));
+        assertTrue(thumbnailCache.find("PROD-1", url.getValue(), 64) != null);
+        assertTrue(thumbnailCache.find("PROD-1", url.getValue(), 32) != null);
+    }
+
+    @Test
+    void getProductImage_returnsCachedThumbnailOrSchedulesOne() throws IOException {
+        Path original = tempDir.resolve("original.png");
+        Files.write(original, png(300, 150));
+        ImageService service = create(new LocalImageStore(tempDir.toString(), ""), 1, 10);
+        Product product = new Product();
+        product.setImageUrl(original.toUri().toString());
+        when(productRepository.findById("PROD-1")).thenReturn(product);
+
+        ImageService.ProductImage missing = service.getProductImage("PROD-1", 50);
+        assertEquals(original.toUri().toString(), missing.originalUrl());
+        assertEquals(null, missing.thumbnail());
+
+        // request แรกสั่งสร้างจากต้นฉบับใน ImageStore เบื้องหลัง request ต่อไปได้ไฟล์ขนาดที่ปัดขึ้น
+        waitUntil(() -> thumbnailCache.find("PROD-1", product.getImageUrl(), 64) != null);
+        ImageService.ProductImage cached = service.getProductImage("PROD-1", 50);
+        assertEquals("64.jpg", cached.thumbnail().getFileName().toString());
+        assertEquals(ThumbnailCache.version(product.getImageUrl()), cached.version());
+        assertEquals(null, service.getProductImage("PROD-1", null).thumbnail());
+    }
+
+    @Test
+    void getProductImage_rejectsProductWithoutImage() {
+        ImageService service = create(new LocalImageStore(tempDir.resolve("store").toString(), ""), 1, 10);
+        when(productRepository.findById("PROD-1")).thenReturn(new Product());
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class, () -> service.getProductImage("PROD-1", 96));
+
+        assertEquals(HttpStatus.NOT_FOUND, error.getStatusCode());
+    }
+
+    @Test
+    void submit_retriesFailedUploadsThenSucceeds() {
+        AtomicInteger calls = new AtomicInteger();
+        ImageService service = create(new ImageStore() {
+            @Override
+            public boolean isAvailable() {
+                return true;
+            }
+
+            @Override
+            public InputStream open(String url) throws IOException {
+                throw new IOException("not stored");
+            }
+
+            @Override
+            public String store(Path file, String folder) throws IOException {
+                if (calls.incrementAndGet() < 3) {
+                    throw new IOException("timeout");
+                }
+                return "https://img.test/" + folder + "/" + file.getFileName();
+            }
+        }, 1, 10);
+        when(purchaseOrderRepository.findById("PO-1")).thenReturn(new com.inv.model.PurchaseOrder());
+
+        ImageUpload upload = service.submitPurchaseOrderSlip(new MockMultipartFile("file", "slip.jpg", "image/jpeg", new byte[]{9}), "PO-1");
+
+        verify(imageUploadRepository, timeout(2000)).markDone(eq(upload.getAssetId()), anyString());
+        verify(imageUploadRepository, timeout(2000).times(2)).recordError(upload.getAssetId(), "timeout");
+        verify(imageUploadRepository).markUploading(upload.getAssetId(), 3);
+        verify(purchaseOrderRepository).updateSlipUrl(eq("PO-1"), any());
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void submit_marksFailedAfterMaxAttempts() {
+        ImageService service = create(new ImageStore() {
+            @Override
+            public boolean isAvailable() {
+                return true;
+            }
+
+            @Override
+            public InputStream open(String url) throws IOException {
+                throw new IOException("not stored");
+            }
+
+            @Override
+            public String store(Path file, String folder) throws IOException {
+                throw new IOException("unreachable");
+            }
+        }, 1, 10);
+        when(productRepository.findById("PROD-1")).thenReturn(new Product());
+
+        ImageUpload upload = service.submitProductImage(new MockMultipartFile("file", "a.png", "image/png", new byte[]{1}), "PROD-1");
+
+        verify(imageUploadRepository, timeout(2000)).markFailed(eq(upload.getAssetId()), isNull(), eq("unreachable"));
+        verify(productRepository, never()).updateImageUrl(anyString(), anyString());
+        waitForDrain(service);
+        assertFalse(Files.exists(tempDir.resolve("spool").resolve(upload.getAssetId() + ".png")));
+    }
+
+    @Test
+    void submit_rejectsWhenTooManyUploadsPending() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        ImageService service = create(new ImageStore() {
+            @Override
+            public boolean isAvailable() {
+                return true;
+            }
+
+            @Override
+            public InputStream open(String url) throws IOException {
+                throw new IOException("not stored");
+            }
+
+            @Override
+            public String store(Path file, String folder) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                return "https://img.test/" + file.getFileName();
+            }
+        }, 1, 2);
+        when(productRepository.findById("PROD-1")).thenReturn(new Product());
+        when(productRepository.updateImageUrl(anyString(), anyString())).thenReturn(true);
+
+        service.submitProductImage(new MockMultipartFile("file", "a.png", "image/png", new byte[]{1}), "PROD-1");
+        service.submitProductImage(new MockMultipartFile("file", "b.png", "image/png", new byte[]{1}), "PROD-1");
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> service.submitProductImage(new MockMultipartFile("file", "c.png", "image/png", new byte[]{1}), "PROD-1"));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, error.getStatusCode());
+        release.countDown();
+        verify(imageUploadRepository, timeout(2000).times(2)).markDone(anyString(), anyString());
+    }
+
+    @Test
+    void submitProductImage_rejectsUnknownProduct() {
+        ImageService service = create(new LocalImageStore(tempDir.resolve("store").toString(), ""), 1, 10);
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> service.submitProductImage(new MockMultipartFile("file", "a.png", "image/png", new byte[]{1}), "PROD-X"));
+
+        assertEquals(HttpStatus.NOT_FOUND, error.getStatusCode());
+        verify(imageUploadRepository, never()).save(any());
+    }
+
+    @Test
+    void uploadProductImage_storesSynchronouslyAndCleansSpool() throws IOException {
+        ImageService service = create(new LocalImageStore(tempDir.resolve("store").toString(), "https://cdn.test/img"), 1, 10);
+
+        String url = service.uploadProductImage(new MockMultipartFile("file", "x.jpg", "image/jpeg", new byte[]{7}));
+
+        assertTrue(url.startsWith("https://cdn.test/img/products/") && url.endsWith(".jpg"), url);
+        try (var spooled = Files.list(tempDir.resolve("spool"))) {
+            assertEquals(0, spooled.count());
+        }
+    }
+
+    @Test
+    void uploadProductImage_failsFastWith503WhenStoreKeepsFailing() {
+        AtomicInteger calls = new AtomicInteger();
+        ImageService service = create(new ImageStore() {
+            @Override
+            public boolean isAvailable() {
+                return true;
+            }
+
+            @Override
+            public InputStream open(String url) throws IOException {
+                throw new IOException("not stored");
+            }
+
+            @Override
+            public String store(Path file, String folder) throws IOException {
+                calls.incrementAndGet();
+                throw new IOException("502 Bad Gateway");
+            }
+        }, 1, 10);
+
+        for (int i = 0; i < 10; i++) {
+            ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                    () -> service.uploadProductImage(new MockMultipartFile("file", "x.jpg", "image/jpeg", new byte[]{7})));
+            assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, error.getStatusCode());
+        }
+        // circuit เปิดแล้ว: ไม่เรียกที่เก็บรูปอีก
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> service.uploadProductImage(new MockMultipartFile("file", "x.jpg", "image/jpeg", new byte[]{7})));
+
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, error.getStatusCode());
+        assertEquals(10, calls.get());
+        assertEquals(10, service.getStoreStats().latency().get("store").errors());
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static boolean isEmpty(Path directory) {
+        try (var files = Files.list(directory)) {
+            return files.findAny().isEmpty();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void waitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private void waitForDrain(ImageService service) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (service.pendingCount() > 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(0, service.pendingCount());
+    }
+}
@@ -0,0 +1,163 @@
+package com.inv.service;
+
+import com.inv.id.IdGenerator;
+import com.inv.id.SnowflakeIdGenerator;
+import com.inv.model.BatchAllocation;
+import com.inv.model.PickWave;
+import com.inv.model.PickWaveItem;
+import com.inv.model.ProductBatch;
+import com.inv.repo.PickWaveRepository;
+import com.inv.repo.ProductBatchRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PickWaveServiceTest {
+
+    @Mock
+    private PickWaveRepository pickWaveRepository;
+    @Mock
+    private ProductBatchRepository productBatchRepository;
+    @Mock
+    private StockService stockService;
+
+    @Spy
+    private IdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    @InjectMocks
+    private PickWaveService pickWaveService;
+
+    @Test
+    void buildWaves_consolidatesLinesIntoFifoPickList() {
+        when(pickWaveRepository.findUnwavedOpenItems()).thenReturn(List.of(
+                openItem("RIT-1", "REQ-1", "PROD-1", 4),
+                openItem("RIT-2", "REQ-1", "PROD-2", 1),
+                openItem("RIT-3", "REQ-2", "PROD-1", 5),
+                openItem("RIT-4", "REQ-3", "PROD-3", 2)));
+        when(pickWaveRepository.findOpenPlannedQuantities(Set.of("PROD-1", "PROD-2", "PROD-3")))
+                .thenReturn(Map.of("BATCH-OLD", 2));
+        when(productBatchRepository.findAvailableBatches(Set.of("PROD-1", "PROD-2", "PROD-3"))).thenReturn(List.of(
+                batch("BATCH-OLD", "PROD-1", 5, 1),
+                batch("BATCH-NEW", "PROD-1", 10, 2),
+                batch("BATCH-P2", "PROD-2", 3, 1)));
+
+        List<PickWave> waves = pickWaveService.buildWaves(null, "STF-1");
+
+        assertEquals(1, waves.size());
+        PickWave wave = waves.get(0);
+        // PROD-3 ไม่มีของในล็อตจึงไม่ถูกใส่ในรอบ; BATCH-OLD เหลือให้รอบนี้ 3 เพราะรอบอื่นจองแผนไว้ 2
+        assertEquals(List.of("RIT-1", "RIT-2", "RIT-3"), wave.getItems().stream().map(PickWaveItem::getRequestItemId).toList());
+        assertEquals(List.of(4, 1, 5), wave.getItems().stream().map(PickWaveItem::getQuantity).toList());
+        assertEquals(List.of("BATCH-OLD", "BATCH-NEW", "BATCH-P2"), wave.getPickList().stream().map(BatchAllocation::getBatchId).toList());
+        assertEquals(List.of(3, 6, 1), wave.getPickList().stream().map(BatchAllocation::getQuantity).toList());
+        verify(pickWaveRepository).save(wave);
+    }
+
+    @Test
+    void buildWaves_splitsWavesByRequestCountAndPlansPartialLines() {
+        when(pickWaveRepository.findUnwavedOpenItems()).thenReturn(List.of(
+                openItem("RIT-1", "REQ-1", "PROD-1", 3),
+                openItem("RIT-2", "REQ-1", "PROD-1", 2),
+                openItem("RIT-3", "REQ-2", "PROD-1", 4),
+                openItem("RIT-4", "REQ-3", "PROD-1", 4)));
+        when(pickWaveRepository.findOpenPlannedQuantities(anyCollection())).thenReturn(Map.of());
+        when(productBatchRepository.findAvailableBatches(anyCollection())).thenReturn(List.of(batch("BATCH-1", "PROD-1", 10, 1)));
+
+        List<PickWave> waves = pickWaveService.buildWaves(2, "STF-1");
+
+        // ใบเบิกที่ 3 ขึ้นรอบใหม่ และได้ของเท่าที่เหลือในล็อต
+        assertEquals(2, waves.size());
+        assertEquals(List.of(3, 2, 4), waves.get(0).getItems().stream().map(PickWaveItem::getQuantity).toList());
+        assertEquals(9, waves.get(0).getPickList().get(0).getQuantity());
+        assertEquals(1, waves.get(1).getItems().get(0).getQuantity());
+        assertEquals("REQ-3", waves.get(1).getItems().get(0).getRequestId());
+        assertTrue(!waves.get(0).getWaveId().equals(waves.get(1).getWaveId()));
+    }
+
+    @Test
+    void buildWaves_rejectsOutOfRangeWaveSize() {
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> pickWaveService.buildWaves(PickWaveService.MAX_WAVE_SIZE + 1, "STF-1"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, error.getStatusCode());
+        verify(pickWaveRepository, never()).findUnwavedOpenItems();
+    }
+
+    @Test
+    void confirmWave_fulfillsAllMembersInOneCallAndRecordsResult() {
+        PickWave open = new PickWave();
+        open.setWaveId("WAVE-1");
+        open.setStatus("Open");
+        when(pickWaveRepository.findByIdForUpdate("WAVE-1")).thenReturn(open);
+        List<PickWaveItem> items = new ArrayList<>(List.of(
+                openItem("RIT-1", "REQ-1", "PROD-1", 4),
+                openItem("RIT-2", "REQ-2", "PROD-1", 3)));
+        when(pickWaveRepository.findItems("WAVE-1")).thenReturn(items);
+        // RIT-2 ถูกเบิกไปบางส่วนแล้วนอกรอบ จึงเบิกได้แค่ 1
+        when(stockService.fulfillItems(Map.of("RIT-1", 4, "RIT-2", 3), "STF-1")).thenReturn(Map.of("RIT-1", 4, "RIT-2", 1));
+
+        pickWaveService.confirmWave("WAVE-1", "STF-1");
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<PickWaveItem>> captor = ArgumentCaptor.forClass(List.class);
+        verify(pickWaveRepository).confirm(eq("WAVE-1"), eq("STF-1"), captor.capture());
+        assertEquals(List.of(4, 1), captor.getValue().stream().map(PickWaveItem::getFulfilledQty).toList());
+    }
+
+    @Test
+    void confirmWave_rejectsClosedWave() {
+        PickWave confirmed = new PickWave();
+        confirmed.setWaveId("WAVE-1");
+        confirmed.setStatus("Confirmed");
+        when(pickWaveRepository.findByIdForUpdate("WAVE-1")).thenReturn(confirmed);
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> pickWaveService.confirmWave("WAVE-1", "STF-1"));
+
+        assertEquals(HttpStatus.CONFLICT, error.getStatusCode());
+        verify(stockService, never()).fulfillItems(any(), any());
+        verify(pickWaveRepository, never()).confirm(any(), any(), anyList());
+    }
+
+    private PickWaveItem openItem(String requestItemId, String requestId, String productId, int quantity) {
+        PickWaveItem item = new PickWaveItem();
+        item.setRequestItemId(requestItemId);
+        item.setRequestId(requestId);
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        return item;
+    }
+
+    private ProductBatch batch(String batchId, String productId, int remaining, int receivedDay) {
+        ProductBatch batch = new ProductBatch();
+        batch.setBatchId(batchId);
+        batch.setProductId(productId);
+        batch.setQuantityRemaining(remaining);
+        batch.setReceivedDate(LocalDateTime.of(2025, 1, receivedDay, 8, 0));
+        return batch;
+    }
+}
@@ -0,0 +1,158 @@
+package com.inv.service;
+
+import com.inv.alert.LowStockMonitor;
+import com.inv.model.Product;
+import com.inv.model.ProductAvailability;
+import com.inv.model.StockLevel;
+import com.inv.repo.ProductRepository;
+import com.inv.search.ProductSearchIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ProductServiceTest {
+
+    @Mock
+    private ProductRepository productRepository;
+    @Mock
+    private LowStockMonitor lowStockMonitor;
+
+    private ProductService productService;
+
+    @BeforeEach
+    void setUp() {
+        productService = new ProductService();
+        ReflectionTestUtils.setField(productService, "productRepository", productRepository);
+        ReflectionTestUtils.setField(productService, "lowStockMonitor", lowStockMonitor);
+        ReflectionTestUtils.setField(productService, "availabilityCacheSize", 100);
+        ReflectionTestUtils.setField(productService, "availabilityCacheTtlSeconds", 60L);
+        productService.initAvailabilityCache();
+    }
+
+    @Test
+    void getAvailability_queriesOnlyUncachedProductsAndKeepsRequestOrder() {
+        when(productRepository.findAvailability(List.of("PROD-2", "PROD-1", "PROD-X")))
+                .thenReturn(List.of(availability("PROD-1", 10, 4), availability("PROD-2", 3, 0)));
+
+        List<ProductAvailability> first = productService.getAvailability(Arrays.asList(" PROD-2", "PROD-1", "PROD-2", null, "PROD-X"));
+
+        assertEquals(List.of("PROD-2", "PROD-1"), first.stream().map(ProductAvailability::getProductId).toList());
+        assertEquals(6, first.get(1).getAvailable());
+        first.get(1).setAvailable(-100);
+
+        when(productRepository.findAvailability(List.of("PROD-3"))).thenReturn(List.of(availability("PROD-3", 1, 1)));
+
+        List<ProductAvailability> second = productService.getAvailability(List.of("PROD-1", "PROD-3"));
+
+        assertEquals(List.of("PROD-1", "PROD-3"), second.stream().map(ProductAvailability::getProductId).toList());
+        assertEquals(6, second.get(0).getAvailable());
+        verify(productRepository).findAvailability(List.of("PROD-2", "PROD-1", "PROD-X"));
+        verify(productRepository).findAvailability(List.of("PROD-3"));
+        verifyNoMoreInteractions(productRepository);
+    }
+
+    @Test
+    void adjustQuantity_rejectsGoingBelowReservedQuantity() {
+        Product product = product("PROD-1", "สายไฟ", true);
+        product.setQuantity(10);
+        product.setReservedQty(4);
+        when(productRepository.findByIdForUpdate("PROD-1")).thenReturn(product);
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class, () ->
+                productService.adjustQuantity("PROD-1", -7));
+        assertEquals(HttpStatus.BAD_REQUEST, error.getStatusCode());
+        verify(productRepository, never()).updateQuantity(anyString(), anyInt());
+
+        List<StockLevel> levels = List.of(new StockLevel("PROD-1", 4, 5));
+        when(productRepository.updateQuantity("PROD-1", -6)).thenReturn(levels);
+        productService.adjustQuantity("PROD-1", -6);
+        verify(lowStockMonitor).quantitiesChanged(java.util.Map.of("PROD-1", -6), levels);
+    }
+
+    @Test
+    void adjustQuantity_reportsNegativeStockWhenNothingIsReserved() {
+        Product product = product("PROD-1", "สายไฟ", true);
+        product.setQuantity(3);
+        when(productRepository.findByIdForUpdate("PROD-1")).thenReturn(product);
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class, () ->
+                productService.adjustQuantity("PROD-1", -4));
+
+        assertEquals(HttpStatus.BAD_REQUEST, error.getStatusCode());
+        assertTrue(error.getReason().contains("ติดลบ"));
+        assertFalse(error.getReason().contains("จอง"));
+        verify(productRepository, never()).updateQuantity(anyString(), anyInt());
+    }
+
+    @Test
+    void searchProducts_loadsHitsInOneQueryAndKeepsRanking() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        index.load(() -> List.of(product("PROD-1", "สายไฟ VCT", true), product("PROD-2", "สายไฟ THW", true),
+                product("PROD-3", "สายไฟ", true)));
+        ReflectionTestUtils.setField(productService, "productSearchIndex", index);
+        List<String> ranked = index.search("สายไฟ", 10);
+        when(productRepository.findByIds(ranked)).thenReturn(List.of(
+                product("PROD-1", "สายไฟ VCT", true), product("PROD-3", "สายไฟ", false), product("PROD-2", "สายไฟ THW", true)));
+
+        List<Product> results = productService.searchProducts("สายไฟ", 10);
+
+        assertEquals(2, results.size());
+        assertEquals(ranked.stream().filter(id -> !id.equals("PROD-3")).toList(),
+                results.stream().map(Product::getProductId).toList());
+        verify(productRepository).findByIds(ranked);
+        verifyNoMoreInteractions(productRepository);
+    }
+
+    @Test
+    void getAvailability_rejectsEmptyAndOversizedLists() {
+        ResponseStatusException empty = assertThrows(ResponseStatusException.class, () ->
+                productService.getAvailability(List.of(" ")));
+        assertEquals(HttpStatus.BAD_REQUEST, empty.getStatusCode());
+
+        List<String> tooMany = new ArrayList<>();
+        for (int i = 0; i <= ProductService.MAX_AVAILABILITY_IDS; i++) {
+            tooMany.add("PROD-" + i);
+        }
+        ResponseStatusException oversized = assertThrows(ResponseStatusException.class, () ->
+                productService.getAvailability(tooMany));
+        assertEquals(HttpStatus.BAD_REQUEST, oversized.getStatusCode());
+    }
+
+    private Product product(String productId, String name, boolean active) {
+        Product product = new Product();
+        product.setProductId(productId);
+        product.setProductName(name);
+        product.setActive(active);
+        return product;
+    }
+
+    private ProductAvailability availability(String productId, int onHand, int reserved) {
+        ProductAvailability availability = new ProductAvailability();
+        availability.setProductId(productId);
+        availability.setOnHand(onHand);
+        availability.setReserved(reserved);
+        availability.setAvailable(onHand - reserved);
+        return availability;
+    }
+}
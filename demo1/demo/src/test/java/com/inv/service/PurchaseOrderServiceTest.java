@@ -1,9 +1,15 @@
 package com.inv.service;
 
+import com.inv.alert.LowStockMonitor;
+import com.inv.event.ChangeEventPublisher;
+import com.inv.id.IdGenerator;
+import com.inv.id.SnowflakeIdGenerator;
 import com.inv.model.Product;
 import com.inv.model.ProductBatch;
 import com.inv.model.PurchaseItem;
 import com.inv.model.PurchaseOrder;
+import com.inv.model.PurchaseOrderPage;
+import com.inv.model.ReorderSuggestion;
 import com.inv.model.StockTransaction;
 import com.inv.repo.ProductBatchRepository;
 import com.inv.repo.ProductRepository;
@@ -14,17 +20,26 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -41,6 +56,18 @@ class PurchaseOrderServiceTest {
     @Mock
     private StockTransactionRepository stockTransactionRepository;
 
+    @Spy
+    private IdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    @Mock
+    private ChangeEventPublisher changeEvents;
+
+    @Mock
+    private LowStockMonitor lowStockMonitor;
+
+    @Mock
+    private DemandForecastService demandForecastService;
+
     @InjectMocks
     private PurchaseOrderService purchaseOrderService;
 
@@ -56,14 +83,14 @@ class PurchaseOrderServiceTest {
         storedItem.setPoId("PO-123");
         storedItem.setProductId("PROD-1");
         storedItem.setQuantity(5);
-        when(purchaseOrderRepository.findItemById("POI-1")).thenReturn(storedItem);
+        when(purchaseOrderRepository.findItemsByIds("PO-123", Set.of("POI-1"))).thenReturn(Map.of("POI-1", storedItem));
         when(purchaseOrderRepository.findItems("PO-123")).thenReturn(List.of(storedItem));
 
         Product product = new Product();
         product.setProductId("PROD-1");
         product.setQuantity(10);
         product.setCostPrice(new BigDecimal("5.00"));
-        when(productRepository.findById("PROD-1")).thenReturn(product);
+        when(productRepository.findByIdsForUpdate(Set.of("PROD-1"))).thenReturn(List.of(product));
 
         PurchaseItem received = new PurchaseItem();
         received.setPoItemId("POI-1");
@@ -72,24 +99,22 @@ class PurchaseOrderServiceTest {
 
         PurchaseOrder result = purchaseOrderService.receivePurchaseOrder("PO-123", List.of(received), "STF-1");
 
-        verify(productRepository).updateQuantity("PROD-1", 5);
-
-        ArgumentCaptor<Number> costCaptor = ArgumentCaptor.forClass(Number.class);
-        verify(productRepository).updateCostPrice(eq("PROD-1"), costCaptor.capture());
-        assertEquals(new BigDecimal("6.00"), new BigDecimal(costCaptor.getValue().toString()));
+        verify(productRepository).updateQuantitiesAndCosts(Map.of("PROD-1", 5), Map.of("PROD-1", new BigDecimal("6.00")));
 
-        ArgumentCaptor<ProductBatch> batchCaptor = ArgumentCaptor.forClass(ProductBatch.class);
-        verify(productBatchRepository).save(batchCaptor.capture());
-        ProductBatch savedBatch = batchCaptor.getValue();
+        ArgumentCaptor<List<ProductBatch>> batchCaptor = ArgumentCaptor.captor();
+        verify(productBatchRepository).saveAll(batchCaptor.capture());
+        assertEquals(1, batchCaptor.getValue().size());
+        ProductBatch savedBatch = batchCaptor.getValue().get(0);
         assertEquals("PROD-1", savedBatch.getProductId());
         assertEquals(5, savedBatch.getQuantityIn());
         assertEquals(5, savedBatch.getQuantityRemaining());
         assertEquals(new BigDecimal("8.00"), savedBatch.getUnitCost());
         assertNotNull(savedBatch.getBatchId());
 
-        ArgumentCaptor<StockTransaction> transactionCaptor = ArgumentCaptor.forClass(StockTransaction.class);
-        verify(stockTransactionRepository).save(transactionCaptor.capture());
-        StockTransaction transaction = transactionCaptor.getValue();
+        ArgumentCaptor<List<StockTransaction>> transactionCaptor = ArgumentCaptor.captor();
+        verify(stockTransactionRepository).saveAll(transactionCaptor.capture());
+        assertEquals(1, transactionCaptor.getValue().size());
+        StockTransaction transaction = transactionCaptor.getValue().get(0);
         assertEquals("IN", transaction.getType());
         assertEquals("PROD-1", transaction.getProductId());
         assertEquals(5, transaction.getQuantity());
@@ -98,8 +123,13 @@ class PurchaseOrderServiceTest {
         assertEquals("รับสินค้าเข้าจาก PO PO-123", transaction.getDescription());
         assertEquals(savedBatch.getBatchId(), transaction.getBatchId());
 
-        verify(purchaseOrderRepository).updateItemQuantity("POI-1", 5);
-        verify(purchaseOrderRepository).updateItemCost("POI-1", new BigDecimal("8.00"));
+        ArgumentCaptor<List<PurchaseItem>> itemCaptor = ArgumentCaptor.captor();
+        verify(purchaseOrderRepository).updateItemsReceived(itemCaptor.capture());
+        PurchaseItem updatedItem = itemCaptor.getValue().get(0);
+        assertEquals("POI-1", updatedItem.getPoItemId());
+        assertEquals(5, updatedItem.getQuantity());
+        assertEquals(new BigDecimal("8.00"), updatedItem.getUnitPrice());
+        verify(purchaseOrderRepository, never()).findItemById(anyString());
         verify(purchaseOrderRepository).updateTotalAmount("PO-123", new BigDecimal("40.00"));
         verify(purchaseOrderRepository).updateStatus("PO-123", "Received");
 
@@ -119,14 +149,14 @@ class PurchaseOrderServiceTest {
         storedItem.setPoId("PO-456");
         storedItem.setProductId("PROD-2");
         storedItem.setQuantity(10);
-        when(purchaseOrderRepository.findItemById("POI-2")).thenReturn(storedItem);
+        when(purchaseOrderRepository.findItemsByIds("PO-456", Set.of("POI-2"))).thenReturn(Map.of("POI-2", storedItem));
         when(purchaseOrderRepository.findItems("PO-456")).thenReturn(List.of(storedItem));
 
         Product product = new Product();
         product.setProductId("PROD-2");
         product.setQuantity(0);
         product.setCostPrice(null);
-        when(productRepository.findById("PROD-2")).thenReturn(product);
+        when(productRepository.findByIdsForUpdate(Set.of("PROD-2"))).thenReturn(List.of(product));
 
         PurchaseItem received = new PurchaseItem();
         received.setPoItemId("POI-2");
@@ -135,21 +165,60 @@ class PurchaseOrderServiceTest {
 
         PurchaseOrder result = purchaseOrderService.receivePurchaseOrder("PO-456", List.of(received), "STF-2");
 
-        verify(productRepository).updateQuantity("PROD-2", 10);
-
-        ArgumentCaptor<Number> costCaptor = ArgumentCaptor.forClass(Number.class);
-        verify(productRepository).updateCostPrice(eq("PROD-2"), costCaptor.capture());
-        assertEquals(new BigDecimal("4.50"), new BigDecimal(costCaptor.getValue().toString()));
+        verify(productRepository).updateQuantitiesAndCosts(Map.of("PROD-2", 10), Map.of("PROD-2", new BigDecimal("4.50")));
 
         verify(purchaseOrderRepository).updateTotalAmount("PO-456", new BigDecimal("45.00"));
         verify(purchaseOrderRepository).updateStatus("PO-456", "Received");
         assertEquals(new BigDecimal("45.00"), result.getTotalAmount());
     }
 
+    @Test
+    void receivePurchaseOrder_prefetchesOnceAndAveragesLinesOfSameProductInOrder() {
+        PurchaseOrder order = new PurchaseOrder();
+        order.setPoId("PO-789");
+        when(purchaseOrderRepository.findById("PO-789")).thenReturn(order);
+
+        PurchaseItem first = new PurchaseItem();
+        first.setPoItemId("POI-A");
+        first.setProductId("PROD-3");
+        PurchaseItem second = new PurchaseItem();
+        second.setPoItemId("POI-B");
+        second.setProductId("PROD-3");
+        when(purchaseOrderRepository.findItemsByIds("PO-789", Set.of("POI-A", "POI-B")))
+                .thenReturn(Map.of("POI-A", first, "POI-B", second));
+
+        Product product = new Product();
+        product.setProductId("PROD-3");
+        product.setQuantity(10);
+        product.setCostPrice(new BigDecimal("10.00"));
+        when(productRepository.findByIdsForUpdate(Set.of("PROD-3"))).thenReturn(List.of(product));
+
+        PurchaseItem receivedA = new PurchaseItem();
+        receivedA.setPoItemId("POI-A");
+        receivedA.setQuantity(10);
+        receivedA.setUnitPrice(new BigDecimal("20.00"));
+        PurchaseItem receivedB = new PurchaseItem();
+        receivedB.setPoItemId("POI-B");
+        receivedB.setQuantity(5);
+        receivedB.setUnitPrice(new BigDecimal("30.00"));
+
+        PurchaseOrder result = purchaseOrderService.receivePurchaseOrder("PO-789", List.of(receivedA, receivedB), "STF-4");
+
+        // (10 x 10 + 10 x 20) / 20 = 15.00 แล้ว (20 x 15 + 5 x 30) / 25 = 18.00
+        verify(productRepository).updateQuantitiesAndCosts(Map.of("PROD-3", 15), Map.of("PROD-3", new BigDecimal("18.00")));
+        ArgumentCaptor<List<ProductBatch>> batchCaptor = ArgumentCaptor.captor();
+        verify(productBatchRepository).saveAll(batchCaptor.capture());
+        assertEquals(2, batchCaptor.getValue().size());
+        ArgumentCaptor<List<StockTransaction>> transactionCaptor = ArgumentCaptor.captor();
+        verify(stockTransactionRepository).saveAll(transactionCaptor.capture());
+        assertEquals(2, transactionCaptor.getValue().size());
+        assertEquals(new BigDecimal("350.00"), result.getTotalAmount());
+    }
+
     @Test
     void receivePurchaseOrder_throwsWhenItemMissing() {
         when(purchaseOrderRepository.findById("PO-404")).thenReturn(new PurchaseOrder());
-        when(purchaseOrderRepository.findItemById("MISSING")).thenReturn(null);
+        when(purchaseOrderRepository.findItemsByIds("PO-404", Set.of("MISSING"))).thenReturn(Map.of());
 
         PurchaseItem received = new PurchaseItem();
         received.setPoItemId("MISSING");
@@ -161,6 +230,100 @@ class PurchaseOrderServiceTest {
         );
 
         assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
-        verify(productRepository, never()).updateQuantity(org.mockito.Mockito.anyString(), org.mockito.Mockito.anyInt());
+        verify(productRepository, never()).updateQuantitiesAndCosts(org.mockito.Mockito.anyMap(), org.mockito.Mockito.anyMap());
+    }
+
+    @Test
+    void getPurchaseOrders_loadsItemsForWholePageInOneQuery() {
+        PurchaseOrder first = order("PO-2", LocalDateTime.of(2025, 3, 2, 10, 0));
+        PurchaseOrder second = order("PO-1", LocalDateTime.of(2025, 3, 1, 9, 30));
+        PurchaseOrder extra = order("PO-0", LocalDateTime.of(2025, 2, 28, 8, 0));
+        when(purchaseOrderRepository.findPage(eq("Pending"), eq(null), eq(null), eq(3)))
+                .thenReturn(List.of(first, second, extra));
+
+        PurchaseItem item = new PurchaseItem();
+        item.setPoItemId("POI-1");
+        item.setPoId("PO-2");
+        when(purchaseOrderRepository.findItemsByPoIds(List.of("PO-2", "PO-1")))
+                .thenReturn(Map.of("PO-2", List.of(item)));
+
+        PurchaseOrderPage page = purchaseOrderService.getPurchaseOrders(" Pending ", null, 2);
+
+        assertEquals(List.of(first, second), page.getItems());
+        assertEquals(List.of(item), first.getItems());
+        assertEquals(0, second.getItems().size());
+        assertNotNull(page.getNextCursor());
+        verify(purchaseOrderRepository, never()).findItems(anyString());
+
+        // cursor ของหน้าถัดไปชี้ไปที่แถวสุดท้ายของหน้านี้
+        when(purchaseOrderRepository.findPage(null, second.getPoDate(), "PO-1", 3)).thenReturn(List.of(extra));
+        when(purchaseOrderRepository.findItemsByPoIds(List.of("PO-0"))).thenReturn(Map.of());
+
+        PurchaseOrderPage next = purchaseOrderService.getPurchaseOrders(null, page.getNextCursor(), 2);
+
+        assertEquals(List.of(extra), next.getItems());
+        assertNull(next.getNextCursor());
+    }
+
+    @Test
+    void getPurchaseOrders_rejectsInvalidCursorAndLimit() {
+        ResponseStatusException badCursor = assertThrows(ResponseStatusException.class, () ->
+                purchaseOrderService.getPurchaseOrders(null, "not-a-cursor", null));
+        assertEquals(HttpStatus.BAD_REQUEST, badCursor.getStatusCode());
+
+        ResponseStatusException badLimit = assertThrows(ResponseStatusException.class, () ->
+                purchaseOrderService.getPurchaseOrders(null, null, PurchaseOrderService.MAX_PAGE_SIZE + 1));
+        assertEquals(HttpStatus.BAD_REQUEST, badLimit.getStatusCode());
+    }
+
+    private PurchaseOrder order(String poId, LocalDateTime poDate) {
+        PurchaseOrder order = new PurchaseOrder();
+        order.setPoId(poId);
+        order.setPoDate(poDate);
+        return order;
+    }
+
+    @Test
+    void createDraftsFromSuggestions_createsOneNewOrderPerSelectedSupplier() {
+        when(demandForecastService.getSuggestions(null)).thenReturn(List.of(
+                suggestion("PROD-1", "SUP-1", 40),
+                suggestion("PROD-2", "SUP-1", 5),
+                suggestion("PROD-3", "SUP-2", 12),
+                suggestion("PROD-4", null, 8),
+                suggestion("PROD-5", "SUP-3", 3)));
+
+        // createPurchaseOrder อ่านรายการกลับจาก repository หลังบันทึก จึงเก็บรายการไว้ตอนเรียก save
+        List<List<PurchaseItem>> savedItems = new ArrayList<>();
+        doAnswer(invocation -> {
+            savedItems.add(new ArrayList<>(invocation.<PurchaseOrder>getArgument(0).getItems()));
+            return null;
+        }).when(purchaseOrderRepository).save(any());
+
+        List<PurchaseOrder> drafts = purchaseOrderService.createDraftsFromSuggestions("STAFF-1", List.of("SUP-1", " SUP-2 ", ""));
+
+        assertEquals(2, drafts.size());
+        assertEquals(List.of("SUP-1", "SUP-2"), drafts.stream().map(PurchaseOrder::getSupplierId).toList());
+        assertEquals("STAFF-1", drafts.get(0).getStaffId());
+        assertEquals("New order", drafts.get(0).getStatus());
+        assertEquals(List.of("PROD-1", "PROD-2"), savedItems.get(0).stream().map(PurchaseItem::getProductId).toList());
+        assertEquals(List.of(40, 5), savedItems.get(0).stream().map(PurchaseItem::getQuantity).toList());
+        assertNull(savedItems.get(0).get(0).getUnitPrice());
+        assertEquals(List.of("PROD-3"), savedItems.get(1).stream().map(PurchaseItem::getProductId).toList());
+    }
+
+    @Test
+    void createDraftsFromSuggestions_createsNothingWhenNoSuggestions() {
+        when(demandForecastService.getSuggestions(null)).thenReturn(List.of(suggestion("PROD-4", null, 8)));
+
+        assertEquals(List.of(), purchaseOrderService.createDraftsFromSuggestions("STAFF-1", null));
+        verify(purchaseOrderRepository, never()).save(any());
+    }
+
+    private ReorderSuggestion suggestion(String productId, String supplierId, int suggestedQty) {
+        ReorderSuggestion suggestion = new ReorderSuggestion();
+        suggestion.setProductId(productId);
+        suggestion.setSupplierId(supplierId);
+        suggestion.setSuggestedQty(suggestedQty);
+        return suggestion;
     }
 }
@@ -0,0 +1,148 @@
+package com.inv.service;
+
+import com.inv.model.Request;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// พนักงานคลังหลายคนรับงานจากคิวพร้อมกัน ต้องไม่มีใบเบิกใดถูกแจกซ้ำ และใบที่สิทธิ์ถือหมดอายุต้องกลับเข้าคิว
+// ต้องมีฐานข้อมูล PostgreSQL สำหรับทดสอบโดยเฉพาะ (test รัน schema.sql/data.sql ทับ) ไม่ใช้ JDBC_DATABASE_URL ของแอป:
+// ตั้ง TEST_JDBC_DATABASE_URL, SPRING_DATASOURCE_USERNAME, SPRING_DATASOURCE_PASSWORD ก่อนรัน
+@SpringBootTest(properties = "spring.datasource.url=${TEST_JDBC_DATABASE_URL}")
+@EnabledIfEnvironmentVariable(named = "TEST_JDBC_DATABASE_URL", matches = "jdbc:postgresql:.*")
+class RequestClaimConcurrencyTest {
+
+    private static final int CLERKS = 8;
+    private static final int ROUNDS = 10;
+    private static final int CLAIM_LIMIT = 3;
+    private static final int REQUESTS = CLERKS * ROUNDS * CLAIM_LIMIT;
+
+    @Autowired
+    private StockService stockService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DataSource dataSource;
+
+    private String prefix;
+    private final List<String> clerkIds = new ArrayList<>();
+    private final List<String> requestIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"));
+        populator.execute(dataSource);
+
+        prefix = "C" + UUID.randomUUID().toString().substring(0, 6).toUpperCase();
+        for (int i = 0; i < CLERKS; i++) {
+            String staffId = prefix + "-S" + i;
+            clerkIds.add(staffId);
+            jdbcTemplate.update("INSERT INTO Staff(staff_id, staff_name, role, password) VALUES (?,?,'WAREHOUSE','-')",
+                    staffId, "Clerk " + i);
+        }
+        String productId = prefix + "-P";
+        jdbcTemplate.update("INSERT INTO product (product_id, product_name, quantity, active) VALUES (?,?,0,TRUE)",
+                productId, "Claim " + prefix);
+
+        // วันที่เก่ากว่าใบเบิกจริงทุกใบ ให้คิวแจกใบของ test ก่อน
+        LocalDateTime requestDate = LocalDateTime.of(1990, 1, 1, 0, 0);
+        List<Object[]> requests = new ArrayList<>();
+        List<Object[]> items = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            String requestId = prefix + "-R" + i;
+            requestIds.add(requestId);
+            requests.add(new Object[]{requestId, Timestamp.valueOf(requestDate.plusMinutes(i))});
+            items.add(new Object[]{prefix + "-I" + i, requestId, productId});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO request(request_id, request_date, status, open_line_count) VALUES (?,?,'Approved',1)", requests);
+        jdbcTemplate.batchUpdate("INSERT INTO requestitem(request_item_id, request_id, product_id, quantity, fulfilled_qty) VALUES (?,?,?,1,0)", items);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM requestitem WHERE request_id LIKE ?", prefix + "-%");
+        jdbcTemplate.update("DELETE FROM request WHERE request_id LIKE ?", prefix + "-%");
+        jdbcTemplate.update("DELETE FROM product WHERE product_id LIKE ?", prefix + "-%");
+        jdbcTemplate.update("DELETE FROM Staff WHERE staff_id LIKE ?", prefix + "-%");
+    }
+
+    @Test
+    void concurrentClaims_neverHandOutTheSameRequestTwice() throws Exception {
+        ConcurrentLinkedQueue<String> claimedIds = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(CLERKS);
+        for (String clerkId : clerkIds) {
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    for (int round = 0; round < ROUNDS; round++) {
+                        for (Request request : stockService.claimRequests(CLAIM_LIMIT, clerkId)) {
+                            claimedIds.add(request.getRequestId());
+                            assertEquals(1, request.getItems().size());
+                        }
+                    }
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                }
+            });
+        }
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.MINUTES), "claim ไม่เสร็จภายในเวลาที่กำหนด");
+        long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+        System.out.printf("Concurrent claim: %d clerks claimed %d requests in %d ms%n", CLERKS, claimedIds.size(), elapsedMs);
+
+        assertTrue(unexpected.isEmpty(), () -> "unexpected failures: " + unexpected);
+        Set<String> distinct = new HashSet<>(claimedIds);
+        assertEquals(claimedIds.size(), distinct.size(), "มีใบเบิกถูกแจกซ้ำ");
+        assertEquals(new HashSet<>(requestIds), distinct);
+        Integer unclaimed = jdbcTemplate.queryForObject(
+                "SELECT COUNT(1) FROM request WHERE request_id LIKE ? AND claimed_by IS NULL", Integer.class, prefix + "-%");
+        assertEquals(0, unclaimed);
+    }
+
+    @Test
+    void expiredLease_returnsRequestToQueue() {
+        String first = clerkIds.get(0);
+        String second = clerkIds.get(1);
+        List<Request> claimed = stockService.claimRequests(2, first);
+        assertEquals(List.of(requestIds.get(0), requestIds.get(1)), claimed.stream().map(Request::getRequestId).toList());
+
+        // ใบแรกหมดเวลาถือ ใบที่สองคืนเข้าคิวเอง
+        jdbcTemplate.update("UPDATE request SET claim_expires_at = NOW() - INTERVAL '1 minute' WHERE request_id = ?", requestIds.get(0));
+        stockService.releaseClaim(requestIds.get(1), first);
+
+        List<Request> reclaimed = stockService.claimRequests(3, second);
+        assertEquals(List.of(requestIds.get(0), requestIds.get(1), requestIds.get(2)),
+                reclaimed.stream().map(Request::getRequestId).toList());
+        assertTrue(reclaimed.stream().allMatch(request -> second.equals(request.getClaimedBy())));
+    }
+}
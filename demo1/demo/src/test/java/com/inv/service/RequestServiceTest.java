@@ -0,0 +1,146 @@
+package com.inv.service;
+
+import com.inv.event.ChangeEventPublisher;
+import com.inv.id.IdGenerator;
+import com.inv.id.SnowflakeIdGenerator;
+import com.inv.model.Request;
+import com.inv.model.RequestItem;
+import com.inv.model.StockReservation;
+import com.inv.repo.OrderRepository;
+import com.inv.repo.ProductRepository;
+import com.inv.repo.RequestRepository;
+import com.inv.repo.StockReservationRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RequestServiceTest {
+
+    @Mock
+    private RequestRepository requestRepository;
+    @Mock
+    private OrderRepository orderRepository;
+    @Mock
+    private ProductRepository productRepository;
+    @Mock
+    private StockReservationRepository stockReservationRepository;
+
+    @Spy
+    private IdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    @Mock
+    private ChangeEventPublisher changeEvents;
+
+    @InjectMocks
+    private RequestService requestService;
+
+    @Test
+    void approveRequest_reservesRemainingQuantityPerProduct() {
+        when(requestRepository.findItemsByRequestIdForUpdate("REQ-1")).thenReturn(List.of(
+                item("RIT-1", "PROD-1", 4), item("RIT-2", "PROD-2", 2), item("RIT-3", "PROD-1", 1)));
+        when(requestRepository.findById("REQ-1")).thenReturn(request("Awaiting Approval"));
+        when(productRepository.reserve(Map.of("PROD-1", 5, "PROD-2", 2))).thenReturn(List.of());
+
+        requestService.approveRequest("REQ-1", "MGR-1");
+
+        ArgumentCaptor<List<StockReservation>> captor = ArgumentCaptor.captor();
+        verify(stockReservationRepository).saveAll(captor.capture());
+        assertEquals(3, captor.getValue().size());
+        assertEquals("RIT-1", captor.getValue().get(0).getRequestItemId());
+        assertEquals("REQ-1", captor.getValue().get(0).getRequestId());
+        assertEquals(4, captor.getValue().get(0).getQuantity());
+        verify(requestRepository).updateStatus("REQ-1", "Approved", "MGR-1");
+    }
+
+    @Test
+    void approveRequest_failsWithoutApprovingWhenStockIsShort() {
+        when(requestRepository.findItemsByRequestIdForUpdate("REQ-2")).thenReturn(List.of(item("RIT-1", "PROD-1", 4)));
+        when(requestRepository.findById("REQ-2")).thenReturn(request("Awaiting Approval"));
+        when(productRepository.reserve(Map.of("PROD-1", 4))).thenReturn(List.of("PROD-1"));
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () ->
+                requestService.approveRequest("REQ-2", "MGR-1"));
+
+        assertEquals(HttpStatus.CONFLICT, ex.getStatusCode());
+        assertTrue(ex.getReason().contains("PROD-1"));
+        verify(stockReservationRepository, never()).saveAll(anyList());
+        verify(requestRepository, never()).updateStatus(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void approveRequest_rejectsRequestThatIsNoLongerAwaitingApproval() {
+        when(requestRepository.findById("REQ-3")).thenReturn(request("Approved"));
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () ->
+                requestService.approveRequest("REQ-3", "MGR-1"));
+
+        assertEquals(HttpStatus.CONFLICT, ex.getStatusCode());
+        verify(productRepository, never()).reserve(org.mockito.ArgumentMatchers.anyMap());
+    }
+
+    @Test
+    void rejectAndClose_releaseRemainingReservations() {
+        when(stockReservationRepository.deleteByRequestId("REQ-4")).thenReturn(Map.of("PROD-1", 3, "PROD-2", 1));
+
+        requestService.rejectRequest("REQ-4", "MGR-1");
+
+        verify(requestRepository).findItemsByRequestIdForUpdate("REQ-4");
+        verify(productRepository).updateReserved(Map.of("PROD-1", -3, "PROD-2", -1));
+        verify(requestRepository).updateStatus("REQ-4", "Rejected", "MGR-1");
+
+        when(stockReservationRepository.deleteByRequestId("REQ-5")).thenReturn(Map.of());
+        requestService.closeRequest("REQ-5", "STF-1");
+        verify(productRepository).updateReserved(Map.of());
+        verify(requestRepository).closeRequest("REQ-5", "STF-1");
+    }
+
+    @Test
+    void attachItems_loadsWholePageInOneQuery() {
+        Request first = request("Approved");
+        first.setRequestId("REQ-6");
+        Request second = request("Pending");
+        second.setRequestId("REQ-7");
+        when(requestRepository.findItemsByRequestIds(List.of("REQ-6", "REQ-7")))
+                .thenReturn(Map.of("REQ-6", List.of(item("RIT-1", "PROD-1", 2), item("RIT-2", "PROD-2", 1))));
+
+        requestService.attachItems(List.of(first, second));
+
+        assertEquals(2, first.getItems().size());
+        assertTrue(second.getItems().isEmpty()); // ใบที่ไม่มีรายการได้ list ว่าง ไม่ใช่ null
+        verify(requestRepository, never()).findItemsByRequestId(anyString());
+    }
+
+    private Request request(String status) {
+        Request request = new Request();
+        request.setStatus(status);
+        return request;
+    }
+
+    private RequestItem item(String requestItemId, String productId, int remaining) {
+        RequestItem item = new RequestItem();
+        item.setRequestItemId(requestItemId);
+        item.setProductId(productId);
+        item.setQuantity(remaining);
+        item.setRemainingQty(remaining);
+        return item;
+    }
+}
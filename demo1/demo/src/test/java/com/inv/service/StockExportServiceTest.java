@@ -0,0 +1,123 @@
+package com.inv.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.inv.model.StockTransaction;
+import com.inv.model.StockTransactionFilter;
+import com.inv.repo.StockTransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class StockExportServiceTest {
+
+    @Mock
+    private StockTransactionRepository stockTransactionRepository;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @InjectMocks
+    private StockExportService stockExportService;
+
+    @Test
+    void exportTransactions_writesOneJsonObjectPerLine() throws Exception {
+        StockTransactionFilter filter = new StockTransactionFilter();
+        streamRows(filter, List.of(
+                transaction("TXN-1", "IN", 10, "รับเข้า"),
+                transaction("TXN-2", "OUT", 3, null)));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stockExportService.exportTransactions(filter, StockExportService.Format.NDJSON, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{"));
+        assertTrue(lines[1].startsWith("{"));
+        assertEquals("TXN-1", objectMapper.readTree(lines[0]).get("transactionId").asText());
+        assertEquals("รับเข้า", objectMapper.readTree(lines[0]).get("description").asText());
+        assertEquals(3, objectMapper.readTree(lines[1]).get("quantity").asInt());
+    }
+
+    @Test
+    void exportTransactions_writesCsvWithBomHeaderAndEscaping() throws Exception {
+        StockTransactionFilter filter = new StockTransactionFilter();
+        streamRows(filter, List.of(transaction("TXN-1", "OUT", 5, "เบิก, \"ด่วน\"")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stockExportService.exportTransactions(filter, StockExportService.Format.CSV, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(2, lines.length);
+        assertEquals('\uFEFF', lines[0].charAt(0));
+        assertEquals("transaction_id,transaction_date,type,product_id,quantity,staff_id,description,batch_id,reference_id",
+                lines[0].substring(1));
+        assertEquals("TXN-1,2025-01-02T03:04:05,OUT,PROD-1,5,S001,\"เบิก, \"\"ด่วน\"\"\",BATCH-1,",
+                lines[1]);
+    }
+
+    @Test
+    void exportTransactions_rejectsUnknownTypeBeforeQuerying() {
+        StockTransactionFilter filter = new StockTransactionFilter();
+        filter.setType("MOVE");
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class,
+                () -> stockExportService.exportTransactions(filter, StockExportService.Format.CSV, new ByteArrayOutputStream()));
+
+        assertEquals(HttpStatus.BAD_REQUEST, ex.getStatusCode());
+        verify(stockTransactionRepository, never()).streamByFilter(any(), anyInt(), any());
+    }
+
+    @Test
+    void parseFormat_defaultsToNdjsonAndRejectsUnknown() {
+        assertEquals(StockExportService.Format.NDJSON, stockExportService.parseFormat(null));
+        assertEquals(StockExportService.Format.CSV, stockExportService.parseFormat("CSV"));
+        assertThrows(ResponseStatusException.class, () -> stockExportService.parseFormat("xlsx"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void streamRows(StockTransactionFilter filter, List<StockTransaction> rows) {
+        doAnswer(invocation -> {
+            Consumer<StockTransaction> action = invocation.getArgument(2);
+            rows.forEach(action);
+            return null;
+        }).when(stockTransactionRepository).streamByFilter(eq(filter), eq(StockExportService.FETCH_SIZE), any(Consumer.class));
+    }
+
+    private StockTransaction transaction(String id, String type, int quantity, String description) {
+        StockTransaction transaction = new StockTransaction();
+        transaction.setTransactionId(id);
+        transaction.setTransactionDate(LocalDateTime.of(2025, 1, 2, 3, 4, 5));
+        transaction.setType(type);
+        transaction.setProductId("PROD-1");
+        transaction.setQuantity(quantity);
+        transaction.setStaffId("S001");
+        transaction.setDescription(description);
+        transaction.setBatchId("BATCH-1");
+        return transaction;
+    }
+}
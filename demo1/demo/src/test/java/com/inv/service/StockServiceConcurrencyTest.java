@@ -0,0 +1,157 @@
+package com.inv.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.sql.DataSource;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Stress test การเบิกสินค้า SKU เดียวกันพร้อมกันหลาย thread ต้องไม่ตัดสต็อกเกิน
+// ต้องมีฐานข้อมูล PostgreSQL สำหรับทดสอบโดยเฉพาะ (test รัน schema.sql/data.sql ทับ) ไม่ใช้ JDBC_DATABASE_URL ของแอป:
+// ตั้ง TEST_JDBC_DATABASE_URL, SPRING_DATASOURCE_USERNAME, SPRING_DATASOURCE_PASSWORD ก่อนรัน
+@SpringBootTest(properties = "spring.datasource.url=${TEST_JDBC_DATABASE_URL}")
+@EnabledIfEnvironmentVariable(named = "TEST_JDBC_DATABASE_URL", matches = "jdbc:postgresql:.*")
+class StockServiceConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int BATCHES = 30;
+    private static final int BATCH_SIZE = 10;
+    private static final int INITIAL_STOCK = BATCHES * BATCH_SIZE;
+    private static final int REQUEST_ITEMS = 400; // ขอเบิกมากกว่าที่มีในคลังโดยตั้งใจ
+    private static final String STAFF_ID = "S001";
+
+    @Autowired
+    private StockService stockService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DataSource dataSource;
+
+    private String prefix;
+    private String productId;
+    private String requestId;
+    private final List<String> requestItemIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"));
+        populator.execute(dataSource);
+
+        prefix = "T" + UUID.randomUUID().toString().substring(0, 6).toUpperCase();
+        productId = prefix + "-P";
+        requestId = prefix + "-R";
+
+        jdbcTemplate.update("INSERT INTO product (product_id, product_name, quantity, active) VALUES (?,?,?,TRUE)",
+                productId, "Stress " + prefix, INITIAL_STOCK);
+
+        List<Object[]> batches = new ArrayList<>();
+        LocalDateTime received = LocalDateTime.now().minusDays(BATCHES);
+        for (int i = 0; i < BATCHES; i++) {
+            batches.add(new Object[]{prefix + "-B" + i, productId, Timestamp.valueOf(received.plusDays(i)), BATCH_SIZE, BATCH_SIZE});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO ProductBatch(batch_id, product_id, received_date, quantity_in, quantity_remaining, unit_cost) " +
+                "VALUES (?,?,?,?,?,0)", batches);
+
+        jdbcTemplate.update("INSERT INTO request(request_id, request_date, status, staff_id, open_line_count) VALUES (?,?,'Approved',?,?)",
+                requestId, Timestamp.valueOf(LocalDateTime.now()), STAFF_ID, REQUEST_ITEMS);
+        List<Object[]> items = new ArrayList<>();
+        for (int i = 0; i < REQUEST_ITEMS; i++) {
+            String itemId = prefix + "-I" + i;
+            requestItemIds.add(itemId);
+            items.add(new Object[]{itemId, requestId, productId});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO requestitem(request_item_id, request_id, product_id, quantity, fulfilled_qty) " +
+                "VALUES (?,?,?,1,0)", items);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM StockTransaction WHERE product_id = ?", productId);
+        jdbcTemplate.update("DELETE FROM ProductBatch WHERE product_id = ?", productId);
+        jdbcTemplate.update("DELETE FROM requestitem WHERE request_id = ?", requestId);
+        jdbcTemplate.update("DELETE FROM request WHERE request_id = ?", requestId);
+        jdbcTemplate.update("DELETE FROM product WHERE product_id = ?", productId);
+    }
+
+    @Test
+    void concurrentFulfillsOfHotSku_neverOversell() throws Exception {
+        AtomicInteger fulfilled = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (String itemId : requestItemIds) {
+            executor.submit(() -> {
+                try {
+                    start.await();
+                    stockService.fulfillItem(itemId, 1, STAFF_ID);
+                    fulfilled.incrementAndGet();
+                } catch (ResponseStatusException e) {
+                    if (e.getStatusCode() == HttpStatus.CONFLICT) {
+                        rejected.incrementAndGet();
+                    } else {
+                        unexpected.add(e);
+                    }
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                }
+            });
+        }
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES), "fulfill ไม่เสร็จภายในเวลาที่กำหนด");
+        long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+
+        System.out.printf("Concurrent fulfill: %d threads, %d ok, %d rejected in %d ms (%.1f fulfills/s)%n",
+                THREADS, fulfilled.get(), rejected.get(), elapsedMs, fulfilled.get() * 1000.0 / elapsedMs);
+
+        assertTrue(unexpected.isEmpty(), () -> "unexpected failures: " + unexpected);
+        assertEquals(INITIAL_STOCK, fulfilled.get());
+        assertEquals(REQUEST_ITEMS - INITIAL_STOCK, rejected.get());
+
+        Integer onHand = jdbcTemplate.queryForObject("SELECT quantity FROM product WHERE product_id = ?", Integer.class, productId);
+        Integer batchRemaining = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(quantity_remaining), 0) FROM ProductBatch WHERE product_id = ?", Integer.class, productId);
+        Integer negativeBatches = jdbcTemplate.queryForObject(
+                "SELECT COUNT(1) FROM ProductBatch WHERE product_id = ? AND quantity_remaining < 0", Integer.class, productId);
+        Integer ledgerOut = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(quantity), 0) FROM StockTransaction WHERE product_id = ? AND type = 'OUT'", Integer.class, productId);
+        Integer fulfilledLines = jdbcTemplate.queryForObject(
+                "SELECT COUNT(1) FROM requestitem WHERE request_id = ? AND fulfilled_qty = 1", Integer.class, requestId);
+        Integer openLines = jdbcTemplate.queryForObject(
+                "SELECT open_line_count FROM request WHERE request_id = ?", Integer.class, requestId);
+
+        assertEquals(0, onHand);
+        assertEquals(0, batchRemaining);
+        assertEquals(0, negativeBatches);
+        assertEquals(INITIAL_STOCK, ledgerOut);
+        assertEquals(INITIAL_STOCK, fulfilledLines);
+        assertEquals(REQUEST_ITEMS - INITIAL_STOCK, openLines); // ลดพร้อมกันหลาย thread แล้วต้องไม่หาย
+    }
+}
@@ -1,32 +1,47 @@
 package com.inv.service;
 
+import com.inv.alert.LowStockMonitor;
+import com.inv.event.ChangeEventPublisher;
+import com.inv.id.IdGenerator;
+import com.inv.id.SnowflakeIdGenerator;
+import com.inv.model.BatchAllocation;
 import com.inv.model.Product;
-import com.inv.model.ProductBatch;
 import com.inv.model.Request;
 import com.inv.model.RequestItem;
+import com.inv.model.StockLevel;
 import com.inv.model.StockTransaction;
+import com.inv.model.StockTransactionFilter;
+import com.inv.model.StockTransactionPage;
 import com.inv.repo.OrderRepository;
 import com.inv.repo.ProductBatchRepository;
 import com.inv.repo.ProductRepository;
 import com.inv.repo.RequestRepository;
+import com.inv.repo.StockReservationRepository;
 import com.inv.repo.StockTransactionRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
-import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -43,6 +58,17 @@ class StockServiceTest {
     private RequestRepository requestRepository;
     @Mock
     private OrderRepository orderRepository;
+    @Mock
+    private StockReservationRepository stockReservationRepository;
+
+    @Spy
+    private IdGenerator idGenerator = new SnowflakeIdGenerator(1);
+
+    @Mock
+    private ChangeEventPublisher changeEvents;
+
+    @Mock
+    private LowStockMonitor lowStockMonitor;
 
     @InjectMocks
     private StockService stockService;
@@ -55,47 +81,43 @@ class StockServiceTest {
         requestItem.setProductId("PROD-1");
         requestItem.setQuantity(10);
         requestItem.setRemainingQty(10);
-        when(requestRepository.findItemById("REQ-ITEM-1")).thenReturn(requestItem);
+        when(requestRepository.findItemByIdForUpdate("REQ-ITEM-1")).thenReturn(requestItem);
 
         Product product = new Product();
         product.setProductId("PROD-1");
         product.setQuantity(10);
-        when(productRepository.findById("PROD-1")).thenReturn(product);
+        when(productRepository.findByIdForUpdate("PROD-1")).thenReturn(product);
 
-        ProductBatch firstBatch = new ProductBatch();
-        firstBatch.setBatchId("BATCH-1");
-        firstBatch.setProductId("PROD-1");
-        firstBatch.setQuantityRemaining(3);
-
-        ProductBatch secondBatch = new ProductBatch();
-        secondBatch.setBatchId("BATCH-2");
-        secondBatch.setProductId("PROD-1");
-        secondBatch.setQuantityRemaining(5);
-
-        when(productBatchRepository.findAvailableBatches("PROD-1"))
-                .thenReturn(List.of(firstBatch, secondBatch));
+        when(productBatchRepository.allocateFifo("PROD-1", 6))
+                .thenReturn(List.of(allocation("BATCH-1", "PROD-1", 3), allocation("BATCH-2", "PROD-1", 3)));
 
         Request request = new Request();
         request.setRequestId("REQ-1");
         request.setOrderId("ORDER-1");
         when(requestRepository.findById("REQ-1")).thenReturn(request);
+        List<StockLevel> levels = List.of(new StockLevel("PROD-1", 4, 5));
+        when(productRepository.updateQuantity("PROD-1", -6)).thenReturn(levels);
 
         stockService.fulfillItem("REQ-ITEM-1", 6, "STF-1");
 
         verify(requestRepository).updateItemFulfillment("REQ-ITEM-1", 6);
-        verify(productBatchRepository).updateRemaining("BATCH-1", 0);
-        verify(productBatchRepository).updateRemaining("BATCH-2", 2);
+        verify(productBatchRepository, never()).updateRemaining(anyString(), anyInt());
 
-        ArgumentCaptor<StockTransaction> transactionCaptor = ArgumentCaptor.forClass(StockTransaction.class);
-        verify(stockTransactionRepository, times(2)).save(transactionCaptor.capture());
-        List<StockTransaction> transactions = transactionCaptor.getAllValues();
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<StockTransaction>> transactionCaptor = ArgumentCaptor.forClass(List.class);
+        verify(stockTransactionRepository).saveAll(transactionCaptor.capture());
+        verify(stockTransactionRepository, never()).save(org.mockito.ArgumentMatchers.any());
+        List<StockTransaction> transactions = transactionCaptor.getValue();
         assertEquals(2, transactions.size());
         assertEquals("BATCH-1", transactions.get(0).getBatchId());
         assertEquals(3, transactions.get(0).getQuantity());
         assertEquals("BATCH-2", transactions.get(1).getBatchId());
         assertEquals(3, transactions.get(1).getQuantity());
+        assertEquals("OUT", transactions.get(0).getType());
+        assertEquals("REQ-1", transactions.get(0).getReferenceId());
 
-        verify(productRepository).updateQuantity("PROD-1", -6);
+        verify(lowStockMonitor).quantitiesChanged(Map.of("PROD-1", -6), levels);
+        verify(productRepository, never()).findById(anyString());
         verify(requestRepository).updateRequestStatus("REQ-1", "Pending");
         verify(orderRepository).updateOrderItemFulfillment("ORDER-1", "PROD-1", 6);
     }
@@ -108,19 +130,15 @@ class StockServiceTest {
         requestItem.setProductId("PROD-2");
         requestItem.setQuantity(10);
         requestItem.setRemainingQty(10);
-        when(requestRepository.findItemById("REQ-ITEM-2")).thenReturn(requestItem);
+        when(requestRepository.findItemByIdForUpdate("REQ-ITEM-2")).thenReturn(requestItem);
 
         Product product = new Product();
         product.setProductId("PROD-2");
         product.setQuantity(10);
-        when(productRepository.findById("PROD-2")).thenReturn(product);
+        when(productRepository.findByIdForUpdate("PROD-2")).thenReturn(product);
 
-        ProductBatch batch = new ProductBatch();
-        batch.setBatchId("BATCH-3");
-        batch.setProductId("PROD-2");
-        batch.setQuantityRemaining(4);
-        when(productBatchRepository.findAvailableBatches("PROD-2"))
-                .thenReturn(List.of(batch));
+        when(productBatchRepository.allocateFifo("PROD-2", 6))
+                .thenReturn(List.of(allocation("BATCH-3", "PROD-2", 4)));
 
         ResponseStatusException ex = assertThrows(ResponseStatusException.class, () ->
                 stockService.fulfillItem("REQ-ITEM-2", 6, "STF-2")
@@ -130,5 +148,274 @@ class StockServiceTest {
         verify(productRepository, never()).updateQuantity(anyString(), anyInt());
         verify(requestRepository, never()).updateRequestStatus(anyString(), anyString());
         verify(orderRepository, never()).updateOrderItemFulfillment(anyString(), anyString(), anyInt());
+        verify(stockTransactionRepository, never()).saveAll(org.mockito.ArgumentMatchers.anyList());
+    }
+
+    @Test
+    void fulfillRequest_fulfillsAllRemainingLinesInOneBatch() {
+        Request request = new Request();
+        request.setRequestId("REQ-3");
+        request.setStatus("Approved");
+        request.setOrderId("ORDER-3");
+        when(requestRepository.findById("REQ-3")).thenReturn(request);
+
+        RequestItem first = requestItem("RIT-1", "REQ-3", "PROD-1", 4);
+        RequestItem second = requestItem("RIT-2", "REQ-3", "PROD-2", 2);
+        RequestItem third = requestItem("RIT-3", "REQ-3", "PROD-1", 1);
+        RequestItem done = requestItem("RIT-4", "REQ-3", "PROD-3", 0);
+        when(requestRepository.findItemsByRequestIdForUpdate("REQ-3")).thenReturn(List.of(first, second, third, done));
+
+        Product productOne = new Product();
+        productOne.setProductId("PROD-1");
+        productOne.setQuantity(10);
+        Product productTwo = new Product();
+        productTwo.setProductId("PROD-2");
+        productTwo.setQuantity(2);
+        when(productRepository.findByIdsForUpdate(java.util.Set.of("PROD-1", "PROD-2")))
+                .thenReturn(List.of(productOne, productTwo));
+
+        when(productBatchRepository.allocateFifo(Map.of("PROD-1", 5, "PROD-2", 2)))
+                .thenReturn(List.of(allocation("BATCH-1", "PROD-1", 5), allocation("BATCH-2", "PROD-2", 2)));
+
+        stockService.fulfillRequest("REQ-3", null, "STF-1");
+
+        verify(requestRepository).updateItemFulfillments(Map.of("RIT-1", 4, "RIT-2", 2, "RIT-3", 1));
+        verify(productRepository).updateQuantities(Map.of("PROD-1", -5, "PROD-2", -2));
+        verify(productRepository, never()).findById(anyString());
+        verify(requestRepository).updateRequestStatuses(java.util.Set.of("REQ-3"), "Pending");
+        verify(orderRepository).updateOrderItemFulfillments("ORDER-3", Map.of("PROD-1", 5, "PROD-2", 2));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<StockTransaction>> transactionCaptor = ArgumentCaptor.forClass(List.class);
+        verify(stockTransactionRepository).saveAll(transactionCaptor.capture());
+        assertEquals(2, transactionCaptor.getValue().size());
+        assertEquals("REQ-3", transactionCaptor.getValue().get(0).getReferenceId());
+
+        verify(requestRepository, never()).updateItemFulfillment(anyString(), anyInt());
+        verify(orderRepository, never()).updateOrderItemFulfillment(anyString(), anyString(), anyInt());
+    }
+
+    @Test
+    void fulfillItem_consumesOwnReservationButNotOthers() {
+        RequestItem requestItem = new RequestItem();
+        requestItem.setRequestItemId("REQ-ITEM-5");
+        requestItem.setRequestId("REQ-5");
+        requestItem.setProductId("PROD-5");
+        requestItem.setQuantity(6);
+        requestItem.setRemainingQty(6);
+        when(requestRepository.findItemByIdForUpdate("REQ-ITEM-5")).thenReturn(requestItem);
+
+        // คงเหลือ 10 จองแล้ว 8 (ของรายการนี้ 3) -> เบิกได้ 2 + 3 = 5
+        Product product = new Product();
+        product.setProductId("PROD-5");
+        product.setQuantity(10);
+        product.setReservedQty(8);
+        when(productRepository.findByIdForUpdate("PROD-5")).thenReturn(product);
+        when(stockReservationRepository.findQuantitiesByItemIds(List.of("REQ-ITEM-5"))).thenReturn(Map.of("REQ-ITEM-5", 3));
+        when(productBatchRepository.allocateFifo("PROD-5", 4)).thenReturn(List.of(allocation("BATCH-5", "PROD-5", 4)));
+        when(requestRepository.findById("REQ-5")).thenReturn(new Request());
+
+        stockService.fulfillItem("REQ-ITEM-5", 4, "STF-1");
+
+        verify(productRepository).updateQuantity("PROD-5", -4);
+        verify(stockReservationRepository).consume(Map.of("REQ-ITEM-5", 3));
+        verify(productRepository).updateReserved(Map.of("PROD-5", -3));
+
+        product.setReservedQty(9); // ใบเบิกอื่นจองเพิ่ม: เหลือให้เบิกได้ 1 + 3 = 4 < 5
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () ->
+                stockService.fulfillItem("REQ-ITEM-5", 5, "STF-1")
+        );
+        assertEquals(HttpStatus.CONFLICT, ex.getStatusCode());
+    }
+
+    @Test
+    void fulfillRequest_rejectsItemFromAnotherRequest() {
+        Request request = new Request();
+        request.setRequestId("REQ-4");
+        request.setStatus("Approved");
+        when(requestRepository.findById("REQ-4")).thenReturn(request);
+        when(requestRepository.findItemsByRequestIdForUpdate("REQ-4"))
+                .thenReturn(List.of(requestItem("RIT-5", "REQ-4", "PROD-1", 3)));
+
+        ResponseStatusException ex = assertThrows(ResponseStatusException.class, () ->
+                stockService.fulfillRequest("REQ-4", Map.of("RIT-OTHER", 1), "STF-1")
+        );
+
+        assertEquals(HttpStatus.NOT_FOUND, ex.getStatusCode());
+        verify(productBatchRepository, never()).allocateFifo(org.mockito.ArgumentMatchers.anyMap());
+        verify(requestRepository, never()).updateRequestStatus(anyString(), anyString());
+    }
+
+    @Test
+    void fulfillItems_splitsBatchesAcrossRequestsAndSkipsClosedRequests() {
+        RequestItem first = requestItem("RIT-1", "REQ-A", "PROD-1", 3);
+        RequestItem second = requestItem("RIT-2", "REQ-B", "PROD-1", 4);
+        RequestItem closed = requestItem("RIT-3", "REQ-C", "PROD-1", 2);
+        when(requestRepository.findItemsByIdsForUpdate(new java.util.TreeSet<>(java.util.Set.of("RIT-1", "RIT-2", "RIT-3"))))
+                .thenReturn(List.of(first, second, closed));
+        Request requestA = new Request();
+        requestA.setRequestId("REQ-A");
+        requestA.setStatus("Approved");
+        Request requestB = new Request();
+        requestB.setRequestId("REQ-B");
+        requestB.setStatus("Pending");
+        requestB.setOrderId("ORDER-B");
+        Request requestC = new Request();
+        requestC.setRequestId("REQ-C");
+        requestC.setStatus("Closed");
+        when(requestRepository.findByIds(new java.util.TreeSet<>(java.util.Set.of("REQ-A", "REQ-B", "REQ-C"))))
+                .thenReturn(List.of(requestA, requestB, requestC));
+
+        Product product = new Product();
+        product.setProductId("PROD-1");
+        product.setQuantity(10);
+        when(productRepository.findByIdsForUpdate(java.util.Set.of("PROD-1"))).thenReturn(List.of(product));
+        when(productBatchRepository.allocateFifo(Map.of("PROD-1", 7)))
+                .thenReturn(List.of(allocation("BATCH-1", "PROD-1", 5), allocation("BATCH-2", "PROD-1", 2)));
+
+        // RIT-2 ขอเกินส่วนที่เหลือ จึงเบิกได้แค่ 4
+        Map<String, Integer> fulfilled = stockService.fulfillItems(Map.of("RIT-1", 3, "RIT-2", 6, "RIT-3", 2), "STF-1");
+
+        assertEquals(Map.of("RIT-1", 3, "RIT-2", 4), fulfilled);
+        verify(requestRepository).updateItemFulfillments(Map.of("RIT-1", 3, "RIT-2", 4));
+        verify(requestRepository).updateRequestStatuses(java.util.Set.of("REQ-A", "REQ-B"), "Pending");
+        verify(orderRepository).updateOrderItemFulfillments("ORDER-B", Map.of("PROD-1", 4));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<StockTransaction>> transactionCaptor = ArgumentCaptor.forClass(List.class);
+        verify(stockTransactionRepository).saveAll(transactionCaptor.capture());
+        List<String> ledger = transactionCaptor.getValue().stream()
+                .map(transaction -> transaction.getReferenceId() + ":" + transaction.getBatchId() + ":" + transaction.getQuantity())
+                .toList();
+        assertEquals(List.of("REQ-A:BATCH-1:3", "REQ-B:BATCH-1:2", "REQ-B:BATCH-2:2"), ledger);
+    }
+
+    @Test
+    void claimRequests_returnsOldestFirstWithItems() {
+        ReflectionTestUtils.setField(stockService, "claimLeaseMinutes", 15);
+        Request newer = new Request();
+        newer.setRequestId("REQ-2");
+        newer.setRequestDate(LocalDateTime.of(2025, 1, 2, 9, 0));
+        Request older = new Request();
+        older.setRequestId("REQ-1");
+        older.setRequestDate(LocalDateTime.of(2025, 1, 1, 9, 0));
+        when(requestRepository.claimNext("STF-1", 2, 15)).thenReturn(List.of(newer, older));
+        when(requestRepository.findItemsByRequestIds(List.of("REQ-1", "REQ-2")))
+                .thenReturn(Map.of("REQ-1", List.of(requestItem("RIT-1", "REQ-1", "PROD-1", 2))));
+
+        List<Request> claimed = stockService.claimRequests(2, "STF-1");
+
+        assertEquals(List.of("REQ-1", "REQ-2"), claimed.stream().map(Request::getRequestId).toList());
+        assertEquals(1, claimed.get(0).getItems().size());
+        assertEquals(0, claimed.get(1).getItems().size());
+        verify(changeEvents).claimChanged("REQ-1", "STF-1");
+    }
+
+    @Test
+    void claimRequests_rejectsOutOfRangeLimit() {
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> stockService.claimRequests(StockService.MAX_CLAIM_LIMIT + 1, "STF-1"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, error.getStatusCode());
+        verify(requestRepository, never()).claimNext(anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    void fulfillRequest_rejectsRequestClaimedByAnotherClerk() {
+        Request request = new Request();
+        request.setRequestId("REQ-5");
+        request.setStatus("Approved");
+        when(requestRepository.findById("REQ-5")).thenReturn(request);
+        when(requestRepository.findActiveClaimHolder("REQ-5")).thenReturn("STF-2");
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> stockService.fulfillRequest("REQ-5", null, "STF-1"));
+
+        assertEquals(HttpStatus.CONFLICT, error.getStatusCode());
+        verify(productBatchRepository, never()).allocateFifo(org.mockito.ArgumentMatchers.anyMap());
+    }
+
+    @Test
+    void fulfillRequest_readsStatusAfterLockingItems() {
+        // reject/close ที่ commit ก่อนได้ lock รายการ ต้องทำให้เบิกไม่ได้
+        Request request = new Request();
+        request.setRequestId("REQ-6");
+        request.setStatus("Rejected");
+        when(requestRepository.findItemsByRequestIdForUpdate("REQ-6"))
+                .thenReturn(List.of(requestItem("RIT-6", "REQ-6", "PROD-1", 2)));
+        when(requestRepository.findById("REQ-6")).thenReturn(request);
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> stockService.fulfillRequest("REQ-6", null, "STF-1"));
+
+        assertEquals(HttpStatus.CONFLICT, error.getStatusCode());
+        InOrder order = inOrder(requestRepository);
+        order.verify(requestRepository).findItemsByRequestIdForUpdate("REQ-6");
+        order.verify(requestRepository).findById("REQ-6");
+        verify(productBatchRepository, never()).allocateFifo(org.mockito.ArgumentMatchers.anyMap());
+    }
+
+    @Test
+    void getTransactions_returnsCursorThatResumesAfterLastRow() {
+        StockTransactionFilter filter = new StockTransactionFilter();
+        filter.setProductId("PROD-1");
+        LocalDateTime newest = LocalDateTime.of(2025, 3, 1, 10, 0, 0, 123456000);
+        when(stockTransactionRepository.findPage(filter, null, null, 3))
+                .thenReturn(List.of(transaction("ST-3", newest), transaction("ST-2", newest.minusMinutes(1)), transaction("ST-1", newest.minusMinutes(2))));
+
+        StockTransactionPage first = stockService.getTransactions(filter, null, 2);
+
+        assertEquals(2, first.getItems().size());
+        assertNotNull(first.getNextCursor());
+
+        when(stockTransactionRepository.findPage(filter, newest.minusMinutes(1), "ST-2", 3))
+                .thenReturn(List.of(transaction("ST-1", newest.minusMinutes(2))));
+
+        StockTransactionPage second = stockService.getTransactions(filter, first.getNextCursor(), 2);
+
+        assertEquals(1, second.getItems().size());
+        assertNull(second.getNextCursor());
+    }
+
+    @Test
+    void getTransactions_rejectsMalformedCursorAndOversizedLimit() {
+        StockTransactionFilter filter = new StockTransactionFilter();
+
+        ResponseStatusException badCursor = assertThrows(ResponseStatusException.class, () ->
+                stockService.getTransactions(filter, "not-a-cursor", 10)
+        );
+        ResponseStatusException badLimit = assertThrows(ResponseStatusException.class, () ->
+                stockService.getTransactions(filter, null, StockService.MAX_TRANSACTION_PAGE_SIZE + 1)
+        );
+
+        assertEquals(HttpStatus.BAD_REQUEST, badCursor.getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, badLimit.getStatusCode());
+        verify(stockTransactionRepository, never()).findPage(org.mockito.ArgumentMatchers.any(), org.mockito.ArgumentMatchers.any(),
+                org.mockito.ArgumentMatchers.any(), anyInt());
+    }
+
+    private StockTransaction transaction(String transactionId, LocalDateTime transactionDate) {
+        StockTransaction transaction = new StockTransaction();
+        transaction.setTransactionId(transactionId);
+        transaction.setTransactionDate(transactionDate);
+        return transaction;
+    }
+
+    private RequestItem requestItem(String requestItemId, String requestId, String productId, int remaining) {
+        RequestItem item = new RequestItem();
+        item.setRequestItemId(requestItemId);
+        item.setRequestId(requestId);
+        item.setProductId(productId);
+        item.setQuantity(Math.max(remaining, 1));
+        item.setRemainingQty(remaining);
+        return item;
+    }
+
+    private BatchAllocation allocation(String batchId, String productId, int quantity) {
+        BatchAllocation allocation = new BatchAllocation();
+        allocation.setBatchId(batchId);
+        allocation.setProductId(productId);
+        allocation.setQuantity(quantity);
+        return allocation;
     }
 }
@@ -1,8 +1,10 @@
 'use client';
 
 import { useMemo, useState } from 'react';
+import { addDays, format } from 'date-fns';
 import { useAuth } from '../../../../components/AuthContext';
-import { useAuthedSWR } from '../../../../lib/swr';
+import { buildQuery } from '../../../../lib/api';
+import { useAuthedAllPagesSWR, useAuthedSWR } from '../../../../lib/swr';
 import type { Product, StockTransaction } from '../../../../lib/types';
 
 const formatDateInputLabel = (value: string) => {
@@ -32,15 +34,36 @@ const escapeHtml = (value: string) =>
 
 export default function ReportExportPage() {
   const { role, token } = useAuth();
-  const { data: transactions } = useAuthedSWR<StockTransaction[]>(role === 'ADMIN' ? '/stock/transactions' : null, token, {
-    refreshInterval: 60000
-  });
   const { data: products } = useAuthedSWR<Product[]>(role === 'ADMIN' ? '/products' : null, token);
 
   const [startDate, setStartDate] = useState('');
   const [endDate, setEndDate] = useState('');
   const [isExporting, setExporting] = useState(false);
 
+  // /stock/transactions แบ่งหน้า จึงให้ server กรองเฉพาะ OUT ในช่วงวันที่เลือก แล้วโหลดทุกหน้าตาม X-Next-Cursor
+  const transactionsPath = useMemo(() => {
+    if (role !== 'ADMIN' || !startDate || !endDate || startDate > endDate) {
+      return null;
+    }
+    const endExclusive = addDays(new Date(`${endDate}T00:00:00`), 1);
+    if (Number.isNaN(endExclusive.getTime())) {
+      return null;
+    }
+    return `/stock/transactions${buildQuery({
+      type: 'OUT',
+      from: `${startDate}T00:00:00`,
+      to: `${format(endExclusive, 'yyyy-MM-dd')}T00:00:00`,
+      limit: 500
+    })}`;
+  }, [role, startDate, endDate]);
+  const { data: transactions, isLoading: isLoadingTransactions } = useAuthedAllPagesSWR<StockTransaction>(
+    transactionsPath,
+    token,
+    {
+      refreshInterval: 60000
+    }
+  );
+
   if (role !== 'ADMIN') {
     return <p className="text-sm text-slate-500">เฉพาะผู้ดูแลระบบเท่านั้นที่สามารถเข้าถึงรายงานนี้ได้</p>;
   }
@@ -124,7 +147,7 @@ export default function ReportExportPage() {
     [aggregatedRows]
   );
 
-  const canExport = Boolean(dateRange && dateRange.isValid && aggregatedRows.length > 0 && !isExporting);
+  const canExport = Boolean(dateRange && dateRange.isValid && transactions && aggregatedRows.length > 0 && !isExporting);
 
   const handleExport = () => {
     if (!dateRange || !dateRange.isValid || aggregatedRows.length === 0) {
@@ -274,6 +297,8 @@ export default function ReportExportPage() {
         <div className="overflow-hidden rounded-2xl border border-slate-200">
           {!dateRange ? (
             <p className="px-4 py-6 text-sm text-slate-500">กรุณาเลือกช่วงวันที่เพื่อแสดงข้อมูลสรุป</p>
+          ) : isLoadingTransactions ? (
+            <p className="px-4 py-6 text-sm text-slate-400">กำลังโหลดธุรกรรมในช่วงวันที่ที่เลือก...</p>
           ) : aggregatedRows.length === 0 ? (
             <p className="px-4 py-6 text-sm text-slate-500">ยังไม่มีข้อมูลสำหรับช่วงวันที่ที่เลือก</p>
           ) : (
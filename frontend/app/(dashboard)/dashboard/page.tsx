@@ -3,7 +3,7 @@
 import Link from 'next/link';
 import { format } from 'date-fns';
 import { useAuth } from '../../../components/AuthContext';
-import { useAuthedSWR } from '../../../lib/swr';
+import { useAuthedPageSWR, useAuthedSWR } from '../../../lib/swr';
 import type { Product, Order, Request, StockTransaction } from '../../../lib/types';
 
 export default function DashboardPage() {
@@ -20,9 +20,10 @@ export default function DashboardPage() {
   const { data: approvedRequests } = useAuthedSWR<Request[]>(isRole('WAREHOUSE', 'ADMIN') ? '/stock/approved-requests' : null, token, {
     refreshInterval: 20000
   });
-  const { data: stockTransactions } = useAuthedSWR<StockTransaction[]>(isRole('ADMIN') ? '/stock/transactions' : null, token, {
+  const { data: stockTransactionPage } = useAuthedPageSWR<StockTransaction>(isRole('ADMIN') ? '/stock/transactions' : null, token, {
     revalidateOnFocus: false
   });
+  const stockTransactions = stockTransactionPage?.items;
 
   const tasks = [
     {
@@ -91,7 +92,10 @@ export default function DashboardPage() {
         {isRole('ADMIN') && (
           <div className="card p-6">
             <p className="text-sm font-medium text-slate-500">ธุรกรรมสต็อก</p>
-            <p className="mt-3 text-3xl font-semibold text-slate-900">{stockTransactions?.length ?? 0}</p>
+            <p className="mt-3 text-3xl font-semibold text-slate-900">
+              {stockTransactions?.length ?? 0}
+              {stockTransactionPage?.nextCursor ? '+' : ''}
+            </p>
           </div>
         )}
       </section>
@@ -4,7 +4,6 @@ import Link from 'next/link';
 import { useMemo } from 'react';
 import { useAuth } from '../../../components/AuthContext';
 import { useAuthedSWR } from '../../../lib/swr';
-import type { PurchaseOrder } from '../../../lib/types';
 
 const STATUS_LABELS: Record<string, string> = {
   'New order': 'New order',
@@ -15,7 +14,8 @@ const STATUS_LABELS: Record<string, string> = {
 
 export default function ProcurementOverviewPage() {
   const { role, token } = useAuth();
-  const { data: orders } = useAuthedSWR<PurchaseOrder[]>(role ? '/purchase-orders' : null, token, {
+  // นับที่ server (GET /purchase-orders คืนทีละหน้า นับจากหน้าแรกจะได้ไม่ครบ)
+  const { data: counts } = useAuthedSWR<Record<string, number>>(role ? '/purchase-orders/status-counts' : null, token, {
     refreshInterval: 30000
   });
 
@@ -28,17 +28,12 @@ export default function ProcurementOverviewPage() {
   }
 
   const summaries = useMemo(() => {
-    const counts: Record<string, number> = {};
-    (orders ?? []).forEach((order) => {
-      const key = order.status || 'Unknown';
-      counts[key] = (counts[key] ?? 0) + 1;
-    });
-    return Object.entries(counts).map(([status, total]) => ({
+    return Object.entries(counts ?? {}).map(([status, total]) => ({
       status,
       total,
       label: STATUS_LABELS[status] ?? status
     }));
-  }, [orders]);
+  }, [counts]);
 
   return (
     <div className="space-y-8">
@@ -3,8 +3,8 @@
 import { ChangeEvent, FormEvent, useEffect, useMemo, useState } from 'react';
 import { format } from 'date-fns';
 import { useAuth } from '../../../components/AuthContext';
-import { apiFetch, uploadPurchaseOrderSlip } from '../../../lib/api';
-import { useAuthedSWR } from '../../../lib/swr';
+import { apiFetch, buildQuery, uploadPurchaseOrderSlip } from '../../../lib/api';
+import { useAuthedCursorPagesSWR, useAuthedSWR } from '../../../lib/swr';
 import type { Product, PurchaseItem, PurchaseOrder, Supplier, ProductBatch } from '../../../lib/types';
 import { SearchableSelect, type SearchableOption } from '../../../components/SearchableSelect';
 
@@ -36,13 +36,25 @@ function createDraftItem(): DraftPurchaseItem {
 
 export default function PurchaseOrdersPage() {
   const { role, token, staffId } = useAuth();
-  const { data: orders, mutate, isLoading } = useAuthedSWR<PurchaseOrder[]>(role ? '/purchase-orders' : null, token, {
-    refreshInterval: 30000
-  });
+  const [activeStatus, setActiveStatus] = useState('New order');
+  // กรองสถานะที่ server แล้วโหลดทีละหน้า (หน้าละ 100 ใบ ใหม่ -> เก่า)
+  const {
+    items: orders,
+    hasMore,
+    loadMore,
+    mutate,
+    isLoading,
+    isValidating
+  } = useAuthedCursorPagesSWR<PurchaseOrder>(
+    role ? `/purchase-orders${buildQuery({ status: activeStatus })}` : null,
+    token,
+    {
+      refreshInterval: 30000
+    }
+  );
   const { data: suppliers } = useAuthedSWR<Supplier[]>(role ? '/suppliers' : null, token);
   const { data: products } = useAuthedSWR<Product[]>(role ? '/products' : null, token);
 
-  const [activeStatus, setActiveStatus] = useState('New order');
   const [error, setError] = useState<string | null>(null);
   const [successMessage, setSuccessMessage] = useState<string | null>(null);
   const [pricingOrder, setPricingOrder] = useState<PurchaseOrder | null>(null);
@@ -142,7 +154,7 @@ export default function PurchaseOrdersPage() {
   }, [products]);
 
   const filteredOrders = useMemo(() => {
-    return (orders ?? []).filter((order) => order.status === activeStatus);
+    return orders.filter((order) => order.status === activeStatus);
   }, [orders, activeStatus]);
 
   const resetCreateForm = () => {
@@ -592,6 +604,18 @@ export default function PurchaseOrdersPage() {
             </tbody>
           </table>
         </div>
+        {hasMore && (
+          <div className="flex justify-center">
+            <button
+              type="button"
+              onClick={() => loadMore()}
+              disabled={isValidating}
+              className="rounded-xl border border-slate-200 px-4 py-2 text-sm font-semibold text-slate-600 transition hover:bg-slate-50 disabled:opacity-50"
+            >
+              {isValidating ? 'กำลังโหลด...' : 'โหลดเพิ่ม'}
+            </button>
+          </div>
+        )}
       </section>
 
       {detailOrder && isDetailModalOpen && (
@@ -4,7 +4,7 @@ import { FormEvent, useEffect, useMemo, useState } from 'react';
 import { format } from 'date-fns';
 import { useAuth } from '../../../components/AuthContext';
 import { apiFetch } from '../../../lib/api';
-import { useAuthedSWR } from '../../../lib/swr';
+import { useAuthedAllPagesSWR, useAuthedPageSWR, useAuthedSWR } from '../../../lib/swr';
 import type { Product, ProductBatch, PurchaseItem, PurchaseOrder, StockTransaction, Supplier } from '../../../lib/types';
 import { SearchableSelect, type SearchableOption } from '../../../components/SearchableSelect';
 
@@ -43,20 +43,23 @@ export default function StockPage() {
 
   const { data: suppliers } = useAuthedSWR<Supplier[]>(role ? '/suppliers' : null, token);
   const { data: products, mutate: mutateProducts } = useAuthedSWR<Product[]>(role ? '/products' : null, token);
-  const { data: pendingPurchaseOrders, mutate: mutatePendingPurchaseOrders } = useAuthedSWR<PurchaseOrder[]>(
-    canReceiveFromPurchaseOrder ? '/purchase-orders?status=Pending' : null,
+  // ใบที่รอรับของมีไม่มาก จึงโหลดทุกหน้าตาม X-Next-Cursor ให้ครบ
+  const { data: pendingPurchaseOrders, mutate: mutatePendingPurchaseOrders } = useAuthedAllPagesSWR<PurchaseOrder>(
+    canReceiveFromPurchaseOrder ? '/purchase-orders?status=Pending&limit=500' : null,
     token,
     {
       refreshInterval: 30000
     }
   );
-  const { data: transactions, mutate } = useAuthedSWR<StockTransaction[]>(
+  // ledger แบ่งหน้าแล้ว หน้านี้แสดงเฉพาะหน้าล่าสุด (ข้อมูลทั้งหมดดูได้จาก export)
+  const { data: transactionPage, mutate } = useAuthedPageSWR<StockTransaction>(
     canViewTransactions ? '/stock/transactions' : null,
     token,
     {
       refreshInterval: 30000
     }
   );
+  const transactions = transactionPage?.items;
 
   const productOptions = useMemo<SearchableOption[]>(() => {
     return (products ?? []).map((product) => ({
@@ -743,6 +746,7 @@ export default function StockPage() {
               />
               <p className="text-xs text-slate-400">
                 แสดง {filteredTransactions.length} จาก {sortedTransactions.length} รายการ
+                {transactionPage?.nextCursor ? ` (เฉพาะ ${sortedTransactions.length} รายการล่าสุด)` : ''}
               </p>
             </div>
           </div>
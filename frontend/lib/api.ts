@@ -56,6 +56,47 @@ export async function apiFetch<T>(
   return text ? (JSON.parse(text) as T) : (undefined as T);
 }
 
+export interface CursorPage<T> {
+  items: T[];
+  nextCursor: string | null;
+}
+
+// endpoint แบบแบ่งหน้าด้วย cursor: body เป็น array ของหน้านั้น ส่วน cursor หน้าถัดไปอยู่ใน header X-Next-Cursor
+export async function apiFetchPage<T>(path: string, { token }: { token?: string } = {}): Promise<CursorPage<T>> {
+  const response = await fetch(`${API_BASE_URL}${path}`, {
+    headers: {
+      'Content-Type': 'application/json',
+      ...(token ? { Authorization: `Bearer ${token}` } : {})
+    }
+  });
+
+  if (!response.ok) {
+    throw await buildApiError(response);
+  }
+
+  const text = await response.text();
+  return {
+    items: text ? (JSON.parse(text) as T[]) : [],
+    nextCursor: response.headers.get('X-Next-Cursor')
+  };
+}
+
+// โหลดทุกหน้าตาม X-Next-Cursor จนหมด ใช้กับรายงานที่ต้องได้ข้อมูลครบ (ควรกรองช่วงข้อมูลใน path ให้แคบก่อน)
+export async function apiFetchAllPages<T>(path: string, { token }: { token?: string } = {}): Promise<T[]> {
+  const separator = path.includes('?') ? '&' : '?';
+  const items: T[] = [];
+  let cursor: string | null = null;
+  do {
+    const page: CursorPage<T> = await apiFetchPage<T>(
+      cursor ? `${path}${separator}cursor=${encodeURIComponent(cursor)}` : path,
+      { token }
+    );
+    items.push(...page.items);
+    cursor = page.nextCursor;
+  } while (cursor);
+  return items;
+}
+
 export async function uploadProductImage(
   file: File,
   token: string
@@ -1,5 +1,6 @@
 import useSWR, { SWRConfiguration, SWRResponse } from 'swr';
-import { apiFetch } from './api';
+import useSWRInfinite, { SWRInfiniteConfiguration } from 'swr/infinite';
+import { apiFetch, apiFetchAllPages, apiFetchPage, CursorPage } from './api';
 
 export function useAuthedSWR<T>(
   key: string | null,
@@ -8,3 +9,63 @@ export function useAuthedSWR<T>(
 ): SWRResponse<T, unknown> {
   return useSWR<T>(key && token ? [key, token] : null, ([path, authToken]) => apiFetch<T>(path, { token: authToken as string }), config);
 }
+
+// หน้าเดียวของ endpoint แบบ cursor พร้อม nextCursor ไว้บอกผู้ใช้ว่ายังมีข้อมูลอีก
+export function useAuthedPageSWR<T>(
+  key: string | null,
+  token: string | null,
+  config?: SWRConfiguration<CursorPage<T>>
+): SWRResponse<CursorPage<T>, unknown> {
+  return useSWR<CursorPage<T>>(
+    key && token ? ['page', key, token] : null,
+    ([, path, authToken]) => apiFetchPage<T>(path, { token: authToken as string }),
+    config
+  );
+}
+
+// ทุกหน้าของ endpoint แบบ cursor รวมเป็น array เดียว
+export function useAuthedAllPagesSWR<T>(
+  key: string | null,
+  token: string | null,
+  config?: SWRConfiguration<T[]>
+): SWRResponse<T[], unknown> {
+  return useSWR<T[]>(
+    key && token ? ['all-pages', key, token] : null,
+    ([, path, authToken]) => apiFetchAllPages<T>(path, { token: authToken as string }),
+    config
+  );
+}
+
+// endpoint แบบ cursor ที่แสดงทีละหน้าแล้วกด "โหลดเพิ่ม" ต่อท้าย (หน้าถัดไปใช้ nextCursor ของหน้าก่อน)
+export function useAuthedCursorPagesSWR<T>(
+  key: string | null,
+  token: string | null,
+  config?: SWRInfiniteConfiguration<CursorPage<T>>
+) {
+  const response = useSWRInfinite<CursorPage<T>>(
+    (index: number, previous: CursorPage<T> | null) => {
+      if (!key || !token) {
+        return null;
+      }
+      if (index === 0) {
+        return ['cursor-pages', key, token, null];
+      }
+      return previous?.nextCursor ? ['cursor-pages', key, token, previous.nextCursor] : null;
+    },
+    ([, path, authToken, cursor]: [string, string, string, string | null]) => {
+      const separator = path.includes('?') ? '&' : '?';
+      return apiFetchPage<T>(cursor ? `${path}${separator}cursor=${encodeURIComponent(cursor)}` : path, {
+        token: authToken
+      });
+    },
+    config
+  );
+  const pages = response.data ?? [];
+  const lastPage = pages[pages.length - 1];
+  return {
+    ...response,
+    items: pages.flatMap((page) => page.items),
+    hasMore: Boolean(lastPage?.nextCursor),
+    loadMore: () => response.setSize(response.size + 1)
+  };
+}